@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history.format;
+
+import com.google.api.explorer.client.history.format.JsonHandler.ScalarType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the pure Java JSON formatter on payloads shaped like the documents the explorer
+ * formats most: discovery documents, which are deeply nested objects with long descriptions, and
+ * list responses, which are long arrays of small resources full of links. The prerender benchmark
+ * measures the whole of what the web worker runs for a body.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class JsonFormatterBenchmark {
+
+  /** Number of methods in the discovery document, and of items in the list response. */
+  @Param({"10", "100", "1000"})
+  public int size;
+
+  // Rendering options of the explorer, see JsonPrettifier.
+  private static final int COLLAPSE_DEPTH = 3;
+  private static final int PAGE_SIZE = 100;
+
+  private String discovery;
+  private String listResponse;
+  private Map<String, String> classes;
+
+  @Setup
+  public void createPayloads() {
+    discovery = discoveryDocument(size);
+    listResponse = listResponse(size);
+
+    classes = new HashMap<String, String>();
+    for (String key : new String[] {JsonMarkup.JSON_KEY, JsonMarkup.JSON_EXPANDED,
+        JsonMarkup.JSON_COLLAPSED, JsonMarkup.JSON_NULL, JsonMarkup.JSON_NUMBER,
+        JsonMarkup.JSON_BOOLEAN, JsonMarkup.JSON_STRING, JsonMarkup.JSON_STRING_LINK,
+        JsonMarkup.REUSABLE_RESOURCE, JsonMarkup.REUSABLE_RESOURCE_BUTTON,
+        JsonMarkup.CLICKABLE}) {
+      classes.put(key, key);
+    }
+  }
+
+  @Benchmark
+  public FormattedJson formatDiscovery() {
+    return JsonFormatter.format(discovery);
+  }
+
+  @Benchmark
+  public FormattedJson formatListResponse() {
+    return JsonFormatter.format(listResponse);
+  }
+
+  @Benchmark
+  public String prerenderListResponse() {
+    return JsonPrerenderer.render(listResponse, classes, "<img>", COLLAPSE_DEPTH, PAGE_SIZE)
+        .getHtml();
+  }
+
+  /**
+   * Parse without building the render model, to separate the cost of tokenizing from the cost of
+   * formatting.
+   */
+  @Benchmark
+  public int parseListResponse() {
+    CountingHandler handler = new CountingHandler();
+    JsonParser.parse(listResponse, handler);
+    return handler.events;
+  }
+
+  private static class CountingHandler implements JsonHandler {
+    int events = 0;
+
+    @Override
+    public void startObject(String key) {
+      events++;
+    }
+
+    @Override
+    public void endObject(boolean hasSeparator) {
+      events++;
+    }
+
+    @Override
+    public void startArray(String key) {
+      events++;
+    }
+
+    @Override
+    public void endArray(boolean hasSeparator) {
+      events++;
+    }
+
+    @Override
+    public void scalar(String key, ScalarType type, String text, boolean hasSeparator) {
+      events++;
+    }
+  }
+
+  private static String discoveryDocument(int methods) {
+    StringBuilder sb = new StringBuilder()
+        .append("{\"kind\":\"discovery#restDescription\",\"id\":\"plus:v1\",\"name\":\"plus\",")
+        .append("\"version\":\"v1\",\"title\":\"Google+ API\",")
+        .append("\"description\":\"The Google+ API enables developers to build on top of the ")
+        .append("Google+ platform.\",\"rootUrl\":\"https://www.googleapis.com/\",")
+        .append("\"servicePath\":\"plus/v1/\",\"resources\":{\"activities\":{\"methods\":{");
+    for (int i = 0; i < methods; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append("\"list").append(i).append("\":{")
+          .append("\"id\":\"plus.activities.list").append(i).append("\",")
+          .append("\"path\":\"people/{userId}/activities/{collection}\",")
+          .append("\"httpMethod\":\"GET\",")
+          .append("\"description\":\"List all of the activities in the specified collection ")
+          .append("for a particular user.\\nResults are \\\"paged\\\".\",")
+          .append("\"parameters\":{")
+          .append("\"userId\":{\"type\":\"string\",\"required\":true,\"location\":\"path\"},")
+          .append("\"maxResults\":{\"type\":\"integer\",\"default\":\"20\",\"format\":\"uint32\",")
+          .append("\"minimum\":\"1\",\"maximum\":\"100\",\"location\":\"query\"},")
+          .append("\"collection\":{\"type\":\"string\",\"enum\":[\"public\"],")
+          .append("\"enumDescriptions\":[\"All public activities created by the user.\"],")
+          .append("\"location\":\"path\"}},")
+          .append("\"parameterOrder\":[\"userId\",\"collection\"],")
+          .append("\"response\":{\"$ref\":\"ActivityFeed\"},")
+          .append("\"scopes\":[\"https://www.googleapis.com/auth/plus.me\"]}");
+    }
+    return sb.append("}}}}").toString();
+  }
+
+  private static String listResponse(int items) {
+    StringBuilder sb = new StringBuilder()
+        .append("{\"kind\":\"plus#activityFeed\",\"nextPageToken\":\"CKaEL8fSsbECIDH\",")
+        .append("\"updated\":\"2013-11-05T18:32:12.071Z\",\"items\":[");
+    for (int i = 0; i < items; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append("{\"kind\":\"plus#activity\",\"id\":\"z12").append(i).append("\",")
+          .append("\"title\":\"Activity number ").append(i).append(" \\u00e9\",")
+          .append("\"published\":\"2013-11-05T18:32:12.071Z\",")
+          .append("\"url\":\"https://plus.google.com/123456789/posts/").append(i).append("\",")
+          .append("\"selfLink\":\"https://www.googleapis.com/plus/v1/activities/z12")
+          .append(i).append("\",")
+          .append("\"actor\":{\"id\":\"123456789\",\"displayName\":\"Someone\",")
+          .append("\"image\":{\"url\":\"https://lh3.googleusercontent.com/photo.jpg?sz=50\"}},")
+          .append("\"object\":{\"replies\":{\"totalItems\":").append(i % 7).append("},")
+          .append("\"plusoners\":{\"totalItems\":").append(i * 3).append("},")
+          .append("\"attachments\":[{\"objectType\":\"article\",\"content\":null,")
+          .append("\"fullImage\":{\"height\":480,\"width\":640.5}}]},")
+          .append("\"verb\":\"post\",\"crosspost\":false}");
+    }
+    return sb.append("]}").toString();
+  }
+}
@@ -19,13 +19,19 @@ package com.google.api.explorer.client;
 import com.google.api.explorer.client.analytics.AnalyticsManager;
 import com.google.api.explorer.client.analytics.AnalyticsManager.AnalyticsEvent;
 import com.google.api.explorer.client.analytics.AnalyticsManagerImpl;
+import com.google.api.explorer.client.base.ApiRequest;
 import com.google.api.explorer.client.base.ApiServiceFactory;
 import com.google.api.explorer.client.base.Config;
 import com.google.api.explorer.client.base.ExplorerConfig;
 import com.google.api.explorer.client.base.ServiceLoader;
+import com.google.api.explorer.client.base.http.TimeoutPolicy;
+import com.google.api.explorer.client.base.http.TimeoutPolicy.RequestClass;
+import com.google.api.explorer.client.base.http.cors.CorsTransport;
+import com.google.api.explorer.client.base.storage.DiscoveryStore;
 import com.google.api.explorer.client.embedded.EmbeddedResources;
 import com.google.api.explorer.client.history.HistoryCache;
 import com.google.api.explorer.client.history.JsonPrettifier;
+import com.google.api.explorer.client.history.JsonPrettifier.Engine;
 import com.google.api.explorer.client.routing.HistoryWrapper;
 import com.google.api.explorer.client.routing.HistoryWrapperImpl;
 import com.google.api.explorer.client.routing.URLManipulator;
@@ -58,10 +64,28 @@ public class ExplorerEntryPoint implements EntryPoint {
 
     // Set up static resources.
     JsonPrettifier.setResources(Resources.INSTANCE);
+    JsonPrettifier.setEngine(Engine.HTML);
+    JsonPrettifier.setCollapseDepth(JsonPrettifier.DEFAULT_COLLAPSE_DEPTH);
+    JsonPrettifier.setIncrementalBudgetMillis(JsonPrettifier.DEFAULT_INCREMENTAL_BUDGET_MILLIS);
+    JsonPrettifier.setArrayPageSize(JsonPrettifier.DEFAULT_ARRAY_PAGE_SIZE);
+    JsonPrettifier.setUseWorker(true);
 
     // Set the API key and application name to use for calls from the Explorer.
     Config.setApiKey(ExplorerConfig.API_KEY);
 
+    // Fail requests which hang instead of keeping the user waiting for them indefinitely. The
+    // timeouts of API methods adapt to the latency which they were observed to have, and media
+    // downloads, which may take any time, have none.
+    TimeoutPolicy timeoutPolicy = ApiRequest.getTimeoutPolicy();
+    timeoutPolicy.setDefaultTimeoutMillis(TimeoutPolicy.DEFAULT_TIMEOUT_MILLIS);
+    timeoutPolicy.setTimeoutMillis(
+        RequestClass.DISCOVERY, TimeoutPolicy.DEFAULT_DISCOVERY_TIMEOUT_MILLIS);
+    timeoutPolicy.setTimeoutMillis(RequestClass.MEDIA, 0);
+    timeoutPolicy.enableAdaptive(TimeoutPolicy.DEFAULT_ADAPTIVE_PERCENTILE,
+        TimeoutPolicy.DEFAULT_ADAPTIVE_MULTIPLIER,
+        TimeoutPolicy.DEFAULT_ADAPTIVE_MIN_TIMEOUT_MILLIS,
+        TimeoutPolicy.DEFAULT_ADAPTIVE_MAX_TIMEOUT_MILLIS);
+
     // If the URL specifies a base URL, use it.
     // If it specifies an API key, use it as well. If no key is specified (and
     // the base URL is), then unset the key -- use no API key. We only want to
@@ -73,6 +97,11 @@ public class ExplorerEntryPoint implements EntryPoint {
     if (baseUrl != null) {
       Config.setBaseUrl(baseUrl);
       Config.setApiKey(key == null ? "" : key);
+
+      // Backends which allow cross origin requests can be called directly, without the proxy.
+      if ("true".equals(Window.Location.getParameter("cors"))) {
+        ApiRequest.setTransportForBaseUrl(baseUrl, new CorsTransport());
+      }
     }
 
     // If the user supplied a trace parameter, keep track of it and append it to requests.
@@ -81,6 +110,9 @@ public class ExplorerEntryPoint implements EntryPoint {
       Config.setTraceParameter(trace);
     }
 
+    // Start loading the request transport now that the base URL is known, in parallel with the
+    // construction of the UI.
+    ApiRequest.preloadTransport();
 
     // Create and display the view.
     AnalyticsManager analytics = new AnalyticsManagerImpl();
@@ -102,6 +134,7 @@ public class ExplorerEntryPoint implements EntryPoint {
     AuthManager authManager = new AuthManager();
     HistoryCache historyCache = new HistoryCache();
     ServiceLoader serviceLoader = new ServiceLoader(ApiServiceFactory.INSTANCE);
+    serviceLoader.setDiscoveryStore(DiscoveryStore.Helper.create());
     SearchResultIndex searchIndex = new SearchResultIndex();
 
     // Set up the keyword completion suggestion oracle.
@@ -119,7 +152,8 @@ public class ExplorerEntryPoint implements EntryPoint {
         searchIndex);
 
     // Construct the UI and add it to the page.
-    FullView fullView = new FullView(manipulator, authManager, analytics, searchKeywords);
+    FullView fullView =
+        new FullView(manipulator, authManager, analytics, searchKeywords, serviceLoader);
     historyManager.delegate = fullView;
 
     // If this in compiled GWT, set up the search capability. If it is hosted mode, search
@@ -24,7 +24,10 @@ import com.google.api.explorer.client.base.ApiMethod;
 import com.google.api.explorer.client.base.ApiRequest;
 import com.google.api.explorer.client.base.ApiResponse;
 import com.google.api.explorer.client.base.ApiService;
+import com.google.api.explorer.client.base.CancellationScope;
 import com.google.api.explorer.client.base.NameHelper;
+import com.google.api.explorer.client.base.ServiceDirectory;
+import com.google.api.explorer.client.base.ServiceLoader;
 import com.google.api.explorer.client.context.ExplorerContext;
 import com.google.api.explorer.client.context.ListServiceContext.TagProcessor;
 import com.google.api.explorer.client.embedded.EmbeddedParameterFormPresenter.RequestFinishedCallback;
@@ -82,8 +85,6 @@ import com.google.gwt.user.client.ui.SuggestOracle;
 import com.google.gwt.user.client.ui.SuggestOracle.Suggestion;
 import com.google.gwt.user.client.ui.Widget;
 
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -155,11 +156,16 @@ public class FullView extends Composite
   private final FullViewPresenter presenter;
   private final AuthManager authManager;
   private final AnalyticsManager analytics;
+  private final ServiceLoader serviceLoader;
+
+  /** Work started on behalf of the context which is currently shown. */
+  private CancellationScope contextScope = new CancellationScope();
 
   public FullView(URLManipulator urlManipulator, AuthManager authManager,
-      AnalyticsManager analytics, SuggestOracle searchKeywords) {
+      AnalyticsManager analytics, SuggestOracle searchKeywords, ServiceLoader serviceLoader) {
 
     this.analytics = analytics;
+    this.serviceLoader = serviceLoader;
     this.presenter = new FullViewPresenter(urlManipulator, this);
     this.authManager = authManager;
     PlaceholderTextBox searchBackingTextBox =
@@ -256,6 +262,19 @@ public class FullView extends Composite
 
   @Override
   public void setContext(ExplorerContext context) {
+    // Requests which were executed for the previous context would only update views which are
+    // about to be thrown away.
+    contextScope.cancel();
+    contextScope = new CancellationScope();
+
+    // The service on screen has to stay in memory, however many services search loads.
+    ApiService service = context.getService();
+    if (service != null) {
+      serviceLoader.pinService(service.getName(), service.getVersion());
+    } else {
+      serviceLoader.clearPinnedService();
+    }
+
     presenter.setContext(context);
 
     // Fill in the entry list widget, only the collections that have entries will be shown
@@ -264,8 +283,9 @@ public class FullView extends Composite
 
     if (context.isEntryListVisible()) {
       populateHistoryItems("", context.getHistoryItems(), drillDownNav);
-      populateServiceEntries(
-          sortServices(context.getServicesList()), drillDownNav, context.getServiceTagProcessor());
+      // The directory is kept in title order, so it does not have to be sorted on every navigation.
+      populateServiceEntries(ServiceDirectory.inTitleOrder(context.getServicesList()),
+          drillDownNav, context.getServiceTagProcessor());
       populateServiceMethods(context.getService(), context.getMethods(), drillDownNav);
     }
 
@@ -286,6 +306,7 @@ public class FullView extends Composite
       CallbackWrapper cbWrapper = new CallbackWrapper();
       cbWrapper.delegate = context.getRequestFinishedCallback();
       cbWrapper.methodName = method.getId();
+      cbWrapper.scope = contextScope;
 
       // Create the view of the request editor and the single history item.
       EmbeddedView view = new EmbeddedView(authManager,
@@ -576,19 +597,6 @@ public class FullView extends Composite
     presenter.searchReady();
   }
 
-  private List<ServiceDefinition> sortServices(Set<ServiceDefinition> services) {
-    List<ServiceDefinition> serviceList = Lists.newArrayList(services);
-    Collections.sort(serviceList, new Comparator<ServiceDefinition>() {
-      @Override
-      public int compare(ServiceDefinition s1, ServiceDefinition s2) {
-        String s1Title = NameHelper.generateDisplayTitle(s1.getTitle(), s1.getName());
-        String s2Title = NameHelper.generateDisplayTitle(s2.getTitle(), s2.getName());
-        return s1Title.toLowerCase().compareTo(s2Title.toLowerCase());
-      }
-    });
-    return Collections.unmodifiableList(serviceList);
-  }
-
   /**
    * Wrapper class that is used to siphon off request complete events, while still passing the
    * original events through to the wrapped delegate class.
@@ -597,6 +605,7 @@ public class FullView extends Composite
     public RequestFinishedCallback delegate;
     public EmbeddedView localView;
     public String methodName;
+    public CancellationScope scope;
 
     private Map<ApiRequest, EmbeddedHistoryItemView> incompleteRequests = Maps.newHashMap();
 
@@ -605,6 +614,7 @@ public class FullView extends Composite
       EmbeddedHistoryItemView toComplete = incompleteRequests.get(request);
       toComplete.complete(response, endTime - startTime, JsonPrettifier.LOCAL_LINK_FACTORY);
       incompleteRequests.remove(request);
+      scope.finished(request);
 
       delegate.finished(request, response, startTime, endTime);
     }
@@ -614,6 +624,7 @@ public class FullView extends Composite
       EmbeddedHistoryItemView incomplete = new EmbeddedHistoryItemView(request);
       incompleteRequests.put(request, incomplete);
       localView.showHistoryItem(incomplete);
+      scope.track(request);
 
       delegate.starting(request);
     }
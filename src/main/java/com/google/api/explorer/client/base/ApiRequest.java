@@ -17,14 +17,32 @@
 package com.google.api.explorer.client.base;
 
 import com.google.api.explorer.client.base.ApiMethod.HttpMethod;
+import com.google.api.explorer.client.base.ApiResponse.HeaderValue;
+import com.google.api.explorer.client.base.http.InFlightRequests;
+import com.google.api.explorer.client.base.http.RequestScheduler;
+import com.google.api.explorer.client.base.http.RequestScheduler.ScheduledRequest;
+import com.google.api.explorer.client.base.http.ResponseCache;
+import com.google.api.explorer.client.base.http.RetryPolicy;
 import com.google.api.explorer.client.base.http.TimeoutException;
-import com.google.api.explorer.client.base.http.crossdomain.CrossDomainRequest;
+import com.google.api.explorer.client.base.http.TimeoutPolicy;
+import com.google.api.explorer.client.base.http.TimeoutPolicy.RequestClass;
+import com.google.api.explorer.client.base.http.Transport;
+import com.google.api.explorer.client.base.http.TransportRequest;
 import com.google.api.explorer.client.base.http.crossdomain.CrossDomainRequestBuilder;
+import com.google.api.explorer.client.base.http.crossdomain.QueueStatistics;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -34,17 +52,106 @@ import java.util.Map;
  * @author moshenko@google.com (Jake Moshenko)
  */
 public abstract class ApiRequest {
+  /**
+   * How urgently a request is needed, which decides the order in which waiting
+   * requests are sent by the {@link RequestScheduler}.
+   */
+  public enum Priority {
+    /** The user is waiting for the response, e.g. because they clicked Execute. */
+    INTERACTIVE,
+
+    /** Nobody is waiting for the response yet, e.g. services loaded for search. */
+    BACKGROUND;
+  }
+
+  /**
+   * One attempt at sending the request, which is retried according to its
+   * {@link RetryPolicy}.
+   */
+  public static class Attempt {
+    private final long startTime;
+    private long endTime = -1;
+    private int status = 0;
+
+    Attempt(long startTime) {
+      this.startTime = startTime;
+    }
+
+    void finish(long endTime, int status) {
+      this.endTime = endTime;
+      this.status = status;
+    }
+
+    /** Returns the time at which the attempt was sent. */
+    public long getStartTime() {
+      return startTime;
+    }
+
+    /** Returns the time at which the attempt finished, or -1 if it has not. */
+    public long getEndTime() {
+      return endTime;
+    }
+
+    /** Returns the status of the response, or 0 if the attempt failed without one. */
+    public int getStatus() {
+      return status;
+    }
+  }
+
   /**
    * Reference to the underlying HTTP request being made, so that it can be
    * canceled. This will be null until the request is sent.
    */
-  private CrossDomainRequest innerRequest;
+  private ScheduledRequest innerRequest;
+
+  private Priority priority = Priority.INTERACTIVE;
+
+  /** Policy which decides whether failed attempts are retried, or {@code null} for none. */
+  private RetryPolicy retryPolicy;
+
+  /** Attempts made by the last call to {@link #send(AsyncCallback)}. */
+  private final List<Attempt> attempts = Lists.newArrayList();
+
+  /** Timer which sends the next attempt, while waiting between attempts. */
+  private Timer retryTimer;
+
+  /**
+   * This request's wait for a call which may be shared with identical requests,
+   * or {@code null} if the request is not shared.
+   */
+  private TransportRequest sharedWait;
+
+  /**
+   * Timeout of this request, which overrides the {@link TimeoutPolicy}, or {@code null} to use the
+   * timeout of the policy.
+   */
+  private Integer timeoutMillis;
+
+  /** Class of the request for the {@link TimeoutPolicy}, or {@code null} to derive it. */
+  private RequestClass requestClass;
+
+  /** Whether a GET request is revalidated against, and stored in, the response cache. */
+  private boolean useResponseCache = false;
+
+  /**
+   * Key of the cached response which the current call revalidates, or {@code null} if its
+   * attempts are unconditional.
+   */
+  private String revalidatedKey;
+
+  /** Cached response whose validators are sent with the current attempt, or {@code null}. */
+  private ResponseCache.Entry revalidatedEntry;
 
   /**
    * Whether or not to pass the API key when making this request.
    */
   private boolean useApiKey = true;
 
+  /**
+   * Parsed representation of the request body, which is replaced if the body changes.
+   */
+  private JsonBody requestJsonBody;
+
   /**
    * Static holder class is needed to support JUnit-testing this class. Since
    * only the send() method requires the CrossDomainRequestBuilder, and it is
@@ -55,21 +162,86 @@ public abstract class ApiRequest {
     static final CrossDomainRequestBuilder REQUEST_BUILDER = new CrossDomainRequestBuilder();
   }
 
+  /** Transports which replace the default transport for specific base URLs. */
+  private static final Map<String, Transport> transportsByBaseUrl = Maps.newHashMap();
+
+  private static final RequestScheduler scheduler = new RequestScheduler();
+
+  private static final ResponseCache responseCache = new ResponseCache();
+
+  private static final InFlightRequests inFlightRequests = new InFlightRequests();
+
+  private static final TimeoutPolicy timeoutPolicy = new TimeoutPolicy();
+
+  /**
+   * Returns the policy which decides how long requests may take before they fail
+   * with a {@link TimeoutException}, so that the timeouts of request classes and
+   * the adaptive mode can be configured.
+   */
+  public static TimeoutPolicy getTimeoutPolicy() {
+    return timeoutPolicy;
+  }
+
   /**
-   * Set the timeout that all {@link ApiRequest}s should enforce. If the timeout
-   * period ends before a response is received, a {@link TimeoutException} will
-   * be raised.
-   *
-   * @param timeoutMillis length of time in milliseconds before a
-   *        {@link TimeoutException} should be raised unless a response has been
-   *        received.
+   * Use the specified transport for all requests to the base URL, instead of the googleapis
+   * client library.
+   */
+  public static void setTransportForBaseUrl(String baseUrl, Transport transport) {
+    transportsByBaseUrl.put(normalizeBaseUrl(baseUrl), Preconditions.checkNotNull(transport));
+  }
+
+  /**
+   * Returns the transport which sends requests to the base URL, which is the googleapis client
+   * library unless another transport was set for the URL.
+   */
+  @VisibleForTesting
+  static Transport transportForBaseUrl(String baseUrl) {
+    Transport transport = transportsByBaseUrl.get(normalizeBaseUrl(baseUrl));
+    return transport != null ? transport : HttpRequestBuilderHolder.REQUEST_BUILDER;
+  }
+
+  /** Forget about the transports which were set, so that the default transport is used. */
+  @VisibleForTesting
+  static void clearTransports() {
+    transportsByBaseUrl.clear();
+  }
+
+  private static String normalizeBaseUrl(String baseUrl) {
+    return baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+  }
+
+  /**
+   * Returns the scheduler which limits how many requests are in flight to each
+   * host, so that its limits can be configured.
+   */
+  public static RequestScheduler getScheduler() {
+    return scheduler;
+  }
+
+  /**
+   * Start loading the transport used to send requests, so that it is ready by the time the first
+   * request is sent. Requests sent before it finishes loading are queued until it is ready.
    */
-  public static void setTimeoutMillis(int timeoutMillis) {
-    HttpRequestBuilderHolder.REQUEST_BUILDER.setTimeoutMillis(timeoutMillis);
+  public static void preloadTransport() {
+    transportForBaseUrl(Config.getBaseUrl()).preload();
   }
 
   /**
-   * Send this request asynchronously.
+   * Returns the counters of the queue in which requests wait for the googleapis client library to
+   * load.
+   */
+  public static QueueStatistics getTransportQueueStatistics() {
+    return HttpRequestBuilderHolder.REQUEST_BUILDER.getQueueStatistics();
+  }
+
+  /**
+   * Send this request asynchronously, with the transport for the current base URL.
+   * The request may wait in the {@link RequestScheduler} until the host has a
+   * free slot for its priority. If a {@link RetryPolicy} is set, failed
+   * attempts are retried and only the outcome of the last attempt is passed to
+   * the callback. A GET request which is identical to one that is already in
+   * flight, and has the same settings, does not make a call of its own, but
+   * receives the same response and reports the same attempts.
    *
    * @param callback to execute when the response is received.
    *        {@link AsyncCallback#onSuccess(Object)} will be called when the
@@ -77,17 +249,218 @@ public abstract class ApiRequest {
    *        will be called if an error is encountered.
    */
   public void send(AsyncCallback<ApiResponse> callback) {
+    prepareToSend();
+    attempts.clear();
+    revalidatedKey = null;
+    revalidatedEntry = null;
+    if (getHttpMethod() != HttpMethod.GET) {
+      sharedWait = null;
+      sendAttempt(callback);
+      return;
+    }
+
+    String key = InFlightRequests.requestKey(Config.getBaseUrl(), this);
+    sharedWait = inFlightRequests.send(key, getSharingSettings(), new SharedSend(), callback);
+  }
+
+  /**
+   * Call which this request makes on behalf of the identical requests which share it.
+   */
+  private class SharedSend implements InFlightRequests.Call {
+    @Override
+    public TransportRequest start(AsyncCallback<ApiResponse> sharedCallback) {
+      sendAttempt(useResponseCache ? revalidating(sharedCallback) : sharedCallback);
+      return new TransportRequest() {
+        @Override
+        public void cancel() {
+          cancelAttempts();
+        }
+      };
+    }
+
+    @Override
+    public void shared(InFlightRequests.Call started) {
+      // This request made no attempts of its own, so it reports those of the call it waited for.
+      attempts.clear();
+      attempts.addAll(((SharedSend) started).getRequest().attempts);
+    }
+
+    ApiRequest getRequest() {
+      return ApiRequest.this;
+    }
+  }
+
+  /**
+   * Returns the settings which decide how this request makes its call. Identical requests only
+   * share a call if these are equal, so that each of them is retried, timed out and cached the
+   * way it asked for.
+   */
+  private List<Object> getSharingSettings() {
+    return Arrays.<Object>asList(retryPolicy, useResponseCache, timeoutMillis, getRequestClass());
+  }
+
+  /**
+   * Make the attempts of this request conditional on the cached response for
+   * it, if there is one when the attempt is sent, and return a callback which
+   * answers a 304 response with that cached response and caches new responses.
+   */
+  private AsyncCallback<ApiResponse> revalidating(final AsyncCallback<ApiResponse> callback) {
+    final String cacheKey = ResponseCache.cacheKey(Config.getBaseUrl(), this);
+    revalidatedKey = cacheKey;
+
+    return new AsyncCallback<ApiResponse>() {
+      @Override
+      public void onSuccess(ApiResponse response) {
+        // The response answers the last attempt, which revalidated the cached response of its time.
+        ResponseCache.Entry cached = revalidatedEntry;
+        int status = response.getStatus();
+        if (status == 304 && cached != null) {
+          callback.onSuccess(ApiResponse.fromCache(cached.getResponse()));
+          return;
+        }
+
+        if (status == 200 && !headerContains(response, "cache-control", "no-store")) {
+          responseCache.put(cacheKey, headerValue(response, "etag"),
+              headerValue(response, "last-modified"), response,
+              Strings.nullToEmpty(response.getBodyAsString()).length());
+        } else if (status == 404 || status == 410) {
+          responseCache.remove(cacheKey);
+        }
+        callback.onSuccess(response);
+      }
+
+      @Override
+      public void onFailure(Throwable caught) {
+        callback.onFailure(caught);
+      }
+    };
+  }
+
+  private static String headerValue(ApiResponse response, String name) {
+    HeaderValue header = response.getHeaders().get(name);
+    return header == null ? null : Strings.emptyToNull(header.getValue());
+  }
+
+  private static boolean headerContains(ApiResponse response, String name, String token) {
+    String value = headerValue(response, name);
+    return value != null && value.toLowerCase().contains(token);
+  }
+
+  private void sendAttempt(final AsyncCallback<ApiResponse> callback) {
+    final Attempt attempt = new Attempt(System.currentTimeMillis());
+    attempts.add(attempt);
+
+    // The cached response may have been replaced or evicted since the last attempt, so its
+    // validators are looked up again, instead of being added to the headers of the request.
+    revalidatedEntry = revalidatedKey == null ? null : responseCache.get(revalidatedKey);
+
+    final String methodKey = getTimeoutKey();
+    final int attemptTimeoutMillis = timeoutMillis != null
+        ? timeoutMillis : timeoutPolicy.getTimeoutMillis(getRequestClass(), methodKey);
+
+    String baseUrl = Config.getBaseUrl();
+    this.innerRequest = scheduler.schedule(baseUrl, transportForBaseUrl(baseUrl), this,
+        attemptTimeoutMillis, new AsyncCallback<ApiResponse>() {
+          @Override
+          public void onSuccess(ApiResponse response) {
+            attempt.finish(System.currentTimeMillis(), response.getStatus());
+            timeoutPolicy.recordLatency(methodKey, attempt.getEndTime() - sentTime(attempt));
+            int delayMillis = -1;
+            if (canRetry() && retryPolicy.isRetryable(
+                response.getStatus(), response.getErrorReasons())) {
+              HeaderValue retryAfter = response.getHeaders().get("retry-after");
+              delayMillis = retryPolicy.delayMillis(attempts.size(),
+                  retryAfter == null ? null : retryAfter.getValue(), attempt.getEndTime(),
+                  Math.random());
+            }
+
+            if (delayMillis >= 0) {
+              retryAfter(delayMillis, callback);
+            } else {
+              callback.onSuccess(response);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable caught) {
+            attempt.finish(System.currentTimeMillis(), 0);
+            if (caught instanceof TimeoutException) {
+              timeoutPolicy.recordLatency(
+                  methodKey, ((TimeoutException) caught).getTimeoutMillis());
+            }
+            if (canRetry() && retryPolicy.retriesTransportFailures()) {
+              retryAfter(retryPolicy.delayMillis(
+                  attempts.size(), null, attempt.getEndTime(), Math.random()), callback);
+            } else {
+              callback.onFailure(caught);
+            }
+          }
+        });
+  }
+
+  /**
+   * Returns when the current attempt was handed to the transport, which is later than its start
+   * if it had to wait for a free slot, so that the waiting is not counted as latency.
+   */
+  private long sentTime(Attempt attempt) {
+    // The attempt may complete before the scheduler has returned its handle, e.g. if the response
+    // was served without going to the network.
+    long sentTime = innerRequest == null ? -1 : innerRequest.getSentTime();
+    return sentTime >= attempt.getStartTime() ? sentTime : attempt.getStartTime();
+  }
+
+  /**
+   * Returns the key whose latencies the adaptive timeout of this request is derived from, which
+   * is the ID of its method or, for requests without one such as discovery requests, their class.
+   */
+  private String getTimeoutKey() {
+    return getMethod() != null ? getMethod().getId() : getRequestClass().name();
+  }
+
+  private boolean canRetry() {
+    return retryPolicy != null && attempts.size() < retryPolicy.getMaxAttempts();
+  }
+
+  private void retryAfter(int delayMillis, final AsyncCallback<ApiResponse> callback) {
+    retryTimer = new Timer() {
+      @Override
+      public void run() {
+        retryTimer = null;
+        sendAttempt(callback);
+      }
+    };
+    retryTimer.schedule(delayMillis);
+  }
+
+  /**
+   * Set the default headers and parameters of the request. This is done by
+   * {@link #send(AsyncCallback)}, and only needs to be called for requests
+   * which are sent in some other way, e.g. as part of a batch.
+   */
+  public void prepareToSend() {
     setHeaders();
     maybeSetApiKeyParameter();
     maybeSetTraceParameter();
-    this.innerRequest = HttpRequestBuilderHolder.REQUEST_BUILDER.makeRequest(this, callback);
   }
 
   /**
    * If this request has been sent using {@link #send(AsyncCallback)}, cancel
-   * it. The callback will not be executed.
+   * it. The callback will not be executed. If identical requests are waiting
+   * for the same call, the call goes on for them.
    */
   public void cancel() {
+    if (sharedWait != null) {
+      sharedWait.cancel();
+    } else {
+      cancelAttempts();
+    }
+  }
+
+  private void cancelAttempts() {
+    if (retryTimer != null) {
+      retryTimer.cancel();
+      retryTimer = null;
+    }
     if (innerRequest != null) {
       innerRequest.cancel();
     }
@@ -115,6 +488,75 @@ public abstract class ApiRequest {
     }
   }
 
+  /** Returns the priority with which this request is scheduled. */
+  public Priority getPriority() {
+    return priority;
+  }
+
+  /**
+   * Set the priority with which this request is scheduled. If the request has
+   * been sent but is still waiting for a free slot, it is moved to the queue of
+   * the new priority.
+   */
+  public void setPriority(Priority priority) {
+    this.priority = Preconditions.checkNotNull(priority);
+    if (innerRequest != null) {
+      innerRequest.setPriority(priority);
+    }
+  }
+
+  /**
+   * Set the timeout of this request, which overrides the timeout of its class
+   * and its adaptive timeout, or zero to wait indefinitely. Every attempt may
+   * take this long.
+   */
+  public void setTimeoutMillis(int timeoutMillis) {
+    Preconditions.checkArgument(timeoutMillis >= 0, "Timeouts may not be negative");
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Returns the class of this request for the {@link TimeoutPolicy}, which is
+   * {@link RequestClass#READ} for GET requests and {@link RequestClass#WRITE}
+   * for all others unless another class was set.
+   */
+  public RequestClass getRequestClass() {
+    if (requestClass != null) {
+      return requestClass;
+    }
+    return getHttpMethod() == HttpMethod.GET ? RequestClass.READ : RequestClass.WRITE;
+  }
+
+  /** Set the class of this request for the {@link TimeoutPolicy}. */
+  public void setRequestClass(RequestClass requestClass) {
+    this.requestClass = Preconditions.checkNotNull(requestClass);
+  }
+
+  /**
+   * Set the policy which decides whether failed attempts are retried, or
+   * {@code null} to never retry, which is the default.
+   */
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  /**
+   * Set whether this request, if it is a GET request, is revalidated against
+   * a cached response with {@code If-None-Match} and {@code If-Modified-Since}
+   * headers, and its response cached for next time. Off by default.
+   */
+  public void setUseResponseCache(boolean useResponseCache) {
+    this.useResponseCache = useResponseCache;
+  }
+
+  /**
+   * Returns the attempts made by the last call to {@link #send(AsyncCallback)},
+   * in the order in which they were sent.
+   */
+  public List<Attempt> getAttempts() {
+    return ImmutableList.copyOf(attempts);
+  }
+
   /**
    * Set whether or not to use the API key
    */
@@ -122,6 +564,18 @@ public abstract class ApiRequest {
     this.useApiKey = useApiKey;
   }
 
+  /**
+   * Returns the request body along with its parsed JSON representation. The parsed value is
+   * shared between callers for as long as the request body does not change.
+   */
+  public JsonBody getRequestJsonBody() {
+    String body = getRequestBody();
+    if (requestJsonBody == null || !Objects.equal(body, requestJsonBody.getText())) {
+      requestJsonBody = new JsonBody(body);
+    }
+    return requestJsonBody;
+  }
+
   /**
    * Method that will set the default headers for the request.
    */
@@ -147,6 +601,26 @@ public abstract class ApiRequest {
   /** Returns a key-value mapping of headers to set in this request. */
   public abstract Map<String, String> getHeaders();
 
+  /**
+   * Returns the headers which transports send with the current attempt, which
+   * are the headers of this request plus the validators of the cached response
+   * that the attempt revalidates, if any.
+   */
+  public Map<String, String> getHeadersToSend() {
+    if (revalidatedEntry == null) {
+      return getHeaders();
+    }
+
+    Map<String, String> headers = Maps.newLinkedHashMap(getHeaders());
+    if (revalidatedEntry.getEtag() != null) {
+      headers.put("If-None-Match", revalidatedEntry.getEtag());
+    }
+    if (revalidatedEntry.getLastModified() != null) {
+      headers.put("If-Modified-Since", revalidatedEntry.getLastModified());
+    }
+    return headers;
+  }
+
   /** Returns the service that is called by this request. */
   public abstract ApiService getService();
 
@@ -16,11 +16,14 @@
 
 package com.google.api.explorer.client.base;
 
+import com.google.api.explorer.client.base.dynamicjso.DynamicJsArray;
 import com.google.api.explorer.client.base.dynamicjso.DynamicJso;
+import com.google.api.explorer.client.base.dynamicjso.JsVisitor;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.gwt.core.client.JavaScriptObject;
-import com.google.gwt.core.client.JsArrayString;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -69,6 +72,12 @@ public class ApiResponse {
    */
   private final Map<String, HeaderValue> headers;
 
+  /** The body and its parsed representation, created when first requested. */
+  private JsonBody jsonBody;
+
+  /** Whether this response was served from the response cache after a 304 response. */
+  private boolean fromCache = false;
+
   private ApiResponse(DynamicJso object) {
     this.object = object;
     this.headers = createHeadersMap(object);
@@ -79,6 +88,34 @@ public class ApiResponse {
     return object.getString("body");
   }
 
+  /**
+   * Returns the body of the response along with its parsed JSON representation. The same instance
+   * is returned every time, so the body is parsed at most once no matter how many views use it.
+   */
+  public JsonBody getJsonBody() {
+    if (jsonBody == null) {
+      jsonBody = new JsonBody(getBodyAsString());
+    }
+    return jsonBody;
+  }
+
+  /**
+   * Returns the body parsed as a JSON object, parsing it only on the first invocation.
+   *
+   * @throws IllegalArgumentException when the body is not valid JSON.
+   */
+  public DynamicJso getParsedBody() {
+    return getJsonBody().getValue();
+  }
+
+  /**
+   * Returns whether the server answered with 304 Not Modified, and this is the response which was
+   * cached for the same request earlier.
+   */
+  public boolean isFromCache() {
+    return fromCache;
+  }
+
   /** Returns the status code of the response. */
   public int getStatus() {
     return object.getInteger("status");
@@ -89,6 +126,39 @@ public class ApiResponse {
     return object.getString("statusText");
   }
 
+  /**
+   * Returns the reasons of the errors in the body of an error response, e.g. "backendError",
+   * followed by the message of the error, e.g. "Backend Error". The list is empty for successful
+   * responses and bodies which do not contain an error.
+   */
+  public List<String> getErrorReasons() {
+    // Only parse the body for error statuses, successful bodies may be large.
+    if (getStatus() < 400) {
+      return ImmutableList.of();
+    }
+
+    ImmutableList.Builder<String> reasons = ImmutableList.builder();
+    try {
+      DynamicJso error = getParsedBody().get("error");
+      if (error == null) {
+        return ImmutableList.of();
+      }
+      DynamicJsArray errors = error.get("errors");
+      for (int i = 0; errors != null && i < errors.length(); i++) {
+        DynamicJso item = errors.get(i);
+        if (item != null && item.getString("reason") != null) {
+          reasons.add(item.getString("reason"));
+        }
+      }
+      if (error.getString("message") != null) {
+        reasons.add(error.getString("message"));
+      }
+    } catch (IllegalArgumentException e) {
+      // Not valid JSON, so there is no error payload.
+    }
+    return reasons.build();
+  }
+
   /**
    * Returns a map of normalized lower case header keys, associated with a tuple
    * containing the original key and the value.
@@ -104,38 +174,85 @@ public class ApiResponse {
     return new ApiResponse(jso);
   }
 
+  /**
+   * Returns a copy of a cached response, to be served when the server answered a conditional
+   * request with 304 Not Modified. The parsed body is shared with the cached response.
+   */
+  public static ApiResponse fromCache(ApiResponse cached) {
+    ApiResponse response = new ApiResponse(cached.object);
+    response.jsonBody = cached.jsonBody;
+    response.fromCache = true;
+    return response;
+  }
+
+  /**
+   * Instantiates a response from its parts, for responses which were not returned by the
+   * googleapis client library.
+   */
+  public static ApiResponse create(
+      int status, String statusText, Map<String, String> headers, String body) {
+    DynamicJso headersJso = DynamicJso.createObject().cast();
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      headersJso.set(header.getKey(), header.getValue());
+    }
+
+    return fromData(DynamicJso
+        .createObject()
+        .<DynamicJso>cast()
+        .set("status", status)
+        .set("statusText", statusText)
+        .set("headers", headersJso)
+        .set("body", body));
+  }
+
   /**
    * Inspects the headers object of the given JS object and constructs a
    * {@link Map} of its keys and values.
    */
   private static Map<String, HeaderValue> createHeadersMap(DynamicJso data) {
     DynamicJso headers = data.get("headers");
-    JsArrayString keys = headers.keys();
-    Map<String, HeaderValue> headersMap = Maps.newHashMapWithExpectedSize(keys.length());
-
-    for (int i = 0; i < keys.length(); i++) {
-      String key = keys.get(i);
-      String value = "";
-      switch (headers.typeofKey(key)) {
-        case STRING:
-          value = headers.getString(key);
-          break;
-
-        case BOOLEAN:
-          value = String.valueOf(headers.getBoolean(key));
-          break;
-
-        case NUMBER:
-          value = String.valueOf(headers.getInteger(key));
-          break;
-
-        case INTEGER:
-          value = String.valueOf(headers.getDouble(key));
-          break;
+    final Map<String, HeaderValue> headersMap = Maps.newHashMap();
+
+    headers.accept(new JsVisitor() {
+      @Override
+      public void visitString(int index, String key, String value) {
+        put(key, value);
       }
-      headersMap.put(key.toLowerCase(), new HeaderValue(key, value));
 
-    }
+      @Override
+      public void visitBoolean(int index, String key, boolean value) {
+        put(key, String.valueOf(value));
+      }
+
+      @Override
+      public void visitInteger(int index, String key, int value) {
+        put(key, String.valueOf(value));
+      }
+
+      @Override
+      public void visitNumber(int index, String key, double value) {
+        put(key, String.valueOf(value));
+      }
+
+      @Override
+      public void visitNull(int index, String key) {
+        put(key, "");
+      }
+
+      @Override
+      public void visitArray(int index, String key, DynamicJsArray value) {
+        put(key, "");
+      }
+
+      @Override
+      public void visitObject(int index, String key, DynamicJso value) {
+        put(key, "");
+      }
+
+      private void put(String key, String value) {
+        headersMap.put(key.toLowerCase(), new HeaderValue(key, value));
+      }
+    });
     return headersMap;
   }
 }
@@ -17,10 +17,15 @@
 package com.google.api.explorer.client.base;
 
 import com.google.api.explorer.client.base.ApiDirectory.ServiceDefinition;
+import com.google.api.explorer.client.base.ApiRequest.Priority;
+import com.google.api.explorer.client.base.ApiResponse.HeaderValue;
 import com.google.api.explorer.client.base.ApiService.CallStyle;
+import com.google.api.explorer.client.base.http.RetryPolicy;
+import com.google.api.explorer.client.base.http.TimeoutPolicy.RequestClass;
 import com.google.api.explorer.client.base.rest.RestApiRequest;
 import com.google.api.explorer.client.base.rest.RestApiService;
 import com.google.api.explorer.client.base.rpc.RpcApiService;
+import com.google.api.explorer.client.base.storage.DiscoveryDocument;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
@@ -58,6 +63,58 @@ public class ApiServiceFactory {
    */
   public void createService(final String serviceName, final String version,
       final CallStyle callStyle, final AsyncCallback<ApiService> callback) {
+    createService(serviceName, version, callStyle, Priority.INTERACTIVE, callback);
+  }
+
+  /**
+   * Generates a {@link ApiService} based on the results of a Discovery API
+   * request which is sent with the specified priority.
+   *
+   * @param serviceName name of the API service for which to create a Service.
+   * @param version version of the API to use.
+   * @param callStyle variant of the service to create.
+   * @param priority priority with which the Discovery API request is scheduled.
+   * @param callback to execute when the {@link ApiService} has been created.
+   * @return the Discovery API request, whose priority can be raised while it is
+   *         waiting to be sent.
+   */
+  public ApiRequest createService(final String serviceName, final String version,
+      final CallStyle callStyle, Priority priority, final AsyncCallback<ApiService> callback) {
+
+    return loadServiceDocument(serviceName, version, callStyle, priority, null,
+        new AsyncCallback<DiscoveryDocument>() {
+          @Override
+          public void onSuccess(DiscoveryDocument document) {
+            ApiService service = parseService(document.getBody(), callStyle);
+            if (service != null) {
+              callback.onSuccess(service);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable caught) {
+            callback.onFailure(caught);
+          }
+        });
+  }
+
+  /**
+   * Load the raw discovery document of a service, or revalidate a copy of it
+   * which was stored earlier.
+   *
+   * @param serviceName name of the API service.
+   * @param version version of the API.
+   * @param callStyle variant of the discovery document.
+   * @param priority priority with which the Discovery API request is scheduled.
+   * @param stored copy of the document which is revalidated with its
+   *        validators, or {@code null} to load the document unconditionally.
+   * @param callback receives the document, which is the stored copy itself if
+   *        the server replied that it has not been modified.
+   * @return the Discovery API request, whose priority can be raised while it is
+   *         waiting to be sent.
+   */
+  public ApiRequest loadServiceDocument(String serviceName, String version, CallStyle callStyle,
+      Priority priority, DiscoveryDocument stored, AsyncCallback<DiscoveryDocument> callback) {
 
     RestApiRequest request =
         new RestApiRequest(createDiscoveryPath(serviceName, version, callStyle));
@@ -67,48 +124,123 @@ public class ApiServiceFactory {
       request.addHeader("Authorization", "OAuth " + Config.getDiscoveryAuthToken());
     }
 
-    request.send(new AsyncCallback<ApiResponse>() {
+    return loadDocument(request, priority, stored, callback);
+  }
+
+  /**
+   * Returns the service described by the body of a discovery document, or
+   * {@code null} if the call style has no parser.
+   */
+  public ApiService parseService(String body, CallStyle callStyle) {
+    if (callStyle == CallStyle.REST) {
+      return RestApiService.Helper.fromString(body);
+    } else if (callStyle == CallStyle.RPC) {
+      return RpcApiService.Helper.fromString(body);
+    }
+    return null;
+  }
+
+  /**
+   * Generate the proper request and parse the response that will load the directory document from
+   * the Discovery service.
+   *
+   * @param callback Callback to notify of success or failure.
+   */
+  public void loadApiDirectory(final AsyncCallback<Set<ServiceDefinition>> callback) {
+    loadApiDirectory(Priority.INTERACTIVE, callback);
+  }
+
+  /**
+   * Load the directory document with a request which is sent with the specified priority.
+   *
+   * @param priority Priority with which the request is scheduled.
+   * @param callback Callback to notify of success or failure.
+   * @return The request, whose priority can be raised while it is waiting to be sent.
+   */
+  public ApiRequest loadApiDirectory(
+      Priority priority, final AsyncCallback<Set<ServiceDefinition>> callback) {
+    return loadDirectoryDocument(priority, null, new AsyncCallback<DiscoveryDocument>() {
       @Override
-      public void onSuccess(ApiResponse response) {
-        // Determine if we got a 3XX or 4XX response and call failure if so.
-        int responseClass = response.getStatus() / 100;
-        if (responseClass > 3) {
-          callback.onFailure(new IOException("Unsuccessful response code from server: "
-              + response.getStatus()));
-        } else if (callStyle == CallStyle.REST) {
-          callback.onSuccess(RestApiService.Helper.fromString(response.getBodyAsString()));
-        } else if (callStyle == CallStyle.RPC) {
-          callback.onSuccess(RpcApiService.Helper.fromString(response.getBodyAsString()));
-        }
+      public void onSuccess(DiscoveryDocument document) {
+        callback.onSuccess(parseDirectory(document.getBody()));
       }
 
       @Override
-      public void onFailure(Throwable caught) {
-        callback.onFailure(caught);
+      public void onFailure(Throwable cause) {
+        callback.onFailure(cause);
       }
     });
   }
 
   /**
-   * Generate the proper request and parse the response that will load the directory document from
-   * the Discovery service.
+   * Load the raw directory document, or revalidate a copy of it which was
+   * stored earlier.
    *
-   * @param callback Callback to notify of success or failure.
+   * @param priority Priority with which the request is scheduled.
+   * @param stored Copy of the document which is revalidated with its
+   *        validators, or {@code null} to load the document unconditionally.
+   * @param callback Receives the document, which is the stored copy itself if
+   *        the server replied that it has not been modified.
+   * @return The request, whose priority can be raised while it is waiting to be sent.
    */
-  public void loadApiDirectory(final AsyncCallback<Set<ServiceDefinition>> callback) {
-    RestApiRequest request = new RestApiRequest(Config.DIRECTORY_REQUEST_PATH);
+  public ApiRequest loadDirectoryDocument(
+      Priority priority, DiscoveryDocument stored, AsyncCallback<DiscoveryDocument> callback) {
+    return loadDocument(
+        new RestApiRequest(Config.DIRECTORY_REQUEST_PATH), priority, stored, callback);
+  }
+
+  /** Returns the services listed in the body of a directory document. */
+  public Set<ServiceDefinition> parseDirectory(String body) {
+    return ApiDirectory.Helper.fromString(body).getItems();
+  }
+
+  private ApiRequest loadDocument(RestApiRequest request, Priority priority,
+      final DiscoveryDocument stored, final AsyncCallback<DiscoveryDocument> callback) {
+
+    request.setPriority(priority);
+    request.setRequestClass(RequestClass.DISCOVERY);
+
+    // A transient server error would otherwise leave the explorer without the document.
+    request.setRetryPolicy(RetryPolicy.DEFAULT);
+
+    if (stored != null && stored.getEtag() != null) {
+      request.addHeader("If-None-Match", stored.getEtag());
+    }
+    if (stored != null && stored.getLastModified() != null) {
+      request.addHeader("If-Modified-Since", stored.getLastModified());
+    }
+
     request.send(new AsyncCallback<ApiResponse>() {
       @Override
       public void onSuccess(ApiResponse response) {
-        ApiDirectory directory = ApiDirectory.Helper.fromString(response.getBodyAsString());
-        callback.onSuccess(directory.getItems());
+        if (response.getStatus() == 304 && stored != null) {
+          callback.onSuccess(stored);
+          return;
+        }
+
+        // Determine if we got a 3XX or 4XX response and call failure if so.
+        int responseClass = response.getStatus() / 100;
+        if (responseClass > 3 || response.getStatus() == 304) {
+          callback.onFailure(new IOException("Unsuccessful response code from server: "
+              + response.getStatus()));
+        } else {
+          callback.onSuccess(new DiscoveryDocument(response.getBodyAsString(),
+              headerValue(response, "etag"), headerValue(response, "last-modified"),
+              System.currentTimeMillis()));
+        }
       }
 
       @Override
-      public void onFailure(Throwable cause) {
-        callback.onFailure(cause);
+      public void onFailure(Throwable caught) {
+        callback.onFailure(caught);
       }
     });
+    return request;
+  }
+
+  private static String headerValue(ApiResponse response, String name) {
+    HeaderValue header = response.getHeaders().get(name);
+    return header == null ? null : header.getValue();
   }
 
   @VisibleForTesting
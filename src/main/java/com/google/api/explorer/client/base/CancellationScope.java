@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gwt.core.client.Callback;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Work which was started on behalf of one navigation context, e.g. the method which is shown, and
+ * which is abandoned when the user navigates elsewhere. Requests are canceled, and loads stop
+ * calling back, so that nothing is rebuilt for a view which is no longer shown. Work is dropped
+ * from the scope once it completed, so that a long-lived context does not hold on to it.
+ *
+ */
+public class CancellationScope {
+
+  /**
+   * Something which can be canceled along with the scope.
+   */
+  public interface Cancelable {
+    void cancel();
+  }
+
+  /**
+   * Work which reports its result to a callback, e.g. loading a service.
+   */
+  public interface Task<T, F> {
+    /**
+     * Start the work.
+     *
+     * @return Handle with which the work stops calling back.
+     */
+    Cancelable start(Callback<T, F> callback);
+  }
+
+  private final Set<Cancelable> cancelables = Sets.newLinkedHashSet();
+  private final Map<ApiRequest, Cancelable> requests = Maps.newHashMap();
+  private boolean canceled = false;
+
+  /** Returns whether the scope has been canceled. */
+  public boolean isCanceled() {
+    return canceled;
+  }
+
+  /** Returns the number of pieces of work which would be canceled along with the scope. */
+  @VisibleForTesting
+  int size() {
+    return cancelables.size();
+  }
+
+  /**
+   * Cancel the work when the scope is canceled, or right away if it already was.
+   */
+  public void add(Cancelable cancelable) {
+    Preconditions.checkNotNull(cancelable);
+    if (canceled) {
+      cancelable.cancel();
+    } else {
+      cancelables.add(cancelable);
+    }
+  }
+
+  /**
+   * Forget about work which completed, so that it is not canceled along with the scope.
+   */
+  public void remove(Cancelable cancelable) {
+    cancelables.remove(cancelable);
+  }
+
+  /**
+   * Cancel the request when the scope is canceled, or right away if it already was, unless
+   * {@link #finished(ApiRequest)} is called first.
+   */
+  public void track(final ApiRequest request) {
+    Cancelable cancelable = new Cancelable() {
+      @Override
+      public void cancel() {
+        request.cancel();
+      }
+    };
+    if (!canceled) {
+      requests.put(request, cancelable);
+    }
+    add(cancelable);
+  }
+
+  /**
+   * Forget about a tracked request which finished.
+   */
+  public void finished(ApiRequest request) {
+    Cancelable cancelable = requests.remove(request);
+    if (cancelable != null) {
+      remove(cancelable);
+    }
+  }
+
+  /**
+   * Start the task, and cancel it when the scope is canceled. The callback is not invoked once the
+   * scope was canceled, and the task is forgotten once it called back.
+   */
+  public <T, F> void start(Task<T, F> task, Callback<T, F> callback) {
+    if (canceled) {
+      return;
+    }
+
+    ScopedCallback<T, F> scoped = new ScopedCallback<T, F>(callback);
+    Cancelable started = task.start(scoped);
+    if (!scoped.done) {
+      scoped.started = started;
+      add(started);
+    }
+  }
+
+  /**
+   * Cancel everything which was added to the scope. Work which is added afterwards is canceled
+   * right away.
+   */
+  public void cancel() {
+    if (canceled) {
+      return;
+    }
+    canceled = true;
+    List<Cancelable> toCancel = ImmutableList.copyOf(cancelables);
+    cancelables.clear();
+    requests.clear();
+    for (Cancelable cancelable : toCancel) {
+      cancelable.cancel();
+    }
+  }
+
+  /**
+   * Passes the result of a task on, and forgets about the task once it called back.
+   */
+  private class ScopedCallback<T, F> implements Callback<T, F> {
+    private final Callback<T, F> callback;
+    private Cancelable started;
+    private boolean done = false;
+
+    private ScopedCallback(Callback<T, F> callback) {
+      this.callback = callback;
+    }
+
+    @Override
+    public void onSuccess(T result) {
+      if (complete()) {
+        callback.onSuccess(result);
+      }
+    }
+
+    @Override
+    public void onFailure(F reason) {
+      if (complete()) {
+        callback.onFailure(reason);
+      }
+    }
+
+    /** Forgets about the task, and returns whether the result should be passed on. */
+    private boolean complete() {
+      done = true;
+      if (started != null) {
+        remove(started);
+      }
+      return !canceled;
+    }
+  }
+}
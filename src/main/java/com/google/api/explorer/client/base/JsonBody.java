@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base;
+
+import com.google.api.explorer.client.base.dynamicjso.DynamicJso;
+import com.google.common.base.Strings;
+import com.google.gwt.core.client.JsonUtils;
+
+import javax.annotation.Nullable;
+
+/**
+ * The text of a request or response body, along with the result of parsing it as JSON. The text is
+ * parsed at most once, the first time the parsed value is requested, and the resulting tree (or
+ * error) is shared by every caller.
+ *
+ */
+public final class JsonBody {
+  private final String text;
+
+  private boolean evaluated = false;
+  private DynamicJso value;
+  private IllegalArgumentException error;
+
+  /**
+   * Create a body from the specified text, which may be {@code null} if there was no body.
+   */
+  public JsonBody(@Nullable String text) {
+    this.text = text;
+  }
+
+  /**
+   * Returns the original text of the body, or {@code null} if there was no body.
+   */
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * Returns whether the body is missing or empty.
+   */
+  public boolean isEmpty() {
+    return Strings.isNullOrEmpty(text);
+  }
+
+  /**
+   * Returns the body parsed as a JSON object. The body is only parsed on the first invocation,
+   * subsequent invocations return the same object.
+   *
+   * @throws IllegalArgumentException when the body is empty or not valid JSON.
+   */
+  public DynamicJso getValue() {
+    if (!evaluated) {
+      evaluated = true;
+      try {
+        value = JsonUtils.<DynamicJso>safeEval(Strings.nullToEmpty(text));
+      } catch (IllegalArgumentException e) {
+        error = e;
+      }
+    }
+
+    if (error != null) {
+      throw error;
+    }
+    return value;
+  }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base;
+
+import com.google.api.explorer.client.base.ApiMethod.HttpMethod;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gwt.regexp.shared.MatchResult;
+import com.google.gwt.regexp.shared.RegExp;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Table which maps request paths back to the methods which generate them. The path templates of
+ * the methods (e.g. "people/{userId}/activities/{collection}") are compiled once into a trie keyed
+ * by path segment, so that matching a path costs time proportional to the number of segments
+ * instead of the number of methods in the service.
+ *
+ */
+public class MethodRouteTable {
+
+  /** Number of tables to keep around for recently used services. */
+  private static final int MAX_CACHED_TABLES = 16;
+
+  private static final Splitter PATH_SPLITTER = Splitter.on('/');
+
+  /**
+   * Tables for the most recently used services by cache key, in access order so that the least
+   * recently used table is evicted first. A table refers to the methods of its service, so the
+   * {@link ServiceCache} drops it along with the service, which would otherwise stay reachable.
+   */
+  private static final Map<String, MethodRouteTable> TABLES =
+      new LinkedHashMap<String, MethodRouteTable>(MAX_CACHED_TABLES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MethodRouteTable> eldest) {
+          return size() > MAX_CACHED_TABLES;
+        }
+      };
+
+  /**
+   * Result of successfully matching a path against the table.
+   */
+  public static class Match {
+    private final ApiMethod method;
+    private final ListMultimap<String, String> parameters;
+
+    Match(ApiMethod method, ListMultimap<String, String> parameters) {
+      this.method = method;
+      this.parameters = parameters;
+    }
+
+    /** Returns the method whose path template matched. */
+    public ApiMethod getMethod() {
+      return method;
+    }
+
+    /** Returns the path parameter values, in the order in which they appear in the template. */
+    public ListMultimap<String, String> getParameters() {
+      return parameters;
+    }
+  }
+
+  /**
+   * One segment of a path template, which is either literal text or contains parameters.
+   */
+  private static class Segment {
+    private static final RegExp PARAMETER = RegExp.compile("\\{([^}]+)\\}", "g");
+
+    final String template;
+    final List<String> parameterNames;
+
+    /** Pattern for segments which mix literal text and parameters, {@code null} otherwise. */
+    final RegExp pattern;
+
+    Segment(String template) {
+      this.template = template;
+
+      List<String> names = Lists.newArrayList();
+      StringBuilder regex = new StringBuilder("^");
+      int literalStart = 0;
+      PARAMETER.setLastIndex(0);
+      for (MatchResult result = PARAMETER.exec(template); result != null;
+          result = PARAMETER.exec(template)) {
+        names.add(result.getGroup(1));
+        regex.append(RegExp.quote(template.substring(literalStart, result.getIndex())))
+            .append("([^/]+)");
+        literalStart = result.getIndex() + result.getGroup(0).length();
+      }
+      regex.append(RegExp.quote(template.substring(literalStart))).append('$');
+
+      this.parameterNames = ImmutableList.copyOf(names);
+
+      // The overwhelmingly common case is a segment which is exactly one parameter, which can be
+      // matched without a regular expression.
+      boolean wholeSegment = names.size() == 1 && template.equals("{" + names.get(0) + "}");
+      this.pattern = names.isEmpty() || wholeSegment ? null : RegExp.compile(regex.toString());
+    }
+
+    boolean isLiteral() {
+      return parameterNames.isEmpty();
+    }
+
+    boolean matches(String value) {
+      if (isLiteral()) {
+        return template.equals(value);
+      } else if (pattern == null) {
+        return !value.isEmpty();
+      }
+      return pattern.test(value);
+    }
+
+    void extractParameters(String value, ImmutableListMultimap.Builder<String, String> params) {
+      if (pattern == null) {
+        if (!isLiteral()) {
+          params.put(parameterNames.get(0), value);
+        }
+      } else {
+        MatchResult result = pattern.exec(value);
+        for (int i = 0; i < parameterNames.size(); i++) {
+          params.put(parameterNames.get(i), result.getGroup(i + 1));
+        }
+      }
+    }
+  }
+
+  /**
+   * Node in the trie of path segments.
+   */
+  private static class Node {
+    final Map<String, Node> literalChildren = Maps.newHashMap();
+    final Map<String, Node> parameterChildren = Maps.newLinkedHashMap();
+    final Map<String, Segment> parameterSegments = Maps.newHashMap();
+
+    /** Method and segments of the route which terminates at this node, if any. */
+    ApiMethod method;
+    List<Segment> route;
+  }
+
+  /** Service from which the table was built, or {@code null} for tables built from methods. */
+  private final ApiService service;
+
+  private final Node root = new Node();
+  private final Map<ApiMethod, List<Segment>> routesByMethod = Maps.newHashMap();
+
+  /**
+   * Returns the table for the GET methods of the specified service, which are the only methods
+   * which can be referenced by links in a response. Tables are built on first use and cached.
+   */
+  public static MethodRouteTable forService(ApiService service) {
+    Preconditions.checkNotNull(service);
+
+    // A refreshed service replaces the cached one under the same key, and needs a new table.
+    String cacheKey = ServiceLoader.generateCacheKey(
+        service.getName(), service.getVersion(), service.callStyle());
+    MethodRouteTable table = cacheKey == null ? null : TABLES.get(cacheKey);
+    if (table == null || table.service != service) {
+      List<ApiMethod> getMethods = Lists.newArrayList();
+      for (ApiMethod method : service.allMethods().values()) {
+        if (method.getHttpMethod() == HttpMethod.GET) {
+          getMethods.add(method);
+        }
+      }
+      table = new MethodRouteTable(service, getMethods);
+      if (cacheKey != null) {
+        TABLES.put(cacheKey, table);
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Drop the table of the service with the specified cache key, which was evicted from or
+   * replaced in the {@link ServiceCache}.
+   */
+  static void forget(String cacheKey) {
+    TABLES.remove(cacheKey);
+  }
+
+  /**
+   * Create a table which will match the path templates of all of the specified methods.
+   */
+  @VisibleForTesting
+  MethodRouteTable(Iterable<ApiMethod> methods) {
+    this(null, methods);
+  }
+
+  private MethodRouteTable(@Nullable ApiService service, Iterable<ApiMethod> methods) {
+    this.service = service;
+    for (ApiMethod method : methods) {
+      addRoute(method);
+    }
+  }
+
+  private void addRoute(ApiMethod method) {
+    String path = method.getPath();
+    if (path == null) {
+      return;
+    }
+
+    List<Segment> route = Lists.newArrayList();
+    Node current = root;
+    for (String template : PATH_SPLITTER.split(path)) {
+      Segment segment = new Segment(template);
+      route.add(segment);
+
+      Map<String, Node> children =
+          segment.isLiteral() ? current.literalChildren : current.parameterChildren;
+      Node child = children.get(template);
+      if (child == null) {
+        child = new Node();
+        children.put(template, child);
+        if (!segment.isLiteral()) {
+          current.parameterSegments.put(template, segment);
+        }
+      }
+      current = child;
+    }
+
+    // When two methods share a template, the first one registered wins.
+    if (current.method == null) {
+      current.method = method;
+      current.route = route;
+    }
+    routesByMethod.put(method, route);
+  }
+
+  /**
+   * Find the method whose path template matches the specified path.
+   *
+   * @param path Path relative to the base path of the service, without a query string.
+   * @return The matching method and its parameter values, or {@code null} if no method matches.
+   */
+  @Nullable
+  public Match match(String path) {
+    List<String> values = Lists.newArrayList(PATH_SPLITTER.split(path));
+    Node leaf = find(root, values, 0);
+    if (leaf == null) {
+      return null;
+    }
+    return new Match(leaf.method, extract(leaf.route, values));
+  }
+
+  /**
+   * Extract the parameter values of the specified method from the path.
+   *
+   * @param method Method whose path template should be used.
+   * @param path Path relative to the base path of the service, without a query string.
+   * @return The parameter values in template order, or {@code null} if the path does not match the
+   *         template of the method.
+   */
+  @Nullable
+  public ListMultimap<String, String> extractParameters(ApiMethod method, String path) {
+    List<Segment> route = routesByMethod.get(method);
+    if (route == null) {
+      return null;
+    }
+
+    List<String> values = Lists.newArrayList(PATH_SPLITTER.split(path));
+    if (values.size() != route.size()) {
+      return null;
+    }
+    for (int i = 0; i < route.size(); i++) {
+      if (!route.get(i).matches(values.get(i))) {
+        return null;
+      }
+    }
+    return extract(route, values);
+  }
+
+  /**
+   * Depth first search through the trie, preferring literal segments over parameters.
+   */
+  private static Node find(Node node, List<String> values, int index) {
+    if (index == values.size()) {
+      return node.method != null ? node : null;
+    }
+
+    String value = values.get(index);
+    Node literal = node.literalChildren.get(value);
+    if (literal != null) {
+      Node found = find(literal, values, index + 1);
+      if (found != null) {
+        return found;
+      }
+    }
+
+    for (Map.Entry<String, Node> entry : node.parameterChildren.entrySet()) {
+      if (node.parameterSegments.get(entry.getKey()).matches(value)) {
+        Node found = find(entry.getValue(), values, index + 1);
+        if (found != null) {
+          return found;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static ListMultimap<String, String> extract(List<Segment> route, List<String> values) {
+    ImmutableListMultimap.Builder<String, String> params = ImmutableListMultimap.builder();
+    for (int i = 0; i < route.size(); i++) {
+      route.get(i).extractParameters(values.get(i), params);
+    }
+    return params.build();
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Memory bounded cache of the services which were loaded by the {@link ServiceLoader}. The memory
+ * taken by a decoded service is estimated by the length of the discovery document it was decoded
+ * from, and the least recently used services are evicted first once the estimate exceeds the
+ * limit. Pinned services, e.g. the one on screen, are never evicted. The {@link MethodRouteTable}
+ * of a service is dropped along with it.
+ *
+ */
+class ServiceCache {
+
+  /** Default number of discovery document characters whose services are kept. */
+  static final int DEFAULT_MAX_CHARS = 8 * 1024 * 1024;
+
+  private static class Entry {
+    final ApiService service;
+    final int size;
+    long fetchedTime;
+
+    Entry(ApiService service, int size, long fetchedTime) {
+      this.service = service;
+      this.size = size;
+      this.fetchedTime = fetchedTime;
+    }
+  }
+
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  private final Set<String> pinned = Sets.newHashSet();
+  private int maxChars;
+  private int chars = 0;
+
+  ServiceCache() {
+    this(DEFAULT_MAX_CHARS);
+  }
+
+  ServiceCache(int maxChars) {
+    Preconditions.checkArgument(maxChars > 0);
+    this.maxChars = maxChars;
+  }
+
+  /**
+   * Returns the cached service for the key and marks it as recently used, or returns
+   * {@code null} if it is not cached.
+   */
+  ApiService get(String key) {
+    Entry entry = entries.get(key);
+    return entry == null ? null : entry.service;
+  }
+
+  boolean containsKey(String key) {
+    return entries.containsKey(key);
+  }
+
+  /**
+   * Returns the time at which the discovery document of the cached service was fetched or last
+   * revalidated, or -1 if the service is not cached.
+   */
+  long getFetchedTime(String key) {
+    Entry entry = entries.get(key);
+    return entry == null ? -1 : entry.fetchedTime;
+  }
+
+  /** Record that the discovery document of the cached service was revalidated. */
+  void setFetchedTime(String key, long fetchedTime) {
+    Entry entry = entries.get(key);
+    if (entry != null) {
+      entry.fetchedTime = fetchedTime;
+    }
+  }
+
+  /**
+   * Cache the service under the key, and evict the least recently used services which are not
+   * pinned until the cache is within its limit again. The service which was just cached is kept
+   * even if it exceeds the limit on its own, since somebody is about to use it.
+   *
+   * @param size Length of the discovery document the service was decoded from.
+   * @param fetchedTime Time at which the discovery document was fetched or last revalidated.
+   */
+  void put(String key, ApiService service, int size, long fetchedTime) {
+    remove(key);
+    entries.put(key, new Entry(service, size, fetchedTime));
+    chars += size;
+    evict(key);
+  }
+
+  /** Drop the cached service for the key, if any. */
+  void remove(String key) {
+    Entry removed = entries.remove(key);
+    if (removed != null) {
+      chars -= removed.size;
+      MethodRouteTable.forget(key);
+    }
+  }
+
+  /**
+   * Keep the service for the key cached until it is unpinned. The service does not need to be
+   * cached yet, it is kept once it is.
+   */
+  void pin(String key) {
+    pinned.add(key);
+  }
+
+  /** Allow the service for the key to be evicted again. */
+  void unpin(String key) {
+    if (pinned.remove(key)) {
+      evict(null);
+    }
+  }
+
+  /** Change the limit, evicting services if the cache exceeds the new limit. */
+  void setMaxChars(int maxChars) {
+    Preconditions.checkArgument(maxChars > 0);
+    this.maxChars = maxChars;
+    evict(null);
+  }
+
+  /** Returns the number of cached services. */
+  int size() {
+    return entries.size();
+  }
+
+  /** Returns the length of the discovery documents of the cached services. */
+  int getCachedChars() {
+    return chars;
+  }
+
+  /**
+   * Evict the least recently used services until the cache is within its limit.
+   *
+   * @param keep Key of a service which is not evicted either, or {@code null}.
+   */
+  private void evict(String keep) {
+    for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        chars > maxChars && it.hasNext();) {
+      Map.Entry<String, Entry> entry = it.next();
+      if (!pinned.contains(entry.getKey()) && !entry.getKey().equals(keep)) {
+        chars -= entry.getValue().size;
+        it.remove();
+        MethodRouteTable.forget(entry.getKey());
+      }
+    }
+  }
+}
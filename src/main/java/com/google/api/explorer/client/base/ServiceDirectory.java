@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base;
+
+import com.google.api.explorer.client.base.ApiDirectory.ServiceDefinition;
+import com.google.api.explorer.client.base.ApiDirectory.ServiceDefinition.Label;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ForwardingSet;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable set of the services in the directory, which is indexed once when it is created so
+ * that listings and lookups do not scan every service. Services are kept in the order of their
+ * display titles, which is the order in which they are listed.
+ *
+ */
+public class ServiceDirectory extends ForwardingSet<ServiceDefinition> {
+
+  /** Service together with the key by which it is sorted, so that the key is computed once. */
+  private static class TitledService {
+    final ServiceDefinition service;
+    final String sortKey;
+
+    TitledService(ServiceDefinition service) {
+      this.service = service;
+      this.sortKey =
+          NameHelper.generateDisplayTitle(service.getTitle(), service.getName()).toLowerCase();
+    }
+  }
+
+  private static final Comparator<TitledService> TITLE_ORDER = new Comparator<TitledService>() {
+    @Override
+    public int compare(TitledService s1, TitledService s2) {
+      return s1.sortKey.compareTo(s2.sortKey);
+    }
+  };
+
+  private final ImmutableSet<ServiceDefinition> services;
+  private final ImmutableListMultimap<String, ServiceDefinition> byName;
+  private final ImmutableMap<String, ServiceDefinition> byId;
+  private final ImmutableSetMultimap<Label, ServiceDefinition> byLabel;
+  private ServiceDirectory preferred;
+
+  /**
+   * Index the specified services.
+   */
+  public ServiceDirectory(Iterable<ServiceDefinition> services) {
+    ImmutableSet.Builder<ServiceDefinition> servicesBuilder = ImmutableSet.builder();
+    ImmutableListMultimap.Builder<String, ServiceDefinition> byNameBuilder =
+        ImmutableListMultimap.builder();
+    Map<String, ServiceDefinition> byIdBuilder = Maps.newHashMap();
+    ImmutableSetMultimap.Builder<Label, ServiceDefinition> byLabelBuilder =
+        ImmutableSetMultimap.builder();
+    for (ServiceDefinition service : sortByTitle(services)) {
+      servicesBuilder.add(service);
+      byNameBuilder.put(service.getName(), service);
+      if (!byIdBuilder.containsKey(service.getId())) {
+        byIdBuilder.put(service.getId(), service);
+      }
+      if (service.getLabels() != null) {
+        for (Label label : service.getLabels()) {
+          byLabelBuilder.put(label, service);
+        }
+      }
+    }
+
+    this.services = servicesBuilder.build();
+    this.byName = byNameBuilder.build();
+    this.byId = ImmutableMap.copyOf(byIdBuilder);
+    this.byLabel = byLabelBuilder.build();
+  }
+
+  /**
+   * Returns the services in the specified set in the order of their display titles. Directories
+   * are already in that order, other sets are sorted.
+   */
+  public static List<ServiceDefinition> inTitleOrder(Set<ServiceDefinition> services) {
+    return services instanceof ServiceDirectory
+        ? ((ServiceDirectory) services).services.asList() : sortByTitle(services);
+  }
+
+  private static List<ServiceDefinition> sortByTitle(Iterable<ServiceDefinition> services) {
+    List<TitledService> titled = Lists.newArrayList();
+    for (ServiceDefinition service : services) {
+      titled.add(new TitledService(Preconditions.checkNotNull(service)));
+    }
+    Collections.sort(titled, TITLE_ORDER);
+
+    ImmutableList.Builder<ServiceDefinition> sorted = ImmutableList.builder();
+    for (TitledService entry : titled) {
+      sorted.add(entry.service);
+    }
+    return sorted.build();
+  }
+
+  @Override
+  protected Set<ServiceDefinition> delegate() {
+    return services;
+  }
+
+  /**
+   * Returns the service with the specified id, e.g. "plus:v1", or {@code null} if there is none.
+   */
+  public ServiceDefinition getById(String id) {
+    return byId.get(id);
+  }
+
+  /**
+   * Returns every version of the service with the specified name, which is empty if there is none.
+   */
+  public List<ServiceDefinition> getVersions(String name) {
+    return byName.get(name);
+  }
+
+  /** Returns the services with the specified label. */
+  public Set<ServiceDefinition> getByLabel(Label label) {
+    return byLabel.get(label);
+  }
+
+  /** Returns the directory of the preferred version of every service. */
+  public ServiceDirectory getPreferred() {
+    if (preferred == null) {
+      List<ServiceDefinition> preferredServices = Lists.newArrayList();
+      for (ServiceDefinition service : services) {
+        if (service.isPreferred()) {
+          preferredServices.add(service);
+        }
+      }
+      preferred = preferredServices.size() == services.size()
+          ? this : new ServiceDirectory(preferredServices);
+      preferred.preferred = preferred;
+    }
+    return preferred;
+  }
+}
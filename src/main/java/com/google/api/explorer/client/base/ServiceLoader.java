@@ -17,7 +17,11 @@
 package com.google.api.explorer.client.base;
 
 import com.google.api.explorer.client.base.ApiDirectory.ServiceDefinition;
+import com.google.api.explorer.client.base.ApiRequest.Priority;
 import com.google.api.explorer.client.base.ApiService.CallStyle;
+import com.google.api.explorer.client.base.CancellationScope.Cancelable;
+import com.google.api.explorer.client.base.storage.DiscoveryDocument;
+import com.google.api.explorer.client.base.storage.DiscoveryStore;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
@@ -25,6 +29,8 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
@@ -48,20 +54,73 @@ public class ServiceLoader {
    */
   public interface ServiceLoaderDelegate {
     /**
-     * Invoked when a service has been loaded.
+     * Invoked when a service has been loaded, and again if a newer version of
+     * its discovery document was found when the stored copy was revalidated.
      *
      * @param service Service definition for the service which has been loaded.
      */
     public void serviceLoaded(ApiService service);
 
     /**
-     * Invoked when a directory document has been loaded and parsed.
+     * Invoked when a directory document has been loaded and parsed, and again if
+     * a newer version was found when the stored copy was revalidated.
      *
      * @param directoryServices Parsed set of services from the directory document.
      */
     public void directoryLoaded(Set<ServiceDefinition> directoryServices);
   }
 
+  /**
+   * Delegate which is also notified when stale entries are served and when loads fail. The
+   * {@link #delegate} is notified of these events if it implements this interface.
+   */
+  public interface CacheDelegate extends ServiceLoaderDelegate {
+    /**
+     * Invoked when a stale service was served, while it is refreshed in the background. If the
+     * refresh finds a newer version, {@link #serviceLoaded(ApiService)} is invoked with it.
+     */
+    void serviceServedStale(ApiService service);
+
+    /**
+     * Invoked when a service could not be loaded.
+     *
+     * @param remembered Whether the failure was remembered from an earlier attempt, instead of
+     *        making another one.
+     */
+    void serviceLoadFailed(String name, String version, String reason, boolean remembered);
+
+    /**
+     * Invoked when a stale directory was served, while it is refreshed in the background. If the
+     * refresh finds a newer version, {@link #directoryLoaded(Set)} is invoked with it.
+     */
+    void directoryServedStale(Set<ServiceDefinition> directoryServices);
+
+    /**
+     * Invoked when the directory could not be loaded.
+     *
+     * @param remembered Whether the failure was remembered from an earlier attempt, instead of
+     *        making another one.
+     */
+    void directoryLoadFailed(String reason, boolean remembered);
+  }
+
+  /** Default time after which loaded documents are refreshed in the background. */
+  public static final long DEFAULT_MAX_AGE_MILLIS = 60 * 60 * 1000;
+
+  /** Default time for which failed loads are not attempted again. */
+  public static final long DEFAULT_FAILURE_TTL_MILLIS = 30 * 1000;
+
+  /** A load which failed, and is not attempted again until the failure expires. */
+  private static class Failure {
+    final String reason;
+    final long time;
+
+    Failure(String reason, long time) {
+      this.reason = reason;
+      this.time = time;
+    }
+  }
+
   private final ApiServiceFactory googleApi;
 
   /**
@@ -92,13 +151,132 @@ public class ServiceLoader {
    */
   private static final Set<String> SERVICE_ID_BLACKLIST = ImmutableSet.of("drive:v1");
 
+  /** Handle returned to callers whose callback was invoked right away. */
+  private static final Cancelable ALREADY_DONE = new Cancelable() {
+    @Override
+    public void cancel() {
+      // Intentionally blank, the callback was already invoked.
+    }
+  };
+
+  /** Key of the directory document in the persistent store. */
+  private static final String DIRECTORY_KEY = "directory";
+
+  /**
+   * Services which were loaded, bounded by the size of their discovery documents. Evicted services
+   * are loaded again, from the persistent store if possible, when they are needed again.
+   */
   @VisibleForTesting
-  final Map<String, ApiService> cache = Maps.newHashMap();
+  final ServiceCache cache = new ServiceCache();
+
+  /** Cache key of the service which is on screen, and therefore never evicted. */
+  private String pinnedKey;
 
   final Multimap<String, Callback<ApiService, String>> outstandingRequestCallbacks =
       HashMultimap.create();
 
-  private Set<ServiceDefinition> directoryCache;
+  /**
+   * Discovery requests which are in flight or waiting to be sent, by cache key, so that a
+   * background load can be promoted when somebody starts waiting for it.
+   */
+  private final Map<String, ApiRequest> outstandingRequests = Maps.newHashMap();
+
+  /**
+   * Priority with which the discovery document of a service is requested once
+   * it is not found in the persistent store, by cache key. Services are in
+   * here for as long as they are loaded, even if nobody waits for them any more.
+   */
+  private final Map<String, Priority> outstandingPriorities = Maps.newHashMap();
+
+  /** Cache keys of the services which are being refreshed in the background. */
+  private final Set<String> refreshingServices = Sets.newHashSet();
+
+  /** Failed loads of services by cache key, which are remembered for a while. */
+  private final Map<String, Failure> serviceFailures = Maps.newHashMap();
+
+  /**
+   * Failed background refreshes of services by cache key, which are not attempted again until
+   * the failure expires. The stale services are served meanwhile.
+   */
+  private final Map<String, Failure> refreshFailures = Maps.newHashMap();
+
+  private ServiceDirectory directoryCache;
+
+  /**
+   * Callers waiting for the directory while it is loaded. All of them share the
+   * single load which is in flight.
+   */
+  private final List<Callback<Set<ServiceDefinition>, String>> outstandingDirectoryCallbacks =
+      Lists.newArrayList();
+
+  /** Whether the directory is being loaded, even if nobody waits for it any more. */
+  private boolean loadingDirectory = false;
+
+  /**
+   * Priority with which the directory is requested once it is not found in the
+   * persistent store, and the request once it was sent.
+   */
+  private Priority directoryPriority;
+  private ApiRequest directoryRequest;
+
+  private long directoryFetchedTime;
+  private boolean refreshingDirectory = false;
+  private Failure directoryFailure;
+  private Failure directoryRefreshFailure;
+
+  private long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+  private long failureTtlMillis = DEFAULT_FAILURE_TTL_MILLIS;
+
+  /** Persistent tier which keeps the raw documents from one visit to the next. */
+  private DiscoveryStore store = DiscoveryStore.NONE;
+
+  /**
+   * Receives the outcome of refreshing a document in the background.
+   */
+  private interface RefreshCallback<T> {
+    /**
+     * Parse the body of a newer version of the document. Throws a
+     * {@link RuntimeException} if the body is corrupt.
+     */
+    T parse(String body);
+
+    /** The document has not changed, and was revalidated at the specified time. */
+    void unchanged(long fetchedTime);
+
+    /** A newer version of the document was loaded and parsed. */
+    void changed(DiscoveryDocument document, T parsed);
+
+    /** The document could not be refreshed, so the stale version stays in use. */
+    void failed(String reason);
+  }
+
+  /**
+   * Receives a document which was loaded by
+   * {@link ServiceLoader#loadDocument(String, DocumentLoader, LoadCallback)},
+   * along with the object which was parsed from it.
+   */
+  private interface LoadCallback<T> {
+    /**
+     * Parse the body of the document, e.g. into the service. Throws a
+     * {@link RuntimeException} if the body is corrupt.
+     */
+    T parse(String body);
+
+    void onSuccess(DiscoveryDocument document, T parsed);
+
+    void onFailure(Throwable caught);
+  }
+
+  /**
+   * Sends the request which loads or revalidates a document.
+   */
+  private interface DocumentLoader {
+    /**
+     * @param stored Copy of the document to revalidate, or {@code null} to load
+     *        the document unconditionally.
+     */
+    void load(DiscoveryDocument stored, AsyncCallback<DiscoveryDocument> callback);
+  }
 
   /**
    * Create an instance.
@@ -109,50 +287,392 @@ public class ServiceLoader {
     this.googleApi = googleApi;
   }
 
+  /**
+   * Keep the raw discovery and directory documents in the specified persistent
+   * store. Documents which are found there are used right away and revalidated
+   * in the background, so that a repeat visit needs no discovery traffic before
+   * it can show them.
+   */
+  public void setDiscoveryStore(DiscoveryStore store) {
+    this.store = Preconditions.checkNotNull(store);
+  }
+
+  /**
+   * Set the age after which a loaded document is stale. Stale services and
+   * directories are still served right away, but refreshed in the background.
+   */
+  public void setMaxAgeMillis(long maxAgeMillis) {
+    Preconditions.checkArgument(maxAgeMillis >= 0);
+    this.maxAgeMillis = maxAgeMillis;
+  }
+
+  /**
+   * Set how long a failed load is remembered, during which the failure is
+   * reported right away instead of making another attempt. Failed background
+   * refreshes are not attempted again for as long either. Zero disables this.
+   */
+  public void setFailureTtlMillis(long failureTtlMillis) {
+    Preconditions.checkArgument(failureTtlMillis >= 0);
+    this.failureTtlMillis = failureTtlMillis;
+  }
+
   /**
    * Load the specified service from cache or request it from the discovery service.
    *
    * @param name Name of the service.
    * @param version Version of the service.
    * @param callback Callback to invoke when loading is complete.
+   * @return Handle with which the caller stops waiting, after which its
+   *         callback is not invoked. The load itself goes on in the background
+   *         for the other callers, or for the cache if there are none.
    */
-  public void loadService(String name, String version, Callback<ApiService, String> callback) {
+  public Cancelable loadService(
+      String name, String version, Callback<ApiService, String> callback) {
+    return loadService(name, version, Priority.INTERACTIVE, callback);
+  }
+
+  private Cancelable loadService(final String name, final String version, Priority priority,
+      final Callback<ApiService, String> callback) {
     final String cacheKey = generateCacheKey(name, version, CallStyle.REST);
 
     // Handle the request immediately if possible.
-    if (cache.containsKey(cacheKey)) {
-      callback.onSuccess(cache.get(cacheKey));
-      return;
+    ApiService cached = cache.get(cacheKey);
+    if (cached != null) {
+      callback.onSuccess(cached);
+      if (isStale(cache.getFetchedTime(cacheKey))) {
+        refreshService(name, version, null);
+        if (delegate instanceof CacheDelegate) {
+          ((CacheDelegate) delegate).serviceServedStale(cached);
+        }
+      }
+      return ALREADY_DONE;
+    }
+
+    Failure failure = getUnexpiredFailure(serviceFailures.get(cacheKey));
+    if (failure != null) {
+      callback.onFailure(failure.reason);
+      if (delegate instanceof CacheDelegate) {
+        ((CacheDelegate) delegate).serviceLoadFailed(name, version, failure.reason, true);
+      }
+      return ALREADY_DONE;
     }
 
     outstandingRequestCallbacks.put(cacheKey, callback);
 
-    // Only send the request if our request is the only one waiting on the resource.
-    if (outstandingRequestCallbacks.get(cacheKey).size() == 1) {
-      googleApi.createService(name, version, CallStyle.REST,
-          new AsyncCallback<ApiService>() {
+    // Only send the request if there is none in flight, even if nobody waits for that one any
+    // more, otherwise wait for it.
+    if (!outstandingPriorities.containsKey(cacheKey)) {
+      outstandingPriorities.put(cacheKey, priority);
+      loadDocument(cacheKey, serviceDocumentLoader(name, version),
+          new LoadCallback<ApiService>() {
             @Override
-            public void onSuccess(ApiService service) {
-              cache.put(cacheKey, service);
+            public ApiService parse(String body) {
+              return googleApi.parseService(body, CallStyle.REST);
+            }
+
+            @Override
+            public void onSuccess(DiscoveryDocument document, ApiService service) {
+              outstandingRequests.remove(cacheKey);
+              outstandingPriorities.remove(cacheKey);
+              serviceFailures.remove(cacheKey);
+              cache.put(cacheKey, service, document.getBody().length(), document.getFetchedTime());
 
               for (Callback<ApiService, String> cb : copyAndClearOutstandingCallbacks(cacheKey)) {
                 cb.onSuccess(service);
               }
 
               delegate.serviceLoaded(service);
+
+              // A stored document may be stale, in which case it is revalidated against itself.
+              if (isStale(document.getFetchedTime())) {
+                refreshService(name, version, document);
+                if (delegate instanceof CacheDelegate) {
+                  ((CacheDelegate) delegate).serviceServedStale(service);
+                }
+              }
             }
 
             @Override
             public void onFailure(Throwable caught) {
+              outstandingRequests.remove(cacheKey);
+              outstandingPriorities.remove(cacheKey);
               String failureMessage = caught.getMessage();
+              serviceFailures.put(cacheKey, new Failure(failureMessage, now()));
               for (Callback<ApiService, String> cb : copyAndClearOutstandingCallbacks(cacheKey)) {
                 cb.onFailure(failureMessage);
               }
+              if (delegate instanceof CacheDelegate) {
+                ((CacheDelegate) delegate).serviceLoadFailed(name, version, failureMessage, false);
+              }
             }
           });
+    } else if (priority == Priority.INTERACTIVE) {
+      // Somebody is waiting for a service which was requested in the background, so send the
+      // request ahead of the rest of the background work.
+      setServicePriority(cacheKey, Priority.INTERACTIVE);
+    }
+
+    return new Cancelable() {
+      @Override
+      public void cancel() {
+        // Once nobody waits for the service, it is still loaded for the cache, but it no longer
+        // holds up the requests which the user is waiting for.
+        if (outstandingRequestCallbacks.remove(cacheKey, callback)
+            && !outstandingRequestCallbacks.containsKey(cacheKey)) {
+          setServicePriority(cacheKey, Priority.BACKGROUND);
+        }
+      }
+    };
+  }
+
+  private void setServicePriority(String cacheKey, Priority priority) {
+    if (outstandingPriorities.containsKey(cacheKey)) {
+      outstandingPriorities.put(cacheKey, priority);
+    }
+    if (outstandingRequests.containsKey(cacheKey)) {
+      outstandingRequests.get(cacheKey).setPriority(priority);
+    }
+  }
+
+  /**
+   * Returns the loader which sends the discovery request of a service. Stored
+   * documents are revalidated in the background, while the user already sees
+   * them.
+   */
+  private DocumentLoader serviceDocumentLoader(final String name, final String version) {
+    final String cacheKey = generateCacheKey(name, version, CallStyle.REST);
+    return new DocumentLoader() {
+      @Override
+      public void load(DiscoveryDocument stored, AsyncCallback<DiscoveryDocument> callback) {
+        boolean loading = outstandingPriorities.containsKey(cacheKey);
+        Priority loadPriority = loading ? outstandingPriorities.get(cacheKey) : Priority.BACKGROUND;
+        ApiRequest request = googleApi.loadServiceDocument(
+            name, version, CallStyle.REST, loadPriority, stored, callback);
+
+        // The callback may already have been invoked if the request failed right away.
+        if (request != null && loading && outstandingPriorities.containsKey(cacheKey)) {
+          outstandingRequests.put(cacheKey, request);
+        }
+      }
+    };
+  }
+
+  /**
+   * Refresh a cached service in the background, unless it is being refreshed already or its
+   * last refresh failed recently.
+   *
+   * @param stored Copy of the discovery document to revalidate, or {@code null}
+   *        to revalidate the stored copy, if any.
+   */
+  private void refreshService(String name, String version, DiscoveryDocument stored) {
+    final String cacheKey = generateCacheKey(name, version, CallStyle.REST);
+    if (getUnexpiredFailure(refreshFailures.get(cacheKey)) != null
+        || !refreshingServices.add(cacheKey)) {
+      return;
+    }
+
+    refreshDocument(cacheKey, serviceDocumentLoader(name, version), stored,
+        new RefreshCallback<ApiService>() {
+          @Override
+          public ApiService parse(String body) {
+            return googleApi.parseService(body, CallStyle.REST);
+          }
+
+          @Override
+          public void unchanged(long fetchedTime) {
+            refreshingServices.remove(cacheKey);
+            refreshFailures.remove(cacheKey);
+            cache.setFetchedTime(cacheKey, fetchedTime);
+          }
+
+          @Override
+          public void changed(DiscoveryDocument document, ApiService service) {
+            refreshingServices.remove(cacheKey);
+            refreshFailures.remove(cacheKey);
+            cache.put(cacheKey, service, document.getBody().length(), document.getFetchedTime());
+            delegate.serviceLoaded(service);
+          }
+
+          @Override
+          public void failed(String reason) {
+            // Keep the stale version, which is still better than nothing. It is refreshed again
+            // when it is loaded after the failure expired.
+            refreshingServices.remove(cacheKey);
+            refreshFailures.put(cacheKey, new Failure(reason, now()));
+          }
+        });
+  }
+
+  /**
+   * Keep the specified service in memory while it is on screen, however many
+   * other services are loaded, instead of the service which was pinned before.
+   */
+  public void pinService(String name, String version) {
+    clearPinnedService();
+    pinnedKey = generateCacheKey(name, version, CallStyle.REST);
+    if (pinnedKey != null) {
+      cache.pin(pinnedKey);
+    }
+  }
+
+  /**
+   * Allow the service which was pinned by {@link #pinService(String, String)}
+   * to be evicted again.
+   */
+  public void clearPinnedService() {
+    if (pinnedKey != null) {
+      cache.unpin(pinnedKey);
+      pinnedKey = null;
     }
   }
 
+  /**
+   * Load a document from the persistent store, or from the network if it was
+   * not stored or the stored copy is corrupt. Documents which are loaded from
+   * the network are stored for next time, once they were parsed. The document
+   * may be stale, in which case the caller refreshes it.
+   *
+   * @param key Key of the document in the store.
+   * @param loader Sends the request which loads the document.
+   * @param loaded Parses and receives the document.
+   */
+  private <T> void loadDocument(
+      String key, final DocumentLoader loader, final LoadCallback<T> loaded) {
+    final DiscoveryStore store = getStore();
+    final String storeKey = getStoreKey(key);
+
+    store.get(storeKey, new AsyncCallback<DiscoveryDocument>() {
+      @Override
+      public void onSuccess(DiscoveryDocument stored) {
+        if (stored != null) {
+          T parsed;
+          try {
+            parsed = loaded.parse(stored.getBody());
+          } catch (RuntimeException e) {
+            // The stored copy was damaged, or written by an incompatible version. Drop it and
+            // load the document again.
+            store.remove(storeKey);
+            onSuccess(null);
+            return;
+          }
+          loaded.onSuccess(stored, parsed);
+          return;
+        }
+
+        loader.load(null, new AsyncCallback<DiscoveryDocument>() {
+          @Override
+          public void onSuccess(DiscoveryDocument document) {
+            T parsed;
+            try {
+              parsed = loaded.parse(document.getBody());
+            } catch (RuntimeException e) {
+              loaded.onFailure(e);
+              return;
+            }
+            store.put(storeKey, document);
+            loaded.onSuccess(document, parsed);
+          }
+
+          @Override
+          public void onFailure(Throwable caught) {
+            loaded.onFailure(caught);
+          }
+        });
+      }
+
+      @Override
+      public void onFailure(Throwable caught) {
+        onSuccess(null);
+      }
+    });
+  }
+
+  /**
+   * Revalidate a document in the background, and store the outcome. A newer
+   * version of the document is only stored once it was parsed, a corrupt one
+   * is reported as a failure instead.
+   *
+   * @param key Key of the document in the store.
+   * @param loader Sends the request which revalidates the document.
+   * @param stored Copy of the document to revalidate, or {@code null} to read
+   *        it from the store. Documents which were not stored are loaded
+   *        unconditionally.
+   * @param callback Parses and receives the outcome.
+   */
+  private <T> void refreshDocument(String key, final DocumentLoader loader,
+      DiscoveryDocument stored, final RefreshCallback<T> callback) {
+    final DiscoveryStore store = getStore();
+    final String storeKey = getStoreKey(key);
+
+    AsyncCallback<DiscoveryDocument> revalidate = new AsyncCallback<DiscoveryDocument>() {
+      @Override
+      public void onSuccess(final DiscoveryDocument stored) {
+        loader.load(stored, new AsyncCallback<DiscoveryDocument>() {
+          @Override
+          public void onSuccess(DiscoveryDocument document) {
+            if (document == stored) {
+              long fetchedTime = now();
+              store.put(storeKey, stored.withFetchedTime(fetchedTime));
+              callback.unchanged(fetchedTime);
+            } else {
+              T parsed;
+              try {
+                parsed = callback.parse(document.getBody());
+              } catch (RuntimeException e) {
+                callback.failed(e.getMessage());
+                return;
+              }
+              store.put(storeKey, document);
+              callback.changed(document, parsed);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable caught) {
+            callback.failed(caught.getMessage());
+          }
+        });
+      }
+
+      @Override
+      public void onFailure(Throwable caught) {
+        onSuccess(null);
+      }
+    };
+
+    if (stored != null) {
+      revalidate.onSuccess(stored);
+    } else {
+      store.get(storeKey, revalidate);
+    }
+  }
+
+  /**
+   * Returns the persistent store. Documents which were loaded with a discovery
+   * auth token may not be public, so they are kept out of it.
+   */
+  private DiscoveryStore getStore() {
+    return Config.getDiscoveryAuthToken() == null ? store : DiscoveryStore.NONE;
+  }
+
+  private static String getStoreKey(String key) {
+    return Config.getBaseUrl() + " " + key;
+  }
+
+  private boolean isStale(long fetchedTime) {
+    return now() - fetchedTime > maxAgeMillis;
+  }
+
+  /** Returns the failure if it has not expired yet, or {@code null}. */
+  private Failure getUnexpiredFailure(Failure failure) {
+    return failure != null && now() - failure.time < failureTtlMillis ? failure : null;
+  }
+
+  @VisibleForTesting
+  long now() {
+    return System.currentTimeMillis();
+  }
+
   /**
    * Copy the callbacks associated with the specified cache key and remove them from the list of
    * outstanding callbacks.
@@ -168,7 +688,8 @@ public class ServiceLoader {
 
   /**
    * Alternate interface for callers to use when they don't care about when the service has been
-   * loaded (e.g. search).
+   * loaded (e.g. search). The service is requested with {@link Priority#BACKGROUND}, so that it
+   * does not hold up requests which the user is waiting for.
    */
   public void backgroundLoadService(String serviceId) {
     String[] components = serviceId.split(":");
@@ -177,7 +698,7 @@ public class ServiceLoader {
     String serviceName = components[0];
     String version = components[1];
 
-    loadService(serviceName, version, new Callback<ApiService, String>() {
+    loadService(serviceName, version, Priority.BACKGROUND, new Callback<ApiService, String>() {
       @Override
       public void onFailure(String reason) {
         // Intentionally blank.
@@ -192,42 +713,211 @@ public class ServiceLoader {
 
   /**
    * Load the directory document from either cache or the wire and notify the specified callback
-   * when done.
-   */
-  public void loadServiceDefinitions(final Callback<Set<ServiceDefinition>, String> callback) {
-    if (directoryCache == null) {
-      googleApi.loadApiDirectory(new AsyncCallback<Set<ServiceDefinition>>() {
-        @Override
-        public void onSuccess(Set<ServiceDefinition> unfiltered) {
-          // Filter the list of services according to the blacklist.
-          directoryCache = Sets.filter(unfiltered, new Predicate<ServiceDefinition>() {
+   * when done. Concurrent callers share a single load. The services are passed as a
+   * {@link ServiceDirectory}, whose indexes callers may query instead of scanning the services.
+   *
+   * @return Handle with which the caller stops waiting, after which its
+   *         callback is not invoked. The load itself goes on in the background
+   *         for the other callers, or for the cache if there are none.
+   */
+  public Cancelable loadServiceDefinitions(
+      final Callback<Set<ServiceDefinition>, String> callback) {
+    return loadServiceDefinitions(Priority.INTERACTIVE, callback);
+  }
+
+  private Cancelable loadServiceDefinitions(
+      Priority priority, final Callback<Set<ServiceDefinition>, String> callback) {
+    if (directoryCache != null) {
+      callback.onSuccess(directoryCache);
+      if (isStale(directoryFetchedTime)) {
+        refreshDirectory(null);
+        if (delegate instanceof CacheDelegate) {
+          ((CacheDelegate) delegate).directoryServedStale(directoryCache);
+        }
+      }
+      return ALREADY_DONE;
+    }
+
+    Failure failure = getUnexpiredFailure(directoryFailure);
+    if (failure != null) {
+      callback.onFailure(failure.reason);
+      if (delegate instanceof CacheDelegate) {
+        ((CacheDelegate) delegate).directoryLoadFailed(failure.reason, true);
+      }
+      return ALREADY_DONE;
+    }
+
+    outstandingDirectoryCallbacks.add(callback);
+
+    // Only start a load if there is none in flight, otherwise wait for that one, promoting it if
+    // the caller is interactive.
+    if (!loadingDirectory) {
+      loadingDirectory = true;
+      directoryPriority = priority;
+      loadDocument(DIRECTORY_KEY, directoryDocumentLoader(),
+          new LoadCallback<ServiceDirectory>() {
+            @Override
+            public ServiceDirectory parse(String body) {
+              return filterDirectory(googleApi.parseDirectory(body));
+            }
+
             @Override
-            public boolean apply(ServiceDefinition service) {
-              return !SERVICE_NAME_BLACKLIST.contains(service.getName())
-                  && !SERVICE_ID_BLACKLIST.contains(service.getId());
+            public void onSuccess(DiscoveryDocument document, ServiceDirectory directory) {
+              directoryFailure = null;
+              directoryCache = directory;
+              directoryFetchedTime = document.getFetchedTime();
+              for (Callback<Set<ServiceDefinition>, String> cb :
+                  copyAndClearOutstandingDirectoryCallbacks()) {
+                cb.onSuccess(directoryCache);
+              }
+              delegate.directoryLoaded(directoryCache);
+
+              // A stored document may be stale, in which case it is revalidated against itself.
+              if (isStale(directoryFetchedTime)) {
+                refreshDirectory(document);
+                if (delegate instanceof CacheDelegate) {
+                  ((CacheDelegate) delegate).directoryServedStale(directoryCache);
+                }
+              }
+            }
+
+            @Override
+            public void onFailure(Throwable caught) {
+              String failureMessage = caught.getMessage();
+              directoryFailure = new Failure(failureMessage, now());
+              for (Callback<Set<ServiceDefinition>, String> cb :
+                  copyAndClearOutstandingDirectoryCallbacks()) {
+                cb.onFailure(failureMessage);
+              }
+              if (delegate instanceof CacheDelegate) {
+                ((CacheDelegate) delegate).directoryLoadFailed(failureMessage, false);
+              }
             }
           });
+    } else if (priority == Priority.INTERACTIVE && directoryPriority != Priority.INTERACTIVE) {
+      setDirectoryPriority(Priority.INTERACTIVE);
+    }
 
-          callback.onSuccess(directoryCache);
-          delegate.directoryLoaded(directoryCache);
+    return new Cancelable() {
+      @Override
+      public void cancel() {
+        // Once nobody waits for the directory, it is still loaded for the cache, but it no longer
+        // holds up the requests which the user is waiting for.
+        if (outstandingDirectoryCallbacks.remove(callback)
+            && outstandingDirectoryCallbacks.isEmpty()) {
+          setDirectoryPriority(Priority.BACKGROUND);
         }
+      }
+    };
+  }
 
-        @Override
-        public void onFailure(Throwable caught) {
-          callback.onFailure(caught.getMessage());
+  private void setDirectoryPriority(Priority priority) {
+    directoryPriority = priority;
+    if (directoryRequest != null) {
+      directoryRequest.setPriority(priority);
+    }
+  }
+
+  /**
+   * Copy the callbacks waiting for the directory, and finish the load which
+   * they were waiting for.
+   */
+  private List<Callback<Set<ServiceDefinition>, String>>
+      copyAndClearOutstandingDirectoryCallbacks() {
+    List<Callback<Set<ServiceDefinition>, String>> callbacks =
+        ImmutableList.copyOf(outstandingDirectoryCallbacks);
+    outstandingDirectoryCallbacks.clear();
+    loadingDirectory = false;
+    directoryPriority = null;
+    directoryRequest = null;
+    return callbacks;
+  }
+
+  /**
+   * Returns the loader which sends the directory request. Stored documents are
+   * revalidated in the background, while the user already sees them.
+   */
+  private DocumentLoader directoryDocumentLoader() {
+    return new DocumentLoader() {
+      @Override
+      public void load(DiscoveryDocument stored, AsyncCallback<DiscoveryDocument> callback) {
+        boolean loading = loadingDirectory;
+        ApiRequest request = googleApi.loadDirectoryDocument(
+            loading ? directoryPriority : Priority.BACKGROUND, stored, callback);
+
+        // The callback may already have been invoked if the request failed right away.
+        if (request != null && loading && loadingDirectory) {
+          directoryRequest = request;
         }
+      }
+    };
+  }
 
-      });
-    } else {
-      callback.onSuccess(directoryCache);
+  /**
+   * Refresh the cached directory in the background, unless it is being refreshed already or its
+   * last refresh failed recently.
+   *
+   * @param stored Copy of the directory document to revalidate, or
+   *        {@code null} to revalidate the stored copy, if any.
+   */
+  private void refreshDirectory(DiscoveryDocument stored) {
+    if (refreshingDirectory || getUnexpiredFailure(directoryRefreshFailure) != null) {
+      return;
     }
+    refreshingDirectory = true;
+
+    refreshDocument(DIRECTORY_KEY, directoryDocumentLoader(), stored,
+        new RefreshCallback<ServiceDirectory>() {
+          @Override
+          public ServiceDirectory parse(String body) {
+            return filterDirectory(googleApi.parseDirectory(body));
+          }
+
+          @Override
+          public void unchanged(long fetchedTime) {
+            refreshingDirectory = false;
+            directoryRefreshFailure = null;
+            directoryFetchedTime = fetchedTime;
+          }
+
+          @Override
+          public void changed(DiscoveryDocument document, ServiceDirectory directory) {
+            refreshingDirectory = false;
+            directoryRefreshFailure = null;
+            directoryCache = directory;
+            directoryFetchedTime = document.getFetchedTime();
+            delegate.directoryLoaded(directoryCache);
+          }
+
+          @Override
+          public void failed(String reason) {
+            // Keep the stale version, which is still better than nothing.
+            refreshingDirectory = false;
+            directoryRefreshFailure = new Failure(reason, now());
+          }
+        });
+  }
+
+  /**
+   * Filter the list of services according to the blacklist, and index the
+   * remaining services once, instead of filtering them again whenever the
+   * directory is listed or searched.
+   */
+  private static ServiceDirectory filterDirectory(Set<ServiceDefinition> unfiltered) {
+    return new ServiceDirectory(Iterables.filter(unfiltered, new Predicate<ServiceDefinition>() {
+      @Override
+      public boolean apply(ServiceDefinition service) {
+        return !SERVICE_NAME_BLACKLIST.contains(service.getName())
+            && !SERVICE_ID_BLACKLIST.contains(service.getId());
+      }
+    }));
   }
 
   /**
-   * Load the directory document in the background.
+   * Load the directory document in the background, with {@link Priority#BACKGROUND}.
    */
   public void backgroundLoadServiceDefinitions() {
-    loadServiceDefinitions(new Callback<Set<ServiceDefinition>, String>() {
+    loadServiceDefinitions(Priority.BACKGROUND, new Callback<Set<ServiceDefinition>, String>() {
       @Override
       public void onSuccess(Set<ServiceDefinition> directoryServices) {
         // Intentionally blank.
@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.batch;
+
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Encodes requests into the {@code multipart/mixed} body of a batch request, and decodes the
+ * batch response back into one part per request. Every part contains a complete HTTP message, see
+ * https://developers.google.com/storage/docs/json_api/v1/how-tos/batch for the format.
+ *
+ * <p>
+ * The codec is written in plain Java so that it can be tested on the JVM.
+ * </p>
+ *
+ */
+public class BatchCodec {
+  static final String PART_CONTENT_TYPE = "application/http";
+  private static final String MULTIPART_CONTENT_TYPE = "multipart/mixed";
+  private static final String BOUNDARY_PARAMETER = "boundary=";
+  private static final String CONTENT_TYPE_HEADER = "Content-Type";
+  private static final String CONTENT_ID_HEADER = "Content-ID";
+  private static final String ITEM_ID_PREFIX = "item";
+  private static final String RESPONSE_ID_PREFIX = "response-";
+  private static final String HTTP_VERSION = "HTTP/1.1";
+  private static final String CRLF = "\r\n";
+
+  /**
+   * One part of a batch, which is an HTTP request or response.
+   */
+  public static class Part {
+    private final String contentId;
+    private final String startLine;
+    private final Map<String, String> headers;
+    private final String body;
+
+    @VisibleForTesting
+    Part(@Nullable String contentId, String startLine, Map<String, String> headers, String body) {
+      this.contentId = contentId;
+      this.startLine = startLine;
+      this.headers = Collections.unmodifiableMap(headers);
+      this.body = body;
+    }
+
+    /** Returns the content ID without angle brackets, or {@code null} if the part has none. */
+    @Nullable
+    public String getContentId() {
+      return contentId;
+    }
+
+    /** Returns the request line or status line of the message. */
+    public String getStartLine() {
+      return startLine;
+    }
+
+    /** Returns the headers of the message, in the order in which they appear. */
+    public Map<String, String> getHeaders() {
+      return headers;
+    }
+
+    public String getBody() {
+      return body;
+    }
+
+    /**
+     * Returns the status code from the status line of a response.
+     *
+     * @throws IllegalArgumentException when the status line is malformed.
+     */
+    public int getStatus() {
+      String[] parts = startLine.split(" ", 3);
+      try {
+        return Integer.parseInt(parts.length > 1 ? parts[1] : "");
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Malformed status line: " + startLine);
+      }
+    }
+
+    /** Returns the reason phrase from the status line of a response. */
+    public String getStatusText() {
+      String[] parts = startLine.split(" ", 3);
+      return parts.length > 2 ? parts[2] : "";
+    }
+  }
+
+  private BatchCodec() {
+  }
+
+  /**
+   * Returns the content type of a batch request whose parts are separated by the boundary.
+   */
+  public static String contentType(String boundary) {
+    return MULTIPART_CONTENT_TYPE + "; " + BOUNDARY_PARAMETER + boundary;
+  }
+
+  /**
+   * Returns the content ID with which the request at the specified position in the batch is sent.
+   */
+  @VisibleForTesting
+  static String contentIdForIndex(int index) {
+    return ITEM_ID_PREFIX + (index + 1);
+  }
+
+  /**
+   * Returns the content ID with which the server answers a request sent with the specified ID.
+   */
+  @VisibleForTesting
+  static String responseContentId(String requestContentId) {
+    return RESPONSE_ID_PREFIX + requestContentId;
+  }
+
+  /**
+   * Returns the position in the batch of the request which the response part answers, or -1 if
+   * the part cannot be matched to a request.
+   */
+  public static int requestIndex(Part response) {
+    String id = response.getContentId();
+    String prefix = RESPONSE_ID_PREFIX + ITEM_ID_PREFIX;
+    if (id == null || !id.startsWith(prefix)) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(id.substring(prefix.length())) - 1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Encode the requests into the body of a batch request. The requests must already have their
+   * headers and parameters set.
+   */
+  public static String encodeRequests(String boundary, List<ApiRequest> requests) {
+    List<Part> parts = Lists.newArrayList();
+    for (int i = 0; i < requests.size(); i++) {
+      ApiRequest request = requests.get(i);
+      String startLine =
+          request.getHttpMethod().name() + " " + request.getRequestPath() + " " + HTTP_VERSION;
+      parts.add(new Part(contentIdForIndex(i),
+          startLine,
+          request.getHeaders(),
+          request.getRequestBody() == null ? "" : request.getRequestBody()));
+    }
+    return encode(boundary, parts);
+  }
+
+  /**
+   * Encode the parts into a multipart body.
+   */
+  @VisibleForTesting
+  static String encode(String boundary, List<Part> parts) {
+    StringBuilder sb = new StringBuilder();
+    for (Part part : parts) {
+      sb.append("--").append(boundary).append(CRLF);
+      sb.append(CONTENT_TYPE_HEADER).append(": ").append(PART_CONTENT_TYPE).append(CRLF);
+      if (part.getContentId() != null) {
+        sb.append(CONTENT_ID_HEADER).append(": <").append(part.getContentId()).append('>')
+            .append(CRLF);
+      }
+      sb.append(CRLF);
+
+      sb.append(part.getStartLine()).append(CRLF);
+      for (Map.Entry<String, String> header : part.getHeaders().entrySet()) {
+        sb.append(header.getKey()).append(": ").append(header.getValue()).append(CRLF);
+      }
+      sb.append(CRLF);
+      sb.append(part.getBody()).append(CRLF);
+    }
+    return sb.append("--").append(boundary).append("--").append(CRLF).toString();
+  }
+
+  /**
+   * Decode a multipart body into its parts.
+   *
+   * @param contentType Content type of the body, which contains the boundary.
+   * @throws IllegalArgumentException when the body is not a valid multipart body.
+   */
+  public static List<Part> decode(String contentType, String body) {
+    String boundary = boundary(contentType);
+    String delimiter = "--" + boundary;
+
+    int start = body.startsWith(delimiter) ? 0 : body.indexOf(CRLF + delimiter);
+    if (start < 0) {
+      start = body.indexOf("\n" + delimiter);
+    }
+    Preconditions.checkArgument(start >= 0, "Missing the first boundary.");
+    start = body.indexOf(delimiter, start);
+
+    ImmutableList.Builder<Part> parts = ImmutableList.builder();
+    while (true) {
+      int afterDelimiter = start + delimiter.length();
+      if (body.startsWith("--", afterDelimiter)) {
+        // This was the closing delimiter.
+        break;
+      }
+      int contentStart = skipLineBreak(body, afterDelimiter);
+      int end = body.indexOf(delimiter, contentStart);
+      Preconditions.checkArgument(end >= 0, "Missing the closing boundary.");
+
+      parts.add(decodePart(stripTrailingLineBreak(body.substring(contentStart, end))));
+      start = end;
+    }
+    return parts.build();
+  }
+
+  /**
+   * Decode a single part, which has its own headers followed by an HTTP message.
+   */
+  private static Part decodePart(String part) {
+    int messageStart = headersEnd(part);
+    Map<String, String> partHeaders = parseHeaders(part.substring(0, Math.max(messageStart, 0)));
+    String contentId = null;
+    for (Map.Entry<String, String> header : partHeaders.entrySet()) {
+      if (header.getKey().equalsIgnoreCase(CONTENT_ID_HEADER)) {
+        contentId = header.getValue().replaceAll("^<|>$", "");
+      }
+    }
+
+    String message = messageStart < 0 ? "" : part.substring(skipBlankLine(part, messageStart));
+    int bodyStart = headersEnd(message);
+    String head = bodyStart < 0 ? message : message.substring(0, bodyStart);
+    String messageBody = bodyStart < 0 ? "" : message.substring(skipBlankLine(message, bodyStart));
+
+    int startLineEnd = head.indexOf('\n');
+    String startLine = (startLineEnd < 0 ? head : head.substring(0, startLineEnd)).trim();
+    Preconditions.checkArgument(!startLine.isEmpty(), "Missing the start line of a part.");
+    Map<String, String> headers =
+        parseHeaders(startLineEnd < 0 ? "" : head.substring(startLineEnd + 1));
+
+    return new Part(contentId, startLine, headers, messageBody);
+  }
+
+  /**
+   * Returns the boundary parameter of the content type.
+   */
+  @VisibleForTesting
+  static String boundary(String contentType) {
+    Preconditions.checkArgument(contentType != null
+        && contentType.toLowerCase().startsWith(MULTIPART_CONTENT_TYPE), "Not a multipart body.");
+    for (String parameter : contentType.split(";")) {
+      parameter = parameter.trim();
+      if (parameter.toLowerCase().startsWith(BOUNDARY_PARAMETER)) {
+        String boundary = parameter.substring(BOUNDARY_PARAMETER.length());
+        if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+          boundary = boundary.substring(1, boundary.length() - 1);
+        }
+        return boundary;
+      }
+    }
+    throw new IllegalArgumentException("Missing the multipart boundary.");
+  }
+
+  private static Map<String, String> parseHeaders(String text) {
+    Map<String, String> headers = Maps.newLinkedHashMap();
+    for (String line : text.split("\r?\n")) {
+      int colon = line.indexOf(':');
+      if (colon > 0) {
+        headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+      }
+    }
+    return headers;
+  }
+
+  /**
+   * Returns the position of the blank line which ends the headers, or -1 if there is none.
+   */
+  private static int headersEnd(String text) {
+    int crlf = text.indexOf(CRLF + CRLF);
+    int lf = text.indexOf("\n\n");
+    if (crlf < 0 || (lf >= 0 && lf < crlf)) {
+      return lf;
+    }
+    return crlf;
+  }
+
+  /** Returns the position after the blank line which starts at the specified position. */
+  private static int skipBlankLine(String text, int position) {
+    return skipLineBreak(text, skipLineBreak(text, position));
+  }
+
+  private static int skipLineBreak(String text, int position) {
+    if (text.startsWith(CRLF, position)) {
+      return position + CRLF.length();
+    } else if (text.startsWith("\n", position)) {
+      return position + 1;
+    }
+    return position;
+  }
+
+  private static String stripTrailingLineBreak(String text) {
+    if (text.endsWith(CRLF)) {
+      return text.substring(0, text.length() - CRLF.length());
+    } else if (text.endsWith("\n")) {
+      return text.substring(0, text.length() - 1);
+    }
+    return text;
+  }
+}
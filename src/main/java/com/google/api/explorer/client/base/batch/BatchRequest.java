@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.batch;
+
+import com.google.api.explorer.client.base.ApiMethod;
+import com.google.api.explorer.client.base.ApiMethod.HttpMethod;
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.ApiResponse;
+import com.google.api.explorer.client.base.ApiResponse.HeaderValue;
+import com.google.api.explorer.client.base.ApiService;
+import com.google.api.explorer.client.base.batch.BatchCodec.Part;
+import com.google.api.explorer.client.base.http.HttpException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Sends several {@link ApiRequest}s in a single HTTP round trip to the {@code multipart/mixed}
+ * batch endpoint, and splits the batch response back into one {@link ApiResponse} per request.
+ *
+ */
+public class BatchRequest {
+
+  /** Path of the batch endpoint, relative to the base URL. */
+  public static final String BATCH_REQUEST_PATH = "/batch";
+
+  /** Largest number of requests which the batch endpoint accepts in one batch. */
+  public static final int MAX_BATCH_SIZE = 1000;
+
+  private static final String CONTENT_TYPE_HEADER = "content-type";
+
+  private static final Random random = new Random();
+
+  /**
+   * Receives the outcome of every request in a batch.
+   */
+  public interface BatchCallback {
+    /**
+     * Called with the response to a request in the batch, which may be an error response.
+     *
+     * @param startTime Time at which the batch was sent.
+     * @param endTime Time at which the batch response was received.
+     */
+    void onResponse(ApiRequest request, ApiResponse response, long startTime, long endTime);
+
+    /**
+     * Called when no response was received for a request, either because the batch itself failed
+     * or because the batch response did not contain a part for the request.
+     */
+    void onFailure(ApiRequest request, Throwable caught);
+  }
+
+  /**
+   * The HTTP request which carries the batch.
+   */
+  private static class BatchHttpRequest extends ApiRequest {
+    private final Map<String, String> headers = Maps.newLinkedHashMap();
+    private final String body;
+
+    BatchHttpRequest(String boundary, String body) {
+      this.body = body;
+      headers.put("Content-Type", BatchCodec.contentType(boundary));
+
+      // Every part carries its own API key.
+      setUseApiKey(false);
+    }
+
+    @Override
+    public String getRequestPath() {
+      return BATCH_REQUEST_PATH;
+    }
+
+    @Override
+    public HttpMethod getHttpMethod() {
+      return HttpMethod.POST;
+    }
+
+    @Override
+    public String getRequestBody() {
+      return body;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+      return headers;
+    }
+
+    @Override
+    public ApiService getService() {
+      return null;
+    }
+
+    @Override
+    public ApiMethod getMethod() {
+      return null;
+    }
+
+    @Override
+    public ListMultimap<String, String> getParamValues() {
+      return ArrayListMultimap.create();
+    }
+
+    @Override
+    public void setApiKey(String apiKey) {
+    }
+
+    @Override
+    public void setTraceParameter(String traceParameter) {
+    }
+
+    @Override
+    public String getApiKey() {
+      return null;
+    }
+
+    @Override
+    public void addHeader(String headerName, String headerValue) {
+      headers.put(headerName, headerValue);
+    }
+  }
+
+  private final List<ApiRequest> requests = Lists.newArrayList();
+
+  /**
+   * Add a request to the batch.
+   */
+  public BatchRequest add(ApiRequest request) {
+    Preconditions.checkState(requests.size() < MAX_BATCH_SIZE, "The batch is full.");
+    requests.add(Preconditions.checkNotNull(request));
+    return this;
+  }
+
+  /** Returns the number of requests in the batch. */
+  public int size() {
+    return requests.size();
+  }
+
+  /**
+   * Send all of the requests in the batch.
+   *
+   * @param callback Callback which is invoked once for every request in the batch.
+   * @return The request which carries the batch, which can be used to cancel it.
+   */
+  public ApiRequest send(final BatchCallback callback) {
+    Preconditions.checkState(!requests.isEmpty(), "The batch is empty.");
+
+    final List<ApiRequest> sent = ImmutableList.copyOf(requests);
+    for (ApiRequest request : sent) {
+      request.prepareToSend();
+    }
+
+    String boundary = "batch_" + Long.toHexString(random.nextLong() & Long.MAX_VALUE);
+    BatchHttpRequest batch =
+        new BatchHttpRequest(boundary, BatchCodec.encodeRequests(boundary, sent));
+
+    final long start = System.currentTimeMillis();
+    sendBatch(batch, new AsyncCallback<ApiResponse>() {
+      @Override
+      public void onSuccess(ApiResponse response) {
+        dispatch(sent, response, start, System.currentTimeMillis(), callback);
+      }
+
+      @Override
+      public void onFailure(Throwable caught) {
+        for (ApiRequest request : sent) {
+          callback.onFailure(request, caught);
+        }
+      }
+    });
+    return batch;
+  }
+
+  /**
+   * Send the HTTP request which carries the batch, which tests answer with a fixture instead.
+   */
+  @VisibleForTesting
+  void sendBatch(ApiRequest batch, AsyncCallback<ApiResponse> callback) {
+    batch.send(callback);
+  }
+
+  /**
+   * Split the batch response and pass every part to the callback for its request.
+   */
+  private static void dispatch(List<ApiRequest> sent,
+      ApiResponse batchResponse,
+      long start,
+      long end,
+      BatchCallback callback) {
+
+    List<Part> parts = null;
+    if (batchResponse.getStatus() < 400) {
+      HeaderValue contentType = batchResponse.getHeaders().get(CONTENT_TYPE_HEADER);
+      try {
+        parts = BatchCodec.decode(
+            contentType == null ? null : contentType.getValue(), batchResponse.getBodyAsString());
+      } catch (IllegalArgumentException e) {
+        // Not a multipart response, the batch failed as a whole.
+      }
+    }
+    if (parts == null) {
+      HttpException failure = new HttpException("The batch request failed: "
+          + batchResponse.getStatus() + " " + batchResponse.getStatusText());
+      for (ApiRequest request : sent) {
+        callback.onFailure(request, failure);
+      }
+      return;
+    }
+
+    ApiResponse[] responses = new ApiResponse[sent.size()];
+    for (int i = 0; i < parts.size(); i++) {
+      Part part = parts.get(i);
+
+      // Parts are matched to requests by content ID, since they may be returned in any order.
+      int index = BatchCodec.requestIndex(part);
+      if (index < 0 && part.getContentId() == null) {
+        index = i;
+      }
+      if (index < 0 || index >= responses.length) {
+        continue;
+      }
+
+      try {
+        responses[index] = ApiResponse.create(
+            part.getStatus(), part.getStatusText(), part.getHeaders(), part.getBody());
+      } catch (IllegalArgumentException e) {
+        // Leave the request without a response, it fails below.
+      }
+    }
+
+    for (int i = 0; i < responses.length; i++) {
+      if (responses[i] != null) {
+        callback.onResponse(sent.get(i), responses[i], start, end);
+      } else {
+        callback.onFailure(
+            sent.get(i), new HttpException("The batch response did not answer this request."));
+      }
+    }
+  }
+}
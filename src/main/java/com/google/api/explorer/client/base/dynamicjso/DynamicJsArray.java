@@ -75,6 +75,23 @@ public class DynamicJsArray extends JavaScriptObject {
     this.length = length;
   }-*/;
 
+  /**
+   * Visits every item of this array. This is much cheaper than calling
+   * {@link #typeofIndex(int)} and a getter for every index.
+   */
+  public final void accept(JsVisitor visitor) {
+    accept(visitor, 0, length());
+  }
+
+  /**
+   * Visits the items between the start (inclusive) and end (exclusive)
+   * indices.
+   */
+  public final void accept(JsVisitor visitor, int start, int end) {
+    visitor.begin(length());
+    JsVisitor.visitRange(visitor, this, null, start, end);
+  }
+
   /**
    * Returns the {@link JsType} corresponding to the type of the value at the
    * given index.
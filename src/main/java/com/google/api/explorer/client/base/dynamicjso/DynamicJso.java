@@ -71,6 +71,28 @@ public class DynamicJso extends JavaScriptObject {
     return keys;
   }-*/;
 
+  /**
+   * Visits every field of this object, in the same order as {@link #keys()}.
+   * This is much cheaper than calling {@link #typeofKey(String)} and a getter
+   * for every key.
+   */
+  public final void accept(JsVisitor visitor) {
+    JsArrayString keys = keys();
+    accept(visitor, keys, 0, keys.length());
+  }
+
+  /**
+   * Visits the fields for the keys between the start (inclusive) and end
+   * (exclusive) positions, so that a large object can be visited a few fields
+   * at a time.
+   *
+   * @param keys Keys of this object, as returned by {@link #keys()}.
+   */
+  public final void accept(JsVisitor visitor, JsArrayString keys, int start, int end) {
+    visitor.begin(keys.length());
+    JsVisitor.visitRange(visitor, this, keys, start, end);
+  }
+
   /**
    * Returns a {@link JsType} corresponding to the type of the field identified
    * by the given key.
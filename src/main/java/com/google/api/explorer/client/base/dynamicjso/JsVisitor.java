@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.dynamicjso;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArrayString;
+
+/**
+ * Visitor for the values of a {@link DynamicJso} or {@link DynamicJsArray}. The keys, types and
+ * values are all read in a single pass over the underlying JavaScript object, and each value is
+ * passed to the method for its type, so there is no need to call {@link DynamicJso#keys()},
+ * {@link DynamicJso#typeofKey(String)} and a getter for every value.
+ *
+ * <p>
+ * Every method receives the position of the value, and its key if the value belongs to an object
+ * or {@code null} if it is an item of an array.
+ * </p>
+ *
+ */
+public abstract class JsVisitor {
+
+  /**
+   * Called before any values are visited, with the total number of values in the object or array
+   * even if only some of them will be visited.
+   */
+  public void begin(int size) {
+  }
+
+  public abstract void visitNull(int index, String key);
+
+  public abstract void visitBoolean(int index, String key, boolean value);
+
+  public abstract void visitInteger(int index, String key, int value);
+
+  public abstract void visitNumber(int index, String key, double value);
+
+  public abstract void visitString(int index, String key, String value);
+
+  public abstract void visitArray(int index, String key, DynamicJsArray value);
+
+  public abstract void visitObject(int index, String key, DynamicJso value);
+
+  /**
+   * Visit the values between the start (inclusive) and end (exclusive) positions.
+   *
+   * @param values Object or array which contains the values.
+   * @param keys Keys of the object in iteration order, or {@code null} if the values are the items
+   *        of an array.
+   */
+  static native void visitRange(
+      JsVisitor visitor, JavaScriptObject values, JsArrayString keys, int start, int end) /*-{
+    for (var i = start; i < end; i++) {
+      var key = keys ? keys[i] : null;
+      var value = keys ? values[key] : values[i];
+      if (value == null) {
+        visitor.@com.google.api.explorer.client.base.dynamicjso.JsVisitor::visitNull(ILjava/lang/String;)
+        (i, key);
+        continue;
+      }
+
+      switch (typeof value) {
+        case "string":
+          visitor.@com.google.api.explorer.client.base.dynamicjso.JsVisitor::visitString(ILjava/lang/String;Ljava/lang/String;)
+          (i, key, value);
+          break;
+
+        case "number":
+          if (Math.floor(value) == value) {
+            visitor.@com.google.api.explorer.client.base.dynamicjso.JsVisitor::visitInteger(ILjava/lang/String;I)
+            (i, key, value);
+          } else {
+            visitor.@com.google.api.explorer.client.base.dynamicjso.JsVisitor::visitNumber(ILjava/lang/String;D)
+            (i, key, value);
+          }
+          break;
+
+        case "boolean":
+          visitor.@com.google.api.explorer.client.base.dynamicjso.JsVisitor::visitBoolean(ILjava/lang/String;Z)
+          (i, key, value);
+          break;
+
+        default:
+          // Checking the class also recognizes arrays which were created in another frame.
+          if (Object.prototype.toString.call(value) === '[object Array]') {
+            visitor.@com.google.api.explorer.client.base.dynamicjso.JsVisitor::visitArray(ILjava/lang/String;Lcom/google/api/explorer/client/base/dynamicjso/DynamicJsArray;)
+            (i, key, value);
+          } else {
+            visitor.@com.google.api.explorer.client.base.dynamicjso.JsVisitor::visitObject(ILjava/lang/String;Lcom/google/api/explorer/client/base/dynamicjso/DynamicJso;)
+            (i, key, value);
+          }
+          break;
+      }
+    }
+  }-*/;
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.http;
+
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.ApiResponse;
+import com.google.common.base.Objects;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares one network call among identical requests which are in flight at the same time, e.g.
+ * when Execute is clicked twice in a row. Every waiter receives the same {@link ApiResponse}, and
+ * can cancel its own wait without affecting the others. The network call is only canceled once
+ * every waiter has given up on it. Requests only share a call if they would make it the same way,
+ * i.e. if their settings, such as their retry policy, are equal.
+ *
+ */
+public class InFlightRequests {
+
+  /**
+   * Starts the network call which is shared by the waiters of a key.
+   */
+  public interface Call {
+    /**
+     * Start the call.
+     *
+     * @param callback Callback which passes the outcome of the call on to every waiter.
+     * @return Handle which cancels the call.
+     */
+    TransportRequest start(AsyncCallback<ApiResponse> callback);
+
+    /**
+     * Invoked on the call of a waiter which did not start its own call, once the call which it
+     * shared has finished and before its callback receives the outcome, e.g. so that it can copy
+     * the attempts which the shared call made.
+     *
+     * @param started Call which was started and shared.
+     */
+    void shared(Call started);
+  }
+
+  /**
+   * Network call and the waiters which are interested in its outcome.
+   */
+  private class SharedCall implements AsyncCallback<ApiResponse> {
+    final String key;
+    final Object settings;
+    final Call call;
+    final List<Waiter> waiters = Lists.newArrayList();
+    TransportRequest request;
+
+    SharedCall(String key, Object settings, Call call) {
+      this.key = key;
+      this.settings = settings;
+      this.call = call;
+    }
+
+    @Override
+    public void onSuccess(ApiResponse response) {
+      for (Waiter waiter : finish()) {
+        waiter.notifyShared();
+        waiter.callback.onSuccess(response);
+      }
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      for (Waiter waiter : finish()) {
+        waiter.notifyShared();
+        waiter.callback.onFailure(caught);
+      }
+    }
+
+    /** Stop sharing the call and return the waiters which have to be notified. */
+    private List<Waiter> finish() {
+      if (calls.get(key) == this) {
+        calls.remove(key);
+      }
+      List<Waiter> notified = ImmutableList.copyOf(waiters);
+      waiters.clear();
+      return notified;
+    }
+  }
+
+  /**
+   * Handle of a single waiter, which only cancels the network call if nobody else is waiting.
+   */
+  private class Waiter implements TransportRequest {
+    final SharedCall call;
+    final Call ownCall;
+    final AsyncCallback<ApiResponse> callback;
+
+    Waiter(SharedCall call, Call ownCall, AsyncCallback<ApiResponse> callback) {
+      this.call = call;
+      this.ownCall = ownCall;
+      this.callback = callback;
+    }
+
+    void notifyShared() {
+      if (ownCall != call.call) {
+        ownCall.shared(call.call);
+      }
+    }
+
+    @Override
+    public void cancel() {
+      if (call.waiters.remove(this) && call.waiters.isEmpty()) {
+        call.finish();
+        if (call.request != null) {
+          call.request.cancel();
+        }
+      }
+    }
+  }
+
+  private final Map<String, SharedCall> calls = Maps.newHashMap();
+
+  /**
+   * Returns the key which identifies requests that can share a call: requests with the same
+   * method, URL, body and authorization.
+   */
+  public static String requestKey(String baseUrl, ApiRequest request) {
+    return request.getHttpMethod() + " " + baseUrl + request.getRequestPath() + "\n"
+        + ResponseCache.authorizationOf(request) + "\n"
+        + Strings.nullToEmpty(request.getRequestBody());
+  }
+
+  /**
+   * Wait for the outcome of the call for the key, starting the call if it is not in flight yet.
+   *
+   * @param key Key of the request, see {@link #requestKey(String, ApiRequest)}.
+   * @param settings Settings which decide how the request makes its call, e.g. its retry policy.
+   *        A call for the key whose settings are not equal is not shared, and the request makes
+   *        a call of its own.
+   * @param call Call which is started if no call for the key is in flight.
+   * @param callback Callback which receives the outcome of the call.
+   * @return Handle which cancels this wait.
+   */
+  public TransportRequest send(
+      String key, Object settings, Call call, AsyncCallback<ApiResponse> callback) {
+    SharedCall shared = calls.get(key);
+    if (shared != null && !Objects.equal(shared.settings, settings)) {
+      return call.start(callback);
+    }
+
+    boolean start = shared == null;
+    if (start) {
+      shared = new SharedCall(key, settings, call);
+      calls.put(key, shared);
+    }
+
+    Waiter waiter = new Waiter(shared, call, callback);
+    shared.waiters.add(waiter);
+    if (start) {
+      shared.request = call.start(shared);
+    }
+    return waiter;
+  }
+
+  /** Returns the number of calls which are in flight. */
+  public int size() {
+    return calls.size();
+  }
+}
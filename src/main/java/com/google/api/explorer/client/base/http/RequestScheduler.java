@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.http;
+
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.ApiRequest.Priority;
+import com.google.api.explorer.client.base.ApiResponse;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Limits the number of requests which are in flight to each host at the same time, and decides
+ * which waiting request is sent next when one finishes. {@link Priority#INTERACTIVE} requests are
+ * always sent before waiting {@link Priority#BACKGROUND} requests, and one slot per host is kept
+ * free for them, so that loading services for search in the background does not delay the
+ * requests which the user is waiting on.
+ *
+ */
+public class RequestScheduler {
+
+  /** Number of requests per host which browsers allow in flight at the same time. */
+  public static final int DEFAULT_MAX_IN_FLIGHT = 6;
+
+  /**
+   * Requests to a single host, which are either in flight or waiting for a free slot.
+   */
+  private class HostQueue {
+    final String host;
+    final LinkedList<ScheduledRequest> interactive = Lists.newLinkedList();
+    final LinkedList<ScheduledRequest> background = Lists.newLinkedList();
+    int inFlight = 0;
+
+    HostQueue(String host) {
+      this.host = host;
+    }
+
+    LinkedList<ScheduledRequest> queueFor(Priority priority) {
+      return priority == Priority.INTERACTIVE ? interactive : background;
+    }
+
+    /**
+     * Returns the next request which may be sent, or {@code null} if every request has to wait.
+     * Background requests may not take the last free slot.
+     */
+    ScheduledRequest next() {
+      int maxInFlight = getMaxInFlight(host);
+      if (inFlight >= maxInFlight) {
+        return null;
+      } else if (!interactive.isEmpty()) {
+        return interactive.removeFirst();
+      } else if (!background.isEmpty() && (inFlight < maxInFlight - 1 || maxInFlight == 1)) {
+        return background.removeFirst();
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Handle for a request which has been handed to the scheduler, whether or not it has been sent
+   * yet.
+   */
+  public class ScheduledRequest implements TransportRequest {
+    private final HostQueue queue;
+    private final Transport transport;
+    private final ApiRequest request;
+    private final int timeoutMillis;
+    private final AsyncCallback<ApiResponse> callback;
+    private Priority priority;
+
+    /** The request which was handed to the transport, or {@code null} while it is waiting. */
+    private TransportRequest sent;
+    private long sentTime = -1;
+    private boolean finished = false;
+
+    private ScheduledRequest(HostQueue queue, Transport transport, ApiRequest request,
+        Priority priority, int timeoutMillis, AsyncCallback<ApiResponse> callback) {
+      this.queue = queue;
+      this.transport = transport;
+      this.request = request;
+      this.priority = priority;
+      this.timeoutMillis = timeoutMillis;
+      this.callback = callback;
+    }
+
+    /** Returns when the request was handed to the transport, or -1 while it is waiting. */
+    public long getSentTime() {
+      return sentTime;
+    }
+
+    /** Returns whether the request is still waiting for a free slot. */
+    public boolean isWaiting() {
+      return sent == null && !finished;
+    }
+
+    /**
+     * Change the priority of the request. If it is still waiting it moves to the back of the
+     * requests of its new priority, so a background request which the user turns out to be waiting
+     * on is sent ahead of the rest of the background work.
+     */
+    public void setPriority(Priority priority) {
+      Preconditions.checkNotNull(priority);
+      if (priority == this.priority) {
+        return;
+      }
+      boolean wasWaiting = queue.queueFor(this.priority).remove(this);
+      this.priority = priority;
+      if (wasWaiting) {
+        queue.queueFor(priority).addLast(this);
+        drain();
+      }
+    }
+
+    @Override
+    public void cancel() {
+      if (finished) {
+        return;
+      }
+      if (sent == null) {
+        queue.queueFor(priority).remove(this);
+        finished = true;
+      } else {
+        sent.cancel();
+        finish();
+      }
+    }
+
+    private void start() {
+      queue.inFlight++;
+      sentTime = System.currentTimeMillis();
+      sent = transport.send(request, timeoutMillis, new AsyncCallback<ApiResponse>() {
+        @Override
+        public void onSuccess(ApiResponse response) {
+          if (!finished) {
+            finish();
+            callback.onSuccess(response);
+          }
+        }
+
+        @Override
+        public void onFailure(Throwable caught) {
+          if (!finished) {
+            finish();
+            callback.onFailure(caught);
+          }
+        }
+      });
+    }
+
+    /** Give up the slot of the request, so that the next waiting request can be sent. */
+    private void finish() {
+      finished = true;
+      queue.inFlight--;
+      drain();
+    }
+  }
+
+  private final Map<String, HostQueue> queues = Maps.newHashMap();
+  private final Map<String, Integer> maxInFlightByHost = Maps.newHashMap();
+  private int defaultMaxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+  /** Whether requests are being sent by {@link #drain()} right now. */
+  private boolean draining = false;
+
+  /**
+   * Set how many requests may be in flight to hosts which have no limit of their own.
+   */
+  public void setDefaultMaxInFlight(int maxInFlight) {
+    Preconditions.checkArgument(maxInFlight > 0, "At least one request must be allowed");
+    this.defaultMaxInFlight = maxInFlight;
+    drain();
+  }
+
+  /**
+   * Set how many requests may be in flight to the host of the specified base URL.
+   */
+  public void setMaxInFlight(String baseUrl, int maxInFlight) {
+    Preconditions.checkArgument(maxInFlight > 0, "At least one request must be allowed");
+    maxInFlightByHost.put(hostOf(baseUrl), maxInFlight);
+    drain();
+  }
+
+  private int getMaxInFlight(String host) {
+    Integer maxInFlight = maxInFlightByHost.get(host);
+    return maxInFlight != null ? maxInFlight : defaultMaxInFlight;
+  }
+
+  /**
+   * Send the request with the transport as soon as the host of the base URL has a free slot for
+   * its priority.
+   *
+   * @param timeoutMillis Timeout which is passed to the transport. The time spent waiting for a
+   *        free slot does not count towards it.
+   * @return Handle which can be used to cancel the request or change its priority while it waits.
+   */
+  public ScheduledRequest schedule(String baseUrl, Transport transport, ApiRequest request,
+      int timeoutMillis, AsyncCallback<ApiResponse> callback) {
+    String host = hostOf(baseUrl);
+    HostQueue queue = queues.get(host);
+    if (queue == null) {
+      queue = new HostQueue(host);
+      queues.put(host, queue);
+    }
+
+    ScheduledRequest scheduled = new ScheduledRequest(
+        queue, transport, request, request.getPriority(), timeoutMillis, callback);
+    queue.queueFor(scheduled.priority).addLast(scheduled);
+    drain();
+    return scheduled;
+  }
+
+  /** Returns the number of requests to the host of the base URL which are in flight. */
+  public int getInFlightCount(String baseUrl) {
+    HostQueue queue = queues.get(hostOf(baseUrl));
+    return queue == null ? 0 : queue.inFlight;
+  }
+
+  /** Returns the number of requests to the host of the base URL which are waiting. */
+  public int getWaitingCount(String baseUrl) {
+    HostQueue queue = queues.get(hostOf(baseUrl));
+    return queue == null ? 0 : queue.interactive.size() + queue.background.size();
+  }
+
+  /**
+   * Send waiting requests until no host has a free slot for them. Transports may invoke callbacks
+   * synchronously, which finishes a request while another is being started, so requests are only
+   * started by the outermost call, which keeps going until nothing more can be sent.
+   */
+  private void drain() {
+    if (draining) {
+      return;
+    }
+    draining = true;
+    try {
+      boolean started = true;
+      while (started) {
+        started = false;
+        for (HostQueue queue : Lists.newArrayList(queues.values())) {
+          ScheduledRequest next = queue.next();
+          if (next != null) {
+            next.start();
+            started = true;
+          }
+        }
+      }
+    } finally {
+      draining = false;
+    }
+  }
+
+  /**
+   * Returns the scheme and authority of the base URL, which identify the host that its requests
+   * are counted against.
+   */
+  @VisibleForTesting
+  static String hostOf(String baseUrl) {
+    int authorityStart = baseUrl.indexOf("//");
+    authorityStart = authorityStart < 0 ? 0 : authorityStart + 2;
+    int pathStart = baseUrl.indexOf('/', authorityStart);
+    return (pathStart < 0 ? baseUrl : baseUrl.substring(0, pathStart)).toLowerCase();
+  }
+}
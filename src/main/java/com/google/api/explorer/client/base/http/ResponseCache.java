@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.http;
+
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.ApiResponse;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size bounded cache of GET responses which carry an {@code ETag} or {@code Last-Modified} header,
+ * so that repeating a request only costs a conditional request and a 304 response when nothing
+ * changed. Responses are keyed by base URL and request path, which includes the query parameters,
+ * and by the authorization of the request, so that users never see each other's responses. The
+ * least recently used responses are evicted first.
+ *
+ */
+public class ResponseCache {
+
+  /** Default number of body characters to keep, across all cached responses. */
+  public static final int DEFAULT_MAX_CHARS = 2 * 1024 * 1024;
+
+  /**
+   * A cached response and the validators which are sent to check that it is still current.
+   */
+  public static class Entry {
+    private final String etag;
+    private final String lastModified;
+    private final ApiResponse response;
+    private final int size;
+
+    Entry(String etag, String lastModified, ApiResponse response, int size) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.response = response;
+      this.size = size;
+    }
+
+    /** Returns the {@code ETag} of the response, or {@code null}. */
+    public String getEtag() {
+      return etag;
+    }
+
+    /** Returns the {@code Last-Modified} date of the response, or {@code null}. */
+    public String getLastModified() {
+      return lastModified;
+    }
+
+    public ApiResponse getResponse() {
+      return response;
+    }
+  }
+
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  private final int maxChars;
+  private int chars = 0;
+
+  public ResponseCache() {
+    this(DEFAULT_MAX_CHARS);
+  }
+
+  public ResponseCache(int maxChars) {
+    Preconditions.checkArgument(maxChars > 0);
+    this.maxChars = maxChars;
+  }
+
+  /**
+   * Returns the key under which the response to the request is cached.
+   *
+   * @param baseUrl Base URL to which the request is sent, so that responses of different
+   *        backends are kept apart.
+   */
+  public static String cacheKey(String baseUrl, ApiRequest request) {
+    return baseUrl + request.getRequestPath() + "\n" + authorizationOf(request);
+  }
+
+  /**
+   * Returns the value of the {@code Authorization} header of the request, which identifies the
+   * user, or an empty string if the request is not authorized.
+   */
+  static String authorizationOf(ApiRequest request) {
+    for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+      if ("authorization".equalsIgnoreCase(header.getKey())) {
+        return Strings.nullToEmpty(header.getValue());
+      }
+    }
+    return "";
+  }
+
+  /** Returns the cached response for the key, or {@code null} if there is none. */
+  public Entry get(String key) {
+    return entries.get(key);
+  }
+
+  /**
+   * Cache the response under the key if it can be revalidated, or drop the cached response if it
+   * cannot.
+   *
+   * @param etag Value of the {@code ETag} header of the response, or {@code null}.
+   * @param lastModified Value of the {@code Last-Modified} header of the response, or
+   *        {@code null}.
+   * @param size Size of the response body in characters.
+   */
+  public void put(String key, String etag, String lastModified, ApiResponse response, int size) {
+    remove(key);
+
+    // Without a validator the response can not be revalidated, and a response which fills most of
+    // the cache would only evict everything else.
+    if ((etag == null && lastModified == null) || size > maxChars / 4) {
+      return;
+    }
+
+    entries.put(key, new Entry(etag, lastModified, response, size));
+    chars += size;
+    for (Iterator<Entry> it = entries.values().iterator(); chars > maxChars && it.hasNext();) {
+      chars -= it.next().size;
+      it.remove();
+    }
+  }
+
+  /** Drop the cached response for the key, if any. */
+  public void remove(String key) {
+    Entry removed = entries.remove(key);
+    if (removed != null) {
+      chars -= removed.size;
+    }
+  }
+
+  /** Returns the number of cached responses. */
+  public int size() {
+    return entries.size();
+  }
+
+  /** Returns the number of body characters held by the cached responses. */
+  public int getCachedChars() {
+    return chars;
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.http;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Decides whether a failed request should be sent again, and how long to wait before doing so.
+ * Requests are retried when the status of the response is in one of the retryable status classes
+ * (e.g. 5 for all 5xx responses) or is one of the retryable statuses, or when the error in the
+ * body has one of the retryable reasons. The delay doubles with every attempt, with random jitter
+ * so that clients which failed together do not retry together, unless the server asked for a
+ * longer delay with a {@code Retry-After} header.
+ *
+ */
+public class RetryPolicy {
+
+  /**
+   * Policy for requests which are safe to repeat, which retries server errors and rate limiting
+   * up to three times in total.
+   */
+  public static final RetryPolicy DEFAULT = new Builder()
+      .retryStatusClass(5)
+      .retryStatus(429)
+      .retryReason("backendError")
+      .retryReason("rateLimitExceeded")
+      .retryReason("userRateLimitExceeded")
+      .retryTransportFailures(true)
+      .build();
+
+  /**
+   * Builder for {@link RetryPolicy}s, which retry nothing until they are told what to retry.
+   */
+  public static class Builder {
+    private int maxAttempts = 3;
+    private int initialDelayMillis = 500;
+    private int maxDelayMillis = 16000;
+    private boolean retryTransportFailures = false;
+    private final ImmutableSet.Builder<Integer> statusClasses = ImmutableSet.builder();
+    private final ImmutableSet.Builder<Integer> statuses = ImmutableSet.builder();
+    private final ImmutableSet.Builder<String> reasons = ImmutableSet.builder();
+
+    /** Set how many times a request is sent in total, including the first attempt. */
+    public Builder maxAttempts(int maxAttempts) {
+      Preconditions.checkArgument(maxAttempts > 0, "At least one attempt must be made");
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    /**
+     * Set the delay before the first retry, which doubles for every further retry up to the
+     * maximum delay. Responses which ask for a longer delay than the maximum are not retried.
+     */
+    public Builder delayMillis(int initialDelayMillis, int maxDelayMillis) {
+      Preconditions.checkArgument(0 < initialDelayMillis && initialDelayMillis <= maxDelayMillis);
+      this.initialDelayMillis = initialDelayMillis;
+      this.maxDelayMillis = maxDelayMillis;
+      return this;
+    }
+
+    /** Retry responses whose status divided by 100 is the specified class, e.g. 5 for 5xx. */
+    public Builder retryStatusClass(int statusClass) {
+      statusClasses.add(statusClass);
+      return this;
+    }
+
+    /** Retry responses with the specified status. */
+    public Builder retryStatus(int status) {
+      statuses.add(status);
+      return this;
+    }
+
+    /**
+     * Retry error responses with the specified reason, e.g. "backendError", whatever their
+     * status.
+     */
+    public Builder retryReason(String reason) {
+      reasons.add(reason.toLowerCase());
+      return this;
+    }
+
+    /**
+     * Set whether requests which failed without a response, e.g. because they timed out, are
+     * retried.
+     */
+    public Builder retryTransportFailures(boolean retryTransportFailures) {
+      this.retryTransportFailures = retryTransportFailures;
+      return this;
+    }
+
+    public RetryPolicy build() {
+      return new RetryPolicy(this);
+    }
+  }
+
+  private final int maxAttempts;
+  private final int initialDelayMillis;
+  private final int maxDelayMillis;
+  private final boolean retryTransportFailures;
+  private final Set<Integer> statusClasses;
+  private final Set<Integer> statuses;
+  private final Set<String> reasons;
+
+  private RetryPolicy(Builder builder) {
+    this.maxAttempts = builder.maxAttempts;
+    this.initialDelayMillis = builder.initialDelayMillis;
+    this.maxDelayMillis = builder.maxDelayMillis;
+    this.retryTransportFailures = builder.retryTransportFailures;
+    this.statusClasses = builder.statusClasses.build();
+    this.statuses = builder.statuses.build();
+    this.reasons = builder.reasons.build();
+  }
+
+  /** Returns how many times a request is sent in total, including the first attempt. */
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /** Returns whether requests which failed without a response are retried. */
+  public boolean retriesTransportFailures() {
+    return retryTransportFailures;
+  }
+
+  /**
+   * Returns whether a response is worth retrying.
+   *
+   * @param status Status of the response.
+   * @param errorReasons Reasons and messages of the errors in the response body, if any.
+   */
+  public boolean isRetryable(int status, Iterable<String> errorReasons) {
+    if (statuses.contains(status) || statusClasses.contains(status / 100)) {
+      return true;
+    }
+    for (String reason : errorReasons) {
+      if (reason != null && reasons.contains(reason.toLowerCase())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns how long to wait before the next attempt.
+   *
+   * @param failedAttempts Number of attempts which have been made so far, at least one.
+   * @param retryAfter Value of the {@code Retry-After} header of the last response, or
+   *        {@code null}.
+   * @param nowMillis Current time, which {@code Retry-After} dates are relative to.
+   * @param random Random number between 0 (inclusive) and 1 (exclusive) which decides the jitter.
+   * @return The delay in milliseconds, or -1 if the request should not be retried because the
+   *         server asked for a longer delay than the maximum.
+   */
+  public int delayMillis(int failedAttempts, String retryAfter, long nowMillis, double random) {
+    Preconditions.checkArgument(failedAttempts > 0);
+
+    // Double the delay for every attempt, and pick a random delay between half and all of it.
+    long backoff = initialDelayMillis;
+    for (int i = 1; i < failedAttempts && backoff < maxDelayMillis; i++) {
+      backoff *= 2;
+    }
+    backoff = Math.min(backoff, maxDelayMillis);
+    long delay = backoff / 2 + (long) (random * (backoff - backoff / 2));
+
+    long requested = parseRetryAfterMillis(retryAfter, nowMillis);
+    if (requested > maxDelayMillis) {
+      return -1;
+    }
+    return (int) Math.max(delay, requested);
+  }
+
+  /**
+   * Returns the delay which a {@code Retry-After} header asks for, which is either a number of
+   * seconds or an HTTP date, or -1 if the value is missing or not understood.
+   */
+  @SuppressWarnings("deprecation")
+  static long parseRetryAfterMillis(String retryAfter, long nowMillis) {
+    if (retryAfter == null || retryAfter.trim().isEmpty()) {
+      return -1;
+    }
+    String value = retryAfter.trim();
+    try {
+      return Math.max(0, Long.parseLong(value) * 1000);
+    } catch (NumberFormatException e) {
+      // Not a number of seconds, so it should be a date.
+    }
+    try {
+      return Math.max(0, Date.parse(value) - nowMillis);
+    } catch (IllegalArgumentException e) {
+      return -1;
+    }
+  }
+}
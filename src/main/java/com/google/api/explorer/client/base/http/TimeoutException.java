@@ -23,4 +23,18 @@ package com.google.api.explorer.client.base.http;
  */
 public class TimeoutException extends Exception {
 
+  private final int timeoutMillis;
+
+  /**
+   * @param timeoutMillis Timeout which the request exceeded.
+   */
+  public TimeoutException(int timeoutMillis) {
+    super("The request timed out after " + timeoutMillis + " ms");
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /** Returns the timeout which the request exceeded, in milliseconds. */
+  public int getTimeoutMillis() {
+    return timeoutMillis;
+  }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.http;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Decides how long a request may take before it fails with a {@link TimeoutException}. Each class
+ * of request has its own timeout, e.g. so that large discovery documents may take longer than API
+ * calls, and falls back to the default timeout if it has none.
+ *
+ * <p>
+ * In adaptive mode the timeout of a method is derived from the latency it was observed to have: a
+ * percentile of its most recent latencies multiplied by a safety factor, and kept within bounds.
+ * Methods which have not been observed often enough use the timeout of their class.
+ * </p>
+ *
+ */
+public class TimeoutPolicy {
+
+  /** Timeout of requests which have no timeout of their own in the explorer. */
+  public static final int DEFAULT_TIMEOUT_MILLIS = 30 * 1000;
+
+  /** Timeout of discovery requests in the explorer, which can fetch large documents. */
+  public static final int DEFAULT_DISCOVERY_TIMEOUT_MILLIS = 60 * 1000;
+
+  /** Percentile of the recent latencies from which the explorer derives adaptive timeouts. */
+  public static final double DEFAULT_ADAPTIVE_PERCENTILE = 0.99;
+
+  /** Factor by which the explorer multiplies the percentile. */
+  public static final double DEFAULT_ADAPTIVE_MULTIPLIER = 3;
+
+  /** Bounds of the adaptive timeouts of the explorer. */
+  public static final int DEFAULT_ADAPTIVE_MIN_TIMEOUT_MILLIS = 5 * 1000;
+  public static final int DEFAULT_ADAPTIVE_MAX_TIMEOUT_MILLIS = 60 * 1000;
+
+  /** Number of latencies which are kept for each method. */
+  static final int SAMPLE_WINDOW = 32;
+
+  /** Number of latencies which have to be observed before a method has an adaptive timeout. */
+  static final int MIN_SAMPLES = 5;
+
+  /** Classes of requests which may have different timeouts. */
+  public enum RequestClass {
+    /** Discovery documents and the directory, which can be large. */
+    DISCOVERY,
+
+    /** Requests which only read, i.e. GET requests. */
+    READ,
+
+    /** Requests which modify something, i.e. all requests other than GET requests. */
+    WRITE,
+
+    /** Downloads of media, which may be much larger than a JSON response. */
+    MEDIA;
+  }
+
+  /** The most recent latencies of one method, oldest first once the window is full. */
+  private static class Samples {
+    final long[] latencies = new long[SAMPLE_WINDOW];
+    int count = 0;
+    int next = 0;
+
+    void add(long latencyMillis) {
+      latencies[next] = latencyMillis;
+      next = (next + 1) % SAMPLE_WINDOW;
+      count = Math.min(count + 1, SAMPLE_WINDOW);
+    }
+
+    /** Returns the nearest-rank percentile of the latencies, e.g. 0.99 for the 99th. */
+    long percentile(double percentile) {
+      long[] sorted = Arrays.copyOf(latencies, count);
+      Arrays.sort(sorted);
+      int rank = (int) Math.ceil(percentile * count);
+      return sorted[Math.max(rank, 1) - 1];
+    }
+  }
+
+  private final Map<RequestClass, Integer> timeoutsByClass = new EnumMap<RequestClass, Integer>(
+      RequestClass.class);
+  private final Map<String, Samples> samplesByMethod = Maps.newHashMap();
+  private int defaultTimeoutMillis = 0;
+
+  private boolean adaptive = false;
+  private double percentile;
+  private double multiplier;
+  private int minTimeoutMillis;
+  private int maxTimeoutMillis;
+
+  /**
+   * Set the timeout of requests whose class has no timeout of its own, or zero to wait
+   * indefinitely, which is the default.
+   */
+  public void setDefaultTimeoutMillis(int timeoutMillis) {
+    Preconditions.checkArgument(timeoutMillis >= 0, "Timeouts may not be negative");
+    this.defaultTimeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Set the timeout of a class of requests, or zero to wait indefinitely.
+   */
+  public void setTimeoutMillis(RequestClass requestClass, int timeoutMillis) {
+    Preconditions.checkArgument(timeoutMillis >= 0, "Timeouts may not be negative");
+    timeoutsByClass.put(Preconditions.checkNotNull(requestClass), timeoutMillis);
+  }
+
+  /** Remove the timeout of a class of requests, so that it uses the default timeout again. */
+  public void clearTimeoutMillis(RequestClass requestClass) {
+    timeoutsByClass.remove(requestClass);
+  }
+
+  /**
+   * Derive the timeouts of methods from their observed latency.
+   *
+   * @param percentile Percentile of the recent latencies to start from, e.g. 0.99.
+   * @param multiplier Factor by which the percentile is multiplied, e.g. 3 to allow for a request
+   *        which takes three times as long as nearly all others did.
+   * @param minTimeoutMillis Shortest timeout, so that a method which is usually fast is not failed
+   *        by a single slow response.
+   * @param maxTimeoutMillis Longest timeout, so that a method which became slow does not keep the
+   *        user waiting indefinitely.
+   */
+  public void enableAdaptive(
+      double percentile, double multiplier, int minTimeoutMillis, int maxTimeoutMillis) {
+    Preconditions.checkArgument(0 < percentile && percentile <= 1, "Invalid percentile");
+    Preconditions.checkArgument(multiplier >= 1, "The multiplier may not shorten the timeout");
+    Preconditions.checkArgument(0 < minTimeoutMillis && minTimeoutMillis <= maxTimeoutMillis);
+    this.adaptive = true;
+    this.percentile = percentile;
+    this.multiplier = multiplier;
+    this.minTimeoutMillis = minTimeoutMillis;
+    this.maxTimeoutMillis = maxTimeoutMillis;
+  }
+
+  /** Go back to using only the timeouts of the request classes. */
+  public void disableAdaptive() {
+    this.adaptive = false;
+  }
+
+  /**
+   * Record how long a request to a method took, from the moment it was sent until its response
+   * arrived. Requests which timed out should be recorded with the timeout, so that their method's
+   * timeout does not shrink just because the slowest requests never finished.
+   *
+   * @param methodKey Key of the method, see {@link #getTimeoutMillis(RequestClass, String)}.
+   */
+  public void recordLatency(String methodKey, long latencyMillis) {
+    if (methodKey == null || latencyMillis < 0) {
+      return;
+    }
+    Samples samples = samplesByMethod.get(methodKey);
+    if (samples == null) {
+      samples = new Samples();
+      samplesByMethod.put(methodKey, samples);
+    }
+    samples.add(latencyMillis);
+  }
+
+  /**
+   * Returns the timeout of a request, or zero if it may wait indefinitely.
+   *
+   * @param requestClass Class of the request.
+   * @param methodKey Key which identifies the method whose latencies the adaptive timeout is
+   *        derived from, e.g. its ID, or {@code null} if the request has no adaptive timeout.
+   */
+  public int getTimeoutMillis(RequestClass requestClass, String methodKey) {
+    if (adaptive && methodKey != null) {
+      Samples samples = samplesByMethod.get(methodKey);
+      if (samples != null && samples.count >= MIN_SAMPLES) {
+        long timeout = (long) Math.ceil(samples.percentile(percentile) * multiplier);
+        return (int) Math.max(minTimeoutMillis, Math.min(maxTimeoutMillis, timeout));
+      }
+    }
+
+    Integer timeout = timeoutsByClass.get(requestClass);
+    return timeout != null ? timeout : defaultTimeoutMillis;
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.http;
+
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.ApiResponse;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * Sends {@link ApiRequest}s over the network. Which transport is used can be chosen per base URL,
+ * see {@link ApiRequest#setTransportForBaseUrl(String, Transport)}.
+ *
+ */
+public interface Transport {
+
+  /**
+   * Start loading anything the transport needs before it can send requests, so that the first
+   * request does not have to wait for it.
+   */
+  void preload();
+
+  /**
+   * Send the request asynchronously.
+   *
+   * @param timeoutMillis Time after which the request fails with a {@link TimeoutException}, or
+   *        zero to wait indefinitely.
+   * @param callback Callback which receives the response, or the reason that the request failed.
+   * @return The request, which can be used to cancel it.
+   */
+  TransportRequest send(ApiRequest request, int timeoutMillis, AsyncCallback<ApiResponse> callback);
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.http.cors;
+
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.ApiResponse;
+import com.google.api.explorer.client.base.Config;
+import com.google.api.explorer.client.base.http.HttpException;
+import com.google.api.explorer.client.base.http.TimeoutException;
+import com.google.api.explorer.client.base.http.Transport;
+import com.google.api.explorer.client.base.http.TransportRequest;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import com.google.gwt.http.client.Header;
+import com.google.gwt.http.client.Request;
+import com.google.gwt.http.client.RequestBuilder;
+import com.google.gwt.http.client.RequestCallback;
+import com.google.gwt.http.client.RequestException;
+import com.google.gwt.http.client.RequestTimeoutException;
+import com.google.gwt.http.client.Response;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+import java.util.Map;
+
+/**
+ * Transport which sends requests directly to the base URL with {@code XMLHttpRequest}. This only
+ * works for backends which allow cross origin requests from the explorer, but avoids loading the
+ * googleapis client library and the round trip through its proxy iframe.
+ *
+ */
+public class CorsTransport implements Transport {
+
+  /**
+   * {@link RequestBuilder} only has constants for some HTTP methods, but allows any method to be
+   * used by subclasses.
+   */
+  private static class MethodRequestBuilder extends RequestBuilder {
+    MethodRequestBuilder(String httpMethod, String url) {
+      super(httpMethod, url);
+    }
+  }
+
+  /**
+   * Handle for a request which was sent, or which failed before it could be sent.
+   */
+  private static class CorsRequest implements TransportRequest {
+    private Request request;
+
+    @Override
+    public void cancel() {
+      if (request != null) {
+        request.cancel();
+      }
+    }
+  }
+
+  @Override
+  public void preload() {
+    // Nothing needs to be loaded.
+  }
+
+  @Override
+  public TransportRequest send(
+      ApiRequest request, int timeoutMillis, AsyncCallback<ApiResponse> callback) {
+    CorsRequest corsRequest = new CorsRequest();
+    try {
+      corsRequest.request = createRequestBuilder(request, timeoutMillis)
+          .sendRequest(request.getRequestBody(), createRequestCallback(timeoutMillis, callback));
+    } catch (RequestException e) {
+      callback.onFailure(new HttpException(e));
+    }
+    return corsRequest;
+  }
+
+  /**
+   * Returns the builder of the {@code XMLHttpRequest} which sends the request to the base URL.
+   */
+  @VisibleForTesting
+  static RequestBuilder createRequestBuilder(ApiRequest request, int timeoutMillis) {
+    RequestBuilder builder = new MethodRequestBuilder(
+        request.getHttpMethod().name(), Config.getBaseUrl() + request.getRequestPath());
+    for (Map.Entry<String, String> entry : request.getHeadersToSend().entrySet()) {
+      builder.setHeader(entry.getKey(), entry.getValue());
+    }
+    builder.setTimeoutMillis(timeoutMillis);
+    return builder;
+  }
+
+  /**
+   * Returns the callback which converts the outcome of the {@code XMLHttpRequest} for the
+   * specified callback.
+   */
+  @VisibleForTesting
+  static RequestCallback createRequestCallback(
+      final int timeoutMillis, final AsyncCallback<ApiResponse> callback) {
+    return new RequestCallback() {
+      @Override
+      public void onResponseReceived(Request request, Response response) {
+        // Requests which are refused by the browser, e.g. because the backend does not allow
+        // cross origin requests, complete without a status.
+        if (response.getStatusCode() == 0) {
+          callback.onFailure(new HttpException("The request could not be completed."));
+        } else {
+          callback.onSuccess(convertResponse(response));
+        }
+      }
+
+      @Override
+      public void onError(Request request, Throwable exception) {
+        if (exception instanceof RequestTimeoutException) {
+          callback.onFailure(new TimeoutException(timeoutMillis));
+        } else {
+          callback.onFailure(new HttpException(exception.getMessage()));
+        }
+      }
+    };
+  }
+
+  /**
+   * Convert the response to an {@link ApiResponse} like the ones returned by the googleapis client
+   * library.
+   */
+  private static ApiResponse convertResponse(Response response) {
+    Map<String, String> headers = Maps.newLinkedHashMap();
+    for (Header header : response.getHeaders()) {
+      // Headers which cannot be parsed are returned as null.
+      if (header != null) {
+        headers.put(header.getName(), header.getValue());
+      }
+    }
+    return ApiResponse.create(
+        response.getStatusCode(), response.getStatusText(), headers, response.getText());
+  }
+}
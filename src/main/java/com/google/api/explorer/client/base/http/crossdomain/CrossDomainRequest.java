@@ -21,6 +21,7 @@ import com.google.api.explorer.client.base.ApiResponse;
 import com.google.api.explorer.client.base.dynamicjso.DynamicJso;
 import com.google.api.explorer.client.base.http.HttpException;
 import com.google.api.explorer.client.base.http.TimeoutException;
+import com.google.api.explorer.client.base.http.TransportRequest;
 import com.google.gwt.core.client.JavaScriptException;
 import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.user.client.Timer;
@@ -33,14 +34,14 @@ import java.util.Map;
  *
  * @author jasonhall@google.com (Jason Hall)
  */
-public final class CrossDomainRequest {
+public final class CrossDomainRequest implements TransportRequest {
 
   private final AsyncCallback<ApiResponse> callback;
 
   private Timer timer;
   private boolean canceled = false;
 
-  CrossDomainRequest(final AsyncCallback<ApiResponse> callback, int timeoutMillis) {
+  CrossDomainRequest(final AsyncCallback<ApiResponse> callback, final int timeoutMillis) {
     this.callback = callback;
 
     if (timeoutMillis > 0) {
@@ -49,7 +50,7 @@ public final class CrossDomainRequest {
         public void run() {
           if (callback != null) {
             CrossDomainRequest.this.cancel();
-            callback.onFailure(new TimeoutException());
+            callback.onFailure(new TimeoutException(timeoutMillis));
           }
         }
       };
@@ -75,6 +76,7 @@ public final class CrossDomainRequest {
     }
   }
 
+  @Override
   public void cancel() {
     if (timer != null) {
       timer.cancel();
@@ -82,9 +84,27 @@ public final class CrossDomainRequest {
     canceled = true;
   }
 
+  /** Returns whether the request was cancelled, either explicitly or because it timed out. */
+  public boolean isCanceled() {
+    return canceled;
+  }
+
+  /**
+   * Fail a request which could not be sent. The callback will not be invoked again.
+   */
+  void fail(Throwable caught) {
+    if (canceled) {
+      return;
+    }
+    cancel();
+    if (callback != null) {
+      callback.onFailure(caught);
+    }
+  }
+
   static JavaScriptObject convertRequest(ApiRequest request) {
     DynamicJso headers = DynamicJso.createObject().cast();
-    for (Map.Entry<String, String> entry : request.getHeaders().entrySet()) {
+    for (Map.Entry<String, String> entry : request.getHeadersToSend().entrySet()) {
       headers.set(entry.getKey(), entry.getValue());
     }
 
@@ -18,13 +18,18 @@ package com.google.api.explorer.client.base.http.crossdomain;
 
 import com.google.api.explorer.client.base.ApiRequest;
 import com.google.api.explorer.client.base.ApiResponse;
+import com.google.api.explorer.client.base.http.HttpException;
+import com.google.api.explorer.client.base.http.Transport;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.gwt.core.client.Callback;
+import com.google.gwt.core.client.Duration;
 import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.core.client.ScriptInjector;
+import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -35,15 +40,51 @@ import java.util.List;
  * make cross-domain requests to the server.
  * </p>
  *
+ * <p>
+ * Requests made before the library has loaded wait in a bounded queue. Requests which are
+ * cancelled or time out while waiting are dropped instead of being sent, and if the library fails
+ * to load every waiting request fails immediately. The next request then retries the load, after
+ * a delay which doubles with every consecutive failure.
+ * </p>
+ *
  * @author jasonhall@google.com (Jason Hall)
  */
-public class CrossDomainRequestBuilder {
+public class CrossDomainRequestBuilder implements Transport {
 
   private static final String JS_CLIENT_URL =
       "https://apis.google.com/js/client.js?onload=__apis_explorer_load_callback";
 
-  private int timeoutMillis;
-  private List<OutstandingRequest> outstandingRequests = Lists.newArrayList();
+  /** Maximum number of requests which can wait for the JS library to load. */
+  @VisibleForTesting
+  static final int MAX_QUEUED_REQUESTS = 64;
+
+  /** Delay before retrying the load after the first failure, doubled for every later failure. */
+  @VisibleForTesting
+  static final int INITIAL_RETRY_DELAY_MILLIS = 1000;
+
+  private static final int MAX_RETRY_DELAY_MILLIS = 30 * 1000;
+
+  private final List<OutstandingRequest> outstandingRequests = Lists.newArrayList();
+
+  /** Whether the script is currently being loaded, either for a request or for a preload. */
+  private boolean scriptLoading = false;
+
+  /** Number of times in a row that the script failed to load. */
+  private int consecutiveLoadFailures = 0;
+
+  /** Time before which the script should not be loaded again, after a failure. */
+  private double nextLoadAttemptMillis = 0;
+
+  private Timer retryTimer;
+
+  private int queuedRequestCount = 0;
+  private double totalQueueWaitMillis = 0;
+  private double maxQueueWaitMillis = 0;
+  private int maxQueueDepth = 0;
+  private int droppedRequestCount = 0;
+  private int rejectedRequestCount = 0;
+  private int failedRequestCount = 0;
+  private int loadFailureCount = 0;
 
   private static native boolean isScriptLoaded() /*-{
     return !!$wnd.googleapis && !!$wnd.googleapis.newHttpRequest;
@@ -58,49 +99,178 @@ public class CrossDomainRequestBuilder {
   }-*/;
 
   public void scriptFinishedLoading() {
+    scriptLoading = false;
+    consecutiveLoadFailures = 0;
     setBaseUrl();
 
-    for (OutstandingRequest request : outstandingRequests) {
+    // Take the requests out of the queue first, so that any request made by a callback while they
+    // are sent is not sent twice.
+    List<OutstandingRequest> ready = Lists.newArrayList(outstandingRequests);
+    outstandingRequests.clear();
+
+    double now = Duration.currentTimeMillis();
+    for (OutstandingRequest request : ready) {
+      if (request.xdr.isCanceled()) {
+        droppedRequestCount++;
+        continue;
+      }
+      double waitMillis = now - request.queuedAtMillis;
+      queuedRequestCount++;
+      totalQueueWaitMillis += waitMillis;
+      maxQueueWaitMillis = Math.max(maxQueueWaitMillis, waitMillis);
       doMakeRequest(request.request, request.xdr);
     }
   }
 
-  public void setTimeoutMillis(int timeoutMillis) {
-    this.timeoutMillis = timeoutMillis;
+  /**
+   * Called when the script could not be loaded. Every waiting request fails, and the script will
+   * be loaded again for the next request once the backoff delay has passed.
+   */
+  @VisibleForTesting
+  void scriptFailedToLoad(Exception e) {
+    scriptLoading = false;
+    loadFailureCount++;
+    consecutiveLoadFailures++;
+    nextLoadAttemptMillis =
+        Duration.currentTimeMillis() + retryDelayMillis(consecutiveLoadFailures);
+
+    List<OutstandingRequest> failed = Lists.newArrayList(outstandingRequests);
+    outstandingRequests.clear();
+    for (OutstandingRequest request : failed) {
+      if (request.xdr.isCanceled()) {
+        droppedRequestCount++;
+      } else {
+        failedRequestCount++;
+        request.xdr.fail(new HttpException(e));
+      }
+    }
+  }
+
+  /**
+   * Returns the delay before the script is loaded again after the specified number of
+   * consecutive failures.
+   */
+  @VisibleForTesting
+  static int retryDelayMillis(int consecutiveFailures) {
+    int delay = INITIAL_RETRY_DELAY_MILLIS;
+    for (int i = 1; i < consecutiveFailures && delay < MAX_RETRY_DELAY_MILLIS; i++) {
+      delay *= 2;
+    }
+    return Math.min(delay, MAX_RETRY_DELAY_MILLIS);
   }
 
-  public CrossDomainRequest makeRequest(
-      final ApiRequest request, AsyncCallback<ApiResponse> callback) {
+  /**
+   * Start loading the JS library used to make requests, if it is not loaded yet, without waiting
+   * for the first request. This should be called as early as possible during startup, after the
+   * base URL has been configured, so that the library loads in parallel with the construction of
+   * the UI instead of on the critical path of the first request.
+   */
+  @Override
+  public void preload() {
+    if (!isScriptLoaded()) {
+      loadScript();
+    }
+  }
+
+  /**
+   * Returns a snapshot of the counters of the queue of requests waiting for the JS library.
+   */
+  public QueueStatistics getQueueStatistics() {
+    return new QueueStatistics(outstandingRequests.size(),
+        maxQueueDepth,
+        queuedRequestCount,
+        totalQueueWaitMillis,
+        maxQueueWaitMillis,
+        droppedRequestCount,
+        rejectedRequestCount,
+        failedRequestCount,
+        loadFailureCount);
+  }
+
+  @Override
+  public CrossDomainRequest send(
+      ApiRequest request, int timeoutMillis, AsyncCallback<ApiResponse> callback) {
     final CrossDomainRequest xdr = new CrossDomainRequest(callback, timeoutMillis);
 
-    /** Adds a script tag to the page to load the JS library used to make requests. */
     if (!isScriptLoaded()) {
-      outstandingRequests.add(new OutstandingRequest(request, xdr));
-
-      // If we are the only request waiting, it is our responsibility to load the library.
-      if (outstandingRequests.size() == 1) {
-        addLoadCallback(this);
-        ScriptInjector.fromUrl(JS_CLIENT_URL)
-            .setWindow(ScriptInjector.TOP_WINDOW)
-            .setCallback(new Callback<Void, Exception>() {
-              @Override
-              public void onFailure(Exception e) {
-                throw new RuntimeException(e);
-              }
-
-              @Override
-              public void onSuccess(Void arg0) {
-                // Intentionally blank, callback will be invoked automatically
-              }
-            }).inject();
+      if (outstandingRequests.size() >= MAX_QUEUED_REQUESTS) {
+        // Cancelled requests may not have been dropped yet, make room for this one if we can.
+        dropCanceledRequests();
+      }
+      if (outstandingRequests.size() >= MAX_QUEUED_REQUESTS) {
+        rejectedRequestCount++;
+        xdr.fail(new HttpException("Too many requests are waiting for the client to load."));
+        return xdr;
       }
+
+      outstandingRequests.add(new OutstandingRequest(request, xdr, Duration.currentTimeMillis()));
+      maxQueueDepth = Math.max(maxQueueDepth, outstandingRequests.size());
+
+      // Unless the library was preloaded, the first request to wait is responsible for loading it.
+      loadScript();
     } else {
       doMakeRequest(request, xdr);
     }
     return xdr;
   }
 
-  private <T> void doMakeRequest(ApiRequest request, final CrossDomainRequest xdr) {
+  private void dropCanceledRequests() {
+    Iterator<OutstandingRequest> iterator = outstandingRequests.iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().xdr.isCanceled()) {
+        iterator.remove();
+        droppedRequestCount++;
+      }
+    }
+  }
+
+  /**
+   * Load the JS library, unless it is already loading. After a failure the load is delayed until
+   * the backoff delay has passed.
+   */
+  private void loadScript() {
+    if (scriptLoading || retryTimer != null) {
+      return;
+    }
+
+    double delayMillis = nextLoadAttemptMillis - Duration.currentTimeMillis();
+    if (delayMillis > 0) {
+      retryTimer = new Timer() {
+        @Override
+        public void run() {
+          retryTimer = null;
+          loadScript();
+        }
+      };
+      retryTimer.schedule((int) Math.ceil(delayMillis));
+      return;
+    }
+
+    scriptLoading = true;
+    injectScript();
+  }
+
+  /** Adds a script tag to the page to load the JS library used to make requests. */
+  @VisibleForTesting
+  protected void injectScript() {
+    addLoadCallback(this);
+    ScriptInjector.fromUrl(JS_CLIENT_URL)
+        .setWindow(ScriptInjector.TOP_WINDOW)
+        .setCallback(new Callback<Void, Exception>() {
+          @Override
+          public void onFailure(Exception e) {
+            scriptFailedToLoad(e);
+          }
+
+          @Override
+          public void onSuccess(Void arg0) {
+            // Intentionally blank, callback will be invoked automatically
+          }
+        }).inject();
+  }
+
+  @VisibleForTesting
+  protected void doMakeRequest(ApiRequest request, final CrossDomainRequest xdr) {
     JavaScriptObject jso = CrossDomainRequest.convertRequest(request);
     xdr.sendRequest(jso);
   }
@@ -114,10 +284,12 @@ public class CrossDomainRequestBuilder {
 
     public final ApiRequest request;
     public final CrossDomainRequest xdr;
+    public final double queuedAtMillis;
 
-    public OutstandingRequest(ApiRequest request, CrossDomainRequest xdr) {
+    public OutstandingRequest(ApiRequest request, CrossDomainRequest xdr, double queuedAtMillis) {
       this.request = request;
       this.xdr = xdr;
+      this.queuedAtMillis = queuedAtMillis;
     }
   }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.http.crossdomain;
+
+/**
+ * Snapshot of the counters of the queue in which requests wait for the JS library of a
+ * {@link CrossDomainRequestBuilder} to load, for diagnosing slow starts.
+ *
+ */
+public class QueueStatistics {
+  private final int queueDepth;
+  private final int maxQueueDepth;
+  private final int sentRequestCount;
+  private final double totalWaitMillis;
+  private final double maxWaitMillis;
+  private final int droppedRequestCount;
+  private final int rejectedRequestCount;
+  private final int failedRequestCount;
+  private final int loadFailureCount;
+
+  QueueStatistics(int queueDepth,
+      int maxQueueDepth,
+      int sentRequestCount,
+      double totalWaitMillis,
+      double maxWaitMillis,
+      int droppedRequestCount,
+      int rejectedRequestCount,
+      int failedRequestCount,
+      int loadFailureCount) {
+    this.queueDepth = queueDepth;
+    this.maxQueueDepth = maxQueueDepth;
+    this.sentRequestCount = sentRequestCount;
+    this.totalWaitMillis = totalWaitMillis;
+    this.maxWaitMillis = maxWaitMillis;
+    this.droppedRequestCount = droppedRequestCount;
+    this.rejectedRequestCount = rejectedRequestCount;
+    this.failedRequestCount = failedRequestCount;
+    this.loadFailureCount = loadFailureCount;
+  }
+
+  /** Returns the number of requests which are waiting right now. */
+  public int getQueueDepth() {
+    return queueDepth;
+  }
+
+  /** Returns the largest number of requests which were waiting at the same time. */
+  public int getMaxQueueDepth() {
+    return maxQueueDepth;
+  }
+
+  /** Returns the number of requests which were sent after waiting for the library. */
+  public int getSentRequestCount() {
+    return sentRequestCount;
+  }
+
+  /** Returns the total time which the sent requests spent waiting. */
+  public double getTotalWaitMillis() {
+    return totalWaitMillis;
+  }
+
+  /** Returns the longest time which a single sent request spent waiting. */
+  public double getMaxWaitMillis() {
+    return maxWaitMillis;
+  }
+
+  /** Returns the number of requests which were cancelled or timed out while waiting. */
+  public int getDroppedRequestCount() {
+    return droppedRequestCount;
+  }
+
+  /** Returns the number of requests which failed because the queue was full. */
+  public int getRejectedRequestCount() {
+    return rejectedRequestCount;
+  }
+
+  /** Returns the number of waiting requests which failed because the library did not load. */
+  public int getFailedRequestCount() {
+    return failedRequestCount;
+  }
+
+  /** Returns the number of times that the library failed to load. */
+  public int getLoadFailureCount() {
+    return loadFailureCount;
+  }
+
+  @Override
+  public String toString() {
+    return "depth=" + queueDepth + " maxDepth=" + maxQueueDepth + " sent=" + sentRequestCount
+        + " totalWaitMs=" + totalWaitMillis + " maxWaitMs=" + maxWaitMillis + " dropped="
+        + droppedRequestCount + " rejected=" + rejectedRequestCount + " failed="
+        + failedRequestCount + " loadFailures=" + loadFailureCount;
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.storage;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+/**
+ * The raw body of a discovery or directory document, along with the validators which are sent to
+ * check that it is still current and the time at which it was last fetched or revalidated.
+ *
+ */
+public class DiscoveryDocument {
+  /** Version of the encoding, which is changed whenever the encoding changes. */
+  private static final String ENCODING_VERSION = "1";
+
+  private final String body;
+  private final String etag;
+  private final String lastModified;
+  private final long fetchedTime;
+
+  /**
+   * @param body Body of the document.
+   * @param etag Value of the {@code ETag} header of the response, or {@code null}.
+   * @param lastModified Value of the {@code Last-Modified} header of the response, or
+   *        {@code null}.
+   * @param fetchedTime Time at which the document was fetched or last revalidated.
+   */
+  public DiscoveryDocument(String body, String etag, String lastModified, long fetchedTime) {
+    this.body = Preconditions.checkNotNull(body);
+    this.etag = Strings.emptyToNull(etag);
+    this.lastModified = Strings.emptyToNull(lastModified);
+    this.fetchedTime = fetchedTime;
+  }
+
+  public String getBody() {
+    return body;
+  }
+
+  /** Returns the {@code ETag} of the document, or {@code null}. */
+  public String getEtag() {
+    return etag;
+  }
+
+  /** Returns the {@code Last-Modified} date of the document, or {@code null}. */
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  /** Returns the time at which the document was fetched or last revalidated. */
+  public long getFetchedTime() {
+    return fetchedTime;
+  }
+
+  /**
+   * Returns a copy of the document which was revalidated at the specified time.
+   */
+  public DiscoveryDocument withFetchedTime(long fetchedTime) {
+    return new DiscoveryDocument(body, etag, lastModified, fetchedTime);
+  }
+
+  /**
+   * Encode the document into a single string for storage. Header values can not contain line
+   * breaks, so the validators and the time each take one line in front of the body.
+   */
+  public String encode() {
+    return new StringBuilder()
+        .append(ENCODING_VERSION).append('\n')
+        .append(Strings.nullToEmpty(etag)).append('\n')
+        .append(Strings.nullToEmpty(lastModified)).append('\n')
+        .append(fetchedTime).append('\n')
+        .append(body)
+        .toString();
+  }
+
+  /**
+   * Returns the document encoded by {@link #encode()}, or {@code null} if the string is not an
+   * encoded document, e.g. because it was stored by an older version.
+   */
+  public static DiscoveryDocument decode(String encoded) {
+    if (encoded == null) {
+      return null;
+    }
+
+    String[] lines = new String[4];
+    int start = 0;
+    for (int i = 0; i < lines.length; i++) {
+      int end = encoded.indexOf('\n', start);
+      if (end < 0) {
+        return null;
+      }
+      lines[i] = encoded.substring(start, end);
+      start = end + 1;
+    }
+
+    if (!ENCODING_VERSION.equals(lines[0])) {
+      return null;
+    }
+    try {
+      return new DiscoveryDocument(
+          encoded.substring(start), lines[1], lines[2], Long.parseLong(lines[3]));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.storage;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * Persistent storage for {@link DiscoveryDocument}s, so that the documents which were loaded on
+ * an earlier visit are available right away on the next one.
+ *
+ */
+public interface DiscoveryStore {
+
+  /**
+   * Store which keeps nothing.
+   */
+  DiscoveryStore NONE = new DiscoveryStore() {
+    @Override
+    public void get(String key, AsyncCallback<DiscoveryDocument> callback) {
+      callback.onSuccess(null);
+    }
+
+    @Override
+    public void put(String key, DiscoveryDocument document) {
+      // Intentionally blank, null implementation.
+    }
+
+    @Override
+    public void remove(String key) {
+      // Intentionally blank, null implementation.
+    }
+  };
+
+  /**
+   * Read the document stored under the key. The callback receives {@code null} if there is none.
+   */
+  void get(String key, AsyncCallback<DiscoveryDocument> callback);
+
+  /**
+   * Store the document under the key, replacing any document stored under it before. Storing is
+   * best effort, e.g. the document is dropped if the browser has no space left for it.
+   */
+  void put(String key, DiscoveryDocument document);
+
+  /** Remove the document stored under the key, if any. */
+  void remove(String key);
+
+  /**
+   * Helper class to create the persistent store of the browser.
+   */
+  class Helper {
+    /**
+     * Returns a store backed by IndexedDB where it is available, otherwise by localStorage, or a
+     * store which keeps nothing if neither is available.
+     */
+    public static DiscoveryStore create() {
+      DiscoveryStore fallback = LocalStorageDiscoveryStore.isSupported()
+          ? new LocalStorageDiscoveryStore() : NONE;
+      return IndexedDbDiscoveryStore.isSupported()
+          ? new IndexedDbDiscoveryStore(fallback) : fallback;
+    }
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.storage;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+import java.util.List;
+
+/**
+ * {@link DiscoveryStore} backed by IndexedDB, which unlike localStorage has room for the
+ * discovery documents of all APIs and does not block the UI thread while it reads or writes them.
+ * Operations which are requested while the database is being opened wait for it to open, and if
+ * it can not be opened, e.g. because the user turned off storage for the site, they go to the
+ * fallback store instead. The store keeps a bounded number of characters, and drops the documents
+ * which were stored longest ago to make room for new ones.
+ *
+ */
+class IndexedDbDiscoveryStore implements DiscoveryStore {
+  private static final String DATABASE_NAME = "explorer";
+  private static final int DATABASE_VERSION = 2;
+  private static final String OBJECT_STORE_NAME = "discovery";
+
+  /** Object store of the sizes of the documents and the times at which they were stored. */
+  private static final String SIZES_STORE_NAME = "sizes";
+
+  /** Default number of characters which are kept, room for the documents of many large APIs. */
+  static final int DEFAULT_MAX_CHARS = 16 * 1024 * 1024;
+
+  private final DiscoveryStore fallback;
+  private final StorageBudget budget;
+
+  /** The open database, or {@code null} while it is being opened or if it could not be. */
+  private JavaScriptObject database;
+  private boolean failed = false;
+
+  /** Operations which wait for the database to open. */
+  private final List<ScheduledCommand> pending = Lists.newArrayList();
+
+  IndexedDbDiscoveryStore(DiscoveryStore fallback) {
+    this(fallback, DEFAULT_MAX_CHARS);
+  }
+
+  IndexedDbDiscoveryStore(DiscoveryStore fallback, int maxChars) {
+    this.fallback = fallback;
+    this.budget = new StorageBudget(maxChars);
+    open();
+  }
+
+  static native boolean isSupported() /*-{
+    return !!$wnd.indexedDB;
+  }-*/;
+
+  @Override
+  public void get(final String key, final AsyncCallback<DiscoveryDocument> callback) {
+    whenOpen(new ScheduledCommand() {
+      @Override
+      public void execute() {
+        if (failed) {
+          fallback.get(key, callback);
+        } else {
+          read(database, key, callback);
+        }
+      }
+    });
+  }
+
+  @Override
+  public void put(final String key, final DiscoveryDocument document) {
+    whenOpen(new ScheduledCommand() {
+      @Override
+      public void execute() {
+        if (failed) {
+          fallback.put(key, document);
+        } else {
+          store(key, document.encode());
+        }
+      }
+    });
+  }
+
+  @Override
+  public void remove(final String key) {
+    whenOpen(new ScheduledCommand() {
+      @Override
+      public void execute() {
+        if (failed) {
+          fallback.remove(key);
+        } else {
+          budget.remove(key);
+          delete(database, key);
+        }
+      }
+    });
+  }
+
+  private void store(String key, String encoded) {
+    if (!budget.fits(encoded.length())) {
+      // The document would take more than the whole store, so it is not kept, and neither is the
+      // older version of it.
+      budget.remove(key);
+      delete(database, key);
+      return;
+    }
+
+    for (String evicted : budget.add(key, encoded.length())) {
+      delete(database, evicted);
+    }
+    write(database, key, encoded, Duration.currentTimeMillis());
+  }
+
+  private void whenOpen(ScheduledCommand operation) {
+    if (database == null && !failed) {
+      pending.add(operation);
+    } else {
+      operation.execute();
+    }
+  }
+
+  private void onOpened(JavaScriptObject database) {
+    this.database = database;
+    runPending();
+  }
+
+  /** Record the size of a document which was stored on an earlier visit, oldest first. */
+  private void onSizeRead(String key, int size) {
+    budget.add(key, size);
+  }
+
+  private void onOpenFailed() {
+    failed = true;
+    runPending();
+  }
+
+  private void runPending() {
+    List<ScheduledCommand> operations = ImmutableList.copyOf(pending);
+    pending.clear();
+    for (ScheduledCommand operation : operations) {
+      operation.execute();
+    }
+  }
+
+  private static void onRead(AsyncCallback<DiscoveryDocument> callback, String encoded) {
+    callback.onSuccess(DiscoveryDocument.decode(encoded));
+  }
+
+  private native void open() /*-{
+    var self = this;
+    var storeName = @com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::OBJECT_STORE_NAME;
+    var request;
+    try {
+      request = $wnd.indexedDB.open(
+          @com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::DATABASE_NAME,
+          @com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::DATABASE_VERSION);
+    } catch (e) {
+      // Some browsers refuse to open databases in private browsing mode.
+      self.@com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::onOpenFailed()();
+      return;
+    }
+    request.onupgradeneeded = function() {
+      var database = request.result;
+      // The documents of version 1 have no recorded sizes, so they could never be evicted. They
+      // are dropped, and loaded again when they are needed.
+      if (database.objectStoreNames.contains(storeName)) {
+        database.deleteObjectStore(storeName);
+      }
+      database.createObjectStore(storeName);
+      database.createObjectStore(
+          @com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::SIZES_STORE_NAME);
+    };
+    request.onsuccess = $entry(function() {
+      self.@com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::readSizes(Lcom/google/gwt/core/client/JavaScriptObject;)(request.result);
+    });
+    request.onerror = $entry(function() {
+      self.@com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::onOpenFailed()();
+    });
+  }-*/;
+
+  /**
+   * Read the sizes of the stored documents into the budget, oldest first, before the database is
+   * used. Without them the bound could not be kept, so the database is not used if they can not
+   * be read.
+   */
+  private native void readSizes(JavaScriptObject database) /*-{
+    var self = this;
+    var sizesName = @com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::SIZES_STORE_NAME;
+    var entries = [];
+    var done = $entry(function() {
+      entries.sort(function(a, b) {
+        return a.time - b.time;
+      });
+      for (var i = 0; i < entries.length; i++) {
+        self.@com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::onSizeRead(Ljava/lang/String;I)(
+            entries[i].key, entries[i].size);
+      }
+      self.@com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::onOpened(Lcom/google/gwt/core/client/JavaScriptObject;)(database);
+    });
+    var failed = $entry(function() {
+      self.@com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::onOpenFailed()();
+    });
+    try {
+      var request = database.transaction(sizesName, "readonly").objectStore(sizesName).openCursor();
+      request.onsuccess = function() {
+        var cursor = request.result;
+        if (cursor) {
+          entries.push({key: String(cursor.key), size: cursor.value.size, time: cursor.value.time});
+          cursor["continue"]();
+        } else {
+          done();
+        }
+      };
+      request.onerror = failed;
+    } catch (e) {
+      failed();
+    }
+  }-*/;
+
+  private static native void read(
+      JavaScriptObject database, String key, AsyncCallback<DiscoveryDocument> callback) /*-{
+    var storeName = @com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::OBJECT_STORE_NAME;
+    var done = $entry(function(value) {
+      @com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::onRead(Lcom/google/gwt/user/client/rpc/AsyncCallback;Ljava/lang/String;)(
+          callback, value == null ? null : String(value));
+    });
+    try {
+      var request = database.transaction(storeName, "readonly").objectStore(storeName).get(key);
+      request.onsuccess = function() {
+        done(request.result);
+      };
+      request.onerror = function() {
+        done(null);
+      };
+    } catch (e) {
+      done(null);
+    }
+  }-*/;
+
+  private static native void write(
+      JavaScriptObject database, String key, String value, double time) /*-{
+    var storeName = @com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::OBJECT_STORE_NAME;
+    var sizesName = @com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::SIZES_STORE_NAME;
+    try {
+      var transaction = database.transaction([storeName, sizesName], "readwrite");
+      transaction.objectStore(storeName).put(value, key);
+      transaction.objectStore(sizesName).put({size: value.length, time: time}, key);
+    } catch (e) {
+      // Storing is best effort, the document will be fetched from the network next time.
+    }
+  }-*/;
+
+  private static native void delete(JavaScriptObject database, String key) /*-{
+    var storeName = @com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::OBJECT_STORE_NAME;
+    var sizesName = @com.google.api.explorer.client.base.storage.IndexedDbDiscoveryStore::SIZES_STORE_NAME;
+    try {
+      var transaction = database.transaction([storeName, sizesName], "readwrite");
+      transaction.objectStore(storeName)["delete"](key);
+      transaction.objectStore(sizesName)["delete"](key);
+    } catch (e) {
+      // The document will be replaced when it is stored again.
+    }
+  }-*/;
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.storage;
+
+import com.google.common.base.Functions;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.gwt.core.client.JavaScriptException;
+import com.google.gwt.storage.client.Storage;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link DiscoveryStore} backed by the localStorage of the browser, for browsers without
+ * IndexedDB. localStorage only holds a few megabytes per origin, so when a document does not fit
+ * the documents which were fetched longest ago are dropped, one at a time, until it fits.
+ *
+ */
+class LocalStorageDiscoveryStore implements DiscoveryStore {
+  /** Prefix of the keys of stored documents, which tells them apart from other stored values. */
+  private static final String KEY_PREFIX = "explorer.discovery.";
+
+  private final Storage storage = Storage.getLocalStorageIfSupported();
+
+  static boolean isSupported() {
+    return Storage.isLocalStorageSupported();
+  }
+
+  @Override
+  public void get(String key, AsyncCallback<DiscoveryDocument> callback) {
+    callback.onSuccess(DiscoveryDocument.decode(storage.getItem(KEY_PREFIX + key)));
+  }
+
+  @Override
+  public void put(String key, DiscoveryDocument document) {
+    String storageKey = KEY_PREFIX + key;
+    String encoded = document.encode();
+    Iterator<String> oldestFirst = null;
+    while (true) {
+      try {
+        storage.setItem(storageKey, encoded);
+        return;
+      } catch (JavaScriptException e) {
+        // The quota was exceeded.
+        if (oldestFirst == null) {
+          oldestFirst = getStorageKeysOldestFirst(storageKey).iterator();
+        }
+        if (!oldestFirst.hasNext()) {
+          // The document does not fit on its own, so it is not stored.
+          return;
+        }
+        storage.removeItem(oldestFirst.next());
+      }
+    }
+  }
+
+  @Override
+  public void remove(String key) {
+    storage.removeItem(KEY_PREFIX + key);
+  }
+
+  /**
+   * Returns the storage keys of the stored documents, the older version of the document which is
+   * being replaced first, since dropping it loses nothing, and then by the time at which they were
+   * fetched. Values which are not documents of this version are dropped before any documents.
+   */
+  private List<String> getStorageKeysOldestFirst(String replacedKey) {
+    Map<String, Long> fetchedTimes = Maps.newHashMap();
+    for (int i = 0; i < storage.getLength(); i++) {
+      String storageKey = storage.key(i);
+      if (storageKey != null && storageKey.startsWith(KEY_PREFIX)) {
+        DiscoveryDocument stored = DiscoveryDocument.decode(storage.getItem(storageKey));
+        boolean replaced = storageKey.equals(replacedKey);
+        fetchedTimes.put(storageKey,
+            stored == null || replaced ? Long.MIN_VALUE : stored.getFetchedTime());
+      }
+    }
+    return Ordering.natural().onResultOf(Functions.forMap(fetchedTimes))
+        .sortedCopy(fetchedTimes.keySet());
+  }
+}
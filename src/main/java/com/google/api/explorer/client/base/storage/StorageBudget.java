@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.storage;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sizes of the documents in a {@link DiscoveryStore}, in the order in which they were stored,
+ * which bounds the number of characters the store keeps. Once a new document would exceed the
+ * bound, the documents which were stored longest ago are evicted first.
+ *
+ */
+class StorageBudget {
+  private final int maxChars;
+
+  /** Sizes of the stored documents by key, the least recently stored first. */
+  private final Map<String, Integer> sizes = Maps.newLinkedHashMap();
+  private int chars = 0;
+
+  StorageBudget(int maxChars) {
+    Preconditions.checkArgument(maxChars > 0);
+    this.maxChars = maxChars;
+  }
+
+  /** Returns whether a document of the specified size fits into the store at all. */
+  boolean fits(int size) {
+    return size <= maxChars;
+  }
+
+  /**
+   * Record that a document was stored under the key, replacing the document stored under it
+   * before, if any.
+   *
+   * @return Keys of the documents which have to be removed from the store to keep it within its
+   *         bound, which are no longer recorded. The new document is never among them.
+   */
+  List<String> add(String key, int size) {
+    remove(key);
+
+    List<String> evicted = Lists.newArrayList();
+    Iterator<Map.Entry<String, Integer>> oldestFirst = sizes.entrySet().iterator();
+    while (chars + size > maxChars && oldestFirst.hasNext()) {
+      Map.Entry<String, Integer> oldest = oldestFirst.next();
+      evicted.add(oldest.getKey());
+      chars -= oldest.getValue();
+      oldestFirst.remove();
+    }
+
+    sizes.put(key, size);
+    chars += size;
+    return ImmutableList.copyOf(evicted);
+  }
+
+  /** Record that the document stored under the key was removed. */
+  void remove(String key) {
+    Integer size = sizes.remove(key);
+    if (size != null) {
+      chars -= size;
+    }
+  }
+
+  /** Returns the number of characters of all recorded documents. */
+  int getChars() {
+    return chars;
+  }
+}
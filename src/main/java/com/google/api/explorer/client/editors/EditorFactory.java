@@ -20,6 +20,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 
 import java.math.BigInteger;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -45,6 +46,19 @@ public class EditorFactory {
     return forParameter(parameter, false);
   }
 
+  /**
+   * Identifies the relevant {@link Editor} implementation for the given
+   * {@link Schema}, which can show all of the values the parameter is
+   * pre-filled with. A parameter which takes a single value, but is pre-filled
+   * with several, gets a repeated editor, and is sent once per value.
+   */
+  public static Editor forParameter(Schema parameter, Collection<String> values) {
+    if (values.size() > 1) {
+      return new RepeatedEditor(forParameter(parameter, true));
+    }
+    return forParameter(parameter);
+  }
+
   /**
    * Identifies the revelant {@link Editor} implementation for the given
    * parameter, ignoring whether the parameter is repeated.
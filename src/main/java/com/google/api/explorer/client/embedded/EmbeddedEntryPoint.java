@@ -26,11 +26,18 @@ import com.google.api.explorer.client.base.ApiRequest;
 import com.google.api.explorer.client.base.ApiResponse;
 import com.google.api.explorer.client.base.ApiService;
 import com.google.api.explorer.client.base.ApiServiceFactory;
+import com.google.api.explorer.client.base.CancellationScope;
+import com.google.api.explorer.client.base.CancellationScope.Cancelable;
 import com.google.api.explorer.client.base.Config;
 import com.google.api.explorer.client.base.ExplorerConfig;
 import com.google.api.explorer.client.base.ServiceLoader;
+import com.google.api.explorer.client.base.http.TimeoutPolicy;
+import com.google.api.explorer.client.base.http.TimeoutPolicy.RequestClass;
+import com.google.api.explorer.client.base.http.cors.CorsTransport;
+import com.google.api.explorer.client.base.storage.DiscoveryStore;
 import com.google.api.explorer.client.history.EmbeddedHistoryItemView;
 import com.google.api.explorer.client.history.JsonPrettifier;
+import com.google.api.explorer.client.history.JsonPrettifier.Engine;
 import com.google.api.explorer.client.routing.URLFragment;
 import com.google.api.gwt.oauth2.client.Auth;
 import com.google.common.collect.Multimap;
@@ -65,6 +72,7 @@ public class EmbeddedEntryPoint implements EntryPoint {
   private static final String METHOD_ATTR = "data-method";
   private static final String PARAMS_ATTR = "data-params";
   private static final String BASE_ATTR = "data-baseUrl";
+  private static final String CORS_ATTR = "data-cors";
   private static final String AUTH_POPUP_ATTR = "data-auth-popup";
   private static final boolean SHOW_AUTH = true;
 
@@ -73,6 +81,9 @@ public class EmbeddedEntryPoint implements EntryPoint {
   private AuthManager authManager;
   private AnalyticsManager analytics;
 
+  /** Work started for the method which is currently shown. */
+  private CancellationScope methodScope = new CancellationScope();
+
   @Override
   public void onModuleLoad() {
     // Make sure that CSS gets injected.
@@ -107,17 +118,45 @@ public class EmbeddedEntryPoint implements EntryPoint {
     String base = rootElement.getAttribute(BASE_ATTR);
     if (base != null && !base.isEmpty()) {
       Config.setBaseUrl(base);
+
+      // Backends which allow cross origin requests can be called directly, without the proxy.
+      if ("true".equals(rootElement.getAttribute(CORS_ATTR))) {
+        ApiRequest.setTransportForBaseUrl(base, new CorsTransport());
+      }
     }
 
+    // Start loading the request transport now that the base URL is known, in parallel with the
+    // construction of the UI.
+    ApiRequest.preloadTransport();
+
     // Set up static resources.
     JsonPrettifier.setResources(Resources.INSTANCE);
+    JsonPrettifier.setEngine(Engine.HTML);
+    JsonPrettifier.setCollapseDepth(JsonPrettifier.DEFAULT_COLLAPSE_DEPTH);
+    JsonPrettifier.setIncrementalBudgetMillis(JsonPrettifier.DEFAULT_INCREMENTAL_BUDGET_MILLIS);
+    JsonPrettifier.setArrayPageSize(JsonPrettifier.DEFAULT_ARRAY_PAGE_SIZE);
+    JsonPrettifier.setUseWorker(true);
 
     // Set the API key and application name to use for calls from the Explorer.
     Config.setApiKey(ExplorerConfig.API_KEY);
 
+    // Fail requests which hang instead of keeping the user waiting for them indefinitely. The
+    // timeouts of API methods adapt to the latency which they were observed to have, and media
+    // downloads, which may take any time, have none.
+    TimeoutPolicy timeoutPolicy = ApiRequest.getTimeoutPolicy();
+    timeoutPolicy.setDefaultTimeoutMillis(TimeoutPolicy.DEFAULT_TIMEOUT_MILLIS);
+    timeoutPolicy.setTimeoutMillis(
+        RequestClass.DISCOVERY, TimeoutPolicy.DEFAULT_DISCOVERY_TIMEOUT_MILLIS);
+    timeoutPolicy.setTimeoutMillis(RequestClass.MEDIA, 0);
+    timeoutPolicy.enableAdaptive(TimeoutPolicy.DEFAULT_ADAPTIVE_PERCENTILE,
+        TimeoutPolicy.DEFAULT_ADAPTIVE_MULTIPLIER,
+        TimeoutPolicy.DEFAULT_ADAPTIVE_MIN_TIMEOUT_MILLIS,
+        TimeoutPolicy.DEFAULT_ADAPTIVE_MAX_TIMEOUT_MILLIS);
+
     // Dependencies for the UI
     authManager = new AuthManager();
     serviceLoader = new ServiceLoader(ApiServiceFactory.INSTANCE);
+    serviceLoader.setDiscoveryStore(DiscoveryStore.Helper.create());
     analytics = new AnalyticsManagerImpl();
 
     analytics.trackEventWithValue(AnalyticsEvent.LOAD_EXPLORER, "Embedded");
@@ -127,12 +166,19 @@ public class EmbeddedEntryPoint implements EntryPoint {
     exportUpdate(this);
   }
 
-  private void loadServiceMethod(String serviceName, String versionName, final String methodName,
+  private void loadServiceMethod(final String serviceName, final String versionName,
+      final String methodName,
       final Multimap<String, String> params) {
-    serviceLoader.loadService(serviceName, versionName, new Callback<ApiService, String>() {
+    // Abandon the loads and requests of the method which was shown until now, so that a late
+    // response does not replace the view of this one.
+    methodScope.cancel();
+    final CancellationScope scope = new CancellationScope();
+    methodScope = scope;
+
+    Callback<ApiService, String> showMethod = new Callback<ApiService, String>() {
       @Override
       public void onSuccess(ApiService service) {
-        ShowHistoryCallback callback = new ShowHistoryCallback(analytics);
+        ShowHistoryCallback callback = new ShowHistoryCallback(analytics, scope);
 
         EmbeddedView view = new EmbeddedView(authManager,
             service,
@@ -153,19 +199,35 @@ public class EmbeddedEntryPoint implements EntryPoint {
       public void onFailure(String reason) {
         analytics.trackEvent(AnalyticsEvent.LOAD_DISCOVERY_FAILURE);
       }
-    });
+    };
+    serviceLoader.pinService(serviceName, versionName);
+    scope.start(new CancellationScope.Task<ApiService, String>() {
+      @Override
+      public Cancelable start(Callback<ApiService, String> callback) {
+        return serviceLoader.loadService(serviceName, versionName, callback);
+      }
+    }, showMethod);
   }
 
   private static class ShowHistoryCallback extends AnalyticsRequestFinishedCallback {
     public EmbeddedView localView;
+    private final CancellationScope scope;
 
-    private ShowHistoryCallback(AnalyticsManager analytics) {
+    private ShowHistoryCallback(AnalyticsManager analytics, CancellationScope scope) {
       super(analytics);
+      this.scope = scope;
+    }
+
+    @Override
+    public void starting(ApiRequest request) {
+      super.starting(request);
+      scope.track(request);
     }
 
     @Override
     public void finished(ApiRequest request, ApiResponse response, long startTime, long endTime) {
       super.finished(request, response, startTime, endTime);
+      scope.finished(request);
       EmbeddedHistoryItemView historyItem = new EmbeddedHistoryItemView(request);
       historyItem.complete(response, endTime - startTime, JsonPrettifier.EXTERNAL_LINK_FACTORY);
       localView.showHistoryItem(historyItem);
@@ -55,6 +55,7 @@ import com.google.gwt.user.client.ui.SimplePanel;
 import com.google.gwt.user.client.ui.TextBox;
 import com.google.gwt.user.client.ui.Widget;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.SortedMap;
 
@@ -157,7 +158,9 @@ public class EmbeddedParameterForm extends Composite
     for (Map.Entry<String, Schema> entry : sortedParams.entrySet()) {
       String paramName = entry.getKey();
       Schema param = entry.getValue();
-      addEditorRow(paramName, param, row++);
+      Collection<String> values =
+          params == null ? ImmutableList.<String>of() : params.get(paramName);
+      addEditorRow(paramName, param, values, row++);
     }
 
     // Add a row for the fields parameter if there is a response object
@@ -194,8 +197,10 @@ public class EmbeddedParameterForm extends Composite
   /**
    * Adds a row to the table containing the parameter name, whether it is
    * required, and an {@link Editor} to provide a value.
+   *
+   * @param values Values the parameter is pre-filled with.
    */
-  private void addEditorRow(String paramName, Schema param, int row) {
+  private void addEditorRow(String paramName, Schema param, Collection<String> values, int row) {
     // First cell in row displays the parameter name and whether the parameter
     // is required.
     boolean required = param.isRequired();
@@ -206,7 +211,7 @@ public class EmbeddedParameterForm extends Composite
     }
 
     // Second cell in row displays the editor for the parameter value.
-    Editor editor = EditorFactory.forParameter(param);
+    Editor editor = EditorFactory.forParameter(param, values);
     nameToEditor.put(paramName, editor);
 
     Widget editorWidget = editor.createAndSetView().asWidget();
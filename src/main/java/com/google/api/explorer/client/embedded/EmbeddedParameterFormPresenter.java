@@ -19,18 +19,27 @@ package com.google.api.explorer.client.embedded;
 import com.google.api.explorer.client.AuthManager;
 import com.google.api.explorer.client.AuthManager.AuthToken;
 import com.google.api.explorer.client.base.ApiMethod;
+import com.google.api.explorer.client.base.ApiMethod.HttpMethod;
 import com.google.api.explorer.client.base.ApiRequest;
 import com.google.api.explorer.client.base.ApiResponse;
 import com.google.api.explorer.client.base.ApiService;
 import com.google.api.explorer.client.base.ExplorerConfig;
 import com.google.api.explorer.client.base.Schema;
+import com.google.api.explorer.client.base.batch.BatchRequest;
+import com.google.api.explorer.client.base.batch.BatchRequest.BatchCallback;
+import com.google.api.explorer.client.base.http.RetryPolicy;
+import com.google.api.explorer.client.base.http.TimeoutPolicy.RequestClass;
 import com.google.api.explorer.client.base.rest.RestApiRequest;
 import com.google.api.explorer.client.routing.UrlBuilder;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.rpc.AsyncCallback;
@@ -106,6 +115,9 @@ public class EmbeddedParameterFormPresenter {
     public void finished(ApiRequest request, ApiResponse response, long startTime, long endTime);
   }
 
+  /** Matches the values which were filled in. */
+  private static final Predicate<String> NOT_EMPTY = Predicates.not(Predicates.equalTo(""));
+
   private final AuthManager authManager;
   private final Display display;
   private ApiMethod method;
@@ -146,16 +158,33 @@ public class EmbeddedParameterFormPresenter {
 
   public void submit() {
     Preconditions.checkState(method != null);
-    final RestApiRequest req = new RestApiRequest(service, method);
+    String body = display.getBodyText();
+    Multimap<String, String> paramValues = display.getParameterValues();
+
+    // A parameter which takes a single value, but was given several, e.g. the IDs from a list
+    // response, is sent in one request per value. The requests share a single round trip.
+    String batchParameter = findBatchParameter(method, paramValues);
+    if (batchParameter == null) {
+      send(createRequest(body, paramValues));
+      return;
+    }
+
+    List<ApiRequest> requests = Lists.newArrayList();
+    for (Multimap<String, String> values : splitValues(paramValues, batchParameter)) {
+      requests.add(createRequest(body, values));
+    }
+    sendBatch(requests);
+  }
+
+  private RestApiRequest createRequest(String body, Multimap<String, String> paramValues) {
+    RestApiRequest req = new RestApiRequest(service, method);
 
     // If the user has declared a body, set it on the request.
-    String body = display.getBodyText();
     if (!body.isEmpty()) {
       req.body = body;
       req.addHeader("Content-Type", "application/json");
     }
 
-    Multimap<String, String> paramValues = display.getParameterValues();
     for (Map.Entry<String, String> entry : paramValues.entries()) {
       if (entry.getValue().isEmpty()) {
         continue;
@@ -163,6 +192,11 @@ public class EmbeddedParameterFormPresenter {
       req.getParamValues().put(entry.getKey(), entry.getValue());
     }
 
+    // Media downloads may take much longer than the JSON response of the same method.
+    if (paramValues.containsEntry("alt", "media")) {
+      req.setRequestClass(RequestClass.MEDIA);
+    }
+
     // Do not send the API key if the service is a public-only API.
     req.setUseApiKey(
         !ExplorerConfig.PUBLIC_ONLY_APIS.contains(service.getName()));
@@ -173,6 +207,16 @@ public class EmbeddedParameterFormPresenter {
       req.addHeader("Authorization", "Bearer " + oauth2Token.getAuthToken());
     }
 
+    // Only retry and cache requests which are safe to repeat. Every attempt is shown in the history
+    // item, as is a body which was served from the cache.
+    if (method.getHttpMethod() == HttpMethod.GET) {
+      req.setRetryPolicy(RetryPolicy.DEFAULT);
+      req.setUseResponseCache(true);
+    }
+    return req;
+  }
+
+  private void send(final ApiRequest req) {
     display.setExecuting(true);
 
     final long start = System.currentTimeMillis();
@@ -196,6 +240,91 @@ public class EmbeddedParameterFormPresenter {
     callback.starting(req);
   }
 
+  /**
+   * Send the requests in as few batches as possible. Every response is passed on like the
+   * response to a single request, so that each one gets its own history item.
+   */
+  private void sendBatch(final List<ApiRequest> requests) {
+    display.setExecuting(true);
+
+    BatchCallback batchCallback = new BatchCallback() {
+      private int outstanding = requests.size();
+      private boolean alerted = false;
+
+      @Override
+      public void onResponse(
+          ApiRequest request, ApiResponse response, long startTime, long endTime) {
+        requestDone();
+        callback.finished(request, response, startTime, endTime);
+      }
+
+      @Override
+      public void onFailure(ApiRequest request, Throwable caught) {
+        requestDone();
+        // The requests of a batch usually fail together, which only needs to be reported once.
+        if (!alerted) {
+          alerted = true;
+          Window.alert("An error occured: " + caught.getMessage());
+        }
+      }
+
+      private void requestDone() {
+        if (--outstanding == 0) {
+          display.setExecuting(false);
+        }
+      }
+    };
+
+    for (List<ApiRequest> part : Lists.partition(requests, BatchRequest.MAX_BATCH_SIZE)) {
+      BatchRequest batch = new BatchRequest();
+      for (ApiRequest request : part) {
+        batch.add(request);
+      }
+      batch.send(batchCallback);
+    }
+
+    // This has to be after the actual send so that the API key gets initialized properly.
+    for (ApiRequest request : requests) {
+      callback.starting(request);
+    }
+  }
+
+  /**
+   * Returns the first parameter which takes a single value, but was given several, or
+   * {@code null} if every parameter was given as many values as it takes.
+   */
+  @VisibleForTesting
+  static String findBatchParameter(ApiMethod method, Multimap<String, String> paramValues) {
+    Map<String, Schema> parameters = method.getParameters();
+    if (parameters == null) {
+      return null;
+    }
+    for (Map.Entry<String, Collection<String>> entry : paramValues.asMap().entrySet()) {
+      Schema parameter = parameters.get(entry.getKey());
+      if (parameter != null && !parameter.isRepeated()
+          && Iterables.size(Iterables.filter(entry.getValue(), NOT_EMPTY)) > 1) {
+        return entry.getKey();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns a copy of the parameter values for every non-empty value of the specified parameter,
+   * in which the parameter only has that value.
+   */
+  @VisibleForTesting
+  static List<Multimap<String, String>> splitValues(
+      Multimap<String, String> paramValues, String parameter) {
+    ImmutableList.Builder<Multimap<String, String>> split = ImmutableList.builder();
+    for (String value : Iterables.filter(paramValues.get(parameter), NOT_EMPTY)) {
+      Multimap<String, String> values = ArrayListMultimap.create(paramValues);
+      values.replaceValues(parameter, ImmutableList.of(value));
+      split.add(values);
+    }
+    return split.build();
+  }
+
   /**
    * Comparator to sort parameter names. This checks the
    * {@link ApiMethod#getParameterOrder()} member for the explicit ordering,
@@ -18,6 +18,7 @@ package com.google.api.explorer.client.history;
 
 import com.google.api.explorer.client.base.ApiMethod.HttpMethod;
 import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.ApiRequest.Attempt;
 import com.google.api.explorer.client.base.ApiResponse;
 import com.google.api.explorer.client.base.ApiResponse.HeaderValue;
 import com.google.api.explorer.client.base.Config;
@@ -25,10 +26,10 @@ import com.google.api.explorer.client.base.ExplorerConfig;
 import com.google.api.explorer.client.base.dynamicjso.DynamicJso;
 import com.google.api.explorer.client.history.JsonPrettifier.JsonFormatException;
 import com.google.api.explorer.client.history.JsonPrettifier.PrettifierLinkFactory;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.gwt.core.client.GWT;
-import com.google.gwt.core.client.JsonUtils;
 import com.google.gwt.dom.client.PreElement;
 import com.google.gwt.dom.client.SpanElement;
 import com.google.gwt.event.dom.client.ClickEvent;
@@ -50,6 +51,7 @@ import com.google.gwt.user.client.ui.UIObject;
 import com.google.gwt.user.client.ui.Widget;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 
@@ -121,15 +123,16 @@ public class EmbeddedHistoryItemView extends Composite {
   public void complete(ApiResponse response, long timeMillis, PrettifierLinkFactory linkFactory) {
     executing.setVisible(false);
     wireContent.addStyleName(style.fadeIn());
-    time.setInnerText("time to execute: " + timeMillis + " ms");
-    statusDiv.setInnerText(response.getStatus() + " " + response.getStatusText());
+    time.setInnerText("time to execute: " + timeMillis + " ms" + getAttemptsString(request));
+    statusDiv.setInnerText(response.getStatus() + " " + response.getStatusText()
+        + (response.isFromCache() ? " (from cache, the server replied 304 Not Modified)" : ""));
 
     // Headers are hidden by default.
     UIObject.setVisible(responseHeadersDiv, false);
     responseHeadersDiv.setInnerText(getResponseHeadersString(response));
     try {
       JsonPrettifier.prettify(
-          request.getService(), requestBodyDiv, request.getRequestBody(), linkFactory);
+          request.getService(), requestBodyDiv, request.getRequestJsonBody(), linkFactory);
     } catch (JsonFormatException e) {
       // We should only be generating valid requests
       requestBodyDiv.add(new InlineLabel(request.getRequestBody()));
@@ -178,7 +181,7 @@ public class EmbeddedHistoryItemView extends Composite {
       // Treat the response as JSON, although we don't really know what it is
       try {
         JsonPrettifier.prettify(
-            request.getService(), responseBodyDiv, response.getBodyAsString(), linkFactory);
+            request.getService(), responseBodyDiv, response.getJsonBody(), linkFactory);
       } catch (JsonFormatException e) {
         // If JSON processing fails, just say what we know about the data
         responseBodyDiv.add(new Label("[" + contentType + " data]"));
@@ -223,13 +226,42 @@ public class EmbeddedHistoryItemView extends Composite {
     return sb.toString();
   }
 
-  private static ErrorCase getErrorMessage(ApiResponse response) {
+  /**
+   * Describe the attempts which were made when the request was retried, e.g.
+   * " (3 attempts: 503 in 120 ms, 503 in 98 ms, 200 in 150 ms)", or return an empty string if it
+   * was sent only once.
+   */
+  private static String getAttemptsString(ApiRequest request) {
+    List<Attempt> attempts = request.getAttempts();
+    if (attempts.size() < 2) {
+      return "";
+    }
+
+    StringBuilder sb = new StringBuilder(" (").append(attempts.size()).append(" attempts: ");
+    for (int i = 0; i < attempts.size(); i++) {
+      Attempt attempt = attempts.get(i);
+      sb.append(i == 0 ? "" : ", ")
+          .append(attempt.getStatus() == 0 ? "failed" : String.valueOf(attempt.getStatus()))
+          .append(" in ")
+          .append(attempt.getEndTime() - attempt.getStartTime())
+          .append(" ms");
+    }
+    return sb.append(')').toString();
+  }
+
+  /**
+   * Returns the error case for the error payload of the response, or {@code null} if it has none.
+   * Error payloads are looked for whatever the status, since some services report errors in
+   * successful responses.
+   */
+  @VisibleForTesting
+  static ErrorCase getErrorMessage(ApiResponse response) {
     // This requires a try-catch because there is no way to proactively check
     // that the JSON is both present and valid without just trying to parse it.
     try {
-      DynamicJso jso = JsonUtils.safeEval(response.getBodyAsString());
-      if (jso.get("error") != null) {
-        return ErrorCase.forJsonString(response.getBodyAsString());
+      DynamicJso error = response.getParsedBody().get("error");
+      if (error != null) {
+        return ErrorCase.forErrorObject(error);
       }
     } catch (IllegalArgumentException e) {
       // Not valid json, definitely not an error payload.
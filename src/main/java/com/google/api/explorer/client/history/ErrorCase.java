@@ -18,7 +18,6 @@ package com.google.api.explorer.client.history;
 
 import com.google.api.explorer.client.base.dynamicjso.DynamicJso;
 import com.google.common.base.Preconditions;
-import com.google.gwt.core.client.JsonUtils;
 import com.google.gwt.user.client.ui.Label;
 
 /**
@@ -64,8 +63,12 @@ public enum ErrorCase {
     return new Label(prettyMessage);
   }
 
-  static ErrorCase forJsonString(String jsonString) {
-    DynamicJso error = JsonUtils.<DynamicJso>safeEval(jsonString).get("error");
+  /**
+   * Returns the error case which matches the error object of a parsed response body.
+   *
+   * @param error Value of the "error" key of the response.
+   */
+  static ErrorCase forErrorObject(DynamicJso error) {
     int code = error.getInteger("code");
     String message = error.getString("message");
 
@@ -0,0 +1,886 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history;
+
+import com.google.api.explorer.client.Resources;
+import com.google.api.explorer.client.Resources.Css;
+import com.google.api.explorer.client.base.ApiMethod;
+import com.google.api.explorer.client.base.ApiService;
+import com.google.api.explorer.client.base.dynamicjso.DynamicJsArray;
+import com.google.api.explorer.client.base.dynamicjso.DynamicJso;
+import com.google.api.explorer.client.base.dynamicjso.JsVisitor;
+import com.google.api.explorer.client.history.JsonPrettifier.PrettifierLinkFactory;
+import com.google.api.explorer.client.history.format.FormattedJson.Line;
+import com.google.api.explorer.client.history.format.JsonFormatter;
+import com.google.api.explorer.client.history.format.JsonHandler.ScalarType;
+import com.google.api.explorer.client.history.format.JsonMarkup;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArrayString;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.RepeatingCommand;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.EventTarget;
+import com.google.gwt.dom.client.NativeEvent;
+import com.google.gwt.dom.client.NodeList;
+import com.google.gwt.event.dom.client.ClickEvent;
+import com.google.gwt.event.dom.client.ClickHandler;
+import com.google.gwt.safehtml.shared.SafeHtml;
+import com.google.gwt.safehtml.shared.SafeHtmlUtils;
+import com.google.gwt.safehtml.shared.UriUtils;
+import com.google.gwt.user.client.ui.AbstractImagePrototype;
+import com.google.gwt.user.client.ui.HTML;
+import com.google.gwt.user.client.ui.PopupPanel;
+import com.google.gwt.user.client.ui.UIObject;
+import com.google.gwt.user.client.ui.Widget;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rendering engine for {@link JsonPrettifier} which writes the formatted JSON as a single HTML
+ * string of {@link JsonMarkup} instead of building a widget for every token. Collapsing groups,
+ * following explorer links and opening the "reuse this resource" menus are all handled by one
+ * click handler on the root element, which inspects the data attributes of the element that was
+ * clicked.
+ *
+ * <p>Large bodies can be rendered incrementally: the children of expanded groups at any depth are
+ * then rendered a slice at a time from an incremental command, each slice running for at most a
+ * fixed time budget, so that the browser can handle input between slices.
+ *
+ * <p>Alternatively the initial markup can be rendered off the UI thread by {@link JsonWorker}, in
+ * which case this class inserts it, and renders collapsed groups and further pages of arrays from
+ * the parsed body when they are shown.
+ *
+ */
+class JsonHtmlRenderer implements ClickHandler {
+  private static final String TOGGLE_ATTRIBUTE = JsonMarkup.TOGGLE;
+  private static final String CONTENTS_ATTRIBUTE = JsonMarkup.CONTENTS;
+  private static final String PENDING_ATTRIBUTE = JsonMarkup.PENDING;
+  private static final String PLACEHOLDER_ATTRIBUTE = JsonMarkup.PLACEHOLDER;
+  private static final String MENU_ATTRIBUTE = JsonMarkup.MENU;
+  private static final String MORE_ATTRIBUTE = JsonMarkup.MORE;
+  private static final String URL_ATTRIBUTE = JsonMarkup.URL;
+
+  // Attribute of explorer links which are followed by the link factory instead of the browser.
+  private static final String LINK_ATTRIBUTE = "data-json-link";
+
+  /**
+   * Root element of the formatted output, which is a {@code <pre>} instead of the default
+   * {@code <div>}. Incremental rendering only proceeds while the output is attached, so that no
+   * more work is done once the user has navigated away from it.
+   */
+  private class JsonPre extends HTML {
+    public JsonPre(SafeHtml contents) {
+      super(Document.get().createPreElement());
+      setHTML(contents);
+    }
+
+    @Override
+    protected void onLoad() {
+      super.onLoad();
+      attached = true;
+      scheduleSlices();
+    }
+
+    @Override
+    protected void onUnload() {
+      attached = false;
+      super.onUnload();
+    }
+  }
+
+  /**
+   * The contents of an object or array, which may not be rendered until the group is expanded.
+   */
+  private static class Group {
+    final JavaScriptObject value;
+    final boolean isArray;
+    final int depth;
+    final int menuIndex;
+
+    Group(JavaScriptObject value, boolean isArray, int depth, int menuIndex) {
+      this.value = value;
+      this.isArray = isArray;
+      this.depth = depth;
+      this.menuIndex = menuIndex;
+    }
+  }
+
+  /**
+   * An array which has not been rendered in full, and the first item which is still missing.
+   */
+  private static class PagedArray {
+    final DynamicJsArray array;
+    final int depth;
+    final int next;
+
+    PagedArray(DynamicJsArray array, int depth, int next) {
+      this.array = array;
+      this.depth = depth;
+      this.next = next;
+    }
+  }
+
+  /**
+   * An expanded group whose children are being rendered a slice at a time. Children are rendered
+   * to the builder of the formatter, which is appended to the page at the end of every slice.
+   */
+  private class StreamedGroup {
+    final Group group;
+    final boolean hasSeparator;
+    final HtmlFormatter formatter;
+
+    /**
+     * Element the children are appended to, {@code null} while the group has not been appended to
+     * the page yet. In that case the builder starts with the title of the group.
+     */
+    Element contents;
+
+    /** Keys of the object in iteration order, {@code null} for arrays. */
+    final JsArrayString keys;
+
+    /** Number of children, and the number of those which will be rendered. */
+    final int total;
+    final int length;
+    int next = 0;
+
+    StreamedGroup(Group group, boolean hasSeparator, StringBuilder builder) {
+      this.group = group;
+      this.hasSeparator = hasSeparator;
+      this.formatter = new HtmlFormatter(builder, group.depth + 1, this);
+      if (group.isArray) {
+        this.keys = null;
+        this.total = group.value.<DynamicJsArray>cast().length();
+        this.length = Math.min(total, arrayPageSize);
+      } else {
+        this.keys = group.value.<DynamicJso>cast().keys();
+        this.total = keys.length();
+        this.length = total;
+      }
+    }
+
+    boolean isDone() {
+      return next == length;
+    }
+
+    /**
+     * Render the next child, or start streaming it if it is an expanded group.
+     */
+    void renderNext() {
+      int index = next++;
+      if (keys == null) {
+        group.value.<DynamicJsArray>cast().accept(formatter, index, index + 1);
+      } else {
+        group.value.<DynamicJso>cast().accept(formatter, keys, index, index + 1);
+      }
+    }
+
+    /**
+     * Append the control for the rest of a paged array, and close the group if it has not been
+     * appended to the page yet.
+     */
+    void finish() {
+      if (length < total) {
+        appendMoreControl(formatter.builder, group.value.<DynamicJsArray>cast(), length,
+            group.depth + 1);
+      }
+      if (contents == null) {
+        appendGroupEnd(formatter.builder, group, hasSeparator);
+      }
+    }
+
+    /**
+     * Take the output rendered since the last call, leaving the builder empty.
+     */
+    String takeOutput() {
+      String output = formatter.builder.toString();
+      formatter.builder = new StringBuilder();
+      return output;
+    }
+  }
+
+  /**
+   * Visitor which appends the values of an object or array to a builder.
+   */
+  private class HtmlFormatter extends JsVisitor {
+    StringBuilder builder;
+    private final int depth;
+
+    /** Group whose children are being visited if they are being streamed, {@code null} if not. */
+    private final StreamedGroup streamedParent;
+    private int size;
+
+    HtmlFormatter(StringBuilder builder, int depth, StreamedGroup streamedParent) {
+      this.builder = builder;
+      this.depth = depth;
+      this.streamedParent = streamedParent;
+    }
+
+    @Override
+    public void begin(int size) {
+      this.size = size;
+    }
+
+    @Override
+    public void visitNull(int index, String key) {
+      appendScalar(index, key, ScalarType.NULL, "null");
+    }
+
+    @Override
+    public void visitBoolean(int index, String key, boolean value) {
+      appendScalar(index, key, ScalarType.BOOLEAN, String.valueOf(value));
+    }
+
+    @Override
+    public void visitInteger(int index, String key, int value) {
+      appendScalar(index, key, ScalarType.NUMBER, String.valueOf(value));
+    }
+
+    @Override
+    public void visitNumber(int index, String key, double value) {
+      appendScalar(index, key, ScalarType.NUMBER, String.valueOf(value));
+    }
+
+    @Override
+    public void visitString(int index, String key, String value) {
+      appendScalar(index, key, ScalarType.STRING, value);
+    }
+
+    @Override
+    public void visitArray(int index, String key, DynamicJsArray value) {
+      appendChildGroup(index, key, value, true);
+    }
+
+    @Override
+    public void visitObject(int index, String key, DynamicJso value) {
+      appendChildGroup(index, key, value, false);
+    }
+
+    private void appendScalar(int index, String key, ScalarType type, String text) {
+      markup.appendLine(
+          builder, JsonFormatter.scalarLine(depth, key, type, text, hasSeparator(index)));
+    }
+
+    private void appendChildGroup(int index, String key, JavaScriptObject value, boolean isArray) {
+      // Only objects in arrays can be reused as the body of another request.
+      boolean allowMenu = key == null;
+      if (streamedParent != null && depth < collapseDepth) {
+        // Children of expanded groups are streamed at any depth, so that no slice has to render a
+        // large subtree as a whole.
+        StringBuilder childBuilder = new StringBuilder();
+        Group child = appendGroupStart(childBuilder, key, value, isArray, depth, allowMenu);
+        startStreaming(new StreamedGroup(child, hasSeparator(index), childBuilder));
+      } else {
+        appendGroup(builder, key, value, isArray, depth, hasSeparator(index), allowMenu);
+      }
+    }
+
+    private boolean hasSeparator(int index) {
+      return index + 1 < size;
+    }
+  }
+
+  private final ApiService service;
+  private final PrettifierLinkFactory linkFactory;
+  private final Resources resources;
+  private final Css style;
+  private final int collapseDepth;
+  private final int arrayPageSize;
+  private final JsonMarkup markup;
+
+  /** Objects for which a reuse menu button was rendered, indexed by the menu attribute. */
+  private final List<DynamicJso> menuObjects = Lists.newArrayList();
+
+  /** Menus which have already been built, keyed by the menu attribute. */
+  private final Map<Integer, PopupPanel> menus = Maps.newHashMap();
+
+  /** Groups which were rendered collapsed, indexed by the pending attribute. */
+  private final List<Group> pendingGroups = Lists.newArrayList();
+
+  /** Arrays with items left to render, indexed by the more attribute. */
+  private final List<PagedArray> pagedArrays = Lists.newArrayList();
+
+  private Element root;
+
+  /** Groups still being streamed, the innermost one last. */
+  private final List<StreamedGroup> streaming = Lists.newArrayList();
+  private int streamedChildren = 0;
+  private int renderedChildren = 0;
+  private int budgetMillis;
+  private Element progress;
+  private boolean attached = false;
+  private boolean scheduled = false;
+
+  JsonHtmlRenderer(ApiService service,
+      PrettifierLinkFactory linkFactory,
+      Resources resources,
+      int collapseDepth,
+      int arrayPageSize) {
+
+    this.service = service;
+    this.linkFactory = linkFactory;
+    this.resources = resources;
+    this.style = resources.style();
+    this.collapseDepth = collapseDepth;
+    this.arrayPageSize = arrayPageSize;
+    this.markup = new JsonMarkup(markupClasses(style), menuButtonHtml(resources)) {
+      @Override
+      protected void appendLink(StringBuilder out, String url) {
+        if (!appendExplorerLink(out, url)) {
+          super.appendLink(out, url);
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns the class names of the markup, keyed as {@link JsonMarkup} expects them.
+   */
+  private static Map<String, String> markupClasses(Css style) {
+    Map<String, String> classes = Maps.newHashMap();
+    classes.put(JsonMarkup.JSON_KEY, style.jsonKey());
+    classes.put(JsonMarkup.JSON_EXPANDED, style.jsonExpanded());
+    classes.put(JsonMarkup.JSON_COLLAPSED, style.jsonCollapsed());
+    classes.put(JsonMarkup.JSON_NULL, style.jsonNull());
+    classes.put(JsonMarkup.JSON_NUMBER, style.jsonNumber());
+    classes.put(JsonMarkup.JSON_BOOLEAN, style.jsonBoolean());
+    classes.put(JsonMarkup.JSON_STRING, style.jsonString());
+    classes.put(JsonMarkup.JSON_STRING_LINK, style.jsonStringLink());
+    classes.put(JsonMarkup.REUSABLE_RESOURCE, style.reusableResource());
+    classes.put(JsonMarkup.REUSABLE_RESOURCE_BUTTON, style.reusableResourceButton());
+    classes.put(JsonMarkup.CLICKABLE, style.clickable());
+    return classes;
+  }
+
+  private static String menuButtonHtml(Resources resources) {
+    return AbstractImagePrototype.create(resources.downArrow()).getSafeHtml().asString();
+  }
+
+  /**
+   * Returns the options for rendering in the worker, which match the options of this renderer.
+   */
+  JavaScriptObject workerOptions() {
+    DynamicJso classes = JavaScriptObject.createObject().cast();
+    for (Map.Entry<String, String> entry : markupClasses(style).entrySet()) {
+      classes.set(entry.getKey(), entry.getValue());
+    }
+
+    DynamicJso options = JavaScriptObject.createObject().cast();
+    return options.set("classes", classes)
+        .set("collapseDepth", collapseDepth)
+        .set("pageSize", arrayPageSize)
+        .set("menuButtonHtml", menuButtonHtml(resources));
+  }
+
+  /**
+   * Insert the output of the worker for the specified object, and return the widget which contains
+   * it.
+   */
+  Widget renderPrerendered(JsonWorker.Output output, DynamicJso object) {
+    // The worker renders the same markup as this class, which escapes everything.
+    JsonPre pre = new JsonPre(SafeHtmlUtils.fromTrustedString(output.getHtml()));
+    pre.addClickHandler(this);
+    root = pre.getElement();
+    completePrerendered(output, object);
+    return pre;
+  }
+
+  /**
+   * Fill in the parts of markup from the worker which depend on the service, and register the
+   * values which the worker left out so that they are rendered here when shown: links to methods of
+   * the service become explorer links, reuse menus are shown for kinds which some method accepts,
+   * and paging controls get their text.
+   */
+  private void completePrerendered(JsonWorker.Output output, DynamicJso object) {
+    // Menus are numbered in document order, including those of collapsed groups, as they are when
+    // the whole body is rendered here.
+    NodeList<Element> groups =
+        findAll(root, "[" + MENU_ATTRIBUTE + "],[" + PENDING_ATTRIBUTE + "]");
+    for (int i = 0; i < groups.getLength(); i++) {
+      Element element = groups.getItem(i);
+      if (element.hasAttribute(PENDING_ATTRIBUTE)) {
+        JsonWorker.Entry entry =
+            output.getGroup(Integer.parseInt(element.getAttribute(PENDING_ATTRIBUTE)));
+        JavaScriptObject value = entry.find(object);
+        int menuIndex = addMenuObject(value, entry.isArrayGroup(), entry.allowsMenu());
+        if (menuIndex >= 0) {
+          element.addClassName(style.reusableResource());
+        }
+        element.setAttribute(PENDING_ATTRIBUTE, String.valueOf(pendingGroups.size()));
+        pendingGroups.add(new Group(value, entry.isArrayGroup(), entry.getDepth(), menuIndex));
+      } else {
+        JsonWorker.Entry entry =
+            output.getMenu(Integer.parseInt(element.getAttribute(MENU_ATTRIBUTE)));
+        int menuIndex = addMenuObject(entry.find(object), false, true);
+        if (menuIndex >= 0) {
+          element.setAttribute(MENU_ATTRIBUTE, String.valueOf(menuIndex));
+          element.removeAttribute("style");
+          element.getParentElement().addClassName(style.reusableResource());
+        } else {
+          element.removeFromParent();
+        }
+      }
+    }
+
+    NodeList<Element> links = findAll(root, "[" + URL_ATTRIBUTE + "]");
+    for (int i = 0; i < links.getLength(); i++) {
+      Element link = links.getItem(i);
+      String url = link.getAttribute(URL_ATTRIBUTE);
+      link.removeAttribute(URL_ATTRIBUTE);
+      String explorerLink = JsonPrettifier.explorerLinkForUrl(service, url);
+      if (explorerLink != null) {
+        String href = linkFactory.generateHref(explorerLink);
+        link.setClassName(style.jsonStringExplorerLink());
+        link.setAttribute("href", UriUtils.sanitizeUri(href));
+        link.removeAttribute("target");
+        if (isFollowedLocally(href)) {
+          link.setAttribute(LINK_ATTRIBUTE, explorerLink);
+        }
+      }
+    }
+
+    NodeList<Element> controls = findAll(root, "[" + MORE_ATTRIBUTE + "]");
+    for (int i = 0; i < controls.getLength(); i++) {
+      Element control = controls.getItem(i);
+      JsonWorker.Entry entry =
+          output.getPage(Integer.parseInt(control.getAttribute(MORE_ATTRIBUTE)));
+      DynamicJsArray array = entry.find(object).cast();
+      control.setAttribute(MORE_ATTRIBUTE, String.valueOf(pagedArrays.size()));
+      control.setInnerText(JsonPrettifier.moreItemsText(
+          entry.getDepth(), array.length() - entry.getNext(), arrayPageSize) + "\n");
+      pagedArrays.add(new PagedArray(array, entry.getDepth(), entry.getNext()));
+    }
+  }
+
+  private static native NodeList<Element> findAll(Element container, String selector) /*-{
+    return container.querySelectorAll(selector);
+  }-*/;
+
+  /**
+   * Render the specified object, and return the widget which contains the output.
+   */
+  Widget render(DynamicJso object) {
+    StringBuilder builder = new StringBuilder();
+    appendGroup(builder, null, object, false, 0, false, true);
+
+    // JsonMarkup escapes all text, so the output is safe.
+    JsonPre output = new JsonPre(SafeHtmlUtils.fromTrustedString(builder.toString()));
+    output.addClickHandler(this);
+    root = output.getElement();
+    return output;
+  }
+
+  /**
+   * Render the specified object incrementally, and return the widget which will contain the
+   * output. Only the outline of the object is rendered immediately, the rest is rendered once the
+   * widget is attached, in slices of at most the specified duration, with a progress indicator
+   * shown until rendering completes.
+   */
+  Widget renderIncrementally(DynamicJso object, int budgetMillis) {
+    this.budgetMillis = budgetMillis;
+
+    StringBuilder builder = new StringBuilder();
+    Group group = appendGroupStart(builder, null, object, false, 0, true);
+    appendGroupEnd(builder, group, false);
+    builder.append("<span class=\"").append(style.loading()).append("\"></span>");
+
+    JsonPre output = new JsonPre(SafeHtmlUtils.fromTrustedString(builder.toString()));
+    output.addClickHandler(this);
+    root = output.getElement();
+
+    Element wrapper = root.getFirstChildElement();
+    progress = wrapper.getNextSiblingElement();
+    StreamedGroup streamed = new StreamedGroup(group, false, new StringBuilder());
+    streamed.contents = findChild(wrapper, CONTENTS_ATTRIBUTE);
+    startStreaming(streamed);
+    updateProgress();
+    return output;
+  }
+
+  private void scheduleSlices() {
+    if (scheduled || streaming.isEmpty()) {
+      return;
+    }
+    scheduled = true;
+    Scheduler.get().scheduleIncremental(new RepeatingCommand() {
+      @Override
+      public boolean execute() {
+        // Stop when the output is detached, it is resumed if the output is attached again.
+        if (attached) {
+          renderSlice();
+        }
+        scheduled = attached && !streaming.isEmpty();
+        return scheduled;
+      }
+    });
+  }
+
+  /**
+   * Render children of the streamed groups, depth first so that the output fills in from the top,
+   * until either everything has been rendered or the time budget for the slice runs out. At least
+   * one step is taken in every slice.
+   *
+   * @return Whether there is anything left to render.
+   */
+  @VisibleForTesting
+  boolean renderSlice() {
+    if (streaming.isEmpty()) {
+      return false;
+    }
+    double deadline = Duration.currentTimeMillis() + budgetMillis;
+    do {
+      StreamedGroup current = streaming.get(streaming.size() - 1);
+      if (current.isDone()) {
+        current.finish();
+        streaming.remove(streaming.size() - 1);
+        if (current.contents == null) {
+          // The group was rendered within this slice, so it is added to its parent as a whole.
+          streaming.get(streaming.size() - 1).formatter.builder.append(current.takeOutput());
+        } else {
+          appendChunk(current.contents, current.formatter.builder);
+        }
+      } else {
+        renderedChildren++;
+        current.renderNext();
+      }
+    } while (!streaming.isEmpty() && Duration.currentTimeMillis() < deadline);
+
+    flushStreaming();
+    updateProgress();
+    return !streaming.isEmpty();
+  }
+
+  /**
+   * Append everything the streamed groups have rendered so far to the page. Groups which have
+   * not been appended yet are appended with the children they have so far, so that their
+   * remaining children can be appended to their contents in later slices.
+   */
+  private void flushStreaming() {
+    for (int i = 0; i < streaming.size(); i++) {
+      StreamedGroup current = streaming.get(i);
+      StreamedGroup child = i + 1 < streaming.size() ? streaming.get(i + 1) : null;
+      if (child != null && child.contents == null) {
+        StringBuilder builder = current.formatter.builder;
+        builder.append(child.takeOutput());
+        appendGroupEnd(builder, child.group, child.hasSeparator);
+
+        // The child is the last element of the chunk, its outer span is the last node.
+        Element chunk = appendChunk(current.contents, builder);
+        child.contents = findChild(chunk.getLastChild().<Element>cast(), CONTENTS_ATTRIBUTE);
+      } else {
+        appendChunk(current.contents, current.formatter.builder);
+      }
+      current.formatter.builder = new StringBuilder();
+    }
+  }
+
+  private void startStreaming(StreamedGroup streamed) {
+    streaming.add(streamed);
+    streamedChildren += streamed.length;
+  }
+
+  /**
+   * Append the rendered HTML to the end of the specified element, wrapped in a span.
+   *
+   * @return The span which was appended.
+   */
+  private Element appendChunk(Element contents, StringBuilder chunk) {
+    Element span = createChunk(chunk.toString());
+    if (span.hasChildNodes()) {
+      contents.appendChild(span);
+    }
+    return span;
+  }
+
+  private static Element createChunk(String html) {
+    Element span = Document.get().createSpanElement();
+    span.setInnerHTML(html);
+    return span;
+  }
+
+  private void updateProgress() {
+    if (streaming.isEmpty()) {
+      progress.removeFromParent();
+    } else {
+      // Totals grow as nested groups are discovered, so this is an estimate which never reaches
+      // 100 until rendering is actually done.
+      int percent = (int) (100L * renderedChildren / Math.max(1, streamedChildren));
+      progress.setInnerText("Rendering... " + Math.min(percent, 99) + "%");
+    }
+  }
+
+  @Override
+  public void onClick(ClickEvent event) {
+    EventTarget target = event.getNativeEvent().getEventTarget();
+    if (!Element.is(target)) {
+      return;
+    }
+
+    // Find the closest element which has one of our behaviors attached.
+    for (Element current = Element.as(target); current != null && current != root;
+        current = current.getParentElement()) {
+
+      if (current.hasAttribute(TOGGLE_ATTRIBUTE) || current.hasAttribute(PLACEHOLDER_ATTRIBUTE)) {
+        toggleGroup(current.getParentElement());
+        return;
+      } else if (current.hasAttribute(MENU_ATTRIBUTE)) {
+        showMenu(current, Integer.parseInt(current.getAttribute(MENU_ATTRIBUTE)));
+        return;
+      } else if (current.hasAttribute(MORE_ATTRIBUTE)) {
+        showMoreItems(current);
+        return;
+      } else if (current.hasAttribute(LINK_ATTRIBUTE)) {
+        // Clicks with modifiers or other buttons are left to the browser, e.g. to open a new tab.
+        if (isPlainClick(event.getNativeEvent())) {
+          event.preventDefault();
+          linkFactory.generateMenuHandler(current.getAttribute(LINK_ATTRIBUTE)).onClick(event);
+        }
+        return;
+      }
+    }
+  }
+
+  private static boolean isPlainClick(NativeEvent event) {
+    return event.getButton() == NativeEvent.BUTTON_LEFT && !event.getCtrlKey()
+        && !event.getMetaKey() && !event.getShiftKey() && !event.getAltKey();
+  }
+
+  /**
+   * Returns whether the explorer follows a link with the specified URL itself, which is the case
+   * for links to a fragment of the current page. Other links are followed by the browser.
+   */
+  private static boolean isFollowedLocally(String href) {
+    return href.startsWith("#");
+  }
+
+  /**
+   * Expand or collapse the group contained in the specified element, rendering the contents first
+   * if they were deferred.
+   */
+  private void toggleGroup(Element group) {
+    Element title = findChild(group, TOGGLE_ATTRIBUTE);
+    Element contents = findChild(group, CONTENTS_ATTRIBUTE);
+    Element placeholder = findChild(group, PLACEHOLDER_ATTRIBUTE);
+
+    boolean makeVisible = !UIObject.isVisible(contents);
+    if (makeVisible && contents.hasAttribute(PENDING_ATTRIBUTE)) {
+      int pendingIndex = Integer.parseInt(contents.getAttribute(PENDING_ATTRIBUTE));
+      StringBuilder builder = new StringBuilder();
+      appendContents(builder, pendingGroups.get(pendingIndex));
+      contents.setInnerHTML(builder.toString());
+      contents.removeAttribute(PENDING_ATTRIBUTE);
+    }
+
+    title.setClassName(titleClassName(makeVisible));
+    UIObject.setVisible(contents, makeVisible);
+    UIObject.setVisible(placeholder, !makeVisible);
+  }
+
+  /**
+   * Replace the control at the end of a partially rendered array with the next page of items, and
+   * a new control if there are still items left.
+   */
+  private void showMoreItems(Element control) {
+    int pageIndex = Integer.parseInt(control.getAttribute(MORE_ATTRIBUTE));
+    PagedArray paged = pagedArrays.get(pageIndex);
+    pagedArrays.set(pageIndex, null);
+
+    int length = paged.array.length();
+    int end = paged.next + Math.min(arrayPageSize, length - paged.next);
+    StringBuilder builder = new StringBuilder();
+    paged.array.accept(new HtmlFormatter(builder, paged.depth, null), paged.next, end);
+    appendMoreControl(builder, paged.array, end, paged.depth);
+
+    control.getParentElement().insertBefore(createChunk(builder.toString()), control);
+    control.removeFromParent();
+  }
+
+  private static Element findChild(Element group, String attribute) {
+    for (Element child = group.getFirstChildElement(); child != null;
+        child = child.getNextSiblingElement()) {
+      if (child.hasAttribute(attribute)) {
+        return child;
+      }
+    }
+    return null;
+  }
+
+  private void showMenu(Element menuButton, int menuIndex) {
+    PopupPanel menu = menus.get(menuIndex);
+    if (menu == null) {
+      DynamicJso object = menuObjects.get(menuIndex);
+      Collection<ApiMethod> methods = JsonPrettifier.computeCompatibleMethods(object, service);
+      menu = JsonPrettifier.createMenuPopup(methods, service, object, linkFactory);
+      menus.put(menuIndex, menu);
+    }
+    JsonPrettifier.showMenuPopup(menu, menuButton);
+  }
+
+  private String titleClassName(boolean expanded) {
+    return style.jsonKey() + " " + (expanded ? style.jsonExpanded() : style.jsonCollapsed());
+  }
+
+  /**
+   * Append an object or array including its title, contents, placeholder and closing line.
+   *
+   * @return The group which was appended.
+   */
+  private Group appendGroup(StringBuilder builder,
+      String key,
+      JavaScriptObject value,
+      boolean isArray,
+      int depth,
+      boolean hasSeparator,
+      boolean allowMenu) {
+
+    Group group = appendGroupStart(builder, key, value, isArray, depth, allowMenu);
+    if (!isCollapsed(group)) {
+      appendChildren(builder, group);
+    }
+    appendGroupEnd(builder, group, hasSeparator);
+    return group;
+  }
+
+  private boolean isCollapsed(Group group) {
+    return group.depth >= collapseDepth;
+  }
+
+  /**
+   * Append the title of a group and open its contents, followed by the menu button if the group
+   * is expanded. The children are appended next, unless the group is collapsed.
+   *
+   * @return The group which was started.
+   */
+  private Group appendGroupStart(StringBuilder builder,
+      String key,
+      JavaScriptObject value,
+      boolean isArray,
+      int depth,
+      boolean allowMenu) {
+
+    int menuIndex = addMenuObject(value, isArray, allowMenu);
+    Group group = new Group(value, isArray, depth, menuIndex);
+    boolean collapsed = isCollapsed(group);
+
+    Line open = JsonFormatter.openLine(depth, key, isArray);
+    markup.appendGroupStart(builder, open, collapsed, pendingGroups.size(), menuIndex >= 0);
+    if (collapsed) {
+      pendingGroups.add(group);
+    } else {
+      appendMenuButton(builder, group);
+    }
+    return group;
+  }
+
+  /**
+   * Close the contents of a group, and append its placeholder and closing line.
+   */
+  private void appendGroupEnd(StringBuilder builder, Group group, boolean hasSeparator) {
+    Line close = JsonFormatter.closeLine(group.depth, group.isArray, hasSeparator);
+    markup.appendGroupEnd(builder, close, isCollapsed(group));
+  }
+
+  /**
+   * Register the value for a reuse menu if it is an object which some method of the service
+   * accepts.
+   *
+   * @return The menu attribute of the value, or -1 if it does not get a menu.
+   */
+  private int addMenuObject(JavaScriptObject value, boolean isArray, boolean allowMenu) {
+    // Only objects can be reused as the body of another request.
+    if (!allowMenu || isArray) {
+      return -1;
+    }
+    DynamicJso object = value.cast();
+    if (JsonPrettifier.computeCompatibleMethods(object, service).isEmpty()) {
+      return -1;
+    }
+    menuObjects.add(object);
+    return menuObjects.size() - 1;
+  }
+
+  private void appendMenuButton(StringBuilder builder, Group group) {
+    if (group.menuIndex >= 0) {
+      markup.appendMenuButton(builder, group.menuIndex, false);
+    }
+  }
+
+  /**
+   * Append the menu button (if any) and the children of the group.
+   */
+  private void appendContents(StringBuilder builder, Group group) {
+    appendMenuButton(builder, group);
+    appendChildren(builder, group);
+  }
+
+  private void appendChildren(StringBuilder builder, Group group) {
+    int childDepth = group.depth + 1;
+    HtmlFormatter formatter = new HtmlFormatter(builder, childDepth, null);
+    if (group.isArray) {
+      DynamicJsArray array = group.value.cast();
+      int shown = Math.min(array.length(), arrayPageSize);
+      array.accept(formatter, 0, shown);
+      appendMoreControl(builder, array, shown, childDepth);
+    } else {
+      group.value.<DynamicJso>cast().accept(formatter);
+    }
+  }
+
+  /**
+   * Append the control which renders the next page of items, if the array has items from the
+   * specified index onwards.
+   */
+  private void appendMoreControl(StringBuilder builder, DynamicJsArray array, int next,
+      int depth) {
+
+    int remaining = array.length() - next;
+    if (remaining <= 0) {
+      return;
+    }
+    markup.appendMoreControl(builder, pagedArrays.size(),
+        JsonPrettifier.moreItemsText(depth, remaining, arrayPageSize));
+    pagedArrays.add(new PagedArray(array, depth, next));
+  }
+
+  /**
+   * Append the anchor of a link which leads to the explorer, if the URL references a method of the
+   * service.
+   *
+   * @return Whether the link was appended.
+   */
+  private boolean appendExplorerLink(StringBuilder builder, String url) {
+    String explorerLink = JsonPrettifier.explorerLinkForUrl(service, url);
+    if (explorerLink == null) {
+      return false;
+    }
+    String href = linkFactory.generateHref(explorerLink);
+    builder.append("<a class=\"").append(style.jsonStringExplorerLink()).append("\" href=\"")
+        .append(JsonMarkup.escape(UriUtils.sanitizeUri(href))).append('"');
+    if (isFollowedLocally(href)) {
+      builder.append(' ').append(LINK_ATTRIBUTE).append("=\"")
+          .append(JsonMarkup.escape(explorerLink)).append('"');
+    }
+    builder.append('>').append(JsonMarkup.escape(url)).append("</a>");
+    return true;
+  }
+}
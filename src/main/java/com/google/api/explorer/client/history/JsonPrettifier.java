@@ -19,13 +19,19 @@ package com.google.api.explorer.client.history;
 import com.google.api.explorer.client.Resources;
 import com.google.api.explorer.client.Resources.Css;
 import com.google.api.explorer.client.base.ApiMethod;
-import com.google.api.explorer.client.base.ApiMethod.HttpMethod;
 import com.google.api.explorer.client.base.ApiService;
 import com.google.api.explorer.client.base.Config;
+import com.google.api.explorer.client.base.JsonBody;
+import com.google.api.explorer.client.base.MethodRouteTable;
+import com.google.api.explorer.client.base.MethodRouteTable.Match;
 import com.google.api.explorer.client.base.Schema;
 import com.google.api.explorer.client.base.dynamicjso.DynamicJsArray;
 import com.google.api.explorer.client.base.dynamicjso.DynamicJso;
-import com.google.api.explorer.client.base.dynamicjso.JsType;
+import com.google.api.explorer.client.base.dynamicjso.JsVisitor;
+import com.google.api.explorer.client.history.format.FormattedJson.Line;
+import com.google.api.explorer.client.history.format.FormattedJson.LineType;
+import com.google.api.explorer.client.history.format.JsonFormatter;
+import com.google.api.explorer.client.history.format.JsonHandler.ScalarType;
 import com.google.api.explorer.client.routing.HistoryWrapper;
 import com.google.api.explorer.client.routing.HistoryWrapperImpl;
 import com.google.api.explorer.client.routing.URLFragment;
@@ -33,21 +39,23 @@ import com.google.api.explorer.client.routing.UrlBuilder;
 import com.google.api.explorer.client.routing.UrlBuilder.RootNavigationItem;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Predicate;
-import com.google.common.base.Strings;
-import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMultimap;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.gwt.core.client.GWT;
-import com.google.gwt.core.client.JsonUtils;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.dom.client.Element;
 import com.google.gwt.event.dom.client.ClickEvent;
 import com.google.gwt.event.dom.client.ClickHandler;
 import com.google.gwt.event.dom.client.MouseOutEvent;
 import com.google.gwt.event.dom.client.MouseOutHandler;
+import com.google.gwt.event.logical.shared.AttachEvent;
+import com.google.gwt.event.shared.HandlerRegistration;
 import com.google.gwt.json.client.JSONObject;
-import com.google.gwt.json.client.JSONString;
+import com.google.gwt.user.client.History;
 import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.ui.Anchor;
 import com.google.gwt.user.client.ui.FlowPanel;
@@ -66,7 +74,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -84,13 +92,70 @@ public class JsonPrettifier {
     }
   }
 
-  private static final String PLACEHOLDER_TEXT = "...";
-  private static final String SEPARATOR_TEXT = ",";
-  private static final String OPEN_IN_NEW_WINDOW = "_blank";
+  static final String PLACEHOLDER_TEXT = JsonFormatter.PLACEHOLDER_TEXT;
+  static final String SEPARATOR_TEXT = JsonFormatter.SEPARATOR_TEXT;
+  static final String OPEN_IN_NEW_WINDOW = "_blank";
   private static final HistoryWrapper history = new HistoryWrapperImpl();
 
+  /** Value for {@link #setCollapseDepth(int)} which will render every group expanded. */
+  public static final int NEVER_COLLAPSE = Integer.MAX_VALUE;
+
+  /**
+   * Collapse depth used by the explorer. The members of the items of a typical list response are
+   * shown, while objects and arrays nested within them are only rendered once they are expanded.
+   */
+  public static final int DEFAULT_COLLAPSE_DEPTH = 3;
+
+  /** Value for {@link #setArrayPageSize(int)} which will render every item of an array. */
+  public static final int SHOW_ALL_ITEMS = Integer.MAX_VALUE;
+
+  /** Number of array items rendered at a time by the explorer. */
+  public static final int DEFAULT_ARRAY_PAGE_SIZE = 100;
+
+  /** Value for {@link #setIncrementalBudgetMillis(int)} which will render everything at once. */
+  public static final int RENDER_SYNCHRONOUSLY = 0;
+
+  /**
+   * Time budget per slice which leaves room for the browser to handle input and paint within a
+   * single frame.
+   */
+  public static final int DEFAULT_INCREMENTAL_BUDGET_MILLIS = 12;
+
+  /**
+   * Bodies shorter than this are always rendered at once on the UI thread, since they render
+   * within a frame.
+   */
+  private static final int LARGE_BODY_LENGTH = 64 * 1024;
+
+  /**
+   * Rendering engines which can be used to produce the formatted output.
+   */
+  public enum Engine {
+    /** Build a tree of widgets, with one widget for every key, value and separator. */
+    WIDGETS,
+
+    /**
+     * Build a single HTML string in a {@code <pre>} element, with all interaction handled by one
+     * delegated click handler. This is much cheaper for large responses.
+     */
+    HTML,
+  }
+
   private static Css style;
   private static Resources resources;
+  private static int collapseDepth = NEVER_COLLAPSE;
+  private static Engine engine = Engine.WIDGETS;
+  private static int incrementalBudgetMillis = RENDER_SYNCHRONOUSLY;
+  private static int arrayPageSize = SHOW_ALL_ITEMS;
+  private static boolean useWorker = false;
+
+  /**
+   * Methods compatible with each kind, for the service which was most recently formatted. Only one
+   * service is kept because responses are almost always formatted for the service on screen.
+   */
+  private static ApiService compatibleMethodsService;
+  private static final Map<String, Collection<ApiMethod>> compatibleMethodsByKind =
+      Maps.newHashMap();
 
   /**
    * Factory that can be used to manufacture link information that can vary between the full and
@@ -106,6 +171,13 @@ public class JsonPrettifier {
      * Generate an anchor widget which will redirect to the fragment specified when clicked.
      */
     Widget generateAnchor(String embeddingText, String fragment);
+
+    /**
+     * Generate the URL of the anchor which {@link #generateAnchor} creates for the fragment, for
+     * links which are written as HTML instead of widgets. Links to a fragment of the current page,
+     * whose URL starts with "#", are followed with the handler from {@link #generateMenuHandler}.
+     */
+    String generateHref(String fragment);
   }
 
   /**
@@ -127,6 +199,11 @@ public class JsonPrettifier {
     public Widget generateAnchor(String embeddingText, String fragment) {
       return new InlineHyperlink(embeddingText, fragment);
     }
+
+    @Override
+    public String generateHref(String fragment) {
+      return "#" + History.encodeHistoryToken(fragment);
+    }
   };
 
   /**
@@ -149,26 +226,45 @@ public class JsonPrettifier {
       return new Anchor(embeddingText, createFullLink(fragment));
     }
 
+    @Override
+    public String generateHref(String fragment) {
+      return createFullLink(fragment);
+    }
+
     private String createFullLink(String fragment) {
       return Config.EXPLORER_URL + "#" + fragment;
     }
   };
 
 
+  /**
+   * Click handler which toggles the visibility of a group. When the group was rendered collapsed,
+   * the children will not have been built yet, and are generated the first time it is expanded.
+   */
   private static class Collapser implements ClickHandler {
-    private final Widget toHide;
+    private final Panel toHide;
     private final Widget placeHolder;
     private final Widget clicker;
+    private Iterable<Widget> pendingChildren;
+
+    public Collapser(Panel toHide,
+        Widget placeHolder,
+        Widget clicker,
+        @Nullable Iterable<Widget> pendingChildren) {
 
-    public Collapser(Widget toHide, Widget placeHolder, Widget clicker) {
       this.toHide = toHide;
       this.placeHolder = placeHolder;
       this.clicker = clicker;
+      this.pendingChildren = pendingChildren;
     }
 
     @Override
     public void onClick(ClickEvent arg0) {
       boolean makeVisible = !toHide.isVisible();
+      if (makeVisible && pendingChildren != null) {
+        addChildren(toHide, pendingChildren);
+        pendingChildren = null;
+      }
       decorateCollapserControl(clicker, makeVisible);
       toHide.setVisible(makeVisible);
       placeHolder.setVisible(!makeVisible);
@@ -185,6 +281,124 @@ public class JsonPrettifier {
     }
   }
 
+  /**
+   * Click handler for the control at the end of a partially rendered array, which adds the next
+   * page of items and moves the control after them.
+   */
+  private static class ArrayPager implements ClickHandler {
+    private final Panel contents;
+    private final JsArrayIterable array;
+    private int next = 0;
+    private Widget control;
+
+    public ArrayPager(Panel contents, JsArrayIterable array) {
+      this.contents = contents;
+      this.array = array;
+    }
+
+    @Override
+    public void onClick(ClickEvent event) {
+      addNextPage();
+    }
+
+    public void addNextPage() {
+      if (control != null) {
+        contents.remove(control);
+        control = null;
+      }
+
+      int length = array.backingObj.length();
+      int end = next + Math.min(arrayPageSize, length - next);
+      for (Widget item : array.format(next, end)) {
+        contents.add(item);
+      }
+      next = end;
+
+      if (next < length) {
+        Label showMore = new Label(moreItemsText(array.depth, length - next, arrayPageSize));
+        showMore.addStyleName(style.clickable());
+        showMore.addClickHandler(this);
+        control = showMore;
+        contents.add(control);
+      }
+    }
+  }
+
+  /**
+   * Visitor which formats the values of an object or array into one widget per value.
+   */
+  private static class WidgetFormatter extends JsVisitor {
+    private final ApiService service;
+    private final int depth;
+    private final PrettifierLinkFactory linkFactory;
+    private final List<Widget> widgets = Lists.newArrayList();
+    private int size;
+
+    public WidgetFormatter(ApiService service, int depth, PrettifierLinkFactory linkFactory) {
+      this.service = service;
+      this.depth = depth;
+      this.linkFactory = linkFactory;
+    }
+
+    @Override
+    public void begin(int size) {
+      this.size = size;
+    }
+
+    @Override
+    public void visitNull(int index, String key) {
+      addScalar(index, key, ScalarType.NULL, "null");
+    }
+
+    @Override
+    public void visitBoolean(int index, String key, boolean value) {
+      addScalar(index, key, ScalarType.BOOLEAN, String.valueOf(value));
+    }
+
+    @Override
+    public void visitInteger(int index, String key, int value) {
+      addScalar(index, key, ScalarType.NUMBER, String.valueOf(value));
+    }
+
+    @Override
+    public void visitNumber(int index, String key, double value) {
+      addScalar(index, key, ScalarType.NUMBER, String.valueOf(value));
+    }
+
+    @Override
+    public void visitString(int index, String key, String value) {
+      addScalar(index, key, ScalarType.STRING, value);
+    }
+
+    @Override
+    public void visitArray(int index, String key, DynamicJsArray value) {
+      widgets.add(formatGroup(new JsArrayIterable(service, value, depth + 1, linkFactory),
+          JsonFormatter.openLine(depth, key, true), hasSeparator(index), null));
+    }
+
+    @Override
+    public void visitObject(int index, String key, DynamicJso value) {
+      // Determine if an object in an array can be used as the request parameter for another
+      // method.
+      Widget menuFromMethods = null;
+      if (key == null) {
+        Collection<ApiMethod> compatibleMethods = computeCompatibleMethods(value, service);
+        menuFromMethods = createRequestMenu(compatibleMethods, service, value, linkFactory);
+      }
+      widgets.add(formatGroup(new JsObjectIterable(service, value, depth + 1, linkFactory),
+          JsonFormatter.openLine(depth, key, false), hasSeparator(index), menuFromMethods));
+    }
+
+    private void addScalar(int index, String key, ScalarType type, String text) {
+      Line line = JsonFormatter.scalarLine(depth, key, type, text, hasSeparator(index));
+      widgets.add(lineWidget(service, line, linkFactory));
+    }
+
+    private boolean hasSeparator(int index) {
+      return index + 1 < size;
+    }
+  }
+
   /**
    * This abstraction of an array creates formatted widgets from all children.
    */
@@ -204,34 +418,16 @@ public class JsonPrettifier {
 
     @Override
     public Iterator<Widget> iterator() {
-      return new Iterator<Widget>() {
-        private int nextOffset = 0;
-
-        @Override
-        public boolean hasNext() {
-          return nextOffset < backingObj.length();
-        }
-
-        @Override
-        public Widget next() {
-          if (!hasNext()) {
-            throw new NoSuchElementException();
-          }
-          Widget next = formatArrayValue(service,
-              backingObj,
-              nextOffset,
-              depth,
-              nextOffset + 1 < backingObj.length(),
-              linkFactory);
-          nextOffset++;
-          return next;
-        }
+      return format(0, backingObj.length()).iterator();
+    }
 
-        @Override
-        public void remove() {
-          throw new UnsupportedOperationException();
-        }
-      };
+    /**
+     * Create the widgets for the items between the start (inclusive) and end (exclusive) indices.
+     */
+    public List<Widget> format(int start, int end) {
+      WidgetFormatter formatter = new WidgetFormatter(service, depth, linkFactory);
+      backingObj.accept(formatter, start, end);
+      return formatter.widgets;
     }
   }
 
@@ -255,31 +451,9 @@ public class JsonPrettifier {
 
     @Override
     public Iterator<Widget> iterator() {
-      return new Iterator<Widget>() {
-         int nextOffset = 0;
-
-        @Override
-        public boolean hasNext() {
-          return nextOffset < backingObj.keys().length();
-        }
-
-        @Override
-        public Widget next() {
-          if (!hasNext()) {
-            throw new NoSuchElementException();
-          }
-          Widget next =
-              formatValue(service, backingObj, backingObj.keys().get(nextOffset), depth,
-                  nextOffset + 1 < backingObj.keys().length(), linkFactory);
-          nextOffset++;
-          return next;
-        }
-
-        @Override
-        public void remove() {
-          throw new UnsupportedOperationException();
-        }
-      };
+      WidgetFormatter formatter = new WidgetFormatter(service, depth, linkFactory);
+      backingObj.accept(formatter);
+      return formatter.widgets.iterator();
     }
   }
 
@@ -294,6 +468,64 @@ public class JsonPrettifier {
     JsonPrettifier.style = resources.style();
   }
 
+  /**
+   * Set the depth at which objects and arrays will be rendered collapsed. The contents of a
+   * collapsed group are not generated until the user expands it for the first time, which keeps
+   * the cost of formatting large responses proportional to what is actually shown.
+   *
+   * @param collapseDepth Nesting depth at or below which groups start out collapsed, the root
+   *        object is depth 0. Use {@link #NEVER_COLLAPSE} to render everything expanded.
+   */
+  public static void setCollapseDepth(int collapseDepth) {
+    Preconditions.checkArgument(collapseDepth > 0, "The root object cannot be collapsed.");
+    JsonPrettifier.collapseDepth = collapseDepth;
+  }
+
+  /**
+   * Set the engine which will be used to render formatted output.
+   */
+  public static void setEngine(Engine engine) {
+    JsonPrettifier.engine = Preconditions.checkNotNull(engine);
+  }
+
+  /**
+   * Set the maximum time which may be spent rendering large bodies before yielding to the browser.
+   * Large bodies are then rendered by an incremental command over as many slices as necessary, with
+   * a progress indicator shown until they are complete, and rendering stops if the output is
+   * removed from the page. Only supported by the {@link Engine#HTML} engine.
+   *
+   * @param budgetMillis Time budget for each slice, or {@link #RENDER_SYNCHRONOUSLY} to render
+   *        bodies of any size in one go.
+   */
+  public static void setIncrementalBudgetMillis(int budgetMillis) {
+    Preconditions.checkArgument(budgetMillis >= 0, "The time budget cannot be negative.");
+    JsonPrettifier.incrementalBudgetMillis = budgetMillis;
+  }
+
+  /**
+   * Set the number of items of an array which are rendered at first. The remaining items are
+   * rendered a page of the same size at a time, when the user clicks the control at the end of the
+   * array, so the initial cost of rendering an array is bounded no matter how long it is.
+   *
+   * @param pageSize Number of items per page, or {@link #SHOW_ALL_ITEMS} to always render every
+   *        item.
+   */
+  public static void setArrayPageSize(int pageSize) {
+    Preconditions.checkArgument(pageSize > 0, "The page size must be positive.");
+    JsonPrettifier.arrayPageSize = pageSize;
+  }
+
+  /**
+   * Set whether large bodies should be rendered in a web worker, so that the UI thread only has to
+   * insert the result. Collapsed groups and further pages of arrays are still rendered on the UI
+   * thread when they are shown. Bodies are rendered on the UI thread as usual when the browser
+   * cannot start the worker, or when the worker fails. Only supported by the {@link Engine#HTML}
+   * engine.
+   */
+  public static void setUseWorker(boolean useWorker) {
+    JsonPrettifier.useWorker = useWorker;
+  }
+
   /**
    * Entry point for the formatter.
    *
@@ -307,6 +539,24 @@ public class JsonPrettifier {
       ApiService service, Panel destination, String jsonString, PrettifierLinkFactory linkFactory)
       throws JsonFormatException {
 
+    prettify(service, destination, new JsonBody(jsonString), linkFactory);
+  }
+
+  /**
+   * Entry point for the formatter which uses a body that may already have been parsed, such as
+   * the body of an {@link com.google.api.explorer.client.base.ApiResponse}, so that the same JSON
+   * is not evaluated more than once.
+   *
+   * @param destination Destination GWT object where the results will be placed
+   * @param body Body to format
+   * @param linkFactory Which links factory should be used when generating links and navigation
+   *        menus.
+   * @throws JsonFormatException when parsing the Json causes an error
+   */
+  public static void prettify(
+      ApiService service, Panel destination, JsonBody body, PrettifierLinkFactory linkFactory)
+      throws JsonFormatException {
+
     // Make sure the user set a style before invoking prettify.
     Preconditions.checkState(style != null, "Must call setStyle before using.");
 
@@ -314,34 +564,141 @@ public class JsonPrettifier {
     Preconditions.checkNotNull(destination);
 
     // Don't bother syntax highlighting empty text.
-    boolean empty = Strings.isNullOrEmpty(jsonString);
+    boolean empty = body.isEmpty();
     destination.setVisible(!empty);
     if (empty) {
       return;
     }
 
+    // Even when the worker renders the body, it is parsed here so that invalid bodies are reported
+    // to the caller. Parsing is cheap compared to rendering, and the parsed body is shared with the
+    // other views of the response.
+    DynamicJso root;
+    try {
+      root = body.getValue();
+    } catch (IllegalArgumentException e) {
+      // JsonUtils will throw an IllegalArgumentException when it gets invalid
+      // Json data. Rewrite as a checked exception and throw.
+      throw new JsonFormatException("Invalid json.", e);
+    }
+
     if (!GWT.isScript()) {
-      // Syntax highlighting is *very* slow in Development Mode (~30s for large
-      // responses), but very fast when compiled and run as JS (~30ms). For the
-      // sake of my sanity, syntax highlighting is disabled in Development
-      destination.add(new InlineLabel(jsonString));
+      // Widgets are *very* slow in Development Mode (~30s for large responses), so the body is
+      // rendered with the same code as the worker and only the resulting markup is inserted.
+      prettifyInPage(service, destination, body, linkFactory);
+    } else if (engine == Engine.HTML && useWorker && isLarge(body) && JsonWorker.get() != null) {
+      prettifyInWorker(service, destination, body, linkFactory);
+    } else if (engine == Engine.HTML) {
+      JsonHtmlRenderer renderer =
+          new JsonHtmlRenderer(service, linkFactory, resources, collapseDepth, arrayPageSize);
+      destination.add(renderHtml(renderer, body));
     } else {
+      Collection<ApiMethod> compatibleMethods = computeCompatibleMethods(root, service);
+      Widget menuForMethods = createRequestMenu(compatibleMethods, service, root, linkFactory);
+      JsObjectIterable rootObject = new JsObjectIterable(service, root, 1, linkFactory);
+      Line open = JsonFormatter.openLine(0, null, false);
+      Widget object = formatGroup(rootObject, open, false, menuForMethods);
+      destination.add(object);
+    }
+  }
+
+  private static boolean isLarge(JsonBody body) {
+    return body.getText().length() >= LARGE_BODY_LENGTH;
+  }
+
+  /**
+   * Render the body, which must be valid JSON, on the UI thread, incrementally if it is large
+   * enough.
+   */
+  private static Widget renderHtml(JsonHtmlRenderer renderer, JsonBody body) {
+    DynamicJso root = body.getValue();
+    boolean incremental = incrementalBudgetMillis != RENDER_SYNCHRONOUSLY && isLarge(body);
+    return incremental
+        ? renderer.renderIncrementally(root, incrementalBudgetMillis) : renderer.render(root);
+  }
+
+  /**
+   * Render the body, which must be valid JSON, in the worker, and fall back to rendering it on the
+   * UI thread if that fails.
+   */
+  private static void prettifyInWorker(ApiService service,
+      final Panel destination,
+      final JsonBody body,
+      PrettifierLinkFactory linkFactory) {
 
-      try {
-        DynamicJso root = JsonUtils.<DynamicJso>safeEval(jsonString);
-        Collection<ApiMethod> compatibleMethods = computeCompatibleMethods(root, service);
-        Widget menuForMethods = createRequestMenu(compatibleMethods, service, root, linkFactory);
-        JsObjectIterable rootObject = new JsObjectIterable(service, root, 1, linkFactory);
-        Widget object = formatGroup(rootObject, "", 0, "{", "}", false, menuForMethods);
-        destination.add(object);
-      } catch (IllegalArgumentException e) {
-        // JsonUtils will throw an IllegalArgumentException when it gets invalid
-        // Json data. Rewrite as a checked exception and throw.
-        throw new JsonFormatException("Invalid json.", e);
+    final JsonHtmlRenderer renderer =
+        new JsonHtmlRenderer(service, linkFactory, resources, collapseDepth, arrayPageSize);
+    final Label progress = new InlineLabel("Formatting...");
+    progress.addStyleName(style.loading());
+    destination.add(progress);
+
+    JsonWorker.get().render(body.getText(), renderer.workerOptions(), new JsonWorker.Callback() {
+      @Override
+      public void onRendered(final JsonWorker.Output output) {
+        whenAttached(destination, new ScheduledCommand() {
+          @Override
+          public void execute() {
+            progress.removeFromParent();
+            destination.add(renderer.renderPrerendered(output, body.getValue()));
+          }
+        });
+      }
+
+      @Override
+      public void onFailure(String reason) {
+        whenAttached(destination, new ScheduledCommand() {
+          @Override
+          public void execute() {
+            progress.removeFromParent();
+            destination.add(renderHtml(renderer, body));
+          }
+        });
       }
+    });
+  }
+
+  /**
+   * Render the body, which must be valid JSON, with the code of the worker but on the UI thread.
+   * The raw text is shown if that fails.
+   */
+  private static void prettifyInPage(ApiService service,
+      Panel destination,
+      JsonBody body,
+      PrettifierLinkFactory linkFactory) {
+
+    JsonHtmlRenderer renderer =
+        new JsonHtmlRenderer(service, linkFactory, resources, collapseDepth, arrayPageSize);
+    JsonWorker.Output output = JsonWorker.renderInPage(body.getText(), renderer.workerOptions());
+    if (output.getError() == null) {
+      destination.add(renderer.renderPrerendered(output, body.getValue()));
+    } else {
+      destination.add(new InlineLabel(body.getText()));
     }
   }
 
+  /**
+   * Run the command now if the widget is attached, or when it is attached again otherwise. Output
+   * for a view which the user navigated away from while the worker was busy is never built, and is
+   * garbage collected along with the view.
+   */
+  private static void whenAttached(Widget widget, final ScheduledCommand command) {
+    if (widget.isAttached()) {
+      command.execute();
+      return;
+    }
+
+    final HandlerRegistration[] registration = new HandlerRegistration[1];
+    registration[0] = widget.addAttachHandler(new AttachEvent.Handler() {
+      @Override
+      public void onAttachOrDetach(AttachEvent event) {
+        if (event.isAttached()) {
+          registration[0].removeHandler();
+          command.execute();
+        }
+      }
+    });
+  }
+
   /**
    * Check the provided javascript object for a "kind" key and, and find all methods from the
    * provided service that accept the specified type for the request body.
@@ -350,37 +707,51 @@ public class JsonPrettifier {
    * @param service Service for which we want to find compatible methods.
    * @return Matching methods that accept the object type as an input, or an empty collection.
    */
-  private static Collection<ApiMethod> computeCompatibleMethods(
+  static Collection<ApiMethod> computeCompatibleMethods(
       DynamicJso object, ApiService service) {
 
     String kind = object.getString(Schema.KIND_KEY);
-    if (kind != null) {
-      return service.usagesOfKind(kind);
-    } else {
+    if (kind == null) {
       return Collections.emptyList();
     }
+    return compatibleMethodsForKind(kind, service);
+  }
+
+  /**
+   * Find all methods from the provided service that accept the specified kind for the request
+   * body.
+   */
+  static Collection<ApiMethod> compatibleMethodsForKind(String kind, ApiService service) {
+    if (service != compatibleMethodsService) {
+      compatibleMethodsByKind.clear();
+      compatibleMethodsService = service;
+    }
+
+    Collection<ApiMethod> methods = compatibleMethodsByKind.get(kind);
+    if (methods == null) {
+      methods = service.usagesOfKind(kind);
+      compatibleMethodsByKind.put(kind, methods);
+    }
+    return methods;
   }
 
   /**
    * Iterate through an object or array adding the widgets generated for all children
    */
   private static FlowPanel formatGroup(Iterable<Widget> objIterable,
-      String title,
-      int depth,
-      String openGroup,
-      String closeGroup,
+      Line open,
       boolean hasSeparator,
       @Nullable Widget menuButtonForReuse) {
 
+    int depth = open.getDepth();
     FlowPanel object = new FlowPanel();
 
     FlowPanel titlePanel = new FlowPanel();
-    Label paddingSpaces = new InlineLabel(indentation(depth));
+    Label paddingSpaces = new InlineLabel(open.getIndentation());
     titlePanel.add(paddingSpaces);
 
-    Label titleLabel = new InlineLabel(title + openGroup);
+    Label titleLabel = new InlineLabel(open.getTitle() + open.getText());
     titleLabel.addStyleName(style.jsonKey());
-    Collapser.decorateCollapserControl(titleLabel, true);
     titlePanel.add(titleLabel);
 
     object.add(titlePanel);
@@ -392,242 +763,182 @@ public class JsonPrettifier {
       objectContents.add(menuButtonForReuse);
     }
 
-    for (Widget child : objIterable) {
-      objectContents.add(child);
+    // Groups which are deep enough to start collapsed defer building their children until they
+    // are expanded for the first time.
+    boolean collapsed = depth >= collapseDepth;
+    if (!collapsed) {
+      addChildren(objectContents, objIterable);
     }
+    objectContents.setVisible(!collapsed);
+    Collapser.decorateCollapserControl(titleLabel, !collapsed);
     object.add(objectContents);
 
     InlineLabel placeholder = new InlineLabel(indentation(depth + 1) + PLACEHOLDER_TEXT);
-    ClickHandler collapsingHandler = new Collapser(objectContents, placeholder, titleLabel);
-    placeholder.setVisible(false);
+    ClickHandler collapsingHandler =
+        new Collapser(objectContents, placeholder, titleLabel, collapsed ? objIterable : null);
+    placeholder.setVisible(collapsed);
     placeholder.addClickHandler(collapsingHandler);
     object.add(placeholder);
 
     titleLabel.addClickHandler(collapsingHandler);
 
-    StringBuilder closingLabelText = new StringBuilder(indentation(depth)).append(closeGroup);
-    if (hasSeparator) {
-      closingLabelText.append(SEPARATOR_TEXT);
-    }
-
-    object.add(new Label(closingLabelText.toString()));
+    boolean isArray = open.getType() == LineType.OPEN_ARRAY;
+    object.add(new Label(JsonFormatter.closeLine(depth, isArray, hasSeparator).toText()));
 
     return object;
   }
 
-  private static Widget formatArrayValue(ApiService service,
-      DynamicJsArray obj,
-      int index,
-      int depth,
-      boolean hasSeparator,
-      PrettifierLinkFactory linkFactory) {
-
-    JsType type = obj.typeofIndex(index);
-    if (type == null) {
-      return simpleInline("", "null", style.jsonNull(), depth, hasSeparator);
-    }
-    String title = "";
-    switch (type) {
-      case NUMBER:
-        return simpleInline(
-            title, String.valueOf(obj.getDouble(index)), style.jsonNumber(), depth, hasSeparator);
-
-      case INTEGER:
-        return simpleInline(
-            title, String.valueOf(obj.getInteger(index)), style.jsonNumber(), depth, hasSeparator);
-
-      case BOOLEAN:
-        return simpleInline(
-            title, String.valueOf(obj.getBoolean(index)), style.jsonBoolean(), depth, hasSeparator);
-
-      case STRING:
-        return inlineWidget(
-            title, formatString(service, obj.getString(index), linkFactory), depth, hasSeparator);
-
-      case ARRAY:
-        return formatGroup(
-            new JsArrayIterable(service, obj.<DynamicJsArray>get(index), depth + 1, linkFactory),
-            title, depth, "[", "]", hasSeparator, null);
-
-      case OBJECT:
-        DynamicJso subObject = obj.<DynamicJso>get(index);
-
-        // Determine if this object can be used as the request parameter for another method.
-        Collection<ApiMethod> compatibleMethods = computeCompatibleMethods(subObject, service);
-        Widget menuFromMethods =
-            createRequestMenu(compatibleMethods, service, subObject, linkFactory);
-        JsObjectIterable objIter = new JsObjectIterable(service, subObject, depth + 1, linkFactory);
-        return formatGroup(objIter, title, depth, "{", "}", hasSeparator, menuFromMethods);
-    }
-    return new FlowPanel();
-  }
-
-  private static Widget formatValue(ApiService service,
-      DynamicJso obj,
-      String key,
-      int depth,
-      boolean hasSeparator,
-      PrettifierLinkFactory linkFactory) {
-
-    JsType type = obj.typeofKey(key);
-    if (type == null) {
-      return simpleInline(titleString(key), "null", style.jsonNull(), depth, hasSeparator);
-    }
-    String title = titleString(key);
-    switch (type) {
-      case NUMBER:
-        return simpleInline(
-            title, String.valueOf(obj.getDouble(key)), style.jsonNumber(), depth, hasSeparator);
-
-      case INTEGER:
-        return simpleInline(
-            title, String.valueOf(obj.getInteger(key)), style.jsonNumber(), depth, hasSeparator);
-
-      case BOOLEAN:
-        return simpleInline(
-            title, String.valueOf(obj.getBoolean(key)), style.jsonBoolean(), depth, hasSeparator);
-
-      case STRING:
-        return inlineWidget(
-            title, formatString(service, obj.getString(key), linkFactory), depth, hasSeparator);
-
-      case ARRAY:
-        return formatGroup(
-            new JsArrayIterable(service, obj.<DynamicJsArray>get(key), depth + 1, linkFactory),
-            title, depth, "[", "]", hasSeparator, null);
-
-      case OBJECT:
-        DynamicJso subObject = obj.<DynamicJso>get(key);
-
-        // Determine if this object can be used as the request parameter for another method.
-        Collection<ApiMethod> compatibleMethods = computeCompatibleMethods(subObject, service);
-        JsObjectIterable objIter = new JsObjectIterable(service, subObject, depth + 1, linkFactory);
-        return formatGroup(objIter, title, depth, "{", "}", hasSeparator, null);
+  /**
+   * Add the widgets for the children of a group to its contents. Arrays only get their first page
+   * of items, followed by a control which adds the next page.
+   */
+  private static void addChildren(Panel contents, Iterable<Widget> children) {
+    if (children instanceof JsArrayIterable) {
+      new ArrayPager(contents, (JsArrayIterable) children).addNextPage();
+    } else {
+      for (Widget child : children) {
+        contents.add(child);
+      }
     }
-    return new FlowPanel();
   }
 
-  private static Widget simpleInline(
-      String title, String inlineText, String style, int depth, boolean hasSeparator) {
-    Widget valueLabel = new InlineLabel(inlineText);
-    valueLabel.addStyleName(style);
-    return inlineWidget(title, Lists.newArrayList(valueLabel), depth, hasSeparator);
+  /**
+   * Text of the control which renders the next page of items of an array.
+   *
+   * @param depth Depth of the items of the array.
+   * @param remaining Number of items which have not been rendered yet.
+   * @param pageSize Number of items rendered per page by the engine which shows the control.
+   */
+  static String moreItemsText(int depth, int remaining, int pageSize) {
+    int nextPage = Math.min(pageSize, remaining);
+    return indentation(depth) + "Show next " + nextPage + (nextPage == 1 ? " item" : " items")
+        + " (" + remaining + " remaining)";
   }
 
-  private static Widget inlineWidget(
-      String title, List<Widget> inlineWidgets, int depth, boolean hasSeparator) {
+  /**
+   * Create the widget for a line which holds a value that is not an object or an array.
+   */
+  private static Widget lineWidget(
+      ApiService service, Line line, PrettifierLinkFactory linkFactory) {
 
     FlowPanel inlinePanel = new FlowPanel();
 
-    StringBuilder keyText = new StringBuilder(indentation(depth)).append(title);
-    InlineLabel keyLabel = new InlineLabel(keyText.toString());
+    InlineLabel keyLabel = new InlineLabel(line.getIndentation() + line.getTitle());
     keyLabel.addStyleName(style.jsonKey());
     inlinePanel.add(keyLabel);
 
-    for (Widget child : inlineWidgets) {
-      inlinePanel.add(child);
+    if (line.getType() == LineType.LINK) {
+      inlinePanel.add(new InlineLabel("\""));
+      String explorerLink = explorerLinkForUrl(service, line.getText());
+      if (explorerLink != null) {
+        Widget linkObject = linkFactory.generateAnchor(line.getText(), explorerLink);
+        linkObject.addStyleName(style.jsonStringExplorerLink());
+        inlinePanel.add(linkObject);
+      } else {
+        Anchor linkObject = new Anchor(line.getText(), line.getText(), OPEN_IN_NEW_WINDOW);
+        linkObject.addStyleName(style.jsonStringLink());
+        inlinePanel.add(linkObject);
+      }
+      inlinePanel.add(new InlineLabel("\""));
+    } else {
+      Widget valueLabel = new InlineLabel(line.getText());
+      valueLabel.addStyleName(valueStyleName(line.getType()));
+      inlinePanel.add(valueLabel);
     }
 
-    if (hasSeparator) {
+    if (line.hasSeparator()) {
       inlinePanel.add(new InlineLabel(SEPARATOR_TEXT));
     }
 
     return inlinePanel;
   }
 
-  private static String indentation(int depth) {
-    return Strings.repeat(" ", depth);
+  private static String valueStyleName(LineType type) {
+    switch (type) {
+      case NULL:
+        return style.jsonNull();
+      case BOOLEAN:
+        return style.jsonBoolean();
+      case NUMBER:
+        return style.jsonNumber();
+      default:
+        return style.jsonString();
+    }
   }
 
-  private static List<Widget> formatString(
-      ApiService service, String rawText, PrettifierLinkFactory linkFactory) {
-
-    if (isLink(rawText)) {
-      List<Widget> response = Lists.newArrayList();
-      response.add(new InlineLabel("\""));
-
-      boolean createdExplorerLink = false;
-      try {
-        ApiMethod method = getMethodForUrl(service, rawText);
-        if (method != null) {
-          String explorerLink = createExplorerLink(service, rawText, method);
-          Widget linkObject = linkFactory.generateAnchor(rawText, explorerLink);
-          linkObject.addStyleName(style.jsonStringExplorerLink());
-          response.add(linkObject);
-          createdExplorerLink = true;
-        }
-      } catch (IndexOutOfBoundsException e) {
-        // Intentionally blank - this will only happen when iterating the method
-        // url template in parallel with the url components and you run out of
-        // components
-      }
-
-      if (!createdExplorerLink) {
-        Anchor linkObject = new Anchor(rawText, rawText, OPEN_IN_NEW_WINDOW);
-        linkObject.addStyleName(style.jsonStringLink());
-        response.add(linkObject);
-      }
-
-      response.add(new InlineLabel("\""));
-      return response;
-    } else {
-      JSONString encoded = new JSONString(rawText);
-      Widget stringText = new InlineLabel(encoded.toString());
-      stringText.addStyleName(style.jsonString());
-      return Lists.newArrayList(stringText);
-    }
+  static String indentation(int depth) {
+    return JsonFormatter.indentation(depth);
   }
 
-  private static String titleString(String name) {
-    return "\"" + name + "\": ";
+  /**
+   * Returns the explorer link token for the method which the url references, or {@code null} if
+   * the url does not correspond to a method of the service.
+   */
+  @Nullable
+  static String explorerLinkForUrl(ApiService service, String url) {
+    Match match = matchUrl(service, url);
+    return match == null
+        ? null : buildExplorerLink(service, url, match.getMethod(), match.getParameters());
   }
 
   /**
    * Attempts to identify an {@link ApiMethod} corresponding to the given url.
-   * If one is found, a {@link java.util.Map.Entry} will be returned where the key is the
-   * name of the method, and the value is the {@link ApiMethod} itself. If no
-   * method is found, this will return {@code null}.
+   * If one is found, the {@link ApiMethod} will be returned. If no method is
+   * found, this will return {@code null}.
    */
   @VisibleForTesting
   static ApiMethod getMethodForUrl(ApiService service, String url) {
+    Match match = matchUrl(service, url);
+    return match == null ? null : match.getMethod();
+  }
+
+  /**
+   * Match the url against the precompiled path templates of the GET methods of the service, since
+   * those are the only ones that can be returned in the response.
+   */
+  @Nullable
+  private static Match matchUrl(ApiService service, String url) {
+    String path = relativePath(service, url);
+    return path == null ? null : MethodRouteTable.forService(service).match(path);
+  }
+
+  /**
+   * Returns the path of the url relative to the base path of the service, without the query
+   * string, or {@code null} if the url does not point at the service.
+   */
+  @Nullable
+  private static String relativePath(ApiService service, String url) {
     String apiLinkPrefix = Config.getBaseUrl() + service.basePath();
     if (!url.startsWith(apiLinkPrefix)) {
       return null;
     }
 
-    // Only check GET methods since those are the only ones that can be returned
-    // in the response.
-    Iterable<ApiMethod> getMethods =
-        Iterables.filter(service.allMethods().values(), new Predicate<ApiMethod>() {
-          @Override
-          public boolean apply(ApiMethod input) {
-            return input.getHttpMethod() == HttpMethod.GET;
-          }
-        });
-
     int paramIndex = url.indexOf("?");
-    String path = url.substring(0, paramIndex > 0 ? paramIndex : url.length());
-    for (ApiMethod method : getMethods) {
-      // Try to match the request URL with its method by comparing it to the
-      // method's rest base path URI template. To do this we have to remove the
-      // {...} placeholders.
-      String regex =
-          apiLinkPrefix + method.getPath().replaceAll("\\{[^\\/]+\\}", "[^\\/]+");
-      if (path.matches(regex)) {
-        return method;
-      }
-    }
-    return null;
+    return url.substring(apiLinkPrefix.length(), paramIndex > 0 ? paramIndex : url.length());
   }
 
   /**
    * Creates an Explorer link token (e.g.,
    * #s/<service>/<version>/<method>) corresponding to the given request
-   * URL, given the method name and method definition returned by
+   * URL, given the method definition returned by
    * {@link #getMethodForUrl(ApiService, String)}.
    */
   @VisibleForTesting
   static String createExplorerLink(ApiService service, String url, ApiMethod method) {
+    ListMultimap<String, String> params = null;
+    String path = relativePath(service, url);
+    if (path != null) {
+      params = MethodRouteTable.forService(service).extractParameters(method, path);
+    }
+    if (params == null) {
+      params = ImmutableListMultimap.of();
+    }
+    return buildExplorerLink(service, url, method, params);
+  }
+
+  private static String buildExplorerLink(
+      ApiService service, String url, ApiMethod method, Multimap<String, String> params) {
+
     UrlBuilder builder = new UrlBuilder();
 
     // Add the basic information to the
@@ -635,26 +946,11 @@ public class JsonPrettifier {
         .addService(service.getName(), service.getVersion())
         .addMethodName(method.getId());
 
-    // Calculate the params from the path template and url.
-    URLFragment parsed = URLFragment.parseFragment(url);
-    Multimap<String, String> params = HashMultimap.create();
-    String pathTemplate = method.getPath();
-    if (pathTemplate.contains("{")) {
-      String urlPath = parsed.getPath().replaceFirst(Config.getBaseUrl() + service.basePath(), "");
-      String[] templateSections = pathTemplate.split("/");
-      String[] urlSections = urlPath.split("/");
-      for (int i = 0; i < templateSections.length; i++) {
-        if (templateSections[i].contains("{")) {
-          String paramName = templateSections[i].substring(1, templateSections[i].length() - 1);
-          params.put(paramName, urlSections[i]);
-        }
-      }
-    }
-
-    // Apply the params.
+    // Apply the params calculated from the path template and url.
     String fullUrl = builder.addQueryParams(params).toString();
 
     // Check if the url had query parameters to add.
+    URLFragment parsed = URLFragment.parseFragment(url);
     if (!parsed.getQueryString().isEmpty()) {
       fullUrl = fullUrl + parsed.getQueryString();
     }
@@ -662,11 +958,6 @@ public class JsonPrettifier {
     return fullUrl;
   }
 
-  private static boolean isLink(String value) {
-    return (value.startsWith("http://") || value.startsWith("https://")) && !value.contains("\n")
-        && !value.contains("\t");
-  }
-
   /**
    * Create a drop down menu that allows the user to navigate to compatible methods for the
    * specified resource.
@@ -679,13 +970,49 @@ public class JsonPrettifier {
    *         compatible methods.
    */
   private static PushButton createRequestMenu(final Collection<ApiMethod> methods,
-      final ApiService service, DynamicJso objectToPackage, PrettifierLinkFactory linkFactory) {
+      final ApiService service, final DynamicJso objectToPackage,
+      final PrettifierLinkFactory linkFactory) {
 
     // Determine if a menu even needs to be generated.
     if (methods.isEmpty()) {
       return null;
     }
 
+    // Create the button which will disclose the menu.
+    final PushButton menuButton = new PushButton(new Image(resources.downArrow()));
+    menuButton.addStyleName(style.reusableResourceButton());
+
+    // The menu, and the serialized copy of the resource it links to, are only created the first
+    // time that the button is clicked since most resources will never be reused.
+    menuButton.addClickHandler(new ClickHandler() {
+      private PopupPanel popupMenu;
+
+      @Override
+      public void onClick(ClickEvent event) {
+        if (popupMenu == null) {
+          popupMenu = createMenuPopup(methods, service, objectToPackage, linkFactory);
+        }
+        showMenuPopup(popupMenu, menuButton.getElement());
+      }
+    });
+
+    // Return only the button to the caller.
+    return menuButton;
+  }
+
+  /**
+   * Create the popup panel which lists the compatible methods for the specified resource.
+   *
+   * @param methods Methods for which to build the menu, must not be empty.
+   * @param service Service to which the methods correspond.
+   * @param objectToPackage Object which should be passed to the destination menus.
+   * @param linkFactory Factory that will be used to create links.
+   */
+  static PopupPanel createMenuPopup(Collection<ApiMethod> methods,
+      ApiService service, DynamicJso objectToPackage, PrettifierLinkFactory linkFactory) {
+
+    Preconditions.checkArgument(!methods.isEmpty());
+
     // Create the parameters that will be passed to the destination menu.
     String resourceContents = new JSONObject(objectToPackage).toString();
     final Multimap<String, String> resourceParams =
@@ -732,26 +1059,20 @@ public class JsonPrettifier {
     focusContents.setWidget(menuContents);
 
     popupMenu.setWidget(focusContents);
+    return popupMenu;
+  }
 
-    // Create the button which will disclose the menu.
-    final PushButton menuButton = new PushButton(new Image(resources.downArrow()));
-    menuButton.addStyleName(style.reusableResourceButton());
-
-    menuButton.addClickHandler(new ClickHandler() {
+  /**
+   * Show the popup menu right aligned underneath the element which disclosed it.
+   */
+  static void showMenuPopup(final PopupPanel popupMenu, final Element menuButton) {
+    popupMenu.setPopupPositionAndShow(new PositionCallback() {
       @Override
-      public void onClick(ClickEvent event) {
-        popupMenu.setPopupPositionAndShow(new PositionCallback() {
-          @Override
-          public void setPosition(int offsetWidth, int offsetHeight) {
-            popupMenu.setPopupPosition(
-                menuButton.getAbsoluteLeft() + menuButton.getOffsetWidth() - offsetWidth,
-                menuButton.getAbsoluteTop() + menuButton.getOffsetHeight());
-          }
-        });
+      public void setPosition(int offsetWidth, int offsetHeight) {
+        popupMenu.setPopupPosition(
+            menuButton.getAbsoluteLeft() + menuButton.getOffsetWidth() - offsetWidth,
+            menuButton.getAbsoluteTop() + menuButton.getOffsetHeight());
       }
     });
-
-    // Return only the button to the caller.
-    return menuButton;
   }
 }
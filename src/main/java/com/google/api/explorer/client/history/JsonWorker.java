@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history;
+
+import com.google.api.explorer.client.history.worker.JsonWorkerEntryPoint;
+import com.google.common.collect.Maps;
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.JavaScriptObject;
+
+import java.util.Map;
+
+/**
+ * Client for the web worker compiled from the {@code JsonWorker} module, which renders large
+ * bodies to the markup of {@link JsonHtmlRenderer} off the UI thread. Only what is initially
+ * visible is rendered by the worker, collapsed groups and further pages of arrays are rendered by
+ * {@link JsonHtmlRenderer} when they are shown. A single worker is started on first use and shared
+ * by all requests.
+ *
+ */
+class JsonWorker {
+  // The worker module is compiled next to this one.
+  private static final String SCRIPT_PATH = "../jsonworker/jsonworker.js";
+
+  /**
+   * Receives the result of rendering a body in the worker.
+   */
+  interface Callback {
+    void onRendered(Output output);
+
+    /**
+     * Called when the body could not be rendered in the worker, either because it is not a JSON
+     * object or because the worker itself failed.
+     */
+    void onFailure(String reason);
+  }
+
+  /**
+   * The reply from the worker, see {@link JsonWorkerEntryPoint} for the format.
+   */
+  static class Output extends JavaScriptObject {
+    protected Output() {
+    }
+
+    final native int getId() /*-{
+      return this.id;
+    }-*/;
+
+    final native String getError() /*-{
+      return this.error || null;
+    }-*/;
+
+    final native String getHtml() /*-{
+      return this.html;
+    }-*/;
+
+    /** Returns the collapsed group whose contents have the specified pending attribute. */
+    final native Entry getGroup(int index) /*-{
+      return this.groups[index];
+    }-*/;
+
+    /** Returns the array whose paging control has the specified more attribute. */
+    final native Entry getPage(int index) /*-{
+      return this.pages[index];
+    }-*/;
+
+    /** Returns the object whose menu button has the specified menu attribute. */
+    final native Entry getMenu(int index) /*-{
+      return this.menus[index];
+    }-*/;
+  }
+
+  /**
+   * A value which the worker left for the page to render, see
+   * {@link com.google.api.explorer.client.history.format.JsonPrerenderer} for which properties are
+   * set for each kind of value.
+   */
+  static class Entry extends JavaScriptObject {
+    protected Entry() {
+    }
+
+    /** Returns the value, found by following the path of the entry from the root of the body. */
+    final native JavaScriptObject find(JavaScriptObject root) /*-{
+      var value = root;
+      for (var i = 0; i < this.path.length; i++) {
+        value = value[this.path[i]];
+      }
+      return value;
+    }-*/;
+
+    final native int getDepth() /*-{
+      return this.depth;
+    }-*/;
+
+    final native boolean isArrayGroup() /*-{
+      return !!this.isArray;
+    }-*/;
+
+    final native boolean allowsMenu() /*-{
+      return !!this.allowMenu;
+    }-*/;
+
+    /** Returns the index of the first item of the array which was not rendered. */
+    final native int getNext() /*-{
+      return this.next;
+    }-*/;
+  }
+
+  private static JsonWorker instance;
+
+  /** The worker, or {@code null} if it could not be started. */
+  private final JavaScriptObject worker;
+  private final Map<Integer, Callback> outstanding = Maps.newHashMap();
+  private int nextId = 0;
+  private boolean failed = false;
+
+  /**
+   * Returns the shared worker, or {@code null} if web workers are not available.
+   */
+  static JsonWorker get() {
+    if (instance == null) {
+      instance = new JsonWorker(createWorker(GWT.getModuleBaseURL() + SCRIPT_PATH));
+      if (instance.worker != null) {
+        instance.listen(instance.worker);
+      }
+    }
+    return instance.worker == null || instance.failed ? null : instance;
+  }
+
+  private JsonWorker(JavaScriptObject worker) {
+    this.worker = worker;
+  }
+
+  /**
+   * Parse and render the specified body in the worker.
+   *
+   * @param options Rendering options, see {@link JsonWorkerEntryPoint}.
+   */
+  void render(String text, JavaScriptObject options, Callback callback) {
+    int id = nextId++;
+    outstanding.put(id, callback);
+    post(worker, id, text, options);
+  }
+
+  /**
+   * Render the specified body on the UI thread with the same code as the worker, and return the
+   * reply the worker would have sent.
+   *
+   * @param options Rendering options, see {@link JsonWorkerEntryPoint}.
+   */
+  static Output renderInPage(String text, JavaScriptObject options) {
+    return JsonWorkerEntryPoint.renderJson(createRequest(text, options)).cast();
+  }
+
+  private void onMessage(Output output) {
+    Callback callback = outstanding.remove(output.getId());
+    if (callback == null) {
+      return;
+    }
+    if (output.getError() != null) {
+      callback.onFailure(output.getError());
+    } else {
+      callback.onRendered(output);
+    }
+  }
+
+  /**
+   * The worker failed outside of a request, most likely because the script could not be loaded.
+   * Nothing will be sent to it again, and outstanding requests fall back to the UI thread.
+   */
+  private void onWorkerError(String message) {
+    failed = true;
+    Map<Integer, Callback> failedCallbacks = Maps.newHashMap(outstanding);
+    outstanding.clear();
+    for (Callback callback : failedCallbacks.values()) {
+      callback.onFailure(message);
+    }
+  }
+
+  private static native JavaScriptObject createWorker(String url) /*-{
+    if (!$wnd.Worker) {
+      return null;
+    }
+    try {
+      return new $wnd.Worker(url);
+    } catch (e) {
+      // Browsers refuse to start workers from another origin, e.g. in the embedded explorer.
+      return null;
+    }
+  }-*/;
+
+  private native void listen(JavaScriptObject worker) /*-{
+    var self = this;
+    worker.onmessage = $entry(function(event) {
+      self.@com.google.api.explorer.client.history.JsonWorker::onMessage(Lcom/google/api/explorer/client/history/JsonWorker$Output;)(event.data);
+    });
+    worker.onerror = $entry(function(event) {
+      self.@com.google.api.explorer.client.history.JsonWorker::onWorkerError(Ljava/lang/String;)(
+          String(event.message));
+    });
+  }-*/;
+
+  private static native JavaScriptObject createRequest(String text, JavaScriptObject options) /*-{
+    return {id: 0, text: text, options: options};
+  }-*/;
+
+  private static native void post(
+      JavaScriptObject worker, int id, String text, JavaScriptObject options) /*-{
+    worker.postMessage({id: id, text: text, options: options});
+  }-*/;
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history.format;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Render model for a JSON document, produced by {@link JsonFormatter}. The document is broken into
+ * the lines of its pretty printed form, each of which carries its indentation depth, key, the type
+ * of its token and whether it ends with a separator, so that views only decide how each type of
+ * line is presented.
+ *
+ */
+public class FormattedJson {
+
+  /**
+   * Types of the token on each line.
+   */
+  public enum LineType {
+    OPEN_OBJECT, CLOSE_OBJECT, OPEN_ARRAY, CLOSE_ARRAY, NULL, BOOLEAN, NUMBER, STRING,
+
+    /** A string which is an absolute http or https URL. */
+    LINK;
+
+    public boolean isOpen() {
+      return this == OPEN_OBJECT || this == OPEN_ARRAY;
+    }
+
+    public boolean isClose() {
+      return this == CLOSE_OBJECT || this == CLOSE_ARRAY;
+    }
+  }
+
+  /**
+   * One line of the formatted document. Lines are created by {@link JsonFormatter}, either while
+   * it formats a document or for views which walk an already parsed document themselves.
+   */
+  public static class Line {
+    private final int depth;
+    private final String key;
+    private final LineType type;
+    private final String text;
+    private final boolean hasSeparator;
+
+    Line(int depth, String key, LineType type, String text, boolean hasSeparator) {
+      this.depth = depth;
+      this.key = key;
+      this.type = type;
+      this.text = text;
+      this.hasSeparator = hasSeparator;
+    }
+
+    /** Returns the nesting depth of the line, which is zero for the root value. */
+    public int getDepth() {
+      return depth;
+    }
+
+    /** Returns the key of the value, or {@code null} for array items, the root and close lines. */
+    public String getKey() {
+      return key;
+    }
+
+    public LineType getType() {
+      return type;
+    }
+
+    /**
+     * Returns the text of the token. Strings are quoted and escaped as they would be in JSON,
+     * except for links, which are the unescaped URL so that they can be used as an href.
+     */
+    public String getText() {
+      return text;
+    }
+
+    /** Returns whether the value is followed by another value in the same object or array. */
+    public boolean hasSeparator() {
+      return hasSeparator;
+    }
+
+    /** Returns the spaces which indent the line. */
+    public String getIndentation() {
+      return JsonFormatter.indentation(depth);
+    }
+
+    /** Returns the key of the value followed by a colon, or an empty string if it has no key. */
+    public String getTitle() {
+      return key == null ? "" : JsonFormatter.titleString(key);
+    }
+
+    /**
+     * Returns the line as plain text, without a trailing line break.
+     */
+    public String toText() {
+      StringBuilder sb = new StringBuilder(getIndentation()).append(getTitle());
+      sb.append(type == LineType.LINK ? "\"" + text + "\"" : text);
+      if (hasSeparator) {
+        sb.append(JsonFormatter.SEPARATOR_TEXT);
+      }
+      return sb.toString();
+    }
+  }
+
+  private final List<Line> lines;
+
+  FormattedJson(List<Line> lines) {
+    this.lines = Collections.unmodifiableList(new ArrayList<Line>(lines));
+  }
+
+  public List<Line> getLines() {
+    return lines;
+  }
+
+  /**
+   * Returns the whole document as plain text, with one line break after every line.
+   */
+  public String toText() {
+    StringBuilder sb = new StringBuilder();
+    for (Line line : lines) {
+      sb.append(line.toText()).append('\n');
+    }
+    return sb.toString();
+  }
+}
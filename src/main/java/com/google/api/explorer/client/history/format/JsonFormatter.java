@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history.format;
+
+import com.google.api.explorer.client.history.format.FormattedJson.Line;
+import com.google.api.explorer.client.history.format.FormattedJson.LineType;
+import com.google.api.explorer.client.history.format.JsonHandler.ScalarType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Formats JSON into the lines of the {@link FormattedJson} render model. The formatter is written
+ * in plain Java, without widgets, JSNI or libraries beyond the JRE emulation, so that the same
+ * formatting runs in the web worker, on the UI thread, in Development Mode and in JVM tests and
+ * benchmarks.
+ *
+ * <p>Lines are passed to a {@link LineHandler} as soon as they are complete, so that views can
+ * render a document while it is being parsed. Views which walk an already parsed document create
+ * their lines with the static factory methods instead.
+ *
+ */
+public class JsonFormatter implements JsonHandler {
+  public static final String SEPARATOR_TEXT = ",";
+  public static final String PLACEHOLDER_TEXT = "...";
+
+  private static final String SPACES = "                                ";
+
+  /**
+   * Receives the lines of a document in document order.
+   */
+  public interface LineHandler {
+    void line(Line line);
+  }
+
+  private final LineHandler handler;
+  private int depth = 0;
+
+  public JsonFormatter(LineHandler handler) {
+    this.handler = handler;
+  }
+
+  /**
+   * Format the specified JSON text.
+   *
+   * @throws IllegalArgumentException when the text is not valid JSON.
+   */
+  public static FormattedJson format(String json) {
+    final List<Line> lines = new ArrayList<Line>();
+    JsonParser.parse(json, new JsonFormatter(new LineHandler() {
+      @Override
+      public void line(Line line) {
+        lines.add(line);
+      }
+    }));
+    return new FormattedJson(lines);
+  }
+
+  @Override
+  public void startObject(String key) {
+    handler.line(openLine(depth++, key, false));
+  }
+
+  @Override
+  public void endObject(boolean hasSeparator) {
+    handler.line(closeLine(--depth, false, hasSeparator));
+  }
+
+  @Override
+  public void startArray(String key) {
+    handler.line(openLine(depth++, key, true));
+  }
+
+  @Override
+  public void endArray(boolean hasSeparator) {
+    handler.line(closeLine(--depth, true, hasSeparator));
+  }
+
+  @Override
+  public void scalar(String key, ScalarType type, String text, boolean hasSeparator) {
+    handler.line(scalarLine(depth, key, type, text, hasSeparator));
+  }
+
+  /**
+   * Returns the line which opens an object or array.
+   */
+  public static Line openLine(int depth, String key, boolean isArray) {
+    return isArray
+        ? new Line(depth, key, LineType.OPEN_ARRAY, "[", false)
+        : new Line(depth, key, LineType.OPEN_OBJECT, "{", false);
+  }
+
+  /**
+   * Returns the line which closes an object or array.
+   */
+  public static Line closeLine(int depth, boolean isArray, boolean hasSeparator) {
+    return isArray
+        ? new Line(depth, null, LineType.CLOSE_ARRAY, "]", hasSeparator)
+        : new Line(depth, null, LineType.CLOSE_OBJECT, "}", hasSeparator);
+  }
+
+  /**
+   * Returns the line of a value which is not an object or an array.
+   *
+   * @param text The literal text of null, boolean and number values, or the unescaped contents of
+   *        a string.
+   */
+  public static Line scalarLine(
+      int depth, String key, ScalarType type, String text, boolean hasSeparator) {
+    switch (type) {
+      case NULL:
+        return new Line(depth, key, LineType.NULL, text, hasSeparator);
+
+      case BOOLEAN:
+        return new Line(depth, key, LineType.BOOLEAN, text, hasSeparator);
+
+      case NUMBER:
+        return new Line(depth, key, LineType.NUMBER, text, hasSeparator);
+
+      default:
+        return isLink(text)
+            ? new Line(depth, key, LineType.LINK, text, hasSeparator)
+            : new Line(depth, key, LineType.STRING, quote(text), hasSeparator);
+    }
+  }
+
+  public static String indentation(int depth) {
+    if (depth <= SPACES.length()) {
+      return SPACES.substring(0, depth);
+    }
+    StringBuilder sb = new StringBuilder(depth);
+    for (int i = 0; i < depth; i++) {
+      sb.append(' ');
+    }
+    return sb.toString();
+  }
+
+  public static String titleString(String name) {
+    return "\"" + name + "\": ";
+  }
+
+  public static boolean isLink(String value) {
+    return (value.startsWith("http://") || value.startsWith("https://")) && !value.contains("\n")
+        && !value.contains("\t");
+  }
+
+  /**
+   * Returns the string quoted and escaped as a JSON string literal.
+   */
+  public static String quote(String value) {
+    StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\b':
+          sb.append("\\b");
+          break;
+        case '\f':
+          sb.append("\\f");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < ' ') {
+            String hex = Integer.toHexString(c);
+            sb.append("\\u");
+            for (int padding = hex.length(); padding < 4; padding++) {
+              sb.append('0');
+            }
+            sb.append(hex);
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    return sb.append('"').toString();
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history.format;
+
+/**
+ * Receives the structure of a JSON document as a stream of events, in document order.
+ *
+ * <p>
+ * Every event receives the key of the value when it belongs to an object, or {@code null} when it
+ * is an item of an array or the root of the document. The events which end a value report
+ * whether another value follows it in the same object or array, so that handlers can emit each
+ * value as soon as it ends.
+ * </p>
+ *
+ */
+public interface JsonHandler {
+
+  /**
+   * Types of the values which do not contain other values.
+   */
+  enum ScalarType {
+    NULL, BOOLEAN, NUMBER, STRING;
+  }
+
+  void startObject(String key);
+
+  /**
+   * @param hasSeparator Whether the object is followed by another value in the same parent.
+   */
+  void endObject(boolean hasSeparator);
+
+  void startArray(String key);
+
+  /**
+   * @param hasSeparator Whether the array is followed by another value in the same parent.
+   */
+  void endArray(boolean hasSeparator);
+
+  /**
+   * Called for every value which is not an object or an array.
+   *
+   * @param text The literal text of null, boolean and number values, or the unescaped contents of
+   *        a string.
+   * @param hasSeparator Whether the value is followed by another value in the same parent.
+   */
+  void scalar(String key, ScalarType type, String text, boolean hasSeparator);
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history.format;
+
+import com.google.api.explorer.client.history.format.FormattedJson.Line;
+
+import java.util.Map;
+
+/**
+ * Writes the lines of a {@link FormattedJson} document as HTML. The markup is shared by everything
+ * which renders HTML, on the UI thread and in the web worker, so that the interactive parts of it
+ * can be found by the same attributes no matter where it was rendered.
+ *
+ * <p>Each group is a span holding the title line, a contents span, a placeholder span which is
+ * shown while the group is collapsed, and the closing line. Every line ends with a line break, so
+ * the markup is meant for a {@code <pre>} element. All text is escaped.
+ *
+ */
+public class JsonMarkup {
+  /** Attribute of the title of a group, clicking it toggles the group. */
+  public static final String TOGGLE = "data-json-toggle";
+
+  /** Attribute of the contents of a group. */
+  public static final String CONTENTS = "data-json-contents";
+
+  /** Attribute of the contents of a collapsed group which have not been rendered yet. */
+  public static final String PENDING = "data-json-pending";
+
+  /** Attribute of the placeholder of a group, clicking it toggles the group. */
+  public static final String PLACEHOLDER = "data-json-placeholder";
+
+  /** Attribute of the button which opens the reuse menu of an object. */
+  public static final String MENU = "data-json-menu";
+
+  /** Attribute of the control which renders the next page of items of an array. */
+  public static final String MORE = "data-json-more";
+
+  /** Attribute of links rendered by the worker, which may become explorer links when inserted. */
+  public static final String URL = "data-json-url";
+
+  public static final String HIDDEN = " style=\"display:none\"";
+
+  // Keys of the class names passed to the constructor.
+  public static final String JSON_KEY = "jsonKey";
+  public static final String JSON_EXPANDED = "jsonExpanded";
+  public static final String JSON_COLLAPSED = "jsonCollapsed";
+  public static final String JSON_NULL = "jsonNull";
+  public static final String JSON_NUMBER = "jsonNumber";
+  public static final String JSON_BOOLEAN = "jsonBoolean";
+  public static final String JSON_STRING = "jsonString";
+  public static final String JSON_STRING_LINK = "jsonStringLink";
+  public static final String REUSABLE_RESOURCE = "reusableResource";
+  public static final String REUSABLE_RESOURCE_BUTTON = "reusableResourceButton";
+  public static final String CLICKABLE = "clickable";
+
+  private final Map<String, String> classes;
+  private final String menuButtonHtml;
+
+  /**
+   * @param classes Class names of the markup, keyed by the constants of this class.
+   * @param menuButtonHtml Trusted HTML of the image shown in menu buttons.
+   */
+  public JsonMarkup(Map<String, String> classes, String menuButtonHtml) {
+    this.classes = classes;
+    this.menuButtonHtml = menuButtonHtml;
+  }
+
+  /**
+   * Append the title line of a group and open its contents. The contents are appended next, or
+   * left empty if the group is collapsed and rendered once it is expanded.
+   *
+   * @param open The line which opens the group.
+   * @param pendingIndex Index of the group in the pending groups of the view, only used when the
+   *        group is collapsed.
+   * @param reusable Whether the contents are those of an object with a reuse menu.
+   */
+  public void appendGroupStart(
+      StringBuilder out, Line open, boolean collapsed, int pendingIndex, boolean reusable) {
+    out.append("<span>").append(escape(open.getIndentation()));
+    out.append("<span class=\"").append(titleClassName(!collapsed)).append("\" ").append(TOGGLE)
+        .append('>');
+    out.append(escape(open.getTitle() + open.getText())).append("</span>\n");
+
+    out.append("<span ").append(CONTENTS);
+    if (reusable) {
+      out.append(" class=\"").append(classes.get(REUSABLE_RESOURCE)).append('"');
+    }
+    if (collapsed) {
+      out.append(' ').append(PENDING).append("=\"").append(pendingIndex).append('"')
+          .append(HIDDEN);
+    }
+    out.append('>');
+  }
+
+  /**
+   * Append the button which opens the reuse menu of an object, at the start of its contents.
+   *
+   * @param hidden Whether the button is hidden until the view has checked that the object can be
+   *        reused.
+   */
+  public void appendMenuButton(StringBuilder out, int menuIndex, boolean hidden) {
+    out.append("<span class=\"").append(classes.get(REUSABLE_RESOURCE_BUTTON)).append("\" ")
+        .append(MENU).append("=\"").append(menuIndex).append('"');
+    if (hidden) {
+      out.append(HIDDEN);
+    }
+    out.append('>').append(menuButtonHtml).append("</span>");
+  }
+
+  /**
+   * Close the contents of a group, and append its placeholder and closing line.
+   *
+   * @param close The line which closes the group.
+   */
+  public void appendGroupEnd(StringBuilder out, Line close, boolean collapsed) {
+    out.append("</span>");
+    out.append("<span ").append(PLACEHOLDER).append(collapsed ? "" : HIDDEN).append('>');
+    out.append(escape(JsonFormatter.indentation(close.getDepth() + 1)
+        + JsonFormatter.PLACEHOLDER_TEXT + "\n"));
+    out.append("</span>");
+    out.append(escape(close.toText() + "\n")).append("</span>");
+  }
+
+  /**
+   * Append the control which renders the next page of items of an array.
+   *
+   * @param text Text of the control, or an empty string if it is filled in by the view.
+   */
+  public void appendMoreControl(StringBuilder out, int pageIndex, String text) {
+    out.append("<span class=\"").append(classes.get(CLICKABLE)).append("\" ").append(MORE)
+        .append("=\"").append(pageIndex).append("\">");
+    if (!text.isEmpty()) {
+      out.append(escape(text + "\n"));
+    }
+    out.append("</span>");
+  }
+
+  /**
+   * Append a line which holds a value that is not an object or an array.
+   */
+  public void appendLine(StringBuilder out, Line line) {
+    appendSpan(out, classes.get(JSON_KEY), line.getIndentation() + line.getTitle());
+    switch (line.getType()) {
+      case NULL:
+        appendSpan(out, classes.get(JSON_NULL), line.getText());
+        break;
+
+      case BOOLEAN:
+        appendSpan(out, classes.get(JSON_BOOLEAN), line.getText());
+        break;
+
+      case NUMBER:
+        appendSpan(out, classes.get(JSON_NUMBER), line.getText());
+        break;
+
+      case STRING:
+        appendSpan(out, classes.get(JSON_STRING), line.getText());
+        break;
+
+      case LINK:
+        out.append('"');
+        appendLink(out, line.getText());
+        out.append('"');
+        break;
+
+      default:
+        throw new IllegalArgumentException("Groups are not appended as a single line.");
+    }
+    out.append(line.hasSeparator() ? JsonFormatter.SEPARATOR_TEXT + "\n" : "\n");
+  }
+
+  /**
+   * Append the anchor of a link, without the quotes around it. Links are always http or https
+   * URLs, which need no sanitizing.
+   */
+  protected void appendLink(StringBuilder out, String url) {
+    String escaped = escape(url);
+    out.append("<a class=\"").append(className(JSON_STRING_LINK)).append("\" href=\"")
+        .append(escaped).append("\" target=\"_blank\">").append(escaped).append("</a>");
+  }
+
+  /**
+   * Returns the class name with the specified key.
+   */
+  protected String className(String key) {
+    return classes.get(key);
+  }
+
+  private String titleClassName(boolean expanded) {
+    return classes.get(JSON_KEY) + " "
+        + classes.get(expanded ? JSON_EXPANDED : JSON_COLLAPSED);
+  }
+
+  private static void appendSpan(StringBuilder out, String className, String text) {
+    out.append("<span class=\"").append(className).append("\">").append(escape(text))
+        .append("</span>");
+  }
+
+  /**
+   * Returns the text escaped for use in HTML text and attribute values, in the same way as
+   * {@code SafeHtmlUtils.htmlEscape}.
+   */
+  public static String escape(String text) {
+    int i = 0;
+    while (i < text.length() && !needsEscaping(text.charAt(i))) {
+      i++;
+    }
+    if (i == text.length()) {
+      return text;
+    }
+
+    StringBuilder sb = new StringBuilder(text.length() + 16).append(text.substring(0, i));
+    for (; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '&':
+          sb.append("&amp;");
+          break;
+        case '<':
+          sb.append("&lt;");
+          break;
+        case '>':
+          sb.append("&gt;");
+          break;
+        case '"':
+          sb.append("&quot;");
+          break;
+        case '\'':
+          sb.append("&#39;");
+          break;
+        default:
+          sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static boolean needsEscaping(char c) {
+    return c == '&' || c == '<' || c == '>' || c == '"' || c == '\'';
+  }
+}
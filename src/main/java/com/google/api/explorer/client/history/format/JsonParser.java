@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history.format;
+
+import com.google.api.explorer.client.history.format.JsonHandler.ScalarType;
+
+/**
+ * Streaming JSON parser written in plain Java, which reports the document to a
+ * {@link JsonHandler} instead of building a tree. It has no dependencies on JSNI, widgets or
+ * libraries beyond the JRE emulation, so that it behaves identically in the web worker, in
+ * Development Mode and on the JVM.
+ *
+ */
+public final class JsonParser {
+  private final String text;
+  private final JsonHandler handler;
+  private int position = 0;
+
+  private JsonParser(String text, JsonHandler handler) {
+    this.text = text;
+    this.handler = handler;
+  }
+
+  /**
+   * Parse the specified text, reporting its structure to the handler.
+   *
+   * @throws IllegalArgumentException when the text is not a single valid JSON value. Events may
+   *         already have been reported for the part of the text before the error.
+   */
+  public static void parse(String text, JsonHandler handler) {
+    JsonParser parser = new JsonParser(text, handler);
+    parser.skipWhitespace();
+    parser.parseValue(null);
+    parser.skipWhitespace();
+    if (parser.position != text.length()) {
+      throw parser.error("Unexpected text after the end of the document");
+    }
+  }
+
+  private void parseValue(String key) {
+    char c = peek();
+    switch (c) {
+      case '{':
+        parseObject(key);
+        break;
+
+      case '[':
+        parseArray(key);
+        break;
+
+      case '"':
+        String value = parseString();
+        handler.scalar(key, ScalarType.STRING, value, followedBySeparator());
+        break;
+
+      case 't':
+        expectLiteral("true");
+        handler.scalar(key, ScalarType.BOOLEAN, "true", followedBySeparator());
+        break;
+
+      case 'f':
+        expectLiteral("false");
+        handler.scalar(key, ScalarType.BOOLEAN, "false", followedBySeparator());
+        break;
+
+      case 'n':
+        expectLiteral("null");
+        handler.scalar(key, ScalarType.NULL, "null", followedBySeparator());
+        break;
+
+      default:
+        if (c == '-' || isDigit(c)) {
+          String number = parseNumber();
+          handler.scalar(key, ScalarType.NUMBER, number, followedBySeparator());
+        } else {
+          throw error("Unexpected character '" + c + "'");
+        }
+    }
+  }
+
+  private void parseObject(String key) {
+    handler.startObject(key);
+    position++;
+    skipWhitespace();
+    if (peek() == '}') {
+      position++;
+    } else {
+      while (true) {
+        if (peek() != '"') {
+          throw error("Expected a key");
+        }
+        String childKey = parseString();
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+        parseValue(childKey);
+        skipWhitespace();
+        if (peek() == ',') {
+          position++;
+          skipWhitespace();
+        } else {
+          expect('}');
+          break;
+        }
+      }
+    }
+    handler.endObject(followedBySeparator());
+  }
+
+  private void parseArray(String key) {
+    handler.startArray(key);
+    position++;
+    skipWhitespace();
+    if (peek() == ']') {
+      position++;
+    } else {
+      while (true) {
+        parseValue(null);
+        skipWhitespace();
+        if (peek() == ',') {
+          position++;
+          skipWhitespace();
+        } else {
+          expect(']');
+          break;
+        }
+      }
+    }
+    handler.endArray(followedBySeparator());
+  }
+
+  private String parseString() {
+    position++;
+    int start = position;
+
+    // Most strings have no escapes, and can be returned without copying them character by
+    // character.
+    while (position < text.length()) {
+      char c = text.charAt(position);
+      if (c == '"') {
+        return text.substring(start, position++);
+      } else if (c == '\\') {
+        break;
+      } else if (c < ' ') {
+        throw error("Unescaped control character in string");
+      }
+      position++;
+    }
+
+    StringBuilder value = new StringBuilder(text.substring(start, position));
+    while (true) {
+      char c = next();
+      if (c == '"') {
+        return value.toString();
+      } else if (c < ' ') {
+        throw error("Unescaped control character in string");
+      } else if (c != '\\') {
+        value.append(c);
+        continue;
+      }
+
+      char escaped = next();
+      switch (escaped) {
+        case '"':
+        case '\\':
+        case '/':
+          value.append(escaped);
+          break;
+        case 'b':
+          value.append('\b');
+          break;
+        case 'f':
+          value.append('\f');
+          break;
+        case 'n':
+          value.append('\n');
+          break;
+        case 'r':
+          value.append('\r');
+          break;
+        case 't':
+          value.append('\t');
+          break;
+        case 'u':
+          if (position + 4 > text.length()) {
+            throw error("Incomplete unicode escape");
+          }
+          try {
+            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+          } catch (NumberFormatException e) {
+            throw error("Invalid unicode escape");
+          }
+          position += 4;
+          break;
+        default:
+          throw error("Invalid escape '\\" + escaped + "'");
+      }
+    }
+  }
+
+  private String parseNumber() {
+    int start = position;
+    if (peek() == '-') {
+      position++;
+    }
+    if (peek() == '0') {
+      position++;
+    } else {
+      expectDigits();
+    }
+    if (position < text.length() && text.charAt(position) == '.') {
+      position++;
+      expectDigits();
+    }
+    if (position < text.length()
+        && (text.charAt(position) == 'e' || text.charAt(position) == 'E')) {
+      position++;
+      if (peek() == '+' || peek() == '-') {
+        position++;
+      }
+      expectDigits();
+    }
+    return text.substring(start, position);
+  }
+
+  /**
+   * Returns whether the value which was just parsed is followed by a separator, without consuming
+   * the separator.
+   */
+  private boolean followedBySeparator() {
+    skipWhitespace();
+    return position < text.length() && text.charAt(position) == ',';
+  }
+
+  private void expectDigits() {
+    if (!isDigit(peek())) {
+      throw error("Expected a digit");
+    }
+    while (position < text.length() && isDigit(text.charAt(position))) {
+      position++;
+    }
+  }
+
+  private void expectLiteral(String literal) {
+    if (!text.startsWith(literal, position)) {
+      throw error("Expected '" + literal + "'");
+    }
+    position += literal.length();
+  }
+
+  private void expect(char expected) {
+    if (peek() != expected) {
+      throw error("Expected '" + expected + "'");
+    }
+    position++;
+  }
+
+  private void skipWhitespace() {
+    while (position < text.length()) {
+      char c = text.charAt(position);
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+        return;
+      }
+      position++;
+    }
+  }
+
+  private char peek() {
+    if (position >= text.length()) {
+      throw error("Unexpected end of the document");
+    }
+    return text.charAt(position);
+  }
+
+  private char next() {
+    char c = peek();
+    position++;
+    return c;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(message + " at position " + position + ".");
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history.format;
+
+import com.google.api.explorer.client.history.format.FormattedJson.Line;
+import com.google.api.explorer.client.history.format.FormattedJson.LineType;
+import com.google.api.explorer.client.history.format.JsonFormatter.LineHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders the initially visible part of a JSON document to {@link JsonMarkup} while it is being
+ * parsed, without the parsed document. This is what the web worker runs, so that the page only has
+ * to insert the result.
+ *
+ * <p>Everything which the page renders later, or which needs the service, is left out and listed
+ * as an {@link Entry} with the path of keys and indices which leads to its value in the document:
+ * <ul>
+ * <li>groups: collapsed groups, indexed by the pending attribute of their contents.</li>
+ * <li>pages: arrays which were not rendered in full, indexed by the more attribute of their
+ * paging control, which is left empty since its text depends on the length of the array.</li>
+ * <li>menus: objects with a kind which may get a reuse menu, indexed by the menu attribute of
+ * their menu button, which is hidden until the page has checked that some method accepts the
+ * kind.</li>
+ * </ul>
+ * Links are rendered with the URL attribute, so that the page can turn links to methods of the
+ * service into explorer links.
+ *
+ */
+public class JsonPrerenderer implements LineHandler {
+
+  /**
+   * A value which was left for the page to render.
+   */
+  public static class Entry {
+    private final String[] path;
+    private final int depth;
+    private final boolean isArray;
+    private final boolean allowMenu;
+    private final int next;
+
+    Entry(String[] path, int depth, boolean isArray, boolean allowMenu, int next) {
+      this.path = path;
+      this.depth = depth;
+      this.isArray = isArray;
+      this.allowMenu = allowMenu;
+      this.next = next;
+    }
+
+    /** Returns the keys and indices which lead from the root of the document to the value. */
+    public String[] getPath() {
+      return path;
+    }
+
+    /** Returns the depth of a group, or of the items of a paged array. */
+    public int getDepth() {
+      return depth;
+    }
+
+    public boolean isArray() {
+      return isArray;
+    }
+
+    /** Returns whether a collapsed group may get a reuse menu. */
+    public boolean allowsMenu() {
+      return allowMenu;
+    }
+
+    /** Returns the index of the first item of a paged array which was not rendered. */
+    public int getNext() {
+      return next;
+    }
+  }
+
+  /**
+   * An object or array which has been opened but not closed yet.
+   */
+  private static class Frame {
+    final Frame parent;
+    final String name;
+    final boolean isArray;
+    final boolean collapsed;
+    final boolean allowMenu;
+
+    /** Offset in the output at which the menu button is inserted, once a kind is found. */
+    final int contentsOffset;
+    boolean hasMenu = false;
+    int children = 0;
+
+    Frame(Frame parent, String name, boolean isArray, boolean collapsed, boolean allowMenu,
+        int contentsOffset) {
+      this.parent = parent;
+      this.name = name;
+      this.isArray = isArray;
+      this.collapsed = collapsed;
+      this.allowMenu = allowMenu;
+      this.contentsOffset = contentsOffset;
+    }
+
+    String[] path() {
+      List<String> names = new ArrayList<String>();
+      for (Frame frame = this; frame.parent != null; frame = frame.parent) {
+        names.add(frame.name);
+      }
+      Collections.reverse(names);
+      return names.toArray(new String[names.size()]);
+    }
+  }
+
+  private static final int NOT_SKIPPING = -1;
+
+  private final StringBuilder out = new StringBuilder();
+  private final JsonMarkup markup;
+  private final int collapseDepth;
+  private final int pageSize;
+  private final List<Entry> groups = new ArrayList<Entry>();
+  private final List<Entry> pages = new ArrayList<Entry>();
+  private final List<Entry> menus = new ArrayList<Entry>();
+
+  private Frame current;
+
+  /** Depth of the close line up to which lines are skipped, or {@link #NOT_SKIPPING}. */
+  private int skipDepth = NOT_SKIPPING;
+
+  private JsonPrerenderer(Map<String, String> classes, String menuButtonHtml, int collapseDepth,
+      int pageSize) {
+    this.markup = new JsonMarkup(classes, menuButtonHtml) {
+      @Override
+      protected void appendLink(StringBuilder out, String url) {
+        String escaped = escape(url);
+        out.append("<a class=\"").append(className(JSON_STRING_LINK)).append("\" href=\"")
+            .append(escaped).append("\" target=\"_blank\" ").append(URL).append("=\"")
+            .append(escaped).append("\">").append(escaped).append("</a>");
+      }
+    };
+    this.collapseDepth = collapseDepth;
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * Render the specified JSON text.
+   *
+   * @param classes Class names of the markup, see {@link JsonMarkup}.
+   * @param menuButtonHtml Trusted HTML of the image shown in menu buttons.
+   * @param collapseDepth Depth at or below which groups are rendered collapsed.
+   * @param pageSize Number of items of an array which are rendered.
+   * @throws IllegalArgumentException when the text is not a valid JSON object.
+   */
+  public static JsonPrerenderer render(String text, Map<String, String> classes,
+      String menuButtonHtml, int collapseDepth, int pageSize) {
+    JsonPrerenderer prerenderer =
+        new JsonPrerenderer(classes, menuButtonHtml, collapseDepth, pageSize);
+    JsonParser.parse(text, new JsonFormatter(prerenderer));
+    return prerenderer;
+  }
+
+  public String getHtml() {
+    return out.toString();
+  }
+
+  public List<Entry> getGroups() {
+    return groups;
+  }
+
+  public List<Entry> getPages() {
+    return pages;
+  }
+
+  public List<Entry> getMenus() {
+    return menus;
+  }
+
+  @Override
+  public void line(Line line) {
+    if (skipDepth != NOT_SKIPPING) {
+      if (line.getType().isClose() && line.getDepth() == skipDepth) {
+        skipDepth = NOT_SKIPPING;
+        close(line);
+      }
+      return;
+    }
+
+    if (current == null && line.getType() != LineType.OPEN_OBJECT) {
+      throw new IllegalArgumentException("The body is not a JSON object.");
+    }
+
+    if (line.getType().isClose()) {
+      close(line);
+      return;
+    }
+
+    String name = null;
+    if (current != null) {
+      int index = current.children++;
+      if (current.isArray && index == pageSize) {
+        // The text of the control depends on the length of the array, which is not known yet.
+        markup.appendMoreControl(out, pages.size(), "");
+        pages.add(new Entry(current.path(), line.getDepth(), true, false, index));
+        skipDepth = line.getDepth() - 1;
+        return;
+      }
+      name = current.isArray ? String.valueOf(index) : line.getKey();
+    }
+
+    if (line.getType().isOpen()) {
+      open(line, name);
+    } else {
+      if (current.allowMenu && !current.hasMenu && "kind".equals(line.getKey())
+          && (line.getType() == LineType.STRING || line.getType() == LineType.LINK)) {
+        // The menu button comes first in the contents, so it is inserted once the kind is found.
+        StringBuilder button = new StringBuilder();
+        markup.appendMenuButton(button, menus.size(), true);
+        out.insert(current.contentsOffset, button.toString());
+        menus.add(new Entry(current.path(), line.getDepth() - 1, false, true, 0));
+        current.hasMenu = true;
+      }
+      markup.appendLine(out, line);
+    }
+  }
+
+  private void open(Line line, String name) {
+    boolean isArray = line.getType() == LineType.OPEN_ARRAY;
+    boolean collapsed = line.getDepth() >= collapseDepth;
+
+    // Only objects in arrays, and the root, can be reused as the body of another request.
+    boolean allowMenu = !isArray && line.getKey() == null;
+    markup.appendGroupStart(out, line, collapsed, groups.size(), false);
+    current = new Frame(current, name, isArray, collapsed, allowMenu, out.length());
+    if (collapsed) {
+      groups.add(new Entry(current.path(), line.getDepth(), isArray, allowMenu, 0));
+      skipDepth = line.getDepth();
+    }
+  }
+
+  private void close(Line line) {
+    markup.appendGroupEnd(out, line, current.collapsed);
+    current = current.parent;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history.worker;
+
+import com.google.api.explorer.client.history.format.JsonPrerenderer;
+import com.google.api.explorer.client.history.format.JsonPrerenderer.Entry;
+import com.google.gwt.core.client.EntryPoint;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArray;
+import com.google.gwt.core.client.JsArrayString;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Entry point of the web worker module, which renders JSON bodies with {@link JsonPrerenderer} off
+ * the UI thread. It only depends on the core module and the formatting core, so that it compiles
+ * to a small script which can run without a document.
+ *
+ * <p>Each message contains the id of the request, the text of the body and the rendering options:
+ * the class names of the markup, the collapse depth, the page size and the HTML of the menu
+ * button. The reply contains the same id and either an error, or the HTML along with the groups,
+ * pages and menus which were left for the page to render, see {@link JsonPrerenderer}.
+ *
+ */
+public class JsonWorkerEntryPoint implements EntryPoint {
+
+  @Override
+  public native void onModuleLoad() /*-{
+    $wnd.onmessage = $entry(function(event) {
+      $wnd.postMessage(
+          @com.google.api.explorer.client.history.worker.JsonWorkerEntryPoint::renderJson(Lcom/google/gwt/core/client/JavaScriptObject;)(event.data));
+    });
+  }-*/;
+
+  /**
+   * Returns the reply to a message, see above. The page calls this directly when it cannot use
+   * the worker, e.g. in Development Mode.
+   */
+  public static JavaScriptObject renderJson(JavaScriptObject request) {
+    JavaScriptObject reply;
+    try {
+      JsonPrerenderer prerenderer = JsonPrerenderer.render(getText(request),
+          getClasses(request), getMenuButtonHtml(request), getCollapseDepth(request),
+          getPageSize(request));
+      reply = createReply(prerenderer.getHtml(), toJs(prerenderer.getGroups()),
+          toJs(prerenderer.getPages()), toJs(prerenderer.getMenus()));
+    } catch (RuntimeException e) {
+      reply = createError(String.valueOf(e.getMessage()));
+    }
+    setId(reply, getId(request));
+    return reply;
+  }
+
+  private static Map<String, String> getClasses(JavaScriptObject request) {
+    Map<String, String> classes = new HashMap<String, String>();
+    JsArrayString names = getClassNames(request);
+    for (int i = 0; i < names.length(); i++) {
+      classes.put(names.get(i), getClass(request, names.get(i)));
+    }
+    return classes;
+  }
+
+  private static JsArray<JavaScriptObject> toJs(List<Entry> entries) {
+    JsArray<JavaScriptObject> array = JavaScriptObject.createArray().cast();
+    for (Entry entry : entries) {
+      JsArrayString path = JavaScriptObject.createArray().cast();
+      for (String name : entry.getPath()) {
+        path.push(name);
+      }
+      array.push(createEntry(
+          path, entry.getDepth(), entry.isArray(), entry.allowsMenu(), entry.getNext()));
+    }
+    return array;
+  }
+
+  private static native int getId(JavaScriptObject request) /*-{
+    return request.id;
+  }-*/;
+
+  private static native String getText(JavaScriptObject request) /*-{
+    return request.text;
+  }-*/;
+
+  private static native JsArrayString getClassNames(JavaScriptObject request) /*-{
+    var names = [];
+    for (var name in request.options.classes) {
+      if (request.options.classes.hasOwnProperty(name)) {
+        names.push(name);
+      }
+    }
+    return names;
+  }-*/;
+
+  private static native String getClass(JavaScriptObject request, String name) /*-{
+    return request.options.classes[name];
+  }-*/;
+
+  private static native String getMenuButtonHtml(JavaScriptObject request) /*-{
+    return request.options.menuButtonHtml;
+  }-*/;
+
+  private static native int getCollapseDepth(JavaScriptObject request) /*-{
+    return request.options.collapseDepth;
+  }-*/;
+
+  private static native int getPageSize(JavaScriptObject request) /*-{
+    return request.options.pageSize;
+  }-*/;
+
+  private static native JavaScriptObject createEntry(
+      JsArrayString path, int depth, boolean isArray, boolean allowMenu, int next) /*-{
+    return {path: path, depth: depth, isArray: isArray, allowMenu: allowMenu, next: next};
+  }-*/;
+
+  private static native JavaScriptObject createReply(String html, JavaScriptObject groups,
+      JavaScriptObject pages, JavaScriptObject menus) /*-{
+    return {html: html, groups: groups, pages: pages, menus: menus};
+  }-*/;
+
+  private static native JavaScriptObject createError(String message) /*-{
+    return {error: message};
+  }-*/;
+
+  private static native void setId(JavaScriptObject reply, int id) /*-{
+    reply.id = id;
+  }-*/;
+}
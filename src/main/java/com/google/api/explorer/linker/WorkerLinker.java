@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.linker;
+
+import com.google.gwt.core.ext.LinkerContext;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.core.ext.linker.AbstractLinker;
+import com.google.gwt.core.ext.linker.ArtifactSet;
+import com.google.gwt.core.ext.linker.CompilationResult;
+import com.google.gwt.core.ext.linker.LinkerOrder;
+import com.google.gwt.core.ext.linker.LinkerOrder.Order;
+
+import java.util.SortedSet;
+
+/**
+ * Links a module into a single script which can be loaded by a web worker, named after the
+ * module. Workers have neither a window nor a document, so the script defines the globals which
+ * the compiled code expects in terms of the worker scope and starts the module itself.
+ *
+ * <p>Only modules with a single permutation can be linked, since a worker cannot select one.
+ *
+ */
+@LinkerOrder(Order.PRIMARY)
+public class WorkerLinker extends AbstractLinker {
+
+  @Override
+  public String getDescription() {
+    return "Web worker";
+  }
+
+  @Override
+  public ArtifactSet link(TreeLogger logger, LinkerContext context, ArtifactSet artifacts)
+      throws UnableToCompleteException {
+
+    SortedSet<CompilationResult> results = artifacts.find(CompilationResult.class);
+    if (results.size() != 1) {
+      logger.log(TreeLogger.ERROR,
+          "Workers need exactly one permutation, found " + results.size() + ".");
+      throw new UnableToCompleteException();
+    }
+    CompilationResult result = results.first();
+
+    StringBuilder script = new StringBuilder();
+    script.append("var $wnd = self, $doc = null, $moduleName, $moduleBase;\n");
+    script.append("var $stats = null, $sessionId = null, $strongName = '")
+        .append(result.getStrongName()).append("';\n");
+    script.append("var $gwt_version = '';\n");
+    for (String fragment : result.getJavaScript()) {
+      script.append(fragment);
+    }
+    script.append("\ngwtOnLoad(null, '").append(context.getModuleName()).append("', '');\n");
+
+    ArtifactSet linked = new ArtifactSet(artifacts);
+    linked.add(emitString(logger, script.toString(), context.getModuleName() + ".js"));
+    return linked;
+  }
+}
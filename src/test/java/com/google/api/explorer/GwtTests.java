@@ -16,12 +16,18 @@
 
 package com.google.api.explorer;
 
+import com.google.api.explorer.client.base.JsonBodyGwtTest;
+import com.google.api.explorer.client.base.batch.BatchRequestGwtTest;
 import com.google.api.explorer.client.base.dynamicjso.DynamicJsArrayGwtTest;
 import com.google.api.explorer.client.base.dynamicjso.DynamicJsoGwtTest;
+import com.google.api.explorer.client.base.http.cors.CorsTransportGwtTest;
 import com.google.api.explorer.client.base.http.crossdomain.CrossDomainRequestBuilderGwtTest;
 import com.google.api.explorer.client.base.http.crossdomain.CrossDomainRequestGwtTest;
 import com.google.api.explorer.client.base.rpc.gwt.RpcApiRequestGwtTest;
 import com.google.api.explorer.client.embedded.RequestBodyFormGwtTest;
+import com.google.api.explorer.client.history.EmbeddedHistoryItemViewGwtTest;
+import com.google.api.explorer.client.history.JsonHtmlRendererGwtTest;
+import com.google.api.explorer.client.history.JsonWorkerGwtTest;
 import com.google.api.explorer.client.parameter.schema.ObjectSchemaEditorGwtTest;
 import com.google.gwt.junit.tools.GWTTestSuite;
 
@@ -38,11 +44,17 @@ public class GwtTests extends GWTTestSuite {
     TestSuite suite = new TestSuite("GWT tests for GoogleApi module");
     suite.addTestSuite(DynamicJsoGwtTest.class);
     suite.addTestSuite(DynamicJsArrayGwtTest.class);
+    suite.addTestSuite(JsonBodyGwtTest.class);
     suite.addTestSuite(RpcApiRequestGwtTest.class);
     suite.addTestSuite(CrossDomainRequestGwtTest.class);
     suite.addTestSuite(CrossDomainRequestBuilderGwtTest.class);
+    suite.addTestSuite(CorsTransportGwtTest.class);
+    suite.addTestSuite(BatchRequestGwtTest.class);
     suite.addTestSuite(ObjectSchemaEditorGwtTest.class);
     suite.addTestSuite(RequestBodyFormGwtTest.class);
+    suite.addTestSuite(JsonHtmlRendererGwtTest.class);
+    suite.addTestSuite(JsonWorkerGwtTest.class);
+    suite.addTestSuite(EmbeddedHistoryItemViewGwtTest.class);
     return suite;
   }
 }
@@ -20,14 +20,28 @@ import com.google.api.explorer.client.auth.AuthPresenterTest;
 import com.google.api.explorer.client.base.ApiDirectoryTest;
 import com.google.api.explorer.client.base.ApiRequestTest;
 import com.google.api.explorer.client.base.ApiServiceHelperTest;
+import com.google.api.explorer.client.base.CancellationScopeTest;
+import com.google.api.explorer.client.base.MethodRouteTableTest;
 import com.google.api.explorer.client.base.SchemaTest;
+import com.google.api.explorer.client.base.ServiceCacheTest;
+import com.google.api.explorer.client.base.ServiceDirectoryTest;
 import com.google.api.explorer.client.base.ServiceLoaderTest;
+import com.google.api.explorer.client.base.batch.BatchCodecTest;
+import com.google.api.explorer.client.base.http.InFlightRequestsTest;
+import com.google.api.explorer.client.base.http.RequestSchedulerTest;
+import com.google.api.explorer.client.base.http.ResponseCacheTest;
+import com.google.api.explorer.client.base.http.RetryPolicyTest;
+import com.google.api.explorer.client.base.http.TimeoutPolicyTest;
 import com.google.api.explorer.client.base.rest.RestApiRequestTest;
 import com.google.api.explorer.client.base.rest.RestApiServiceTest;
 import com.google.api.explorer.client.base.rpc.RpcApiServiceTest;
+import com.google.api.explorer.client.base.storage.DiscoveryDocumentTest;
+import com.google.api.explorer.client.base.storage.StorageBudgetTest;
 import com.google.api.explorer.client.editors.EditorFactoryTest;
 import com.google.api.explorer.client.embedded.EmbeddedParameterFormPresenterTest;
 import com.google.api.explorer.client.history.JsonPrettifierTest;
+import com.google.api.explorer.client.history.format.JsonFormatterTest;
+import com.google.api.explorer.client.history.format.JsonPrerendererTest;
 import com.google.api.explorer.client.routing.RegexMatchRouterTest;
 import com.google.api.explorer.client.routing.URLBuilderTest;
 import com.google.api.explorer.client.routing.URLFragmentTest;
@@ -60,13 +74,27 @@ public class JUnitTests extends TestSuite {
     suite.addTestSuite(URLBuilderTest.class);
     suite.addTestSuite(URLFragmentTest.class);
     suite.addTestSuite(JsonPrettifierTest.class);
+    suite.addTestSuite(JsonFormatterTest.class);
+    suite.addTestSuite(JsonPrerendererTest.class);
     suite.addTestSuite(KeywordExtractorTest.class);
     suite.addTestSuite(ApiServiceHelperTest.class);
+    suite.addTestSuite(MethodRouteTableTest.class);
     suite.addTestSuite(EmbeddedParameterFormPresenterTest.class);
     suite.addTestSuite(SearchEntryTest.class);
     suite.addTestSuite(SearchResultIndexTest.class);
     suite.addTestSuite(ServiceLoaderTest.class);
     suite.addTestSuite(SchemaTest.class);
+    suite.addTestSuite(BatchCodecTest.class);
+    suite.addTestSuite(RequestSchedulerTest.class);
+    suite.addTestSuite(RetryPolicyTest.class);
+    suite.addTestSuite(ResponseCacheTest.class);
+    suite.addTestSuite(InFlightRequestsTest.class);
+    suite.addTestSuite(CancellationScopeTest.class);
+    suite.addTestSuite(TimeoutPolicyTest.class);
+    suite.addTestSuite(DiscoveryDocumentTest.class);
+    suite.addTestSuite(ServiceCacheTest.class);
+    suite.addTestSuite(ServiceDirectoryTest.class);
+    suite.addTestSuite(StorageBudgetTest.class);
     return suite;
   }
 }
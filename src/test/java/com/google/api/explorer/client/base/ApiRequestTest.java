@@ -17,11 +17,20 @@
 package com.google.api.explorer.client.base;
 
 import com.google.api.explorer.client.base.ApiMethod.HttpMethod;
+import com.google.api.explorer.client.base.ApiResponse.HeaderValue;
+import com.google.api.explorer.client.base.http.Transport;
+import com.google.api.explorer.client.base.http.TransportRequest;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.gwt.user.client.rpc.AsyncCallback;
 
 import junit.framework.TestCase;
 
+import org.easymock.EasyMock;
+
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -31,6 +40,8 @@ public class ApiRequestTest extends TestCase {
 
     public final Map<String, String> addedHeaders = Maps.newHashMap();
     public String apiKey;
+    public HttpMethod httpMethod;
+    public String requestPath;
 
     @Override
     public void addHeader(String headerName, String headerValue) {
@@ -44,12 +55,12 @@ public class ApiRequestTest extends TestCase {
 
     @Override
     public Map<String, String> getHeaders() {
-      return null;
+      return addedHeaders;
     }
 
     @Override
     public HttpMethod getHttpMethod() {
-      return null;
+      return httpMethod;
     }
 
     @Override
@@ -64,7 +75,7 @@ public class ApiRequestTest extends TestCase {
 
     @Override
     public String getRequestPath() {
-      return null;
+      return requestPath;
     }
 
     @Override
@@ -87,6 +98,11 @@ public class ApiRequestTest extends TestCase {
     }
   }
 
+  @Override
+  protected void tearDown() {
+    ApiRequest.clearTransports();
+  }
+
   /** When an API key is set, it is added as a parameter value. */
   public void testApiKey() {
     MockApiRequest request = new MockApiRequest();
@@ -101,4 +117,88 @@ public class ApiRequestTest extends TestCase {
     assertTrue(request.addedHeaders.containsKey("X-JavaScript-User-Agent"));
     assertTrue(request.addedHeaders.get("X-JavaScript-User-Agent").equals(ExplorerConfig.APP_NAME));
   }
+
+  /** Transports are chosen by base URL, regardless of a trailing slash. */
+  public void testTransportForBaseUrl() {
+    Transport transport = new Transport() {
+      @Override
+      public void preload() {
+      }
+
+      @Override
+      public TransportRequest send(
+          ApiRequest request, int timeoutMillis, AsyncCallback<ApiResponse> callback) {
+        return null;
+      }
+    };
+    ApiRequest.setTransportForBaseUrl("https://test.example.com/", transport);
+
+    assertSame(transport, ApiRequest.transportForBaseUrl("https://test.example.com"));
+    assertSame(transport, ApiRequest.transportForBaseUrl("https://test.example.com/"));
+  }
+
+  /**
+   * The validators of the cached response are sent with each attempt without being added to the
+   * request, so a request which is sent again after its cached response was evicted is not
+   * conditional anymore.
+   */
+  public void testValidatorsNotKeptAfterEviction() {
+    final List<Map<String, String>> sentHeaders = Lists.newArrayList();
+    final List<ApiResponse> responses =
+        Lists.newArrayList(response("\"1\""), response(null), response(null));
+    ApiRequest.setTransportForBaseUrl(Config.getBaseUrl(), new Transport() {
+      @Override
+      public void preload() {
+      }
+
+      @Override
+      public TransportRequest send(
+          ApiRequest request, int timeoutMillis, AsyncCallback<ApiResponse> callback) {
+        sentHeaders.add(ImmutableMap.copyOf(request.getHeadersToSend()));
+        callback.onSuccess(responses.remove(0));
+        return null;
+      }
+    });
+
+    MockApiRequest request = new MockApiRequest();
+    request.httpMethod = HttpMethod.GET;
+    request.requestPath = "/test/v1/validators";
+    request.setUseResponseCache(true);
+
+    // The first response is cached, the second cannot be revalidated and replaces it.
+    request.send(new NullCallback());
+    request.send(new NullCallback());
+    request.send(new NullCallback());
+
+    assertFalse(sentHeaders.get(0).containsKey("If-None-Match"));
+    assertEquals("\"1\"", sentHeaders.get(1).get("If-None-Match"));
+    assertFalse(sentHeaders.get(2).containsKey("If-None-Match"));
+    assertFalse(request.getHeaders().containsKey("If-None-Match"));
+  }
+
+  /** Returns a successful response with the specified {@code ETag}, or none. */
+  private static ApiResponse response(String etag) {
+    Map<String, HeaderValue> headers = Maps.newHashMap();
+    if (etag != null) {
+      headers.put("etag", new HeaderValue("ETag", etag));
+    }
+
+    ApiResponse response = EasyMock.createMock(ApiResponse.class);
+    EasyMock.expect(response.getStatus()).andReturn(200).anyTimes();
+    EasyMock.expect(response.getHeaders()).andReturn(headers).anyTimes();
+    EasyMock.expect(response.getBodyAsString()).andReturn("{}").anyTimes();
+    EasyMock.replay(response);
+    return response;
+  }
+
+  /** Callback which ignores the outcome. */
+  private static class NullCallback implements AsyncCallback<ApiResponse> {
+    @Override
+    public void onSuccess(ApiResponse result) {
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+    }
+  }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base;
+
+import com.google.gwt.core.client.Callback;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+/**
+ * Tests for {@link CancellationScope}.
+ *
+ */
+public class CancellationScopeTest extends TestCase {
+
+  /** Cancelable which counts how often it was canceled. */
+  private static class CountingCancelable implements CancellationScope.Cancelable {
+    int canceled = 0;
+
+    @Override
+    public void cancel() {
+      canceled++;
+    }
+  }
+
+  public void testCancel() {
+    CancellationScope scope = new CancellationScope();
+    CountingCancelable first = new CountingCancelable();
+    CountingCancelable second = new CountingCancelable();
+    scope.add(first);
+    scope.add(second);
+    assertEquals(0, first.canceled);
+
+    scope.cancel();
+    scope.cancel();
+    assertTrue(scope.isCanceled());
+    assertEquals(1, first.canceled);
+    assertEquals(1, second.canceled);
+
+    // Work which is started after the context was replaced is canceled right away.
+    CountingCancelable late = new CountingCancelable();
+    scope.add(late);
+    assertEquals(1, late.canceled);
+  }
+
+  public void testTrackRequest() {
+    ApiRequest request = EasyMock.createMock(ApiRequest.class);
+    request.cancel();
+    EasyMock.replay(request);
+
+    CancellationScope scope = new CancellationScope();
+    scope.track(request);
+    scope.cancel();
+    EasyMock.verify(request);
+  }
+
+  /** Requests which finished are not canceled along with the scope. */
+  public void testFinishedRequestForgotten() {
+    ApiRequest request = EasyMock.createMock(ApiRequest.class);
+    EasyMock.replay(request);
+
+    CancellationScope scope = new CancellationScope();
+    scope.track(request);
+    assertEquals(1, scope.size());
+    scope.finished(request);
+    assertEquals(0, scope.size());
+    scope.cancel();
+    EasyMock.verify(request);
+  }
+
+  /** Task which hands out the callback, and counts how often it was canceled. */
+  private static class CapturingTask
+      implements CancellationScope.Task<String, String>, CancellationScope.Cancelable {
+    Callback<String, String> callback;
+    int canceled = 0;
+
+    @Override
+    public CancellationScope.Cancelable start(Callback<String, String> callback) {
+      this.callback = callback;
+      return this;
+    }
+
+    @Override
+    public void cancel() {
+      canceled++;
+    }
+  }
+
+  /** Tasks are canceled along with the scope, and their results are dropped afterwards. */
+  public void testTaskCanceled() {
+    @SuppressWarnings("unchecked")
+    Callback<String, String> callback = EasyMock.createMock(Callback.class);
+    EasyMock.replay(callback);
+
+    CancellationScope scope = new CancellationScope();
+    CapturingTask task = new CapturingTask();
+    scope.start(task, callback);
+    assertEquals(1, scope.size());
+    scope.cancel();
+    assertEquals(1, task.canceled);
+
+    task.callback.onSuccess("after");
+    task.callback.onFailure("after");
+    EasyMock.verify(callback);
+  }
+
+  /** Tasks which called back are not canceled along with the scope. */
+  public void testCompletedTaskForgotten() {
+    @SuppressWarnings("unchecked")
+    Callback<String, String> callback = EasyMock.createMock(Callback.class);
+    callback.onSuccess("before");
+    EasyMock.replay(callback);
+
+    CancellationScope scope = new CancellationScope();
+    CapturingTask task = new CapturingTask();
+    scope.start(task, callback);
+    task.callback.onSuccess("before");
+    assertEquals(0, scope.size());
+    scope.cancel();
+    assertEquals(0, task.canceled);
+    EasyMock.verify(callback);
+  }
+
+  /** Tasks which call back right away are never added to the scope. */
+  public void testTaskCompletedImmediately() {
+    @SuppressWarnings("unchecked")
+    Callback<String, String> callback = EasyMock.createMock(Callback.class);
+    callback.onFailure("failed");
+    EasyMock.replay(callback);
+
+    CancellationScope scope = new CancellationScope();
+    scope.start(new CancellationScope.Task<String, String>() {
+      @Override
+      public CancellationScope.Cancelable start(Callback<String, String> callback) {
+        callback.onFailure("failed");
+        return new CountingCancelable();
+      }
+    }, callback);
+    assertEquals(0, scope.size());
+    EasyMock.verify(callback);
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base;
+
+import com.google.api.explorer.client.base.dynamicjso.DynamicJso;
+
+/**
+ * Tests for {@link JsonBody}.
+ *
+ */
+public class JsonBodyGwtTest extends BaseGwtTest {
+
+  /** The parsed value is computed once and shared between callers. */
+  public void testValueIsMemoized() {
+    JsonBody body = new JsonBody("{\"a\":\"b\"}");
+    assertFalse(body.isEmpty());
+
+    DynamicJso value = body.getValue();
+    assertEquals("b", value.getString("a"));
+    assertSame(value, body.getValue());
+  }
+
+  /** Invalid JSON reports the same error every time it is requested. */
+  public void testInvalidJson() {
+    JsonBody body = new JsonBody("{not json");
+
+    IllegalArgumentException first = null;
+    try {
+      body.getValue();
+      fail();
+    } catch (IllegalArgumentException e) {
+      first = e;
+    }
+
+    try {
+      body.getValue();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertSame(first, e);
+    }
+  }
+
+  /** A missing body is empty. */
+  public void testEmpty() {
+    assertTrue(new JsonBody(null).isEmpty());
+    assertTrue(new JsonBody("").isEmpty());
+  }
+}
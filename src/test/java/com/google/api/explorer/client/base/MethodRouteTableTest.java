@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import com.google.api.explorer.client.base.ApiMethod.HttpMethod;
+import com.google.api.explorer.client.base.ApiService.CallStyle;
+import com.google.api.explorer.client.base.MethodRouteTable.Match;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+/**
+ * Tests for {@link MethodRouteTable}.
+ *
+ */
+public class MethodRouteTableTest extends TestCase {
+
+  private ApiMethod listActivities;
+  private ApiMethod getActivity;
+  private ApiMethod getPublicActivity;
+  private ApiMethod copyFile;
+  private MethodRouteTable table;
+
+  @Override
+  public void setUp() {
+    listActivities = mockMethod("people/{userId}/activities/{collection}");
+    getActivity = mockMethod("activities/{activityId}");
+    getPublicActivity = mockMethod("activities/public");
+    copyFile = mockMethod("files/{fileId}:copy");
+
+    table = new MethodRouteTable(
+        ImmutableList.of(listActivities, getActivity, getPublicActivity, copyFile));
+  }
+
+  /** Parameters are extracted in template order. */
+  public void testMatchWithParameters() {
+    Match match = table.match("people/123/activities/public");
+    assertSame(listActivities, match.getMethod());
+    assertEquals(ImmutableListMultimap.of("userId", "123", "collection", "public"),
+        match.getParameters());
+  }
+
+  /** Literal segments are preferred over parameters. */
+  public void testLiteralPreferred() {
+    assertSame(getPublicActivity, table.match("activities/public").getMethod());
+    assertSame(getActivity, table.match("activities/abc").getMethod());
+  }
+
+  /** Segments which mix literal text and parameters are supported. */
+  public void testMixedSegment() {
+    Match match = table.match("files/abc:copy");
+    assertSame(copyFile, match.getMethod());
+    assertEquals(ImmutableListMultimap.of("fileId", "abc"), match.getParameters());
+
+    assertNull(table.match("files/abc:move"));
+  }
+
+  /** Paths which only partially match a template do not match. */
+  public void testNoMatch() {
+    assertNull(table.match("people/123"));
+    assertNull(table.match("people/123/activities/public/extra"));
+    assertNull(table.match("activities/"));
+    assertNull(table.match("unknown"));
+  }
+
+  /** Parameters can be extracted for a specific method. */
+  public void testExtractParameters() {
+    assertEquals(ImmutableListMultimap.of("activityId", "public"),
+        table.extractParameters(getActivity, "activities/public"));
+    assertNull(table.extractParameters(getActivity, "people/123/activities/public"));
+  }
+
+  /**
+   * Tables are built once per service, and built again once the service cache dropped the
+   * service.
+   */
+  public void testForServiceForgotten() {
+    ApiService service = mockService();
+    String cacheKey = ServiceLoader.generateCacheKey("plus", "v1", CallStyle.REST);
+    MethodRouteTable forService = MethodRouteTable.forService(service);
+    assertNotNull(forService.match("people/123/activities/public"));
+    assertSame(forService, MethodRouteTable.forService(service));
+
+    // A refreshed service under the same key gets its own table.
+    ApiService refreshed = mockService();
+    MethodRouteTable forRefreshed = MethodRouteTable.forService(refreshed);
+    assertNotSame(forService, forRefreshed);
+    assertSame(forRefreshed, MethodRouteTable.forService(refreshed));
+
+    ServiceCache cache = new ServiceCache(100);
+    cache.put(cacheKey, refreshed, 10, 0);
+    cache.remove(cacheKey);
+    assertNotSame(forRefreshed, MethodRouteTable.forService(refreshed));
+  }
+
+  private static ApiService mockService() {
+    ApiMethod get = EasyMock.createNiceMock(ApiMethod.class);
+    expect(get.getPath()).andReturn("people/{userId}/activities/{collection}").anyTimes();
+    expect(get.getHttpMethod()).andReturn(HttpMethod.GET).anyTimes();
+    replay(get);
+
+    ApiService service = EasyMock.createNiceMock(ApiService.class);
+    expect(service.getName()).andReturn("plus").anyTimes();
+    expect(service.getVersion()).andReturn("v1").anyTimes();
+    expect(service.callStyle()).andReturn(CallStyle.REST).anyTimes();
+    expect(service.allMethods())
+        .andReturn(ImmutableMap.of("plus.activities.list", get)).anyTimes();
+    replay(service);
+    return service;
+  }
+
+  private static ApiMethod mockMethod(String path) {
+    ApiMethod method = EasyMock.createNiceMock(ApiMethod.class);
+    expect(method.getPath()).andReturn(path).anyTimes();
+    replay(method);
+    return method;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+/**
+ * Tests for {@link ServiceCache}.
+ *
+ */
+public class ServiceCacheTest extends TestCase {
+  private ApiService first;
+  private ApiService second;
+  private ApiService third;
+
+  @Override
+  public void setUp() {
+    first = EasyMock.createMock(ApiService.class);
+    second = EasyMock.createMock(ApiService.class);
+    third = EasyMock.createMock(ApiService.class);
+  }
+
+  public void testLeastRecentlyUsedEvicted() {
+    ServiceCache cache = new ServiceCache(100);
+    cache.put("first", first, 40, 0);
+    cache.put("second", second, 40, 0);
+
+    // Using the first service makes the second the least recently used.
+    assertSame(first, cache.get("first"));
+    cache.put("third", third, 40, 0);
+
+    assertSame(first, cache.get("first"));
+    assertNull(cache.get("second"));
+    assertSame(third, cache.get("third"));
+    assertEquals(80, cache.getCachedChars());
+  }
+
+  public void testPinnedNotEvicted() {
+    ServiceCache cache = new ServiceCache(100);
+    cache.pin("first");
+    cache.put("first", first, 40, 0);
+    cache.put("second", second, 40, 0);
+    cache.put("third", third, 40, 0);
+
+    assertSame(first, cache.get("first"));
+    assertNull(cache.get("second"));
+    assertSame(third, cache.get("third"));
+
+    // Once it is unpinned, the pinned service is evicted as soon as the cache is too large.
+    cache.setMaxChars(30);
+    assertSame(first, cache.get("first"));
+    assertNull(cache.get("third"));
+    cache.unpin("first");
+    assertNull(cache.get("first"));
+    assertEquals(0, cache.size());
+  }
+
+  /** A service which is larger than the whole cache is kept until the next one is cached. */
+  public void testNewestKept() {
+    ServiceCache cache = new ServiceCache(100);
+    cache.put("first", first, 40, 0);
+    cache.put("second", second, 150, 0);
+    assertNull(cache.get("first"));
+    assertSame(second, cache.get("second"));
+
+    cache.put("third", third, 40, 0);
+    assertNull(cache.get("second"));
+    assertSame(third, cache.get("third"));
+  }
+
+  public void testFetchedTime() {
+    ServiceCache cache = new ServiceCache(100);
+    cache.put("first", first, 40, 1000);
+    assertEquals(1000, cache.getFetchedTime("first"));
+    cache.setFetchedTime("first", 2000);
+    assertEquals(2000, cache.getFetchedTime("first"));
+    assertEquals(-1, cache.getFetchedTime("second"));
+  }
+
+  public void testReplace() {
+    ServiceCache cache = new ServiceCache(100);
+    cache.put("first", first, 40, 0);
+    cache.put("first", second, 60, 0);
+    assertSame(second, cache.get("first"));
+    assertEquals(60, cache.getCachedChars());
+
+    cache.remove("first");
+    assertFalse(cache.containsKey("first"));
+    assertEquals(0, cache.getCachedChars());
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base;
+
+import com.google.api.explorer.client.base.ApiDirectory.Icons;
+import com.google.api.explorer.client.base.ApiDirectory.ServiceDefinition;
+import com.google.api.explorer.client.base.ApiDirectory.ServiceDefinition.Label;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import junit.framework.TestCase;
+
+import java.util.Set;
+
+/**
+ * Tests for {@link ServiceDirectory}.
+ *
+ */
+public class ServiceDirectoryTest extends TestCase {
+  private ServiceDefinition plusV1;
+  private ServiceDefinition driveV1;
+  private ServiceDefinition driveV2;
+  private ServiceDirectory directory;
+
+  @Override
+  public void setUp() {
+    plusV1 = new MockServiceDefinition("plus", "v1", "Google+ API", true, Label.LABS);
+    driveV1 = new MockServiceDefinition("drive", "v1", null, false, Label.DEPRECATED);
+    driveV2 = new MockServiceDefinition("drive", "v2", null, true);
+    directory = new ServiceDirectory(ImmutableList.of(plusV1, driveV2, driveV1));
+  }
+
+  public void testTitleOrder() {
+    // Services without a title are listed as "<name> API".
+    assertEquals(ImmutableList.of(driveV2, driveV1, plusV1), ImmutableList.copyOf(directory));
+    assertEquals(ImmutableList.of(driveV2, driveV1, plusV1),
+        ServiceDirectory.inTitleOrder(directory));
+    assertEquals(ImmutableList.of(driveV1, plusV1),
+        ServiceDirectory.inTitleOrder(ImmutableSet.of(plusV1, driveV1)));
+  }
+
+  public void testIndexes() {
+    assertSame(plusV1, directory.getById("plus:v1"));
+    assertNull(directory.getById("plus:v2"));
+    assertEquals(ImmutableList.of(driveV2, driveV1), directory.getVersions("drive"));
+    assertTrue(directory.getVersions("books").isEmpty());
+    assertEquals(ImmutableSet.of(driveV1), directory.getByLabel(Label.DEPRECATED));
+    assertTrue(directory.getByLabel(Label.STABLE).isEmpty());
+    assertTrue(directory.contains(driveV1));
+    assertEquals(3, directory.size());
+  }
+
+  public void testPreferred() {
+    ServiceDirectory preferred = directory.getPreferred();
+    assertEquals(ImmutableList.of(driveV2, plusV1), ImmutableList.copyOf(preferred));
+    assertSame(preferred, directory.getPreferred());
+    assertSame(preferred, preferred.getPreferred());
+    assertSame(driveV2, preferred.getById("drive:v2"));
+    assertNull(preferred.getById("drive:v1"));
+  }
+
+  public void testImmutable() {
+    try {
+      directory.remove(plusV1);
+      fail("The directory should not be modifiable.");
+    } catch (UnsupportedOperationException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * {@link ServiceDefinition} with the properties which are indexed.
+   */
+  private static class MockServiceDefinition implements ServiceDefinition {
+    private final String name;
+    private final String version;
+    private final String title;
+    private final boolean preferred;
+    private final Set<Label> labels;
+
+    MockServiceDefinition(
+        String name, String version, String title, boolean preferred, Label... labels) {
+      this.name = name;
+      this.version = version;
+      this.title = title;
+      this.preferred = preferred;
+      this.labels = ImmutableSet.copyOf(labels);
+    }
+
+    @Override
+    public String getTitle() {
+      return title;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public String getId() {
+      return name + ":" + version;
+    }
+
+    @Override
+    public String getVersion() {
+      return version;
+    }
+
+    @Override
+    public String getDescription() {
+      return null;
+    }
+
+    @Override
+    public String getDiscoveryLink() {
+      return null;
+    }
+
+    @Override
+    public Icons getIcons() {
+      return null;
+    }
+
+    @Override
+    public String getDocumentationLink() {
+      return null;
+    }
+
+    @Override
+    public Set<Label> getLabels() {
+      return labels;
+    }
+
+    @Override
+    public boolean isPreferred() {
+      return preferred;
+    }
+  }
+}
@@ -17,9 +17,17 @@
 package com.google.api.explorer.client.base;
 
 import com.google.api.explorer.client.base.ApiDirectory.ServiceDefinition;
+import com.google.api.explorer.client.base.ApiDirectory.ServiceDefinition.Label;
+import com.google.api.explorer.client.base.ApiRequest.Priority;
 import com.google.api.explorer.client.base.ApiService.CallStyle;
+import com.google.api.explorer.client.base.CancellationScope.Cancelable;
 import com.google.api.explorer.client.base.rest.RestApiService;
+import com.google.api.explorer.client.base.storage.DiscoveryDocument;
+import com.google.api.explorer.client.base.storage.DiscoveryStore;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.gwt.core.client.Callback;
 import com.google.gwt.user.client.rpc.AsyncCallback;
@@ -30,6 +38,8 @@ import org.easymock.Capture;
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -74,7 +84,9 @@ public class ServiceLoaderTest extends TestCase {
     RestApiService service = EasyMock.createControl().createMock(RestApiService.class);
 
     // Populate the cache with the service we'll request later.
-    loader.cache.put(ServiceLoader.generateCacheKey("service", "version", CallStyle.REST), service);
+    loader.cache.put(
+        ServiceLoader.generateCacheKey("service", "version", CallStyle.REST), service, 0,
+        System.currentTimeMillis());
 
     @SuppressWarnings("unchecked")
     Callback<ApiService, String> mockCallback = EasyMock.createMock(Callback.class);
@@ -99,21 +111,26 @@ public class ServiceLoaderTest extends TestCase {
     ServiceDefinition toLeave = EasyMock.createMock(ServiceDefinition.class);
     EasyMock.expect(toLeave.getName()).andReturn("drive").atLeastOnce();
     EasyMock.expect(toLeave.getId()).andReturn("drive:v2").atLeastOnce();
+    EasyMock.expect(toLeave.getTitle()).andReturn("Drive API").anyTimes();
+    EasyMock.expect(toLeave.getLabels()).andReturn(ImmutableSet.<Label>of()).anyTimes();
 
     final Set<ServiceDefinition> directory = ImmutableSet.of(toFilter, toLeave);
     ApiServiceFactory mockDirectory = EasyMock.createMock(ApiServiceFactory.class);
 
-    final Capture<AsyncCallback<Set<ServiceDefinition>>> cbCapture =
-        new Capture<AsyncCallback<Set<ServiceDefinition>>>();
-
-    mockDirectory.loadApiDirectory(EasyMock.capture(cbCapture));
-    EasyMock.expectLastCall().andAnswer(new IAnswer<Void>() {
-      @Override
-      public Void answer() throws Throwable {
-        cbCapture.getValue().onSuccess(directory);
-        return null;
-      }
-    });
+    final Capture<AsyncCallback<DiscoveryDocument>> cbCapture =
+        new Capture<AsyncCallback<DiscoveryDocument>>();
+
+    EasyMock.expect(mockDirectory.loadDirectoryDocument(EasyMock.eq(Priority.INTERACTIVE),
+        EasyMock.<DiscoveryDocument>isNull(), EasyMock.capture(cbCapture)))
+        .andAnswer(new IAnswer<ApiRequest>() {
+          @Override
+          public ApiRequest answer() throws Throwable {
+            cbCapture.getValue().onSuccess(
+                new DiscoveryDocument("directory", null, null, System.currentTimeMillis()));
+            return null;
+          }
+        });
+    EasyMock.expect(mockDirectory.parseDirectory("directory")).andReturn(directory);
 
     EasyMock.replay(toFilter, toLeave, mockDirectory);
 
@@ -138,6 +155,572 @@ public class ServiceLoaderTest extends TestCase {
     EasyMock.verify(toFilter, toLeave, mockDirectory);
   }
 
+  /**
+   * Test that concurrent callers share a single directory load, which is promoted by interactive
+   * callers, and that canceled callers are not notified.
+   */
+  public void testDirectoryLoadedOnce() {
+    googleApi.request = EasyMock.createMock(ApiRequest.class);
+    googleApi.request.setPriority(Priority.INTERACTIVE);
+    EasyMock.replay(googleApi.request);
+
+    DirectoryCallback first = new DirectoryCallback();
+    DirectoryCallback second = new DirectoryCallback();
+    loader.backgroundLoadServiceDefinitions();
+    loader.loadServiceDefinitions(first);
+    Cancelable canceled = loader.loadServiceDefinitions(second);
+    canceled.cancel();
+
+    assertEquals(1, googleApi.directoryInvocations);
+    assertEquals(Priority.BACKGROUND, googleApi.priority);
+    EasyMock.verify(googleApi.request);
+
+    googleApi.directoryCallback.onSuccess(
+        new DiscoveryDocument("directory", null, null, System.currentTimeMillis()));
+    assertEquals(1, first.successes);
+    assertEquals(0, second.successes);
+
+    // Later callers are served from memory.
+    loader.loadServiceDefinitions(second);
+    assertEquals(1, second.successes);
+    assertEquals(1, googleApi.directoryInvocations);
+  }
+
+  /**
+   * Test that the directory load no longer holds up interactive requests once every caller has
+   * stopped waiting for it.
+   */
+  public void testDirectoryLoadDemoted() {
+    googleApi.request = EasyMock.createMock(ApiRequest.class);
+    googleApi.request.setPriority(Priority.BACKGROUND);
+    EasyMock.replay(googleApi.request);
+
+    DirectoryCallback callback = new DirectoryCallback();
+    loader.loadServiceDefinitions(callback).cancel();
+    assertEquals(Priority.INTERACTIVE, googleApi.priority);
+    EasyMock.verify(googleApi.request);
+
+    googleApi.directoryCallback.onFailure(new Exception("Not found"));
+    assertEquals(0, callback.failures);
+  }
+
+  /**
+   * Test that background loads are requested with background priority, and promoted once
+   * somebody waits for the same service.
+   */
+  public void testBackgroundLoadPromoted() {
+    googleApi.service = EasyMock.createControl().createMock(RestApiService.class);
+    googleApi.deferred = true;
+    googleApi.request = EasyMock.createMock(ApiRequest.class);
+    googleApi.request.setPriority(Priority.INTERACTIVE);
+    EasyMock.replay(googleApi.request);
+
+    loader.backgroundLoadService("service:version");
+    assertEquals(Priority.BACKGROUND, googleApi.priority);
+
+    @SuppressWarnings("unchecked")
+    Callback<ApiService, String> mockCallback = EasyMock.createMock(Callback.class);
+    mockCallback.onSuccess(googleApi.service);
+    EasyMock.replay(mockCallback);
+
+    loader.loadService("service", "version", mockCallback);
+    EasyMock.verify(googleApi.request);
+    assertEquals(1, googleApi.invocations);
+
+    googleApi.callback.onSuccess(
+        new DiscoveryDocument("service", null, null, System.currentTimeMillis()));
+    EasyMock.verify(mockCallback);
+  }
+
+  /**
+   * Test that a service load no longer holds up interactive requests once every caller has
+   * stopped waiting for it, and that it is still cached for later callers.
+   */
+  public void testServiceLoadDemoted() {
+    googleApi.service = EasyMock.createControl().createMock(RestApiService.class);
+    googleApi.deferred = true;
+    googleApi.request = EasyMock.createMock(ApiRequest.class);
+    googleApi.request.setPriority(Priority.BACKGROUND);
+    EasyMock.replay(googleApi.request);
+
+    @SuppressWarnings("unchecked")
+    Callback<ApiService, String> canceled = EasyMock.createMock(Callback.class);
+    EasyMock.replay(canceled);
+
+    loader.loadService("service", "version", canceled).cancel();
+    assertEquals(Priority.INTERACTIVE, googleApi.priority);
+    EasyMock.verify(googleApi.request);
+    assertFalse(loader.outstandingRequestCallbacks.containsKey(
+        ServiceLoader.generateCacheKey("service", "version", CallStyle.REST)));
+
+    // Later callers wait for the load which is in flight.
+    @SuppressWarnings("unchecked")
+    Callback<ApiService, String> later = EasyMock.createMock(Callback.class);
+    later.onSuccess(googleApi.service);
+    EasyMock.replay(later);
+    EasyMock.reset(googleApi.request);
+    googleApi.request.setPriority(Priority.INTERACTIVE);
+    EasyMock.replay(googleApi.request);
+
+    loader.loadService("service", "version", later);
+    assertEquals(1, googleApi.invocations);
+    EasyMock.verify(googleApi.request);
+
+    googleApi.callback.onSuccess(
+        new DiscoveryDocument("service", null, null, System.currentTimeMillis()));
+    EasyMock.verify(canceled, later);
+  }
+
+  /**
+   * Test that a stale stored document is used right away, and revalidated in the background.
+   */
+  public void testStoredDocumentRevalidated() {
+    MockStore store = new MockStore();
+    DiscoveryDocument stored = new DiscoveryDocument("stored", "\"1\"", null, 0);
+    store.documents.put(Config.getBaseUrl() + " service_version_REST", stored);
+    loader.setDiscoveryStore(store);
+
+    googleApi.service = EasyMock.createControl().createMock(RestApiService.class);
+    googleApi.deferred = true;
+
+    @SuppressWarnings("unchecked")
+    Callback<ApiService, String> mockCallback = EasyMock.createMock(Callback.class);
+    mockCallback.onSuccess(googleApi.service);
+    EasyMock.replay(mockCallback);
+
+    loader.loadService("service", "version", mockCallback);
+    EasyMock.verify(mockCallback);
+    assertEquals(ImmutableList.of("stored"), googleApi.parsed);
+
+    // The revalidation was sent in the background, with the validators of the stored document.
+    assertEquals(1, googleApi.invocations);
+    assertEquals(Priority.BACKGROUND, googleApi.priority);
+    assertSame(stored, googleApi.stored);
+
+    // The document had not changed, so it is not parsed again, only stored with the time at which
+    // it was revalidated.
+    googleApi.callback.onSuccess(stored);
+    assertEquals(1, store.puts);
+    assertEquals("stored",
+        store.documents.get(Config.getBaseUrl() + " service_version_REST").getBody());
+    assertTrue(
+        store.documents.get(Config.getBaseUrl() + " service_version_REST").getFetchedTime() > 0);
+    assertEquals(ImmutableList.of("stored"), googleApi.parsed);
+
+    // Now that it is fresh, it is not revalidated again.
+    loader.loadService("service", "version", new NullCallback());
+    assertEquals(1, googleApi.invocations);
+  }
+
+  /**
+   * Test that a stored document which is still fresh is not revalidated.
+   */
+  public void testFreshStoredDocumentNotRevalidated() {
+    MockStore store = new MockStore();
+    store.documents.put(Config.getBaseUrl() + " service_version_REST",
+        new DiscoveryDocument("stored", "\"1\"", null, System.currentTimeMillis()));
+    loader.setDiscoveryStore(store);
+    googleApi.service = EasyMock.createControl().createMock(RestApiService.class);
+
+    loader.loadService("service", "version", new NullCallback());
+    assertEquals(ImmutableList.of("stored"), googleApi.parsed);
+    assertEquals(0, googleApi.invocations);
+  }
+
+  /**
+   * Test that a stale service is served from memory right away, refreshed in the background once,
+   * and that both are reported to the delegate.
+   */
+  public void testStaleServiceRefreshed() {
+    MockCacheDelegate delegate = new MockCacheDelegate();
+    loader.delegate = delegate;
+    loader.setMaxAgeMillis(60 * 1000);
+
+    RestApiService stale = EasyMock.createControl().createMock(RestApiService.class);
+    loader.cache.put(
+        ServiceLoader.generateCacheKey("service", "version", CallStyle.REST), stale, 0, 0);
+
+    googleApi.service = EasyMock.createControl().createMock(RestApiService.class);
+    googleApi.deferred = true;
+
+    @SuppressWarnings("unchecked")
+    Callback<ApiService, String> mockCallback = EasyMock.createMock(Callback.class);
+    mockCallback.onSuccess(stale);
+    EasyMock.expectLastCall().times(2);
+    EasyMock.replay(mockCallback);
+
+    loader.loadService("service", "version", mockCallback);
+    loader.loadService("service", "version", mockCallback);
+    EasyMock.verify(mockCallback);
+    assertEquals(ImmutableList.of(stale, stale), delegate.servedStale);
+
+    // Only one refresh is sent, in the background.
+    assertEquals(1, googleApi.invocations);
+    assertEquals(Priority.BACKGROUND, googleApi.priority);
+
+    googleApi.callback.onSuccess(
+        new DiscoveryDocument("service", null, null, System.currentTimeMillis()));
+    assertEquals(ImmutableList.of(googleApi.service), delegate.loaded);
+
+    // The refreshed service is served from now on.
+    @SuppressWarnings("unchecked")
+    Callback<ApiService, String> refreshedCallback = EasyMock.createMock(Callback.class);
+    refreshedCallback.onSuccess(googleApi.service);
+    EasyMock.replay(refreshedCallback);
+    loader.loadService("service", "version", refreshedCallback);
+    EasyMock.verify(refreshedCallback);
+    assertEquals(1, googleApi.invocations);
+  }
+
+  /**
+   * Test that a failed load is remembered for a while instead of being attempted again, and that
+   * the failures are reported to the delegate.
+   */
+  public void testFailureRemembered() {
+    MockCacheDelegate delegate = new MockCacheDelegate();
+    loader.delegate = delegate;
+    googleApi.deferred = true;
+
+    @SuppressWarnings("unchecked")
+    Callback<ApiService, String> mockCallback = EasyMock.createMock(Callback.class);
+    mockCallback.onFailure("Not found");
+    EasyMock.expectLastCall().times(2);
+    EasyMock.replay(mockCallback);
+
+    loader.loadService("service", "version", mockCallback);
+    googleApi.callback.onFailure(new Exception("Not found"));
+    loader.loadService("service", "version", mockCallback);
+
+    EasyMock.verify(mockCallback);
+    assertEquals(1, googleApi.invocations);
+    assertEquals(ImmutableList.of(false, true), delegate.failuresRemembered);
+
+    // Once the failure has expired, the service is loaded again.
+    loader.setFailureTtlMillis(0);
+    loader.loadService("service", "version", new NullCallback());
+    assertEquals(2, googleApi.invocations);
+  }
+
+  /**
+   * Test that a failed background refresh is remembered for a while, during which the stale
+   * service is served without another attempt.
+   */
+  public void testFailedRefreshRemembered() {
+    RestApiService stale = EasyMock.createControl().createMock(RestApiService.class);
+    loader.cache.put(
+        ServiceLoader.generateCacheKey("service", "version", CallStyle.REST), stale, 0, 0);
+    googleApi.deferred = true;
+
+    @SuppressWarnings("unchecked")
+    Callback<ApiService, String> mockCallback = EasyMock.createMock(Callback.class);
+    mockCallback.onSuccess(stale);
+    EasyMock.expectLastCall().times(3);
+    EasyMock.replay(mockCallback);
+
+    loader.loadService("service", "version", mockCallback);
+    assertEquals(1, googleApi.invocations);
+    googleApi.callback.onFailure(new Exception("Unavailable"));
+
+    loader.loadService("service", "version", mockCallback);
+    assertEquals(1, googleApi.invocations);
+
+    // Once the failure has expired, the service is refreshed again.
+    loader.setFailureTtlMillis(0);
+    loader.loadService("service", "version", mockCallback);
+    assertEquals(2, googleApi.invocations);
+    EasyMock.verify(mockCallback);
+  }
+
+  /**
+   * Test that a refreshed service which can not be parsed is remembered as a failed refresh, and
+   * that the stale service is served in the meantime.
+   */
+  public void testCorruptRefreshRemembered() {
+    RestApiService stale = EasyMock.createControl().createMock(RestApiService.class);
+    String cacheKey = ServiceLoader.generateCacheKey("service", "version", CallStyle.REST);
+    loader.cache.put(cacheKey, stale, 0, 0);
+    googleApi.deferred = true;
+    googleApi.corruptBody = "corrupt";
+
+    @SuppressWarnings("unchecked")
+    Callback<ApiService, String> mockCallback = EasyMock.createMock(Callback.class);
+    mockCallback.onSuccess(stale);
+    EasyMock.expectLastCall().times(3);
+    EasyMock.replay(mockCallback);
+
+    loader.loadService("service", "version", mockCallback);
+    assertEquals(1, googleApi.invocations);
+    googleApi.callback.onSuccess(
+        new DiscoveryDocument("corrupt", null, null, System.currentTimeMillis()));
+    assertEquals(ImmutableList.of("corrupt"), googleApi.parsed);
+
+    loader.loadService("service", "version", mockCallback);
+    assertEquals(1, googleApi.invocations);
+
+    // Once the failure has expired, the service is refreshed again.
+    loader.setFailureTtlMillis(0);
+    loader.loadService("service", "version", mockCallback);
+    assertEquals(2, googleApi.invocations);
+    EasyMock.verify(mockCallback);
+  }
+
+  /**
+   * Test that a refreshed directory which can not be parsed is remembered as a failed refresh,
+   * and that the stale directory is served in the meantime.
+   */
+  public void testCorruptDirectoryRefreshRemembered() {
+    loader.setMaxAgeMillis(60 * 1000);
+    googleApi.corruptBody = "corrupt";
+
+    DirectoryCallback first = new DirectoryCallback();
+    loader.loadServiceDefinitions(first);
+    googleApi.directoryCallback.onSuccess(new DiscoveryDocument("directory", null, null, 0));
+    assertEquals(1, first.successes);
+
+    // The stale directory is refreshed right away, and the refreshed copy is corrupt.
+    assertEquals(2, googleApi.directoryInvocations);
+    googleApi.directoryCallback.onSuccess(
+        new DiscoveryDocument("corrupt", null, null, System.currentTimeMillis()));
+    assertEquals(ImmutableList.of("directory", "corrupt"), googleApi.parsed);
+
+    DirectoryCallback second = new DirectoryCallback();
+    loader.loadServiceDefinitions(second);
+    assertEquals(1, second.successes);
+    assertEquals(2, googleApi.directoryInvocations);
+
+    // Once the failure has expired, the directory is refreshed again.
+    loader.setFailureTtlMillis(0);
+    loader.loadServiceDefinitions(second);
+    assertEquals(3, googleApi.directoryInvocations);
+  }
+
+  /**
+   * Test that a newer document found by the revalidation is stored and replaces the service.
+   */
+  public void testStoredDocumentUpdated() {
+    MockStore store = new MockStore();
+    DiscoveryDocument stored = new DiscoveryDocument("stored", "\"1\"", null, 0);
+    store.documents.put(Config.getBaseUrl() + " service_version_REST", stored);
+    loader.setDiscoveryStore(store);
+
+    final List<ApiService> loaded = Lists.newArrayList();
+    loader.delegate = new ServiceLoader.ServiceLoaderDelegate() {
+      @Override
+      public void serviceLoaded(ApiService service) {
+        loaded.add(service);
+      }
+
+      @Override
+      public void directoryLoaded(Set<ServiceDefinition> directoryServices) {
+        fail();
+      }
+    };
+
+    googleApi.service = EasyMock.createControl().createMock(RestApiService.class);
+    googleApi.deferred = true;
+    loader.backgroundLoadService("service:version");
+
+    DiscoveryDocument updated = new DiscoveryDocument("updated", "\"2\"", null, 1);
+    googleApi.callback.onSuccess(updated);
+    assertEquals(1, store.puts);
+    assertSame(updated, store.documents.get(Config.getBaseUrl() + " service_version_REST"));
+    assertEquals(ImmutableList.of("stored", "updated"), googleApi.parsed);
+    assertEquals(2, loaded.size());
+  }
+
+  /**
+   * Test that a newer document found by the revalidation which can not be parsed is not stored,
+   * so that the stored copy stays in use.
+   */
+  public void testCorruptUpdateNotStored() {
+    MockStore store = new MockStore();
+    String storeKey = Config.getBaseUrl() + " service_version_REST";
+    DiscoveryDocument stored = new DiscoveryDocument("stored", "\"1\"", null, 0);
+    store.documents.put(storeKey, stored);
+    loader.setDiscoveryStore(store);
+
+    googleApi.service = EasyMock.createControl().createMock(RestApiService.class);
+    googleApi.deferred = true;
+    googleApi.corruptBody = "corrupt";
+    loader.backgroundLoadService("service:version");
+
+    googleApi.callback.onSuccess(new DiscoveryDocument("corrupt", "\"2\"", null, 1));
+    assertEquals(0, store.puts);
+    assertSame(stored, store.documents.get(storeKey));
+    assertEquals(ImmutableList.of("stored", "corrupt"), googleApi.parsed);
+  }
+
+  /**
+   * Test that a document which was not stored is loaded from the network, and stored.
+   */
+  public void testLoadedDocumentStored() {
+    MockStore store = new MockStore();
+    loader.setDiscoveryStore(store);
+    googleApi.service = EasyMock.createControl().createMock(RestApiService.class);
+
+    loader.backgroundLoadService("service:version");
+    assertEquals(Priority.BACKGROUND, googleApi.priority);
+    assertNull(googleApi.stored);
+    assertEquals(1, store.puts);
+    assertNotNull(store.documents.get(Config.getBaseUrl() + " service_version_REST"));
+  }
+
+  /**
+   * Test that a stored document which can not be parsed is dropped, and loaded from the network
+   * instead.
+   */
+  public void testCorruptStoredDocumentReloaded() {
+    MockStore store = new MockStore();
+    String storeKey = Config.getBaseUrl() + " service_version_REST";
+    store.documents.put(
+        storeKey, new DiscoveryDocument("corrupt", null, null, System.currentTimeMillis()));
+    loader.setDiscoveryStore(store);
+    googleApi.service = EasyMock.createControl().createMock(RestApiService.class);
+    googleApi.corruptBody = "corrupt";
+
+    @SuppressWarnings("unchecked")
+    Callback<ApiService, String> mockCallback = EasyMock.createMock(Callback.class);
+    mockCallback.onSuccess(googleApi.service);
+    EasyMock.replay(mockCallback);
+
+    loader.loadService("service", "version", mockCallback);
+
+    EasyMock.verify(mockCallback);
+    assertEquals(1, googleApi.invocations);
+    assertNull(googleApi.stored);
+    assertEquals("service", store.documents.get(storeKey).getBody());
+  }
+
+  /**
+   * Test that a service which was evicted from memory is loaded again when it is needed.
+   */
+  public void testEvictedServiceReloaded() {
+    googleApi.service = EasyMock.createControl().createMock(RestApiService.class);
+
+    // Every mock document is seven characters long, so only one service fits.
+    loader.cache.setMaxChars(10);
+    loader.backgroundLoadService("first:v1");
+    loader.backgroundLoadService("second:v1");
+    assertEquals(2, googleApi.invocations);
+
+    loader.backgroundLoadService("first:v1");
+    assertEquals(3, googleApi.invocations);
+  }
+
+  /**
+   * Test that the pinned service stays in memory however many other services are loaded.
+   */
+  public void testPinnedServiceKept() {
+    googleApi.service = EasyMock.createControl().createMock(RestApiService.class);
+    loader.cache.setMaxChars(10);
+    loader.pinService("first", "v1");
+
+    loader.backgroundLoadService("first:v1");
+    loader.backgroundLoadService("second:v1");
+    loader.backgroundLoadService("first:v1");
+    assertEquals(2, googleApi.invocations);
+
+    loader.clearPinnedService();
+    loader.backgroundLoadService("third:v1");
+    loader.backgroundLoadService("first:v1");
+    assertEquals(4, googleApi.invocations);
+  }
+
+  /**
+   * Callback which counts the outcomes of loading the directory.
+   */
+  private static class DirectoryCallback implements Callback<Set<ServiceDefinition>, String> {
+    int successes = 0;
+    int failures = 0;
+
+    @Override
+    public void onSuccess(Set<ServiceDefinition> result) {
+      successes++;
+    }
+
+    @Override
+    public void onFailure(String reason) {
+      failures++;
+    }
+  }
+
+  /**
+   * Callback which ignores the outcome.
+   */
+  private static class NullCallback implements Callback<ApiService, String> {
+    @Override
+    public void onSuccess(ApiService result) {
+    }
+
+    @Override
+    public void onFailure(String reason) {
+    }
+  }
+
+  /**
+   * {@link ServiceLoader.CacheDelegate} which records the notifications about services.
+   */
+  private static class MockCacheDelegate implements ServiceLoader.CacheDelegate {
+    final List<ApiService> loaded = Lists.newArrayList();
+    final List<ApiService> servedStale = Lists.newArrayList();
+    final List<Boolean> failuresRemembered = Lists.newArrayList();
+
+    @Override
+    public void serviceLoaded(ApiService service) {
+      loaded.add(service);
+    }
+
+    @Override
+    public void directoryLoaded(Set<ServiceDefinition> directoryServices) {
+      fail();
+    }
+
+    @Override
+    public void serviceServedStale(ApiService service) {
+      servedStale.add(service);
+    }
+
+    @Override
+    public void serviceLoadFailed(
+        String name, String version, String reason, boolean remembered) {
+      failuresRemembered.add(remembered);
+    }
+
+    @Override
+    public void directoryServedStale(Set<ServiceDefinition> directoryServices) {
+      fail();
+    }
+
+    @Override
+    public void directoryLoadFailed(String reason, boolean remembered) {
+      fail();
+    }
+  }
+
+  /**
+   * {@link DiscoveryStore} which keeps its documents in memory.
+   */
+  private static class MockStore implements DiscoveryStore {
+    final Map<String, DiscoveryDocument> documents = Maps.newHashMap();
+    int puts = 0;
+
+    @Override
+    public void get(String key, AsyncCallback<DiscoveryDocument> callback) {
+      callback.onSuccess(documents.get(key));
+    }
+
+    @Override
+    public void put(String key, DiscoveryDocument document) {
+      puts++;
+      documents.put(key, document);
+    }
+
+    @Override
+    public void remove(String key) {
+      documents.remove(key);
+    }
+  }
+
   /**
    * Mock implementation of {@link ApiServiceFactory} which allows its returned service
    * to be set.
@@ -145,21 +728,77 @@ public class ServiceLoaderTest extends TestCase {
   private static class MockGoogleApi extends ApiServiceFactory {
     private RestApiService service;
 
+    /** Whether the callback is kept for the test to invoke, instead of invoked right away. */
+    private boolean deferred = false;
+    private ApiRequest request;
+    private Priority priority;
+    private DiscoveryDocument stored;
+    private AsyncCallback<DiscoveryDocument> callback;
+
+    /** Body of a document which can not be parsed. */
+    private String corruptBody;
+
+    /** Bodies of the documents which were parsed, in order. */
+    private final List<String> parsed = Lists.newArrayList();
+
     int invocations = 0;
 
+    private AsyncCallback<DiscoveryDocument> directoryCallback;
+    int directoryInvocations = 0;
+
     public MockGoogleApi() {
       super();
     }
 
     /**
-     * Mocks out real API requests by immediately calling the callback with the
-     * pre-defined service.
+     * Mocks out real API requests by immediately calling the callback with a
+     * document, which is parsed into the pre-defined service.
      */
     @Override
-    public void createService(final String serviceName, final String version,
-        final CallStyle callStyle, final AsyncCallback<ApiService> callback) {
+    public ApiRequest loadServiceDocument(String serviceName, String version,
+        CallStyle callStyle, Priority priority, DiscoveryDocument stored,
+        AsyncCallback<DiscoveryDocument> callback) {
       invocations++;
-      callback.onSuccess(service);
+      this.priority = priority;
+      this.stored = stored;
+      if (deferred) {
+        this.callback = callback;
+      } else {
+        callback.onSuccess(
+            new DiscoveryDocument("service", null, null, System.currentTimeMillis()));
+      }
+      return request;
+    }
+
+    @Override
+    public ApiService parseService(String body, CallStyle callStyle) {
+      parsed.add(body);
+      if (body.equals(corruptBody)) {
+        throw new IllegalArgumentException("Corrupt document");
+      }
+      return service;
+    }
+
+    /**
+     * Mocks out the directory request by keeping the callback for the test to invoke.
+     */
+    @Override
+    public ApiRequest loadDirectoryDocument(Priority priority, DiscoveryDocument stored,
+        AsyncCallback<DiscoveryDocument> callback) {
+      directoryInvocations++;
+      this.priority = priority;
+      this.stored = stored;
+      this.directoryCallback = callback;
+      return request;
+    }
+
+    @Override
+    public Set<ServiceDefinition> parseDirectory(String body) {
+      parsed.add(body);
+      if (body.equals(corruptBody)) {
+        throw new IllegalArgumentException("Corrupt document");
+      }
+      return ImmutableSet.of();
     }
   }
 }
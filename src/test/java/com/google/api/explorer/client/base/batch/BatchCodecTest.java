@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.batch;
+
+import com.google.api.explorer.client.base.ApiMethod.HttpMethod;
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.batch.BatchCodec.Part;
+import com.google.common.collect.ImmutableList;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Tests for {@link BatchCodec}, against hand-written batches in the wire format.
+ *
+ */
+public class BatchCodecTest extends TestCase {
+  private static final String BOUNDARY = "batch_test";
+
+  /** Wire format of a batch with a GET and a POST request. */
+  private static final String REQUEST_FIXTURE = "--batch_test\r\n"
+      + "Content-Type: application/http\r\n"
+      + "Content-ID: <item1>\r\n"
+      + "\r\n"
+      + "GET /plus/v1/people/1?key=k HTTP/1.1\r\n"
+      + "Authorization: Bearer token\r\n"
+      + "\r\n"
+      + "\r\n"
+      + "--batch_test\r\n"
+      + "Content-Type: application/http\r\n"
+      + "Content-ID: <item2>\r\n"
+      + "\r\n"
+      + "POST /plus/v1/activities HTTP/1.1\r\n"
+      + "Content-Type: application/json\r\n"
+      + "\r\n"
+      + "{\n  \"a\": 1\n}\r\n"
+      + "--batch_test--\r\n";
+
+  /** Wire format of the answer to a batch of two requests, in reverse order. */
+  private static final String RESPONSE_FIXTURE = "--batch_pLsdf6kPfvA_AAhtD2mE3Ls\r\n"
+      + "Content-Type: application/http\r\n"
+      + "Content-ID: <response-item2>\r\n"
+      + "\r\n"
+      + "HTTP/1.1 404 Not Found\r\n"
+      + "Content-Type: application/json; charset=UTF-8\r\n"
+      + "Content-Length: 24\r\n"
+      + "\r\n"
+      + "{\"error\": {\"code\": 404}}\r\n"
+      + "--batch_pLsdf6kPfvA_AAhtD2mE3Ls\r\n"
+      + "Content-Type: application/http\r\n"
+      + "Content-ID: <response-item1>\r\n"
+      + "\r\n"
+      + "HTTP/1.1 200 OK\r\n"
+      + "Content-Type: application/json; charset=UTF-8\r\n"
+      + "ETag: \"etag\"\r\n"
+      + "\r\n"
+      + "{\r\n \"id\": \"1\"\r\n}\r\n"
+      + "--batch_pLsdf6kPfvA_AAhtD2mE3Ls--\r\n";
+
+  private static final String RESPONSE_CONTENT_TYPE =
+      "multipart/mixed; boundary=batch_pLsdf6kPfvA_AAhtD2mE3Ls";
+
+  public void testEncodeRequests() {
+    TestRequest get = new TestRequest(HttpMethod.GET, "/plus/v1/people/1?key=k", null);
+    get.addHeader("Authorization", "Bearer token");
+    TestRequest post =
+        new TestRequest(HttpMethod.POST, "/plus/v1/activities", "{\n  \"a\": 1\n}");
+    post.addHeader("Content-Type", "application/json");
+
+    assertEquals("multipart/mixed; boundary=batch_test", BatchCodec.contentType(BOUNDARY));
+    assertEquals(REQUEST_FIXTURE,
+        BatchCodec.encodeRequests(BOUNDARY, ImmutableList.<ApiRequest>of(get, post)));
+  }
+
+  public void testDecodeResponse() {
+    List<Part> responses = BatchCodec.decode(RESPONSE_CONTENT_TYPE, RESPONSE_FIXTURE);
+
+    // The responses came back in reverse, and are matched by content ID.
+    assertEquals(2, responses.size());
+    assertEquals("response-item2", responses.get(0).getContentId());
+    assertEquals(1, BatchCodec.requestIndex(responses.get(0)));
+    assertEquals(0, BatchCodec.requestIndex(responses.get(1)));
+
+    assertEquals(404, responses.get(0).getStatus());
+    assertEquals("Not Found", responses.get(0).getStatusText());
+    assertEquals("{\"error\": {\"code\": 404}}", responses.get(0).getBody());
+
+    Part ok = responses.get(1);
+    assertEquals("HTTP/1.1 200 OK", ok.getStartLine());
+    assertEquals(200, ok.getStatus());
+    assertEquals("OK", ok.getStatusText());
+    assertEquals("{\r\n \"id\": \"1\"\r\n}", ok.getBody());
+    assertEquals(ImmutableList.of("Content-Type", "ETag"),
+        ImmutableList.copyOf(ok.getHeaders().keySet()));
+    assertEquals("application/json; charset=UTF-8", ok.getHeaders().get("Content-Type"));
+    assertEquals("\"etag\"", ok.getHeaders().get("ETag"));
+  }
+
+  public void testDecodeLineFeedsAndQuotedBoundary() {
+    String body = "preamble\n"
+        + "--abc\n"
+        + "Content-Type: application/http\n"
+        + "Content-ID: <response-item1>\n"
+        + "\n"
+        + "HTTP/1.1 204 No Content\n"
+        + "ETag: \"x\"\n"
+        + "\n"
+        + "\n"
+        + "--abc--\n";
+
+    List<Part> parts = BatchCodec.decode("multipart/mixed; boundary=\"abc\"", body);
+
+    assertEquals(1, parts.size());
+    assertEquals("response-item1", parts.get(0).getContentId());
+    assertEquals(0, BatchCodec.requestIndex(parts.get(0)));
+    assertEquals(204, parts.get(0).getStatus());
+    assertEquals("\"x\"", parts.get(0).getHeaders().get("ETag"));
+    assertEquals("", parts.get(0).getBody());
+  }
+
+  public void testDecodeInvalid() {
+    String[][] invalid = {
+        {"application/json", "{}"},
+        {"multipart/mixed", "--abc--"},
+        {"multipart/mixed; boundary=abc", "no boundary here"},
+        {"multipart/mixed; boundary=abc", "--abc\r\nContent-Type: application/http\r\n\r\n"}};
+    for (String[] contentTypeAndBody : invalid) {
+      try {
+        BatchCodec.decode(contentTypeAndBody[0], contentTypeAndBody[1]);
+        fail("Expected an error for " + contentTypeAndBody[1]);
+      } catch (IllegalArgumentException e) {
+        // Expected.
+      }
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.batch;
+
+import com.google.api.explorer.client.base.ApiMethod.HttpMethod;
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.ApiResponse;
+import com.google.api.explorer.client.base.BaseGwtTest;
+import com.google.api.explorer.client.base.batch.BatchRequest.BatchCallback;
+import com.google.api.explorer.client.base.http.HttpException;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * Tests for {@link BatchRequest}, which send batches to a {@link FakeBatchServer}.
+ *
+ */
+public class BatchRequestGwtTest extends BaseGwtTest {
+
+  private static final String CONTENT_TYPE = "multipart/mixed; boundary=batch_response";
+
+  /** Answer to a batch of two requests, in reverse order. */
+  private static final String RESPONSE = "--batch_response\r\n"
+      + "Content-Type: application/http\r\n"
+      + "Content-ID: <response-item2>\r\n"
+      + "\r\n"
+      + "HTTP/1.1 404 Not Found\r\n"
+      + "Content-Type: application/json; charset=UTF-8\r\n"
+      + "\r\n"
+      + "{\"error\": {\"code\": 404}}\r\n"
+      + "--batch_response\r\n"
+      + "Content-Type: application/http\r\n"
+      + "Content-ID: <response-item1>\r\n"
+      + "\r\n"
+      + "HTTP/1.1 200 OK\r\n"
+      + "Content-Type: application/json; charset=UTF-8\r\n"
+      + "\r\n"
+      + "{\"id\": \"1\"}\r\n"
+      + "--batch_response--\r\n";
+
+  /** Callback which keeps the outcome of every request. */
+  private static class ResultCallback implements BatchCallback {
+    final Map<ApiRequest, ApiResponse> responses = Maps.newHashMap();
+    final Map<ApiRequest, Throwable> failures = Maps.newHashMap();
+
+    @Override
+    public void onResponse(ApiRequest request, ApiResponse response, long startTime, long endTime) {
+      assertTrue(startTime <= endTime);
+      responses.put(request, response);
+    }
+
+    @Override
+    public void onFailure(ApiRequest request, Throwable caught) {
+      failures.put(request, caught);
+    }
+  }
+
+  /** The requests are sent as parts of one batch, and every part answers its own request. */
+  public void testSend() {
+    FakeBatchServer server = new FakeBatchServer(200, CONTENT_TYPE, RESPONSE);
+    TestRequest get = new TestRequest(HttpMethod.GET, "/plus/v1/people/1", null);
+    TestRequest missing = new TestRequest(HttpMethod.GET, "/plus/v1/people/missing", null);
+    BatchRequest batch = server.newBatch().add(get).add(missing);
+    assertEquals(2, batch.size());
+
+    ResultCallback callback = new ResultCallback();
+    batch.send(callback);
+
+    ApiRequest received = server.getReceived();
+    assertEquals(BatchRequest.BATCH_REQUEST_PATH, received.getRequestPath());
+    assertEquals(HttpMethod.POST, received.getHttpMethod());
+    assertTrue(received.getHeaders().get("Content-Type")
+        .startsWith("multipart/mixed; boundary=batch_"));
+    String body = received.getRequestBody();
+    assertTrue(body.contains("Content-ID: <item1>\r\n\r\nGET /plus/v1/people/1 HTTP/1.1\r\n"));
+    assertTrue(body.contains(
+        "Content-ID: <item2>\r\n\r\nGET /plus/v1/people/missing HTTP/1.1\r\n"));
+
+    // The requests were prepared like requests which are sent on their own.
+    assertTrue(get.getHeaders().containsKey("X-JavaScript-User-Agent"));
+
+    assertTrue(callback.failures.isEmpty());
+    assertEquals(200, callback.responses.get(get).getStatus());
+    assertEquals("{\"id\": \"1\"}", callback.responses.get(get).getBodyAsString());
+    assertEquals(404, callback.responses.get(missing).getStatus());
+    assertEquals("Not Found", callback.responses.get(missing).getStatusText());
+  }
+
+  /** Requests which the batch response does not answer fail on their own. */
+  public void testUnansweredRequest() {
+    FakeBatchServer server = new FakeBatchServer(200, CONTENT_TYPE, RESPONSE);
+    TestRequest first = new TestRequest(HttpMethod.GET, "/plus/v1/people/1", null);
+    TestRequest second = new TestRequest(HttpMethod.GET, "/plus/v1/people/2", null);
+    TestRequest third = new TestRequest(HttpMethod.GET, "/plus/v1/people/3", null);
+
+    ResultCallback callback = new ResultCallback();
+    server.newBatch().add(first).add(second).add(third).send(callback);
+
+    assertEquals(2, callback.responses.size());
+    assertEquals(1, callback.failures.size());
+    assertTrue(callback.failures.get(third) instanceof HttpException);
+  }
+
+  /** Every request fails when the batch fails as a whole. */
+  public void testBatchFailed() {
+    FakeBatchServer[] servers = {
+        new FakeBatchServer(503, "text/html", "<html>Unavailable</html>"),
+        new FakeBatchServer(200, "application/json", "{}")};
+    for (FakeBatchServer server : servers) {
+      TestRequest first = new TestRequest(HttpMethod.GET, "/plus/v1/people/1", null);
+      TestRequest second = new TestRequest(HttpMethod.GET, "/plus/v1/people/2", null);
+
+      ResultCallback callback = new ResultCallback();
+      server.newBatch().add(first).add(second).send(callback);
+
+      assertTrue(callback.responses.isEmpty());
+      assertTrue(callback.failures.get(first) instanceof HttpException);
+      assertTrue(callback.failures.get(second) instanceof HttpException);
+    }
+  }
+
+  public void testEmptyBatch() {
+    try {
+      new BatchRequest().send(new ResultCallback());
+      fail("Expected an empty batch to be rejected.");
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.batch;
+
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.ApiResponse;
+import com.google.common.collect.ImmutableMap;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * Stand-in for the batch endpoint, which keeps the batch request it received and answers it with
+ * a hand-written batch response. It does not use {@link BatchCodec}, so that the fixtures check
+ * the codec against the wire format rather than against itself.
+ *
+ */
+public class FakeBatchServer {
+  private final int status;
+  private final String contentType;
+  private final String responseBody;
+
+  private ApiRequest received;
+
+  /**
+   * @param status Status of the batch response as a whole.
+   * @param contentType Content type of the batch response, which contains the boundary.
+   * @param responseBody Body of the batch response, in the wire format.
+   */
+  public FakeBatchServer(int status, String contentType, String responseBody) {
+    this.status = status;
+    this.contentType = contentType;
+    this.responseBody = responseBody;
+  }
+
+  /** Returns the HTTP request which carried the last batch, or {@code null} if none was sent. */
+  public ApiRequest getReceived() {
+    return received;
+  }
+
+  /**
+   * Returns a batch which is sent to this server instead of the batch endpoint.
+   */
+  public BatchRequest newBatch() {
+    return new BatchRequest() {
+      @Override
+      void sendBatch(ApiRequest batch, AsyncCallback<ApiResponse> callback) {
+        received = batch;
+        callback.onSuccess(ApiResponse.create(status, "",
+            ImmutableMap.of("Content-Type", contentType), responseBody));
+      }
+    };
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.batch;
+
+import com.google.api.explorer.client.base.ApiMethod;
+import com.google.api.explorer.client.base.ApiMethod.HttpMethod;
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.ApiService;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * Request with a fixed method, path and body, which can be put into a batch.
+ *
+ */
+class TestRequest extends ApiRequest {
+  private final HttpMethod method;
+  private final String path;
+  private final String body;
+  private final Map<String, String> headers = Maps.newLinkedHashMap();
+
+  TestRequest(HttpMethod method, String path, String body) {
+    this.method = method;
+    this.path = path;
+    this.body = body;
+  }
+
+  @Override
+  public String getRequestPath() {
+    return path;
+  }
+
+  @Override
+  public HttpMethod getHttpMethod() {
+    return method;
+  }
+
+  @Override
+  public String getRequestBody() {
+    return body;
+  }
+
+  @Override
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  @Override
+  public ApiService getService() {
+    return null;
+  }
+
+  @Override
+  public ApiMethod getMethod() {
+    return null;
+  }
+
+  @Override
+  public ListMultimap<String, String> getParamValues() {
+    return null;
+  }
+
+  @Override
+  public void setApiKey(String apiKey) {
+  }
+
+  @Override
+  public void setTraceParameter(String traceParameter) {
+  }
+
+  @Override
+  public String getApiKey() {
+    return null;
+  }
+
+  @Override
+  public void addHeader(String headerName, String headerValue) {
+    headers.put(headerName, headerValue);
+  }
+}
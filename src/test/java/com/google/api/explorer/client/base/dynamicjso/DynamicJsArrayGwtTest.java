@@ -17,6 +17,7 @@
 package com.google.api.explorer.client.base.dynamicjso;
 
 import com.google.api.explorer.client.base.BaseGwtTest;
+import com.google.common.collect.Lists;
 import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.core.client.JsonUtils;
 
@@ -197,4 +198,26 @@ public class DynamicJsArrayGwtTest extends BaseGwtTest {
     assertEquals(JsType.ARRAY, arr.typeofIndex(4));
     assertEquals(JsType.OBJECT, arr.typeofIndex(5));
   }
+
+  /** Every item is visited with its index, type and value. */
+  public void testDynamicJsArray_accept() {
+    DynamicJsArray arr = JsonUtils.safeEval("[1.2,12,\"foo\",false,[\"a\"],{\"fa\":\"bar\"},null]");
+    RecordingVisitor visitor = new RecordingVisitor();
+    arr.accept(visitor);
+
+    assertEquals(7, visitor.size);
+    assertEquals(Lists.newArrayList(
+        "0 null NUMBER 1.2",
+        "1 null INTEGER 12",
+        "2 null STRING foo",
+        "3 null BOOLEAN false",
+        "4 null ARRAY 1",
+        "5 null OBJECT 1",
+        "6 null NULL null"), visitor.visits);
+
+    visitor = new RecordingVisitor();
+    arr.accept(visitor, 2, 4);
+    assertEquals(7, visitor.size);
+    assertEquals(Lists.newArrayList("2 null STRING foo", "3 null BOOLEAN false"), visitor.visits);
+  }
 }
@@ -17,6 +17,7 @@
 package com.google.api.explorer.client.base.dynamicjso;
 
 import com.google.api.explorer.client.base.BaseGwtTest;
+import com.google.common.collect.Lists;
 import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.core.client.JsArrayNumber;
 import com.google.gwt.core.client.JsonUtils;
@@ -129,4 +130,32 @@ public class DynamicJsoGwtTest extends BaseGwtTest {
     assertEquals(JsType.OBJECT, jso.typeofKey("f"));
     assertEquals(JsType.STRING, jso.<DynamicJso>get("f").typeofKey("fa"));
   }
+
+  /** Every field is visited with its key, position, type and value. */
+  public void testDynamicJso_accept() {
+    DynamicJso jso = JsonUtils.safeEval("{\"a\":1.2,\"b\":12,\"c\":\"foo\",\"d\":false,"
+        + "\"e\":[\"a\"],\"f\":{\"fa\":\"bar\"},\"g\":null}");
+    RecordingVisitor visitor = new RecordingVisitor();
+    jso.accept(visitor);
+
+    assertEquals(7, visitor.size);
+    assertEquals(Lists.newArrayList(
+        "0 a NUMBER 1.2",
+        "1 b INTEGER 12",
+        "2 c STRING foo",
+        "3 d BOOLEAN false",
+        "4 e ARRAY 1",
+        "5 f OBJECT 1",
+        "6 g NULL null"), visitor.visits);
+  }
+
+  /** A range of keys can be visited, with the size still covering every key. */
+  public void testDynamicJso_acceptRange() {
+    DynamicJso jso = JsonUtils.safeEval("{\"a\":1,\"b\":2,\"c\":3}");
+    RecordingVisitor visitor = new RecordingVisitor();
+    jso.accept(visitor, jso.keys(), 1, 2);
+
+    assertEquals(3, visitor.size);
+    assertEquals(Lists.newArrayList("1 b INTEGER 2"), visitor.visits);
+  }
 }
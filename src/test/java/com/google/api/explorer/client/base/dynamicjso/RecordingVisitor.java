@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.dynamicjso;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * Visitor which records every visit as a string of the form "index key type value".
+ *
+ */
+class RecordingVisitor extends JsVisitor {
+  final List<String> visits = Lists.newArrayList();
+  int size = -1;
+
+  @Override
+  public void begin(int size) {
+    this.size = size;
+  }
+
+  @Override
+  public void visitNull(int index, String key) {
+    record(index, key, "NULL", null);
+  }
+
+  @Override
+  public void visitBoolean(int index, String key, boolean value) {
+    record(index, key, JsType.BOOLEAN, value);
+  }
+
+  @Override
+  public void visitInteger(int index, String key, int value) {
+    record(index, key, JsType.INTEGER, value);
+  }
+
+  @Override
+  public void visitNumber(int index, String key, double value) {
+    record(index, key, JsType.NUMBER, value);
+  }
+
+  @Override
+  public void visitString(int index, String key, String value) {
+    record(index, key, JsType.STRING, value);
+  }
+
+  @Override
+  public void visitArray(int index, String key, DynamicJsArray value) {
+    record(index, key, JsType.ARRAY, value.length());
+  }
+
+  @Override
+  public void visitObject(int index, String key, DynamicJso value) {
+    record(index, key, JsType.OBJECT, value.keys().length());
+  }
+
+  private void record(int index, String key, Object type, Object value) {
+    visits.add(index + " " + key + " " + type + " " + value);
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.http;
+
+import com.google.api.explorer.client.base.ApiResponse;
+import com.google.common.collect.Lists;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+import java.util.List;
+
+/**
+ * Tests for {@link InFlightRequests}.
+ *
+ */
+public class InFlightRequestsTest extends TestCase {
+
+  /**
+   * Call which keeps the shared callback, so that the test decides when the call finishes.
+   */
+  private static class FakeCall implements InFlightRequests.Call {
+    AsyncCallback<ApiResponse> callback;
+    int starts = 0;
+    boolean canceled = false;
+    InFlightRequests.Call shared;
+
+    @Override
+    public TransportRequest start(AsyncCallback<ApiResponse> callback) {
+      this.callback = callback;
+      starts++;
+      return new TransportRequest() {
+        @Override
+        public void cancel() {
+          canceled = true;
+        }
+      };
+    }
+
+    @Override
+    public void shared(InFlightRequests.Call started) {
+      shared = started;
+    }
+  }
+
+  /** Callback which records the responses it receives. */
+  private static class RecordingCallback implements AsyncCallback<ApiResponse> {
+    final List<ApiResponse> responses = Lists.newArrayList();
+    final List<Throwable> failures = Lists.newArrayList();
+
+    @Override
+    public void onSuccess(ApiResponse response) {
+      responses.add(response);
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      failures.add(caught);
+    }
+  }
+
+  private InFlightRequests inFlight;
+  private FakeCall call;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    inFlight = new InFlightRequests();
+    call = new FakeCall();
+  }
+
+  /** Identical requests share one call and receive the same response. */
+  public void testShared() {
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback second = new RecordingCallback();
+    inFlight.send("key", null, call, first);
+    inFlight.send("key", null, call, second);
+    assertEquals(1, call.starts);
+
+    ApiResponse response = EasyMock.createMock(ApiResponse.class);
+    call.callback.onSuccess(response);
+    assertSame(response, first.responses.get(0));
+    assertSame(response, second.responses.get(0));
+    assertEquals(0, inFlight.size());
+
+    // Once the call has finished, the next request makes a call of its own.
+    inFlight.send("key", null, call, new RecordingCallback());
+    assertEquals(2, call.starts);
+  }
+
+  public void testFailureShared() {
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback second = new RecordingCallback();
+    inFlight.send("key", null, call, first);
+    inFlight.send("key", null, call, second);
+
+    TimeoutException timeout = new TimeoutException(1000);
+    call.callback.onFailure(timeout);
+    assertSame(timeout, first.failures.get(0));
+    assertSame(timeout, second.failures.get(0));
+  }
+
+  public void testDifferentKeys() {
+    inFlight.send("a", null, call, new RecordingCallback());
+    inFlight.send("b", null, call, new RecordingCallback());
+    assertEquals(2, call.starts);
+    assertEquals(2, inFlight.size());
+  }
+
+  /** A waiter which cancels does not receive the response, and does not cancel the others. */
+  public void testCancelOneWaiter() {
+    RecordingCallback canceled = new RecordingCallback();
+    RecordingCallback waiting = new RecordingCallback();
+    TransportRequest request = inFlight.send("key", null, call, canceled);
+    inFlight.send("key", null, call, waiting);
+    request.cancel();
+    assertFalse(call.canceled);
+
+    call.callback.onSuccess(EasyMock.createMock(ApiResponse.class));
+    assertTrue(canceled.responses.isEmpty());
+    assertEquals(1, waiting.responses.size());
+  }
+
+  /** The call is canceled once every waiter has canceled. */
+  public void testCancelAllWaiters() {
+    TransportRequest first = inFlight.send("key", null, call, new RecordingCallback());
+    TransportRequest second = inFlight.send("key", null, call, new RecordingCallback());
+    first.cancel();
+    assertFalse(call.canceled);
+    second.cancel();
+    assertTrue(call.canceled);
+    assertEquals(0, inFlight.size());
+  }
+
+  /** Waiters which did not start the call are told which call they shared. */
+  public void testWaitersToldOfSharedCall() {
+    FakeCall waiterCall = new FakeCall();
+    inFlight.send("key", null, call, new RecordingCallback());
+    inFlight.send("key", null, waiterCall, new RecordingCallback());
+    assertEquals(0, waiterCall.starts);
+
+    call.callback.onSuccess(EasyMock.createMock(ApiResponse.class));
+    assertSame(call, waiterCall.shared);
+    assertNull(call.shared);
+  }
+
+  /** Requests whose settings differ make calls of their own. */
+  public void testDifferentSettingsNotShared() {
+    FakeCall otherCall = new FakeCall();
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback other = new RecordingCallback();
+    inFlight.send("key", "retry", call, first);
+    inFlight.send("key", "no retry", otherCall, other);
+    assertEquals(1, call.starts);
+    assertEquals(1, otherCall.starts);
+
+    ApiResponse response = EasyMock.createMock(ApiResponse.class);
+    otherCall.callback.onSuccess(response);
+    assertSame(response, other.responses.get(0));
+    assertTrue(first.responses.isEmpty());
+
+    // Requests with equal settings are still shared.
+    inFlight.send("key", "retry", new FakeCall(), new RecordingCallback());
+    assertEquals(1, call.starts);
+  }
+}
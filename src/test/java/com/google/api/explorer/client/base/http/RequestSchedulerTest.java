@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.http;
+
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.ApiRequest.Priority;
+import com.google.api.explorer.client.base.ApiResponse;
+import com.google.api.explorer.client.base.http.RequestScheduler.ScheduledRequest;
+import com.google.common.collect.Lists;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+import java.util.List;
+
+/**
+ * Tests for {@link RequestScheduler}.
+ *
+ */
+public class RequestSchedulerTest extends TestCase {
+  private static final String BASE_URL = "https://www.googleapis.com";
+
+  /**
+   * Transport which keeps the callbacks of the requests it was asked to send, so that the test
+   * decides when they finish.
+   */
+  private static class FakeTransport implements Transport {
+    final List<ApiRequest> sent = Lists.newArrayList();
+    final List<AsyncCallback<ApiResponse>> callbacks = Lists.newArrayList();
+    int canceled = 0;
+
+    @Override
+    public void preload() {
+    }
+
+    @Override
+    public TransportRequest send(
+        ApiRequest request, int timeoutMillis, AsyncCallback<ApiResponse> callback) {
+      sent.add(request);
+      callbacks.add(callback);
+      return new TransportRequest() {
+        @Override
+        public void cancel() {
+          canceled++;
+        }
+      };
+    }
+
+    void finish(int index) {
+      callbacks.get(index).onSuccess(null);
+    }
+  }
+
+  private static final AsyncCallback<ApiResponse> IGNORED = new AsyncCallback<ApiResponse>() {
+    @Override
+    public void onSuccess(ApiResponse result) {
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+    }
+  };
+
+  private RequestScheduler scheduler;
+  private FakeTransport transport;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    scheduler = new RequestScheduler();
+    transport = new FakeTransport();
+  }
+
+  private static ApiRequest request(Priority priority) {
+    ApiRequest request = EasyMock.createNiceMock(ApiRequest.class);
+    EasyMock.expect(request.getPriority()).andReturn(priority).anyTimes();
+    EasyMock.replay(request);
+    return request;
+  }
+
+  private ScheduledRequest schedule(ApiRequest request) {
+    return scheduler.schedule(BASE_URL, transport, request, 0, IGNORED);
+  }
+
+  /** Requests beyond the limit wait until a request to the same host finishes. */
+  public void testMaxInFlight() {
+    scheduler.setMaxInFlight(BASE_URL + "/", 2);
+    ApiRequest first = request(Priority.INTERACTIVE);
+    ApiRequest second = request(Priority.INTERACTIVE);
+    ApiRequest third = request(Priority.INTERACTIVE);
+    schedule(first);
+    schedule(second);
+    ScheduledRequest waiting = schedule(third);
+
+    assertEquals(2, transport.sent.size());
+    assertEquals(2, scheduler.getInFlightCount(BASE_URL));
+    assertTrue(waiting.isWaiting());
+
+    // Requests to other hosts are not held up.
+    scheduler.schedule("https://example.com/api", transport, request(Priority.BACKGROUND), 0,
+        IGNORED);
+    assertEquals(3, transport.sent.size());
+
+    transport.finish(0);
+    assertEquals(4, transport.sent.size());
+    assertSame(third, transport.sent.get(3));
+    assertFalse(waiting.isWaiting());
+  }
+
+  /** Interactive requests are sent before background requests which have been waiting longer. */
+  public void testInteractiveFirst() {
+    scheduler.setDefaultMaxInFlight(2);
+    ApiRequest background = request(Priority.BACKGROUND);
+    schedule(background);
+    schedule(request(Priority.BACKGROUND));
+    ApiRequest interactive = request(Priority.INTERACTIVE);
+    schedule(interactive);
+
+    // The second background request may not take the last slot, which is left for the
+    // interactive request.
+    assertEquals(2, transport.sent.size());
+    assertSame(background, transport.sent.get(0));
+    assertSame(interactive, transport.sent.get(1));
+    assertEquals(1, scheduler.getWaitingCount(BASE_URL));
+  }
+
+  /** A waiting background request is sent next once its priority is raised. */
+  public void testPromote() {
+    scheduler.setDefaultMaxInFlight(2);
+    ApiRequest interactive = request(Priority.INTERACTIVE);
+    schedule(interactive);
+    schedule(request(Priority.INTERACTIVE));
+    schedule(request(Priority.BACKGROUND));
+    ApiRequest promoted = request(Priority.BACKGROUND);
+    ScheduledRequest scheduled = schedule(promoted);
+    schedule(request(Priority.INTERACTIVE));
+
+    scheduled.setPriority(Priority.INTERACTIVE);
+    transport.finish(0);
+    transport.finish(1);
+
+    assertEquals(4, transport.sent.size());
+    assertEquals(Priority.INTERACTIVE, transport.sent.get(2).getPriority());
+    assertSame(promoted, transport.sent.get(3));
+  }
+
+  /** Canceling a request frees its slot, and waiting requests are never sent after a cancel. */
+  public void testCancel() {
+    scheduler.setDefaultMaxInFlight(1);
+    ScheduledRequest inFlight = schedule(request(Priority.INTERACTIVE));
+    ScheduledRequest canceled = schedule(request(Priority.INTERACTIVE));
+    ApiRequest last = request(Priority.INTERACTIVE);
+    schedule(last);
+
+    canceled.cancel();
+    assertEquals(1, scheduler.getWaitingCount(BASE_URL));
+
+    inFlight.cancel();
+    assertEquals(1, transport.canceled);
+    assertEquals(2, transport.sent.size());
+    assertSame(last, transport.sent.get(1));
+
+    // Late responses for canceled requests do not free another slot.
+    transport.finish(0);
+    assertEquals(1, scheduler.getInFlightCount(BASE_URL));
+  }
+
+  public void testHostOf() {
+    assertEquals("https://www.googleapis.com",
+        RequestScheduler.hostOf("https://www.googleapis.com"));
+    assertEquals("https://www.googleapis.com",
+        RequestScheduler.hostOf("https://WWW.googleapis.com/discovery/v1"));
+    assertEquals("localhost:8080", RequestScheduler.hostOf("localhost:8080/"));
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.http;
+
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.ApiResponse;
+import com.google.common.collect.ImmutableMap;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+import java.util.Map;
+
+/**
+ * Tests for {@link ResponseCache}.
+ *
+ */
+public class ResponseCacheTest extends TestCase {
+  private ResponseCache cache;
+  private ApiResponse response;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    cache = new ResponseCache(100);
+    response = EasyMock.createMock(ApiResponse.class);
+  }
+
+  private static ApiRequest request(String path, Map<String, String> headers) {
+    ApiRequest request = EasyMock.createMock(ApiRequest.class);
+    EasyMock.expect(request.getRequestPath()).andReturn(path).anyTimes();
+    EasyMock.expect(request.getHeaders()).andReturn(headers).anyTimes();
+    EasyMock.replay(request);
+    return request;
+  }
+
+  /** Responses for different users, or different backends, of the same path are kept apart. */
+  public void testCacheKey() {
+    String base = "https://www.googleapis.com";
+    Map<String, String> none = ImmutableMap.of();
+    String anonymous = ResponseCache.cacheKey(base, request("/plus/v1/people/me", none));
+    String alice = ResponseCache.cacheKey(base, request(
+        "/plus/v1/people/me", ImmutableMap.of("Authorization", "Bearer alice")));
+    String bob = ResponseCache.cacheKey(base, request(
+        "/plus/v1/people/me", ImmutableMap.of("authorization", "Bearer bob")));
+
+    assertFalse(anonymous.equals(alice));
+    assertFalse(alice.equals(bob));
+    assertEquals(alice, ResponseCache.cacheKey(base, request(
+        "/plus/v1/people/me", ImmutableMap.of("Authorization", "Bearer alice"))));
+    assertFalse(anonymous.equals(
+        ResponseCache.cacheKey(base, request("/plus/v1/people/you", none))));
+    assertFalse(anonymous.equals(ResponseCache.cacheKey(
+        "https://test.example.com", request("/plus/v1/people/me", none))));
+  }
+
+  public void testPutAndGet() {
+    cache.put("a", "\"etag\"", null, response, 10);
+    ResponseCache.Entry entry = cache.get("a");
+    assertEquals("\"etag\"", entry.getEtag());
+    assertNull(entry.getLastModified());
+    assertSame(response, entry.getResponse());
+    assertNull(cache.get("b"));
+  }
+
+  /** Responses which can not be revalidated replace and drop the cached response. */
+  public void testNoValidator() {
+    cache.put("a", null, "Mon, 01 Jul 2013 00:00:00 GMT", response, 10);
+    assertNotNull(cache.get("a"));
+
+    cache.put("a", null, null, response, 10);
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.getCachedChars());
+  }
+
+  /** The least recently used responses are evicted once the cache is full. */
+  public void testEviction() {
+    cache.put("a", "1", null, response, 20);
+    cache.put("b", "2", null, response, 20);
+    cache.put("c", "3", null, response, 20);
+    cache.put("d", "4", null, response, 20);
+    cache.get("a");
+    cache.put("e", "5", null, response, 25);
+
+    assertEquals(4, cache.size());
+    assertEquals(85, cache.getCachedChars());
+    assertNotNull(cache.get("a"));
+    assertNull(cache.get("b"));
+
+    // Responses larger than a quarter of the cache are not kept at all.
+    cache.put("f", "6", null, response, 26);
+    assertNull(cache.get("f"));
+    assertEquals(4, cache.size());
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.http;
+
+import com.google.common.collect.ImmutableList;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Tests for {@link RetryPolicy}.
+ *
+ */
+public class RetryPolicyTest extends TestCase {
+  private static final List<String> NO_REASONS = ImmutableList.of();
+
+  public void testRetryableStatuses() {
+    RetryPolicy policy = RetryPolicy.DEFAULT;
+    assertTrue(policy.isRetryable(500, NO_REASONS));
+    assertTrue(policy.isRetryable(503, NO_REASONS));
+    assertTrue(policy.isRetryable(429, NO_REASONS));
+    assertFalse(policy.isRetryable(200, NO_REASONS));
+    assertFalse(policy.isRetryable(404, NO_REASONS));
+  }
+
+  /** Rate limiting is reported with a 403 and a reason, which is matched regardless of case. */
+  public void testRetryableReasons() {
+    RetryPolicy policy = RetryPolicy.DEFAULT;
+    assertTrue(policy.isRetryable(403, ImmutableList.of("UserRateLimitExceeded")));
+    assertFalse(policy.isRetryable(403, ImmutableList.of("dailyLimitExceeded", "Forbidden")));
+  }
+
+  public void testNothingRetriedByDefault() {
+    RetryPolicy policy = new RetryPolicy.Builder().build();
+    assertFalse(policy.isRetryable(503, ImmutableList.of("backendError")));
+    assertFalse(policy.retriesTransportFailures());
+  }
+
+  /** The delay doubles with each attempt, is jittered between half and all of it, and capped. */
+  public void testBackoff() {
+    RetryPolicy policy = new RetryPolicy.Builder().delayMillis(100, 1000).build();
+    assertEquals(50, policy.delayMillis(1, null, 0, 0));
+    assertEquals(99, policy.delayMillis(1, null, 0, 0.999));
+    assertEquals(100, policy.delayMillis(2, null, 0, 0));
+    assertEquals(200, policy.delayMillis(3, null, 0, 0));
+    assertEquals(500, policy.delayMillis(10, null, 0, 0));
+    assertEquals(999, policy.delayMillis(10, null, 0, 0.999));
+  }
+
+  /** Retry-After wins when it asks for a longer delay, but never beyond the maximum delay. */
+  public void testRetryAfter() {
+    RetryPolicy policy = new RetryPolicy.Builder().delayMillis(100, 10000).build();
+    assertEquals(3000, policy.delayMillis(1, "3", 0, 0));
+    assertEquals(50, policy.delayMillis(1, "0", 0, 0));
+    assertEquals(50, policy.delayMillis(1, "soon", 0, 0));
+    assertEquals(-1, policy.delayMillis(1, "60", 0, 0));
+
+    long now = RetryPolicy.parseRetryAfterMillis("Wed, 21 Oct 2015 07:28:00 GMT", 0);
+    assertEquals(5000, RetryPolicy.parseRetryAfterMillis("Wed, 21 Oct 2015 07:28:05 GMT", now));
+    assertEquals(0, RetryPolicy.parseRetryAfterMillis("Wed, 21 Oct 2015 07:27:00 GMT", now));
+    assertEquals(-1, RetryPolicy.parseRetryAfterMillis(null, now));
+  }
+}
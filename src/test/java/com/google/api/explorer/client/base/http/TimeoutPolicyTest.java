@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.http;
+
+import com.google.api.explorer.client.base.http.TimeoutPolicy.RequestClass;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link TimeoutPolicy}.
+ *
+ */
+public class TimeoutPolicyTest extends TestCase {
+  private TimeoutPolicy policy;
+
+  @Override
+  public void setUp() {
+    policy = new TimeoutPolicy();
+  }
+
+  public void testNoTimeoutByDefault() {
+    assertEquals(0, policy.getTimeoutMillis(RequestClass.READ, "plus.people.get"));
+  }
+
+  public void testClassTimeouts() {
+    policy.setDefaultTimeoutMillis(10000);
+    policy.setTimeoutMillis(RequestClass.DISCOVERY, 30000);
+    assertEquals(30000, policy.getTimeoutMillis(RequestClass.DISCOVERY, null));
+    assertEquals(10000, policy.getTimeoutMillis(RequestClass.READ, "plus.people.get"));
+
+    policy.clearTimeoutMillis(RequestClass.DISCOVERY);
+    assertEquals(10000, policy.getTimeoutMillis(RequestClass.DISCOVERY, null));
+  }
+
+  /** Methods which have not been observed often enough fall back to the timeout of their class. */
+  public void testAdaptiveNeedsSamples() {
+    policy.setTimeoutMillis(RequestClass.READ, 10000);
+    policy.enableAdaptive(0.99, 3, 1000, 60000);
+    for (int i = 0; i < TimeoutPolicy.MIN_SAMPLES - 1; i++) {
+      policy.recordLatency("plus.people.get", 500);
+    }
+    assertEquals(10000, policy.getTimeoutMillis(RequestClass.READ, "plus.people.get"));
+
+    policy.recordLatency("plus.people.get", 500);
+    assertEquals(1500, policy.getTimeoutMillis(RequestClass.READ, "plus.people.get"));
+    assertEquals(10000, policy.getTimeoutMillis(RequestClass.READ, "plus.people.list"));
+  }
+
+  public void testAdaptivePercentile() {
+    policy.enableAdaptive(0.9, 2, 100, 60000);
+    for (int i = 1; i <= 10; i++) {
+      policy.recordLatency("key", i * 100);
+    }
+    // The 90th percentile of 100..1000 is 900.
+    assertEquals(1800, policy.getTimeoutMillis(RequestClass.READ, "key"));
+  }
+
+  public void testAdaptiveBounds() {
+    policy.enableAdaptive(0.99, 3, 1000, 5000);
+    for (int i = 0; i < TimeoutPolicy.MIN_SAMPLES; i++) {
+      policy.recordLatency("fast", 10);
+      policy.recordLatency("slow", 10000);
+    }
+    assertEquals(1000, policy.getTimeoutMillis(RequestClass.READ, "fast"));
+    assertEquals(5000, policy.getTimeoutMillis(RequestClass.READ, "slow"));
+  }
+
+  /** Only recent latencies count, so a method which became faster gets a shorter timeout. */
+  public void testAdaptiveWindow() {
+    policy.enableAdaptive(1, 1, 1, 60000);
+    for (int i = 0; i < TimeoutPolicy.SAMPLE_WINDOW; i++) {
+      policy.recordLatency("key", 5000);
+    }
+    assertEquals(5000, policy.getTimeoutMillis(RequestClass.READ, "key"));
+    for (int i = 0; i < TimeoutPolicy.SAMPLE_WINDOW; i++) {
+      policy.recordLatency("key", 200);
+    }
+    assertEquals(200, policy.getTimeoutMillis(RequestClass.READ, "key"));
+  }
+
+  public void testDisableAdaptive() {
+    policy.enableAdaptive(0.99, 3, 1000, 60000);
+    for (int i = 0; i < TimeoutPolicy.MIN_SAMPLES; i++) {
+      policy.recordLatency("key", 500);
+    }
+    policy.disableAdaptive();
+    assertEquals(0, policy.getTimeoutMillis(RequestClass.READ, "key"));
+  }
+}
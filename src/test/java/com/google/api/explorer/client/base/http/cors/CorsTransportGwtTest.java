@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.http.cors;
+
+import com.google.api.explorer.client.base.ApiMethod;
+import com.google.api.explorer.client.base.ApiMethod.HttpMethod;
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.ApiResponse;
+import com.google.api.explorer.client.base.ApiService;
+import com.google.api.explorer.client.base.BaseGwtTest;
+import com.google.api.explorer.client.base.Config;
+import com.google.api.explorer.client.base.http.HttpException;
+import com.google.api.explorer.client.base.http.TimeoutException;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.google.gwt.http.client.Header;
+import com.google.gwt.http.client.RequestBuilder;
+import com.google.gwt.http.client.RequestCallback;
+import com.google.gwt.http.client.RequestTimeoutException;
+import com.google.gwt.http.client.Response;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+import java.util.Map;
+
+/**
+ * Tests for the {@link CorsTransport} class.
+ *
+ */
+public class CorsTransportGwtTest extends BaseGwtTest {
+
+  /** Callback which keeps the outcome of the request. */
+  private static class ResultCallback implements AsyncCallback<ApiResponse> {
+    ApiResponse response;
+    Throwable caught;
+
+    @Override
+    public void onSuccess(ApiResponse response) {
+      this.response = response;
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      this.caught = caught;
+    }
+  }
+
+  private String baseUrl;
+
+  @Override
+  protected void gwtSetUp() {
+    baseUrl = Config.getBaseUrl();
+  }
+
+  @Override
+  protected void gwtTearDown() {
+    Config.setBaseUrl(baseUrl);
+  }
+
+  /** Requests are sent to the base URL, with their method, headers and timeout. */
+  public void testRequestBuilder() {
+    Config.setBaseUrl("https://test.example.com");
+    RequestBuilder builder = CorsTransport.createRequestBuilder(
+        generateRequest("/test/v1/things", ImmutableMap.of("Content-Type", "application/json"),
+            HttpMethod.PATCH), 5000);
+
+    assertEquals("PATCH", builder.getHTTPMethod());
+    assertEquals("https://test.example.com/test/v1/things", builder.getUrl());
+    assertEquals("application/json", builder.getHeader("Content-Type"));
+    assertEquals(5000, builder.getTimeoutMillis());
+  }
+
+  /** Responses are converted along with their headers, skipping the ones which can't be parsed. */
+  public void testResponseConverted() {
+    ResultCallback callback = new ResultCallback();
+    CorsTransport.createRequestCallback(5000, callback)
+        .onResponseReceived(null, generateResponse(404, "Not Found", "{\"error\": {}}"));
+
+    assertNull(callback.caught);
+    assertEquals(404, callback.response.getStatus());
+    assertEquals("Not Found", callback.response.getStatusText());
+    assertEquals("{\"error\": {}}", callback.response.getBodyAsString());
+    assertEquals(1, callback.response.getHeaders().size());
+    assertEquals("application/json",
+        callback.response.getHeaders().get("content-type").getValue());
+  }
+
+  /** Requests which the browser refused complete without a status, and fail. */
+  public void testRefusedRequest() {
+    ResultCallback callback = new ResultCallback();
+    CorsTransport.createRequestCallback(5000, callback)
+        .onResponseReceived(null, generateResponse(0, "", ""));
+
+    assertNull(callback.response);
+    assertTrue(callback.caught instanceof HttpException);
+  }
+
+  /** Timeouts are reported with the timeout of the request, other errors as HTTP failures. */
+  public void testErrors() {
+    ResultCallback callback = new ResultCallback();
+    RequestCallback requestCallback = CorsTransport.createRequestCallback(5000, callback);
+    requestCallback.onError(null, new RequestTimeoutException(null, 5000));
+    assertEquals(5000, ((TimeoutException) callback.caught).getTimeoutMillis());
+
+    requestCallback.onError(null, new RuntimeException("Network error"));
+    assertTrue(callback.caught instanceof HttpException);
+    assertEquals("Network error", callback.caught.getMessage());
+  }
+
+  private Response generateResponse(
+      final int status, final String statusText, final String text) {
+    final Header[] headers = {new Header() {
+      @Override
+      public String getName() {
+        return "Content-Type";
+      }
+
+      @Override
+      public String getValue() {
+        return "application/json";
+      }
+    }, null};
+
+    return new Response() {
+      @Override
+      public String getHeader(String header) {
+        return null;
+      }
+
+      @Override
+      public Header[] getHeaders() {
+        return headers;
+      }
+
+      @Override
+      public String getHeadersAsString() {
+        return null;
+      }
+
+      @Override
+      public int getStatusCode() {
+        return status;
+      }
+
+      @Override
+      public String getStatusText() {
+        return statusText;
+      }
+
+      @Override
+      public String getText() {
+        return text;
+      }
+    };
+  }
+
+  private ApiRequest generateRequest(
+      final String path, final Map<String, String> headers, final HttpMethod method) {
+
+    return new ApiRequest() {
+
+      @Override
+      public String getRequestBody() {
+        return null;
+      }
+
+      @Override
+      public String getRequestPath() {
+        return path;
+      }
+
+      @Override
+      public Map<String, String> getHeaders() {
+        return headers;
+      }
+
+      @Override
+      public HttpMethod getHttpMethod() {
+        return method;
+      }
+
+      @Override
+      public void addHeader(String headerName, String headerValue) {
+      }
+
+      @Override
+      public String getApiKey() {
+        return null;
+      }
+
+      @Override
+      public ListMultimap<String, String> getParamValues() {
+        return null;
+      }
+
+      @Override
+      public ApiService getService() {
+        return null;
+      }
+
+      @Override
+      public void setApiKey(String apiKey) {
+      }
+
+      @Override
+      public void setTraceParameter(String traceParameter) {
+      }
+
+      @Override
+      public ApiMethod getMethod() {
+        return null;
+      }
+    };
+  }
+}
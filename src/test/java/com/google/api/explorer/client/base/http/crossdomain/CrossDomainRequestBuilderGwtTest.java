@@ -16,7 +16,13 @@
 
 package com.google.api.explorer.client.base.http.crossdomain;
 
+import com.google.api.explorer.client.base.ApiRequest;
+import com.google.api.explorer.client.base.ApiResponse;
 import com.google.api.explorer.client.base.BaseGwtTest;
+import com.google.common.collect.Lists;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+import java.util.List;
 
 /**
  * Test that our complicated bootstrapping stuff actually works.
@@ -33,6 +39,41 @@ public class CrossDomainRequestBuilderGwtTest extends BaseGwtTest {
     }
   }
 
+  /**
+   * Builder which records instead of loading the library and sending requests.
+   */
+  private static class QueueingXDRB extends CrossDomainRequestBuilder {
+    int injections = 0;
+    final List<CrossDomainRequest> sent = Lists.newArrayList();
+
+    @Override
+    protected void injectScript() {
+      injections++;
+    }
+
+    @Override
+    protected void doMakeRequest(ApiRequest request, CrossDomainRequest xdr) {
+      sent.add(xdr);
+    }
+  }
+
+  private static class RecordingCallback implements AsyncCallback<ApiResponse> {
+    final List<Throwable> failures = Lists.newArrayList();
+
+    @Override
+    public void onSuccess(ApiResponse result) {
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      failures.add(caught);
+    }
+  }
+
+  private static native void stubProxyConfig() /*-{
+    $wnd.gapi = {config: {update: function() {}}};
+  }-*/;
+
   private static native void invokeCallback() /*-{
     $wnd.__apis_explorer_load_callback();
   }-*/;
@@ -47,4 +88,69 @@ public class CrossDomainRequestBuilderGwtTest extends BaseGwtTest {
     assertTrue(xdrb.scriptLoadedCallbackInvoked);
   }
 
+  public void testQueuedRequestsAreSentOnce() {
+    stubProxyConfig();
+    QueueingXDRB xdrb = new QueueingXDRB();
+
+    CrossDomainRequest canceled = xdrb.send(null, 0, new RecordingCallback());
+    CrossDomainRequest waiting = xdrb.send(null, 0, new RecordingCallback());
+    canceled.cancel();
+    assertEquals(1, xdrb.injections);
+    assertEquals(2, xdrb.getQueueStatistics().getQueueDepth());
+
+    xdrb.scriptFinishedLoading();
+    assertEquals(Lists.newArrayList(waiting), xdrb.sent);
+
+    // Nothing is left in the queue to be sent again.
+    xdrb.scriptFinishedLoading();
+    assertEquals(1, xdrb.sent.size());
+
+    QueueStatistics stats = xdrb.getQueueStatistics();
+    assertEquals(0, stats.getQueueDepth());
+    assertEquals(2, stats.getMaxQueueDepth());
+    assertEquals(1, stats.getSentRequestCount());
+    assertEquals(1, stats.getDroppedRequestCount());
+  }
+
+  public void testLoadFailureFailsWaitingRequests() {
+    QueueingXDRB xdrb = new QueueingXDRB();
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback second = new RecordingCallback();
+    xdrb.send(null, 0, first);
+    xdrb.send(null, 0, second);
+
+    xdrb.scriptFailedToLoad(new Exception("Could not load"));
+
+    assertEquals(1, first.failures.size());
+    assertEquals(1, second.failures.size());
+    QueueStatistics stats = xdrb.getQueueStatistics();
+    assertEquals(0, stats.getQueueDepth());
+    assertEquals(2, stats.getFailedRequestCount());
+    assertEquals(1, stats.getLoadFailureCount());
+
+    // The next request waits for the backoff delay instead of loading the library right away.
+    xdrb.send(null, 0, new RecordingCallback());
+    assertEquals(1, xdrb.injections);
+  }
+
+  public void testQueueIsBounded() {
+    QueueingXDRB xdrb = new QueueingXDRB();
+    for (int i = 0; i < CrossDomainRequestBuilder.MAX_QUEUED_REQUESTS; i++) {
+      xdrb.send(null, 0, new RecordingCallback());
+    }
+
+    RecordingCallback rejected = new RecordingCallback();
+    xdrb.send(null, 0, rejected);
+    assertEquals(1, rejected.failures.size());
+    assertEquals(1, xdrb.getQueueStatistics().getRejectedRequestCount());
+  }
+
+  public void testRetryDelay() {
+    int initial = CrossDomainRequestBuilder.INITIAL_RETRY_DELAY_MILLIS;
+    assertEquals(initial, CrossDomainRequestBuilder.retryDelayMillis(1));
+    assertEquals(2 * initial, CrossDomainRequestBuilder.retryDelayMillis(2));
+    assertEquals(4 * initial, CrossDomainRequestBuilder.retryDelayMillis(3));
+    assertEquals(30 * 1000, CrossDomainRequestBuilder.retryDelayMillis(20));
+  }
+
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.storage;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link DiscoveryDocument}.
+ *
+ */
+public class DiscoveryDocumentTest extends TestCase {
+
+  public void testEncodeDecode() {
+    DiscoveryDocument document = new DiscoveryDocument(
+        "{\n \"name\": \"plus\"\n}", "\"abc\"", "Tue, 15 Nov 1994 12:45:26 GMT", 1234);
+    DiscoveryDocument decoded = DiscoveryDocument.decode(document.encode());
+    assertEquals(document.getBody(), decoded.getBody());
+    assertEquals("\"abc\"", decoded.getEtag());
+    assertEquals("Tue, 15 Nov 1994 12:45:26 GMT", decoded.getLastModified());
+    assertEquals(1234, decoded.getFetchedTime());
+  }
+
+  public void testEncodeDecodeWithoutValidators() {
+    DiscoveryDocument decoded =
+        DiscoveryDocument.decode(new DiscoveryDocument("", null, null, 0).encode());
+    assertEquals("", decoded.getBody());
+    assertNull(decoded.getEtag());
+    assertNull(decoded.getLastModified());
+  }
+
+  /** Values which were not stored by this version are ignored, rather than misread. */
+  public void testDecodeInvalid() {
+    assertNull(DiscoveryDocument.decode(null));
+    assertNull(DiscoveryDocument.decode("{\"name\": \"plus\"}"));
+    assertNull(DiscoveryDocument.decode("0\n\n\n0\n{}"));
+    assertNull(DiscoveryDocument.decode("1\n\n\nyesterday\n{}"));
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.base.storage;
+
+import com.google.common.collect.ImmutableList;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link StorageBudget}.
+ *
+ */
+public class StorageBudgetTest extends TestCase {
+
+  public void testOldestEvictedFirst() {
+    StorageBudget budget = new StorageBudget(10);
+    assertEquals(ImmutableList.of(), budget.add("a", 4));
+    assertEquals(ImmutableList.of(), budget.add("b", 4));
+    assertEquals(ImmutableList.of("a"), budget.add("c", 4));
+    assertEquals(8, budget.getChars());
+
+    // Several documents are evicted to make room for a large one.
+    assertEquals(ImmutableList.of("b", "c"), budget.add("d", 9));
+    assertEquals(9, budget.getChars());
+  }
+
+  /** A document which is stored again counts as stored last, and only once. */
+  public void testReplacedDocument() {
+    StorageBudget budget = new StorageBudget(10);
+    budget.add("a", 4);
+    budget.add("b", 4);
+    assertEquals(ImmutableList.of(), budget.add("a", 5));
+    assertEquals(9, budget.getChars());
+    assertEquals(ImmutableList.of("b"), budget.add("c", 4));
+  }
+
+  public void testRemove() {
+    StorageBudget budget = new StorageBudget(10);
+    budget.add("a", 4);
+    budget.add("b", 4);
+    budget.remove("a");
+    budget.remove("unknown");
+    assertEquals(4, budget.getChars());
+    assertEquals(ImmutableList.of(), budget.add("c", 6));
+  }
+
+  public void testFits() {
+    StorageBudget budget = new StorageBudget(10);
+    assertTrue(budget.fits(10));
+    assertFalse(budget.fits(11));
+  }
+}
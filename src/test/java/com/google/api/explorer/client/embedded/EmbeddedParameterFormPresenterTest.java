@@ -29,6 +29,7 @@ import com.google.api.explorer.client.embedded.EmbeddedParameterFormPresenter.Pa
 import com.google.api.explorer.client.embedded.EmbeddedParameterFormPresenter.RequestFinishedCallback;
 import com.google.api.explorer.client.routing.UrlBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSortedMap;
@@ -39,6 +40,8 @@ import junit.framework.TestCase;
 
 import org.easymock.EasyMock;
 
+import java.util.List;
+
 /**
  * Tests for {@link EmbeddedParameterFormPresenter}.
  *
@@ -214,4 +217,36 @@ public class EmbeddedParameterFormPresenterTest extends TestCase {
 
     EasyMock.verify(display, method, param);
   }
+
+  /**
+   * Test that a parameter which takes a single value, but was given several, is sent once per
+   * value, and that repeated parameters are sent as they are.
+   */
+  public void testBatchParameter() {
+    ApiMethod method = EasyMock.createControl().createMock(ApiMethod.class);
+    Schema single = EasyMock.createControl().createMock(Schema.class);
+    Schema repeated = EasyMock.createControl().createMock(Schema.class);
+    EasyMock.expect(method.getParameters())
+        .andReturn(ImmutableMap.of("userId", single, "collection", repeated)).anyTimes();
+    EasyMock.expect(single.isRepeated()).andReturn(false).anyTimes();
+    EasyMock.expect(repeated.isRepeated()).andReturn(true).anyTimes();
+    EasyMock.replay(method, single, repeated);
+
+    Multimap<String, String> oneValue =
+        ImmutableListMultimap.of("userId", "1", "userId", "", "collection", "a", "collection", "b");
+    assertNull(EmbeddedParameterFormPresenter.findBatchParameter(method, oneValue));
+
+    Multimap<String, String> values = ImmutableListMultimap.of(
+        "userId", "1", "userId", "", "userId", "2", "collection", "a", "collection", "b");
+    assertEquals("userId", EmbeddedParameterFormPresenter.findBatchParameter(method, values));
+
+    List<Multimap<String, String>> split =
+        EmbeddedParameterFormPresenter.splitValues(values, "userId");
+    assertEquals(2, split.size());
+    assertEquals(ImmutableList.of("1"), ImmutableList.copyOf(split.get(0).get("userId")));
+    assertEquals(ImmutableList.of("2"), ImmutableList.copyOf(split.get(1).get("userId")));
+    assertEquals(ImmutableList.of("a", "b"), ImmutableList.copyOf(split.get(1).get("collection")));
+
+    EasyMock.verify(method, single, repeated);
+  }
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history;
+
+import com.google.api.explorer.client.base.ApiResponse;
+import com.google.api.explorer.client.base.BaseGwtTest;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests for the error messages shown by {@link EmbeddedHistoryItemView}.
+ *
+ */
+public class EmbeddedHistoryItemViewGwtTest extends BaseGwtTest {
+
+  /** Error payloads are found in responses with an error status. */
+  public void testErrorStatus() {
+    assertEquals(ErrorCase.NOT_FOUND, EmbeddedHistoryItemView.getErrorMessage(
+        createResponse(404, "{\"error\": {\"code\": 404, \"message\": \"Not Found\"}}")));
+  }
+
+  /** Error payloads are also found in responses with a successful status. */
+  public void testErrorInSuccessfulResponse() {
+    assertEquals(ErrorCase.FORBIDDEN, EmbeddedHistoryItemView.getErrorMessage(
+        createResponse(200, "{\"error\": {\"code\": 403, \"message\": \"Forbidden\"}}")));
+  }
+
+  /** Responses without an error payload have no error message. */
+  public void testNoError() {
+    assertNull(EmbeddedHistoryItemView.getErrorMessage(createResponse(200, "{\"kind\": \"a\"}")));
+    assertNull(EmbeddedHistoryItemView.getErrorMessage(createResponse(500, "not json")));
+  }
+
+  private static ApiResponse createResponse(int status, String body) {
+    return ApiResponse.create(
+        status, "", ImmutableMap.of("Content-Type", "application/json"), body);
+  }
+}
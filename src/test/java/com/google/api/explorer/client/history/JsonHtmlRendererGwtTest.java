@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history;
+
+import com.google.api.explorer.client.Resources;
+import com.google.api.explorer.client.base.ApiMethod;
+import com.google.api.explorer.client.base.BaseGwtTest;
+import com.google.api.explorer.client.base.Config;
+import com.google.api.explorer.client.base.JsonBody;
+import com.google.api.explorer.client.base.mock.MockApiMethod;
+import com.google.api.explorer.client.base.mock.MockApiService;
+import com.google.api.explorer.client.history.JsonPrettifier.PrettifierLinkFactory;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.NativeEvent;
+import com.google.gwt.event.dom.client.ClickEvent;
+import com.google.gwt.event.dom.client.ClickHandler;
+import com.google.gwt.event.dom.client.HasClickHandlers;
+import com.google.gwt.user.client.ui.Anchor;
+import com.google.gwt.user.client.ui.RootPanel;
+import com.google.gwt.user.client.ui.UIObject;
+import com.google.gwt.user.client.ui.Widget;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the HTML rendering engine of {@link JsonPrettifier}.
+ *
+ */
+public class JsonHtmlRendererGwtTest extends BaseGwtTest {
+  private static final String METHOD_ID = "test.things.get";
+
+  /** Service with a single GET method, so that links to its resources become explorer links. */
+  private static class LinkService extends MockApiService {
+    private final ApiMethod getMethod = new MockApiMethod() {
+      @Override
+      public HttpMethod getHttpMethod() {
+        return HttpMethod.GET;
+      }
+
+      @Override
+      public String getPath() {
+        return "things/{id}";
+      }
+
+      @Override
+      public String getId() {
+        return METHOD_ID;
+      }
+    };
+
+    @Override
+    public String basePath() {
+      return "/test/v1/";
+    }
+
+    @Override
+    public String getName() {
+      return "test";
+    }
+
+    @Override
+    public String getVersion() {
+      return "v1";
+    }
+
+    @Override
+    public Map<String, ApiMethod> allMethods() {
+      return ImmutableMap.of(METHOD_ID, getMethod);
+    }
+  }
+
+  /** Link factory which records the fragments which it is asked to navigate to. */
+  private static class RecordingLinkFactory implements PrettifierLinkFactory {
+    final List<String> followed = Lists.newArrayList();
+    private final String hrefPrefix;
+
+    RecordingLinkFactory(String hrefPrefix) {
+      this.hrefPrefix = hrefPrefix;
+    }
+
+    @Override
+    public ClickHandler generateMenuHandler(final String fragment) {
+      return new ClickHandler() {
+        @Override
+        public void onClick(ClickEvent event) {
+          followed.add(fragment);
+        }
+      };
+    }
+
+    @Override
+    public Widget generateAnchor(String embeddingText, String fragment) {
+      return new Anchor(embeddingText, generateHref(fragment));
+    }
+
+    @Override
+    public String generateHref(String fragment) {
+      return hrefPrefix + fragment;
+    }
+  }
+
+  private LinkService service;
+  private String link;
+
+  @Override
+  public void gwtSetUp() {
+    JsonPrettifier.setResources(Resources.INSTANCE);
+    service = new LinkService();
+    link = Config.getBaseUrl() + "/test/v1/things/1";
+  }
+
+  @Override
+  public void gwtTearDown() {
+    RootPanel.get().clear();
+  }
+
+  /** Explorer links to the current page are followed by the explorer on a plain click. */
+  public void testLocalLinkFollowed() {
+    RecordingLinkFactory linkFactory = new RecordingLinkFactory("#");
+    Element anchor = renderLink(linkFactory);
+    String explorerLink = JsonPrettifier.explorerLinkForUrl(service, link);
+    assertNotNull(explorerLink);
+    assertEquals("#" + explorerLink, anchor.getAttribute("href"));
+    assertEquals("", anchor.getAttribute("target"));
+
+    click(anchor, false, false, NativeEvent.BUTTON_LEFT);
+    assertEquals(Lists.newArrayList(explorerLink), linkFactory.followed);
+  }
+
+  /** Clicks with modifiers or other buttons are left to the browser, e.g. to open a new tab. */
+  public void testModifiedClickNotFollowed() {
+    RecordingLinkFactory linkFactory = new RecordingLinkFactory("#");
+    Element anchor = renderLink(linkFactory);
+
+    click(anchor, true, false, NativeEvent.BUTTON_LEFT);
+    click(anchor, false, true, NativeEvent.BUTTON_LEFT);
+    click(anchor, false, false, NativeEvent.BUTTON_MIDDLE);
+    assertTrue(linkFactory.followed.isEmpty());
+  }
+
+  /** Explorer links to another page are followed by the browser, in the same window. */
+  public void testExternalLinkNotFollowed() {
+    RecordingLinkFactory linkFactory = new RecordingLinkFactory("http://explorer.example.com/#");
+    Element anchor = renderLink(linkFactory);
+    String explorerLink = JsonPrettifier.explorerLinkForUrl(service, link);
+    assertEquals("http://explorer.example.com/#" + explorerLink, anchor.getAttribute("href"));
+    assertEquals("", anchor.getAttribute("target"));
+
+    click(anchor, false, false, NativeEvent.BUTTON_LEFT);
+    assertTrue(linkFactory.followed.isEmpty());
+  }
+
+  /** Links which are not explorer links open in a new window. */
+  public void testOtherLink() {
+    RecordingLinkFactory linkFactory = new RecordingLinkFactory("#");
+    Widget output = render("{\"link\": \"http://example.com/a<b\"}", linkFactory, 1);
+    Element anchor = find(output.getElement(), "a");
+    assertEquals("http://example.com/a<b", anchor.getInnerText());
+    assertEquals(JsonPrettifier.OPEN_IN_NEW_WINDOW, anchor.getAttribute("target"));
+
+    click(anchor, false, false, NativeEvent.BUTTON_LEFT);
+    assertTrue(linkFactory.followed.isEmpty());
+  }
+
+  /** Values are escaped, and laid out one per line like the widget engine. */
+  public void testText() {
+    Widget output = render("{\"a\": \"<b>&\", \"b\": [1, true, null]}",
+        new RecordingLinkFactory("#"), JsonPrettifier.NEVER_COLLAPSE);
+    assertEquals("{\n \"a\": \"<b>&\",\n \"b\": [\n  1,\n  true,\n  null\n ]\n}\n",
+        visibleText(output.getElement()));
+  }
+
+  /** Clicking the title of a group collapses it, and clicking the placeholder expands it. */
+  public void testToggleGroup() {
+    Widget output = render("{\"a\": {\"b\": 1}}", new RecordingLinkFactory("#"),
+        JsonPrettifier.NEVER_COLLAPSE);
+    Element title = find(output.getElement(), "[data-json-contents] [data-json-toggle]");
+    Element contents = title.getNextSiblingElement();
+    Element placeholder = contents.getNextSiblingElement();
+
+    click(title, false, false, NativeEvent.BUTTON_LEFT);
+    assertFalse(UIObject.isVisible(contents));
+    assertTrue(UIObject.isVisible(placeholder));
+
+    click(placeholder, false, false, NativeEvent.BUTTON_LEFT);
+    assertTrue(UIObject.isVisible(contents));
+    assertFalse(UIObject.isVisible(placeholder));
+  }
+
+  /** Incremental rendering slices nested groups too, and ends with the same text as rendering. */
+  public void testIncrementalRenderingSlicesNestedGroups() {
+    String body = "{\"a\": {\"b\": [1, 2, 3]}, \"c\": true}";
+    JsonHtmlRenderer renderer =
+        createRenderer(new RecordingLinkFactory("#"), JsonPrettifier.NEVER_COLLAPSE,
+            JsonPrettifier.SHOW_ALL_ITEMS);
+    Widget output = renderer.renderIncrementally(new JsonBody(body).getValue(), 0);
+
+    // Without a budget every slice takes a single step, which splits the innermost array.
+    boolean sliced = false;
+    while (renderer.renderSlice()) {
+      String text = visibleText(output.getElement());
+      sliced |= text.contains("1,") && !text.contains("2,");
+    }
+    assertTrue(sliced);
+
+    Widget expected = render(body, new RecordingLinkFactory("#"), JsonPrettifier.NEVER_COLLAPSE);
+    assertEquals(visibleText(expected.getElement()), visibleText(output.getElement()));
+  }
+
+  /** Groups at the default collapse depth are rendered when they are first expanded. */
+  public void testDefaultCollapseDepthDefersExpansion() {
+    String body = "{\"items\": [{\"id\": 1, \"author\": {\"name\": \"a\"}}]}";
+    String expected = visibleText(
+        render(body, new RecordingLinkFactory("#"), JsonPrettifier.NEVER_COLLAPSE).getElement());
+
+    Widget output =
+        render(body, new RecordingLinkFactory("#"), JsonPrettifier.DEFAULT_COLLAPSE_DEPTH);
+    assertDeferredExpansion(expected, output);
+
+    // Incremental rendering leaves the same groups collapsed.
+    JsonHtmlRenderer renderer =
+        createRenderer(new RecordingLinkFactory("#"), JsonPrettifier.DEFAULT_COLLAPSE_DEPTH,
+            JsonPrettifier.SHOW_ALL_ITEMS);
+    Widget incremental = renderer.renderIncrementally(new JsonBody(body).getValue(), 0);
+    while (renderer.renderSlice()) {
+      // Render everything.
+    }
+    RootPanel.get().add(incremental);
+    assertDeferredExpansion(expected, incremental);
+  }
+
+  /** Long arrays are shown a page at a time, with a control which shows the next page. */
+  public void testPaging() {
+    String body = "{\"items\": [0, 1, 2, 3, 4, 5, 6]}";
+    Widget output = render(body,
+        createRenderer(new RecordingLinkFactory("#"), JsonPrettifier.NEVER_COLLAPSE, 3));
+    assertEquals("{\n \"items\": [\n  0,\n  1,\n  2,\n  Show next 3 items (4 remaining)\n ]\n}\n",
+        visibleText(output.getElement()));
+
+    click(find(output.getElement(), "[data-json-more]"), false, false, NativeEvent.BUTTON_LEFT);
+    assertEquals("{\n \"items\": [\n  0,\n  1,\n  2,\n  3,\n  4,\n  5,\n"
+        + "  Show next 1 item (1 remaining)\n ]\n}\n", visibleText(output.getElement()));
+
+    click(find(output.getElement(), "[data-json-more]"), false, false, NativeEvent.BUTTON_LEFT);
+    assertNull(find(output.getElement(), "[data-json-more]"));
+    assertEquals(visibleText(render(body, new RecordingLinkFactory("#"),
+        JsonPrettifier.NEVER_COLLAPSE).getElement()), visibleText(output.getElement()));
+  }
+
+  /** Arrays which fit in whole pages get no control once their last page is shown. */
+  public void testPageBoundaries() {
+    assertNull(find(renderPaged("[0, 1, 2]", 3), "[data-json-more]"));
+
+    Element output = renderPaged("[0, 1, 2, 3]", 3);
+    assertEquals("  Show next 1 item (1 remaining)\n",
+        visibleText(find(output, "[data-json-more]")));
+
+    output = renderPaged("[0, 1, 2, 3, 4, 5]", 3);
+    click(find(output, "[data-json-more]"), false, false, NativeEvent.BUTTON_LEFT);
+    assertNull(find(output, "[data-json-more]"));
+    assertTrue(visibleText(output).contains("  5\n"));
+  }
+
+  /** Incremental rendering shows the same first page and control, which shows the next page. */
+  public void testPagingIncremental() {
+    String body = "{\"items\": [0, 1, 2, 3, 4, 5, 6]}";
+    Widget expected = render(body,
+        createRenderer(new RecordingLinkFactory("#"), JsonPrettifier.NEVER_COLLAPSE, 3));
+
+    JsonHtmlRenderer renderer =
+        createRenderer(new RecordingLinkFactory("#"), JsonPrettifier.NEVER_COLLAPSE, 3);
+    Widget output = renderer.renderIncrementally(new JsonBody(body).getValue(), 0);
+    while (renderer.renderSlice()) {
+      // Render everything.
+    }
+    RootPanel.get().add(output);
+    assertEquals(visibleText(expected.getElement()), visibleText(output.getElement()));
+
+    click(find(expected.getElement(), "[data-json-more]"), false, false, NativeEvent.BUTTON_LEFT);
+    click(find(output.getElement(), "[data-json-more]"), false, false, NativeEvent.BUTTON_LEFT);
+    assertEquals(visibleText(expected.getElement()), visibleText(output.getElement()));
+  }
+
+  private Element renderPaged(String items, int pageSize) {
+    return render("{\"items\": " + items + "}",
+        createRenderer(new RecordingLinkFactory("#"), JsonPrettifier.NEVER_COLLAPSE, pageSize))
+        .getElement();
+  }
+
+  private static void assertDeferredExpansion(String expected, Widget output) {
+    Element pending = find(output.getElement(), "[data-json-pending]");
+    assertEquals("", pending.getInnerHTML());
+    assertFalse(UIObject.isVisible(pending));
+    assertTrue(visibleText(output.getElement()).contains("\"id\": 1,"));
+    assertFalse(visibleText(output.getElement()).contains("\"name\""));
+
+    click(pending.getPreviousSiblingElement(), false, false, NativeEvent.BUTTON_LEFT);
+    assertTrue(UIObject.isVisible(pending));
+    assertEquals(expected, visibleText(output.getElement()));
+  }
+
+  private Element renderLink(PrettifierLinkFactory linkFactory) {
+    Widget output = render("{\"self\": \"" + link + "\"}", linkFactory, 1);
+    return find(output.getElement(), "a");
+  }
+
+  private Widget render(String body, PrettifierLinkFactory linkFactory, int collapseDepth) {
+    return render(body, createRenderer(linkFactory, collapseDepth, JsonPrettifier.SHOW_ALL_ITEMS));
+  }
+
+  private Widget render(String body, JsonHtmlRenderer renderer) {
+    Widget output = renderer.render(new JsonBody(body).getValue());
+
+    // Keep the browser from following links, after the renderer has seen the click.
+    ((HasClickHandlers) output).addClickHandler(new ClickHandler() {
+      @Override
+      public void onClick(ClickEvent event) {
+        event.preventDefault();
+      }
+    });
+    RootPanel.get().add(output);
+    return output;
+  }
+
+  private JsonHtmlRenderer createRenderer(PrettifierLinkFactory linkFactory, int collapseDepth,
+      int pageSize) {
+    return new JsonHtmlRenderer(service, linkFactory, Resources.INSTANCE, collapseDepth,
+        pageSize);
+  }
+
+  private static void click(Element element, boolean ctrlKey, boolean metaKey, int button) {
+    element.dispatchEvent(Document.get().createMouseEvent("click", true, true, 1, 0, 0, 0, 0,
+        ctrlKey, false, false, metaKey, button, null));
+  }
+
+  private static native Element find(Element container, String selector) /*-{
+    return container.querySelector(selector);
+  }-*/;
+
+  /**
+   * Returns the text of the element, leaving out the hidden placeholders of expanded groups.
+   */
+  private static native String visibleText(Element element) /*-{
+    var text = '';
+    for (var child = element.firstChild; child; child = child.nextSibling) {
+      if (child.nodeType == 3) {
+        text += child.data;
+      } else if (child.nodeType == 1 && child.style.display != 'none') {
+        text += @com.google.api.explorer.client.history.JsonHtmlRendererGwtTest::visibleText(Lcom/google/gwt/dom/client/Element;)(child);
+      }
+    }
+    return text;
+  }-*/;
+}
@@ -91,4 +91,15 @@ public class JsonPrettifierTest extends TestCase {
     String link = JsonPrettifier.createExplorerLink(plusService, PLUS_LINK, method);
     assertEquals(EXPLORER_LINK, link);
   }
+
+  /**
+   * Test the text of the control which renders the next page of an array.
+   */
+  public void testMoreItemsText() {
+    assertEquals("  Show next 100 items (250 remaining)",
+        JsonPrettifier.moreItemsText(2, 250, 100));
+    assertEquals(" Show next 50 items (50 remaining)", JsonPrettifier.moreItemsText(1, 50, 100));
+    assertEquals("Show next 1 item (1 remaining)", JsonPrettifier.moreItemsText(0, 1, 100));
+    assertEquals("Show next 3 items (7 remaining)", JsonPrettifier.moreItemsText(0, 7, 3));
+  }
 }
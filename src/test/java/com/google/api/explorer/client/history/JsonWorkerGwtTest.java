@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history;
+
+import com.google.api.explorer.client.Resources;
+import com.google.api.explorer.client.base.ApiMethod;
+import com.google.api.explorer.client.base.BaseGwtTest;
+import com.google.api.explorer.client.base.JsonBody;
+import com.google.api.explorer.client.base.mock.MockApiMethod;
+import com.google.api.explorer.client.base.mock.MockApiService;
+import com.google.api.explorer.client.history.JsonPrettifier.JsonFormatException;
+import com.google.common.collect.ImmutableList;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.user.client.ui.FlowPanel;
+import com.google.gwt.user.client.ui.RootPanel;
+import com.google.gwt.user.client.ui.Widget;
+
+import java.util.Collection;
+
+/**
+ * Tests for the markup rendered by the worker, which must match the markup of
+ * {@link JsonHtmlRenderer} once it has been inserted. The code of the worker is run on the page
+ * with {@link JsonWorker#renderInPage}, since the test browser cannot start workers.
+ *
+ */
+public class JsonWorkerGwtTest extends BaseGwtTest {
+  private static final String BODY = "{\"items\": [1, 2.5, true, null, \"text\"], "
+      + "\"nested\": {\"inner\": {\"deepest\": {\"value\": \"a < b & c\"}}, \"empty\": []}, "
+      + "\"link\": \"http://example.com/a?b=c\"}";
+
+  private static final String KIND = "test#thing";
+
+  /** Service which accepts objects of one kind in one of its methods. */
+  private static class KindService extends MockApiService {
+    @Override
+    public Collection<ApiMethod> usagesOfKind(String kind) {
+      return KIND.equals(kind)
+          ? ImmutableList.<ApiMethod>of(new MockApiMethod()) : ImmutableList.<ApiMethod>of();
+    }
+  }
+
+  @Override
+  public void gwtSetUp() {
+    JsonPrettifier.setResources(Resources.INSTANCE);
+  }
+
+  @Override
+  public void gwtTearDown() {
+    RootPanel.get().clear();
+  }
+
+  /** Markup from the worker is the same as the markup rendered on the UI thread. */
+  public void testMarkupMatches() {
+    assertSameMarkup(BODY, 2, 2);
+    assertSameMarkup(BODY, JsonPrettifier.NEVER_COLLAPSE, JsonPrettifier.SHOW_ALL_ITEMS);
+    assertSameMarkup(BODY, 1, 1);
+  }
+
+  /** Menu buttons are only kept for kinds which some method of the service accepts. */
+  public void testMenus() {
+    String body = "{\"items\": [{\"kind\": \"" + KIND + "\"}, {\"kind\": \"other#thing\"}]}";
+    Widget worker = renderInWorker(body, JsonPrettifier.NEVER_COLLAPSE, 10);
+    assertEquals(render(body, JsonPrettifier.NEVER_COLLAPSE, 10).getElement().getInnerHTML(),
+        worker.getElement().getInnerHTML());
+    assertEquals(1, countAll(worker.getElement(), "[data-json-menu]"));
+  }
+
+  /** Collapsed groups are left out by the worker, and rendered from the body when expanded. */
+  public void testCollapsedGroupRenderedOnDemand() {
+    Widget expected = render(BODY, 2, 10);
+    Widget worker = renderInWorker(BODY, 2, 10);
+
+    Element pending = find(worker.getElement(), "[data-json-pending]");
+    assertEquals("", pending.getInnerHTML());
+
+    click(find(expected.getElement(), "[data-json-pending]").getPreviousSiblingElement());
+    click(pending.getPreviousSiblingElement());
+    assertTrue(pending.getInnerText().contains("deepest"));
+    assertEquals(expected.getElement().getInnerHTML(), worker.getElement().getInnerHTML());
+  }
+
+  /** Pages after the first are left out by the worker, and rendered from the body when shown. */
+  public void testNextPageRenderedOnDemand() {
+    Widget expected = render(BODY, JsonPrettifier.NEVER_COLLAPSE, 2);
+    Widget worker = renderInWorker(BODY, JsonPrettifier.NEVER_COLLAPSE, 2);
+    assertFalse(worker.getElement().getInnerText().contains("null,"));
+
+    click(find(expected.getElement(), "[data-json-more]"));
+    click(find(worker.getElement(), "[data-json-more]"));
+    assertTrue(worker.getElement().getInnerText().contains("null,"));
+    assertFalse(worker.getElement().getInnerText().contains("\"text\""));
+    assertEquals(expected.getElement().getInnerHTML(), worker.getElement().getInnerHTML());
+
+    click(find(expected.getElement(), "[data-json-more]"));
+    click(find(worker.getElement(), "[data-json-more]"));
+    assertTrue(worker.getElement().getInnerText().contains("\"text\""));
+    assertEquals(0, countAll(worker.getElement(), "[data-json-more]"));
+    assertEquals(expected.getElement().getInnerHTML(), worker.getElement().getInnerHTML());
+  }
+
+  /** The worker reports bodies which it cannot render instead of replying with markup. */
+  public void testInvalidBody() {
+    JsonHtmlRenderer renderer = createRenderer(2, 10);
+    assertNotNull(JsonWorker.renderInPage("{not json", renderer.workerOptions()).getError());
+    assertNotNull(JsonWorker.renderInPage("[1, 2]", renderer.workerOptions()).getError());
+    assertNull(JsonWorker.renderInPage(BODY, renderer.workerOptions()).getError());
+  }
+
+  /** Invalid bodies are reported to the caller, also when the worker would render them. */
+  public void testPrettifyInvalidBody() {
+    JsonPrettifier.setEngine(JsonPrettifier.Engine.HTML);
+    JsonPrettifier.setUseWorker(true);
+    StringBuilder large = new StringBuilder("{\"padding\": \"");
+    for (int i = 0; i < 64 * 1024; i++) {
+      large.append('x');
+    }
+
+    try {
+      JsonPrettifier.prettify(new KindService(), new FlowPanel(), large.toString(),
+          JsonPrettifier.LOCAL_LINK_FACTORY);
+      fail();
+    } catch (JsonFormatException e) {
+      // Expected.
+    } finally {
+      JsonPrettifier.setUseWorker(false);
+      JsonPrettifier.setEngine(JsonPrettifier.Engine.WIDGETS);
+    }
+  }
+
+  private void assertSameMarkup(String body, int collapseDepth, int pageSize) {
+    assertEquals(render(body, collapseDepth, pageSize).getElement().getInnerHTML(),
+        renderInWorker(body, collapseDepth, pageSize).getElement().getInnerHTML());
+  }
+
+  private static JsonHtmlRenderer createRenderer(int collapseDepth, int pageSize) {
+    return new JsonHtmlRenderer(new KindService(), JsonPrettifier.LOCAL_LINK_FACTORY,
+        Resources.INSTANCE, collapseDepth, pageSize);
+  }
+
+  private static Widget render(String body, int collapseDepth, int pageSize) {
+    Widget output = createRenderer(collapseDepth, pageSize).render(new JsonBody(body).getValue());
+    RootPanel.get().add(output);
+    return output;
+  }
+
+  private static Widget renderInWorker(String body, int collapseDepth, int pageSize) {
+    JsonHtmlRenderer renderer = createRenderer(collapseDepth, pageSize);
+    JsonWorker.Output output = JsonWorker.renderInPage(body, renderer.workerOptions());
+    assertNull(output.getError());
+
+    Widget widget = renderer.renderPrerendered(output, new JsonBody(body).getValue());
+    RootPanel.get().add(widget);
+    return widget;
+  }
+
+  private static native Element find(Element container, String selector) /*-{
+    return container.querySelector(selector);
+  }-*/;
+
+  private static native int countAll(Element container, String selector) /*-{
+    return container.querySelectorAll(selector).length;
+  }-*/;
+
+  private static void click(Element element) {
+    element.dispatchEvent(
+        Document.get().createClickEvent(0, 0, 0, 0, 0, false, false, false, false));
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history.format;
+
+import com.google.api.explorer.client.history.format.FormattedJson.Line;
+import com.google.api.explorer.client.history.format.FormattedJson.LineType;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link JsonFormatter}, which run on the JVM without any browser.
+ *
+ */
+public class JsonFormatterTest extends TestCase {
+
+  public void testFormatNestedDocument() {
+    FormattedJson formatted = JsonFormatter.format(
+        "{\"kind\":\"plus#activity\",\"items\":[1,2.5e3,true,null],\"empty\":{},\"a\":[]}");
+
+    assertEquals("{\n"
+        + " \"kind\": \"plus#activity\",\n"
+        + " \"items\": [\n"
+        + "  1,\n"
+        + "  2.5e3,\n"
+        + "  true,\n"
+        + "  null\n"
+        + " ],\n"
+        + " \"empty\": {\n"
+        + " },\n"
+        + " \"a\": [\n"
+        + " ]\n"
+        + "}\n", formatted.toText());
+  }
+
+  public void testLineTypes() {
+    List<Line> lines = JsonFormatter.format(
+        "{\"s\":\"value\",\"n\":-1,\"b\":false,\"z\":null,\"o\":{},\"l\":[]}").getLines();
+
+    assertEquals(LineType.OPEN_OBJECT, lines.get(0).getType());
+    assertEquals(LineType.STRING, lines.get(1).getType());
+    assertEquals("s", lines.get(1).getKey());
+    assertEquals("\"value\"", lines.get(1).getText());
+    assertEquals(LineType.NUMBER, lines.get(2).getType());
+    assertEquals(LineType.BOOLEAN, lines.get(3).getType());
+    assertEquals(LineType.NULL, lines.get(4).getType());
+    assertEquals(LineType.OPEN_OBJECT, lines.get(5).getType());
+    assertEquals(LineType.CLOSE_OBJECT, lines.get(6).getType());
+    assertTrue(lines.get(6).hasSeparator());
+    assertEquals(LineType.OPEN_ARRAY, lines.get(7).getType());
+    assertEquals(LineType.CLOSE_ARRAY, lines.get(8).getType());
+    assertFalse(lines.get(8).hasSeparator());
+    assertEquals(LineType.CLOSE_OBJECT, lines.get(9).getType());
+    assertEquals(0, lines.get(9).getDepth());
+  }
+
+  /** Lines are passed on as soon as they are complete, before the rest is parsed. */
+  public void testLinesAreStreamed() {
+    final List<Line> lines = new ArrayList<Line>();
+    try {
+      JsonParser.parse("{\"a\": 1, \"b\": [true] , \"c\":", new JsonFormatter(
+          new JsonFormatter.LineHandler() {
+            @Override
+            public void line(Line line) {
+              lines.add(line);
+            }
+          }));
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+
+    assertEquals(5, lines.size());
+    assertEquals(" \"a\": 1,", lines.get(1).toText());
+    assertEquals("  true", lines.get(3).toText());
+    assertEquals(" ],", lines.get(4).toText());
+  }
+
+  public void testLinks() {
+    List<Line> lines = JsonFormatter.format(
+        "[\"https://www.googleapis.com/plus/v1/people/me\",\"http://a\\tb\",\"ftp://host\"]")
+        .getLines();
+
+    assertEquals(LineType.LINK, lines.get(1).getType());
+    assertEquals("https://www.googleapis.com/plus/v1/people/me", lines.get(1).getText());
+    assertEquals(" \"https://www.googleapis.com/plus/v1/people/me\",", lines.get(1).toText());
+    assertEquals(LineType.STRING, lines.get(2).getType());
+    assertEquals("\"http://a\\tb\"", lines.get(2).getText());
+    assertEquals(LineType.STRING, lines.get(3).getType());
+  }
+
+  public void testEscapes() {
+    List<Line> lines =
+        JsonFormatter.format("[\"quote \\\" slash \\/ \\u00e9 \\u0001 \\n\"]").getLines();
+
+    assertEquals("\"quote \\\" slash / \u00e9 \\u0001 \\n\"", lines.get(1).getText());
+  }
+
+  public void testScalarRoot() {
+    FormattedJson formatted = JsonFormatter.format(" \"text\" ");
+    assertEquals("\"text\"\n", formatted.toText());
+  }
+
+  public void testInvalidJson() {
+    String[] invalid = {"", "{", "{\"a\" 1}", "[1,]", "[01]", "{\"a\":tru}", "[1] 2", "'a'",
+        "[\"\\x\"]", "[\"a\nb\"]", "[-]", "[1.]", "[1e]"};
+    for (String json : invalid) {
+      try {
+        JsonFormatter.format(json);
+        fail("Expected an error for " + json);
+      } catch (IllegalArgumentException e) {
+        // Expected.
+      }
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.explorer.client.history.format;
+
+import com.google.api.explorer.client.history.format.JsonPrerenderer.Entry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link JsonPrerenderer}, the renderer run by the web worker, on the JVM.
+ *
+ */
+public class JsonPrerendererTest extends TestCase {
+  private static final int NEVER_COLLAPSE = Integer.MAX_VALUE;
+  private static final int SHOW_ALL_ITEMS = Integer.MAX_VALUE;
+
+  // Every class is named after its key.
+  private static final Map<String, String> CLASSES = new ImmutableMap.Builder<String, String>()
+      .put(JsonMarkup.JSON_KEY, JsonMarkup.JSON_KEY)
+      .put(JsonMarkup.JSON_EXPANDED, JsonMarkup.JSON_EXPANDED)
+      .put(JsonMarkup.JSON_COLLAPSED, JsonMarkup.JSON_COLLAPSED)
+      .put(JsonMarkup.JSON_NULL, JsonMarkup.JSON_NULL)
+      .put(JsonMarkup.JSON_NUMBER, JsonMarkup.JSON_NUMBER)
+      .put(JsonMarkup.JSON_BOOLEAN, JsonMarkup.JSON_BOOLEAN)
+      .put(JsonMarkup.JSON_STRING, JsonMarkup.JSON_STRING)
+      .put(JsonMarkup.JSON_STRING_LINK, JsonMarkup.JSON_STRING_LINK)
+      .put(JsonMarkup.REUSABLE_RESOURCE, JsonMarkup.REUSABLE_RESOURCE)
+      .put(JsonMarkup.REUSABLE_RESOURCE_BUTTON, JsonMarkup.REUSABLE_RESOURCE_BUTTON)
+      .put(JsonMarkup.CLICKABLE, JsonMarkup.CLICKABLE)
+      .build();
+
+  public void testMarkup() {
+    JsonPrerenderer rendered = render("{\"a\": 1, \"b\": [null, \"<x>\"]}", NEVER_COLLAPSE,
+        SHOW_ALL_ITEMS);
+
+    assertEquals("<span><span class=\"jsonKey jsonExpanded\" data-json-toggle>{</span>\n"
+        + "<span data-json-contents>"
+        + "<span class=\"jsonKey\"> &quot;a&quot;: </span><span class=\"jsonNumber\">1</span>,\n"
+        + "<span> <span class=\"jsonKey jsonExpanded\" data-json-toggle>&quot;b&quot;: [</span>\n"
+        + "<span data-json-contents>"
+        + "<span class=\"jsonKey\">  </span><span class=\"jsonNull\">null</span>,\n"
+        + "<span class=\"jsonKey\">  </span><span class=\"jsonString\">&quot;&lt;x&gt;&quot;"
+        + "</span>\n"
+        + "</span><span data-json-placeholder style=\"display:none\">  ...\n</span> ]\n</span>"
+        + "</span><span data-json-placeholder style=\"display:none\"> ...\n</span>}\n</span>",
+        rendered.getHtml());
+    assertTrue(rendered.getGroups().isEmpty());
+    assertTrue(rendered.getPages().isEmpty());
+    assertTrue(rendered.getMenus().isEmpty());
+  }
+
+  public void testCollapsedGroups() {
+    JsonPrerenderer rendered =
+        render("{\"a\": {\"b\": [1]}, \"c\": [{\"d\": 2}], \"e\": 3}", 1, SHOW_ALL_ITEMS);
+
+    String html = rendered.getHtml();
+    assertTrue(html.contains("<span data-json-contents data-json-pending=\"0\""
+        + " style=\"display:none\"></span><span data-json-placeholder>  ...\n</span> },\n"));
+    assertTrue(html.contains("data-json-pending=\"1\""));
+    assertFalse(html.contains("&quot;b&quot;"));
+    assertFalse(html.contains("&quot;d&quot;"));
+    assertTrue(html.contains("&quot;e&quot;"));
+
+    List<Entry> groups = rendered.getGroups();
+    assertEquals(2, groups.size());
+    assertEquals(ImmutableList.of("a"), Arrays.asList(groups.get(0).getPath()));
+    assertEquals(1, groups.get(0).getDepth());
+    assertFalse(groups.get(0).isArray());
+    assertFalse(groups.get(0).allowsMenu());
+    assertEquals(ImmutableList.of("c"), Arrays.asList(groups.get(1).getPath()));
+    assertTrue(groups.get(1).isArray());
+  }
+
+  public void testPages() {
+    JsonPrerenderer rendered =
+        render("{\"items\": [1, 2, 3, {\"x\": 4}], \"after\": true}", NEVER_COLLAPSE, 2);
+
+    String html = rendered.getHtml();
+    assertTrue(html.contains(
+        "2</span>,\n<span class=\"clickable\" data-json-more=\"0\"></span></span>"));
+    assertFalse(html.contains("3</span>"));
+    assertFalse(html.contains("&quot;x&quot;"));
+    assertTrue(html.contains(" ],\n"));
+    assertTrue(html.contains("&quot;after&quot;"));
+
+    assertEquals(1, rendered.getPages().size());
+    Entry page = rendered.getPages().get(0);
+    assertEquals(ImmutableList.of("items"), Arrays.asList(page.getPath()));
+    assertEquals(2, page.getDepth());
+    assertEquals(2, page.getNext());
+  }
+
+  public void testMenus() {
+    JsonPrerenderer rendered = render("{\"kind\": \"a#b\", \"items\": [{\"id\": 1, "
+        + "\"kind\": \"c#d\", \"kind\": \"e#f\"}, {\"kind\": 5}], \"o\": {\"kind\": \"g#h\"}}",
+        NEVER_COLLAPSE, SHOW_ALL_ITEMS);
+
+    String html = rendered.getHtml();
+    assertTrue(html.startsWith("<span><span class=\"jsonKey jsonExpanded\" data-json-toggle>{"
+        + "</span>\n<span data-json-contents><span class=\"reusableResourceButton\" "
+        + "data-json-menu=\"0\" style=\"display:none\"><img></span>"));
+    assertTrue(html.contains("<span data-json-contents><span class=\"reusableResourceButton\" "
+        + "data-json-menu=\"1\" style=\"display:none\"><img></span><span class=\"jsonKey\">   "
+        + "&quot;id&quot;: </span>"));
+    assertFalse(html.contains("data-json-menu=\"2\""));
+
+    List<Entry> menus = rendered.getMenus();
+    assertEquals(2, menus.size());
+    assertEquals(0, menus.get(0).getPath().length);
+    assertEquals(ImmutableList.of("items", "0"), Arrays.asList(menus.get(1).getPath()));
+  }
+
+  public void testLinks() {
+    String html = render("{\"self\": \"http://example.com/?a=1&b=2\"}", NEVER_COLLAPSE,
+        SHOW_ALL_ITEMS).getHtml();
+
+    assertTrue(html.contains("\"<a class=\"jsonStringLink\" "
+        + "href=\"http://example.com/?a=1&amp;b=2\" target=\"_blank\" "
+        + "data-json-url=\"http://example.com/?a=1&amp;b=2\">"
+        + "http://example.com/?a=1&amp;b=2</a>\"\n"));
+  }
+
+  public void testInvalidBodies() {
+    String[] invalid = {"[1, 2]", "\"text\"", "{\"a\": }", "{\"a\": 1"};
+    for (String json : invalid) {
+      try {
+        render(json, NEVER_COLLAPSE, SHOW_ALL_ITEMS);
+        fail("Expected an error for " + json);
+      } catch (IllegalArgumentException e) {
+        // Expected.
+      }
+    }
+  }
+
+  private static JsonPrerenderer render(String json, int collapseDepth, int pageSize) {
+    return JsonPrerenderer.render(json, CLASSES, "<img>", collapseDepth, pageSize);
+  }
+}
@@ -82,8 +82,8 @@ public class HistoryManagerTest extends TestCase {
   public void testRootRouting() {
     Capture<Callback<Set<ServiceDefinition>, String>> cbCapture =
         new Capture<Callback<Set<ServiceDefinition>, String>>();
-    serviceLoader.loadServiceDefinitions(EasyMock.capture(cbCapture));
-    EasyMock.expectLastCall();
+    EasyMock.expect(serviceLoader.loadServiceDefinitions(EasyMock.capture(cbCapture)))
+        .andReturn(null);
 
     Capture<ExplorerContext> contextCapture = new Capture<ExplorerContext>();
     delegate.setContext(EasyMock.capture(contextCapture));
@@ -112,8 +112,9 @@ public class HistoryManagerTest extends TestCase {
   /** Test routing to a specific service. */
   public void testServiceRouting() {
     Capture<Callback<ApiService, String>> cbCapture = new Capture<Callback<ApiService, String>>();
-    serviceLoader.loadService(EasyMock.eq("plus"), EasyMock.eq("v1"), EasyMock.capture(cbCapture));
-    EasyMock.expectLastCall().times(2);
+    EasyMock.expect(serviceLoader.loadService(
+        EasyMock.eq("plus"), EasyMock.eq("v1"), EasyMock.capture(cbCapture)))
+        .andReturn(null).times(2);
 
     Capture<ExplorerContext> contextCapture = new Capture<ExplorerContext>();
     delegate.setContext(EasyMock.capture(contextCapture));
@@ -147,8 +148,9 @@ public class HistoryManagerTest extends TestCase {
 
   public void testMethodRouting() {
     Capture<Callback<ApiService, String>> cbCapture = new Capture<Callback<ApiService, String>>();
-    serviceLoader.loadService(EasyMock.eq("plus"), EasyMock.eq("v1"), EasyMock.capture(cbCapture));
-    EasyMock.expectLastCall().times(2);
+    EasyMock.expect(serviceLoader.loadService(
+        EasyMock.eq("plus"), EasyMock.eq("v1"), EasyMock.capture(cbCapture)))
+        .andReturn(null).times(2);
 
     Capture<ExplorerContext> contextCapture = new Capture<ExplorerContext>();
     delegate.setContext(EasyMock.capture(contextCapture));
@@ -215,8 +217,9 @@ public class HistoryManagerTest extends TestCase {
 
   public void testNestedSearchRouting() {
     Capture<Callback<ApiService, String>> cbCapture = new Capture<Callback<ApiService, String>>();
-    serviceLoader.loadService(EasyMock.eq("plus"), EasyMock.eq("v1"), EasyMock.capture(cbCapture));
-    EasyMock.expectLastCall();
+    EasyMock.expect(serviceLoader.loadService(
+        EasyMock.eq("plus"), EasyMock.eq("v1"), EasyMock.capture(cbCapture)))
+        .andReturn(null);
 
     EasyMock.replay(serviceLoader);
 